@@ -60,6 +60,29 @@ class Main {
     System.err.println("         -G[filename]   CFGs GraphViz output (requires s)");
     System.err.println("         -b[filename]   bytecode text");
     System.err.println("         -x[filename]   execute bytecode");
+    System.err.println("         --engine=E     Set bytecode execution engine to E");
+    System.err.println("                        (boxed, unboxed, threaded, jvm)");
+    System.err.println("         --bench=N      Time execution after N warm up runs");
+    System.err.println("         --no-fusion    Do not use superinstructions in bytecode");
+    System.err.println("         --fusion-stats Report superinstruction counts with bytecode");
+    System.err.println("                        (and dynamic counts for -x using boxed engine)");
+    System.err.println("         --save-image=F Save bytecode for the program as an image in F");
+    System.err.println("         --load-image=F Load bytecode image F instead of source files");
+    System.err.println("         --ic-stats     Report inline cache hits for closure calls");
+    System.err.println("         --pgo          Rerun optimizer using a profile from running main");
+    System.err.println("         --profile[=F]  Write hot spot profile for -x (boxed engine)");
+    System.err.println("         --flame[=F]    Write collapsed stacks for -x (boxed engine)");
+    System.err.println("         --opt-threads=N Use up to N threads for optimizer passes");
+    System.err.println("                        and specialization");
+    System.err.println("         --worklist     Only revisit changed definitions in optimizer");
+    System.err.println("         --no-const-prop Do not run interprocedural constant propagation");
+    System.err.println("         --check-reshake Check that skipped shakes are redundant");
+    System.err.println("         --inline-budget=P Limit code growth from inlining to P%");
+    System.err.println("                        (default 400, 0 for no limit)");
+    System.err.println("         --opt-stats[=F] Write optimizer pass statistics as JSON");
+    System.err.println("         --opt-stats-csv[=F] Write optimizer pass statistics as CSV");
+    System.err.println("         --spec-report[=F] Write instance counts and sizes for each");
+    System.err.println("                        specialized definition");
     System.err.println("         --mil-main=N   Set name of main function in MIL input");
     System.err.println("         --llvm-main=N  Set name of main function in LLVM output");
     System.err.println("         --standalone   Equivalent to --mil-main=main --llvm-main=main");
@@ -68,6 +91,9 @@ class Main {
     System.err.println("         --help         Display this message");
   }
 
+  /** Holds the state for the compilation that is performed by this Main object. */
+  private Compilation comp = new Compilation();
+
   /** Flag to indicate if we should generate messages at each stage. */
   private boolean trace = false;
 
@@ -110,6 +136,37 @@ class Main {
 
   private FilenameOption execOutput = new FilenameOption("execution output");
 
+  private FilenameOption profileOutput = new FilenameOption("execution profile");
+
+  private FilenameOption flameOutput = new FilenameOption("collapsed stack profile");
+
+  private FilenameOption optStatsOutput = new FilenameOption("optimizer statistics");
+
+  private FilenameOption optStatsCsvOutput = new FilenameOption("optimizer statistics (CSV)");
+
+  private FilenameOption specReportOutput = new FilenameOption("specialization report");
+
+  /** Name of the engine that will be used to execute bytecode. */
+  private String engine = "boxed";
+
+  /** Number of warm up executions to run before timing bytecode execution (or -1 for no timing). */
+  private int benchRuns = (-1);
+
+  /** Name of a file in which to save a machine image for the compiled program, or null. */
+  private String saveImage = null;
+
+  /** Name of a file from which to load a machine image instead of compiling sources, or null. */
+  private String loadImage = null;
+
+  /** Flag to indicate if the optimizer should be rerun using an execution profile. */
+  private boolean profileGuided = false;
+
+  /** Flag to indicate if superinstruction counts should be reported. */
+  private boolean fusionStats = false;
+
+  /** Flag to indicate if inline cache statistics for closure calls should be reported. */
+  private boolean inlineCacheStats = false;
+
   /** MIL main name option string. */
   private String milMain = "";
 
@@ -125,22 +182,123 @@ class Main {
     if (str.startsWith("-")) {
       String special;
       if ((special = nonemptyOptString("--llvm-main=", str)) != null) {
-        llvm.FuncDefn.mainFunctionName = special;
+        comp.setMainFunctionName(special);
         return;
       } else if ((special = nonemptyOptString("--mil-main=", str)) != null) {
         milMain = special;
         return;
       } else if (optMatches("--standalone", str)) {
-        milMain = llvm.FuncDefn.mainFunctionName = "main";
+        milMain = "main";
+        comp.setMainFunctionName(milMain);
         return;
       } else if ((special = nonemptyOptString("--target=", str)) != null) {
-        llvm.Program.targetTriple = special;
+        comp.setTargetTriple(special);
+        return;
+      } else if ((special = nonemptyOptString("--engine=", str)) != null) {
+        if (!special.equals("boxed")
+            && !special.equals("unboxed")
+            && !special.equals("threaded")
+            && !special.equals("jvm")) {
+          throw new Failure("Unrecognized execution engine \"" + special + "\"");
+        }
+        engine = special;
+        return;
+      } else if ((special = nonemptyOptString("--bench=", str)) != null) {
+        try {
+          benchRuns = Integer.parseInt(special);
+        } catch (NumberFormatException e) {
+          benchRuns = (-1);
+        }
+        if (benchRuns < 0) {
+          throw new Failure("Invalid number of runs for --bench option");
+        }
+        return;
+      } else if ((special = nonemptyOptString("--opt-threads=", str)) != null) {
+        int threads;
+        try {
+          threads = Integer.parseInt(special);
+        } catch (NumberFormatException e) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          throw new Failure("Invalid number of threads for --opt-threads option");
+        }
+        comp.setOptThreads(threads);
+        return;
+      } else if ((special = nonemptyOptString("--inline-budget=", str)) != null) {
+        int growth;
+        try {
+          growth = Integer.parseInt(special);
+        } catch (NumberFormatException e) {
+          growth = (-1);
+        }
+        if (growth < 0) {
+          throw new Failure("Invalid percentage for --inline-budget option");
+        }
+        comp.setInlineGrowth(growth);
+        return;
+      } else if ((special = optString("--opt-stats-csv=", str)) != null) {
+        optStatsCsvOutput.setName(special);
+        return;
+      } else if (optMatches("--opt-stats-csv", str)) {
+        optStatsCsvOutput.setName("");
+        return;
+      } else if ((special = optString("--opt-stats=", str)) != null) {
+        optStatsOutput.setName(special);
+        return;
+      } else if (optMatches("--opt-stats", str)) {
+        optStatsOutput.setName("");
+        return;
+      } else if ((special = optString("--spec-report=", str)) != null) {
+        specReportOutput.setName(special);
+        return;
+      } else if (optMatches("--spec-report", str)) {
+        specReportOutput.setName("");
+        return;
+      } else if (optMatches("--worklist", str)) {
+        comp.setWorklist(true);
+        return;
+      } else if (optMatches("--check-reshake", str)) {
+        comp.setCheckReshake(true);
+        return;
+      } else if (optMatches("--no-const-prop", str)) {
+        comp.setConstantPropagation(false);
+        return;
+      } else if (optMatches("--no-fusion", str)) {
+        comp.setFuseInstructions(false);
+        return;
+      } else if (optMatches("--fusion-stats", str)) {
+        fusionStats = true;
+        return;
+      } else if ((special = nonemptyOptString("--save-image=", str)) != null) {
+        saveImage = special;
+        return;
+      } else if ((special = nonemptyOptString("--load-image=", str)) != null) {
+        loadImage = special;
+        return;
+      } else if (optMatches("--ic-stats", str)) {
+        inlineCacheStats = true;
+        return;
+      } else if (optMatches("--pgo", str)) {
+        profileGuided = true;
+        return;
+      } else if ((special = optString("--profile=", str)) != null) {
+        profileOutput.setName(special);
+        return;
+      } else if (optMatches("--profile", str)) {
+        profileOutput.setName("");
+        return;
+      } else if ((special = optString("--flame=", str)) != null) {
+        flameOutput.setName(special);
+        return;
+      } else if (optMatches("--flame", str)) {
+        flameOutput.setName("");
         return;
       } else if (optMatches("--32", str)) {
-        Word.setSize(32);
+        comp.setWordSize(32);
         return;
       } else if (optMatches("--64", str)) {
-        Word.setSize(64);
+        comp.setWordSize(64);
         return;
       } else if (optMatches("--help", str) || optMatches("-help", str)) {
         usage();
@@ -262,9 +420,10 @@ class Main {
    */
   public void run(String[] args) {
     Handler handler = new SimpleHandler();
+    Compilation prev = comp.enter();
     try {
       // TODO: initial messages will not appear so long as trace is initialized to false :-)
-      LCLoader loader = new LCLoader();
+      LCLoader loader = new LCLoader(comp);
       if (optionsFromFile(handler, ".milc", loader, false)) {
         message("Read options from .milc ..."); // Process options in .milc file, if present
       }
@@ -283,6 +442,11 @@ class Main {
         mil.typeChecking(handler);
 
         process(handler, mil);
+      } else if (loadImage != null) {
+        message("Loading machine image from \"" + loadImage + "\" ...");
+        MachineImage image = MachineImage.read(loadImage);
+        machineOutput(handler, image.getMachine(), null, image.getAddrMap());
+        handler.abortOnFailures();
       }
 
       generatorsOutput.run(
@@ -305,6 +469,9 @@ class Main {
     } catch (Failure f) {
       handler.report(f);
       System.exit(-1);
+    } finally {
+      comp.shutdown();
+      Compilation.leave(prev);
     }
   }
 
@@ -314,6 +481,10 @@ class Main {
     boolean optimized = false; // Keep track of whether the optimizer has been run
     boolean cfunRewrite = false; // Keep track of whether the cfun rewrite has been run
 
+    if (optStatsOutput.isSet() || optStatsCsvOutput.isSet()) {
+      comp.setStats(new OptimizerStats());
+    }
+
     if (passes == null) {
       // If no passes are specified, try to set some sensible defaults to satisfy
       // requirements implied by other command line arguments.  This does not prevent
@@ -325,7 +496,9 @@ class Main {
               ? "csosrsos"
               : execOutput.isSet()
                   ? "cosboro"
-                  : repTypeSetOutput.isSet() ? "cosor" : specTypeSetOutput.isSet() ? "cos" : "co";
+                  : repTypeSetOutput.isSet()
+                      ? "cosor"
+                      : (specTypeSetOutput.isSet() || specReportOutput.isSet()) ? "cos" : "co";
       message("Defaulting to passes \"" + passes + "\":");
     }
 
@@ -357,7 +530,7 @@ class Main {
           mil.bitdataRewrite();
           optimized = false;
           if (spec != null) {
-            GenImp.setBitdataRepresentations();
+            comp.setBitdataRepresentations();
           }
           break;
 
@@ -398,9 +571,45 @@ class Main {
       mil.typeChecking(handler);
       handler.abortOnFailures();
     }
+    if (profileGuided) {
+      message("Running profile guided optimizer ...");
+      MachineBuilder builder = mil.generateMachineBuilder(handler);
+      handler.abortOnFailures();
+      Machine machine = builder.getMachine();
+      machine.profile(true);
+      machine.exec(new PrintWriter(new StringWriter()), 0);
+      if (machine.getProfile().hotThreshold() == 0) {
+        message("No profile information collected; skipping profile guided optimizer");
+      } else {
+        mil.optimize(builder, machine.getProfile());
+        optimized = true;
+        message("Running type checker ...");
+        mil.typeChecking(handler);
+        handler.abortOnFailures();
+      }
+    }
     output(handler, mil, spec, rep, optimized);
   }
 
+  /**
+   * Execute the program in the given machine using the selected engine. Profiles and dynamic
+   * opcode counts are only supported by the boxed engine, so that engine is always used when
+   * either is requested.
+   */
+  private void exec(Machine machine, PrintWriter out) {
+    if (machine.isInstrumented()) {
+      machine.exec(out, 0);
+    } else if (engine.equals("unboxed")) {
+      machine.execUnboxed(out, 0);
+    } else if (engine.equals("threaded")) {
+      machine.execThreaded(out, 0);
+    } else if (engine.equals("jvm")) {
+      machine.execJvm(out, 0);
+    } else {
+      machine.exec(out, 0);
+    }
+  }
+
   /** Encapsulates an action to be performed involving writing to a specified PrintWriter. */
   abstract static class Action {
 
@@ -431,6 +640,17 @@ class Main {
           }
         });
 
+    specReportOutput.run(
+        new Action() {
+          void run(PrintWriter out) throws Failure {
+            if (spec == null) {
+              throw new Failure("A specialization pass is required for the specialization report");
+            } else {
+              spec.writeReport(out);
+            }
+          }
+        });
+
     repTypeSetOutput.run(
         new Action() {
           void run(PrintWriter out) throws Failure {
@@ -474,6 +694,22 @@ class Main {
           }
         });
 
+    if (comp.getStats() != null) {
+      final OptimizerStats stats = comp.getStats();
+      optStatsOutput.run(
+          new Action() {
+            void run(PrintWriter out) {
+              stats.writeJson(out);
+            }
+          });
+      optStatsCsvOutput.run(
+          new Action() {
+            void run(PrintWriter out) {
+              stats.writeCsv(out);
+            }
+          });
+    }
+
     if (llvmOutput.isSet() || llvmInterfaceOutput.isSet() || cfgsGraphvizOutput.isSet()) {
       if (spec == null) {
         throw new Failure("A specialization pass is required for LLVM output");
@@ -501,32 +737,94 @@ class Main {
           });
     }
 
-    if (bytecodeOutput.isSet() || execOutput.isSet()) {
+    if (bytecodeOutput.isSet() || execOutput.isSet() || saveImage != null) {
       final MachineBuilder builder = mil.generateMachineBuilder(handler);
-      final Machine machine = builder.getMachine();
       handler.abortOnFailures();
+      if (saveImage != null) {
+        HashAddrMap addrMap = addrMap(handler, builder, null);
+        message("Writing machine image to \"" + saveImage + "\" ...");
+        MachineImage.write(saveImage, builder.getMachine(), addrMap);
+        numActions++;
+      }
+      machineOutput(handler, builder.getMachine(), builder, null);
+    }
 
-      bytecodeOutput.run(
+    handler.abortOnFailures(); // Just to be sure ...
+    message("Success!");
+  }
+
+  /**
+   * Produce bytecode and execution output for the program in the given machine. The symbol table
+   * for the machine is either supplied directly (loadedMap, if the machine was read from an image)
+   * or else calculated from the builder when it is first needed.
+   */
+  private void machineOutput(
+      final Handler handler,
+      final Machine machine,
+      final MachineBuilder builder,
+      final HashAddrMap loadedMap)
+      throws Failure {
+    bytecodeOutput.run(
+        new Action() {
+          void run(PrintWriter out) throws Failure {
+            machine.dump(out, addrMap(handler, builder, loadedMap));
+            if (fusionStats && !execOutput.isSet()) {
+              machine.dumpFusionStats(out);
+            }
+          }
+        });
+
+    execOutput.run(
+        new Action() {
+          void run(PrintWriter out) throws Failure {
+            for (int i = 0; i < benchRuns; i++) { // Warm up runs, discarding output
+              exec(machine, new PrintWriter(new StringWriter()));
+            }
+            machine.countOpcodes(fusionStats);
+            machine.countInlineCaches(inlineCacheStats);
+            machine.profile(profileOutput.isSet() || flameOutput.isSet());
+            long start = System.nanoTime();
+            exec(machine, out);
+            long time = System.nanoTime() - start;
+            out.println(machine.getInstrCount() + " instructions executed");
+            out.println("Maximum call depth " + machine.getMaxCallDepth());
+            if (fusionStats) {
+              machine.dumpFusionStats(out);
+            }
+            if (inlineCacheStats) {
+              machine.dumpInlineCaches(out, addrMap(handler, builder, loadedMap));
+            }
+            if (benchRuns >= 0) {
+              out.println("Execution time (" + engine + ") " + (time / 1000000) + "ms");
+            }
+          }
+        });
+
+    if (machine.getProfile() != null) {
+      final HashAddrMap addrMap = addrMap(handler, builder, loadedMap);
+      profileOutput.run(
           new Action() {
-            void run(PrintWriter out) throws Failure {
-              HashAddrMap addrMap = builder.makeAddrMap(handler);
-              handler.abortOnFailures();
-              machine.dump(out, addrMap);
+            void run(PrintWriter out) {
+              machine.getProfile().report(out, addrMap);
             }
           });
-
-      execOutput.run(
+      flameOutput.run(
           new Action() {
             void run(PrintWriter out) {
-              machine.exec(out, 0);
-              out.println(machine.getInstrCount() + " instructions executed");
-              out.println("Maximum call depth " + machine.getMaxCallDepth());
+              machine.getProfile().collapsedStacks(out, addrMap);
             }
           });
     }
+  }
 
-    handler.abortOnFailures(); // Just to be sure ...
-    message("Success!");
+  /** Return the symbol table for a machine, calculating it from the builder if necessary. */
+  private static HashAddrMap addrMap(Handler handler, MachineBuilder builder, HashAddrMap addrMap)
+      throws Failure {
+    if (addrMap == null) {
+      addrMap = builder.makeAddrMap(handler);
+      handler.abortOnFailures();
+    }
+    return addrMap;
   }
 
   /**
@@ -352,12 +352,10 @@ class Binding extends DefVar {
     return false;
   }
 
-  private static int count = 0;
-
   /** Pick new names for each of the bindings in this list (for debugging purposes only). */
   static void rename(Bindings bs) {
     for (; bs != null; bs = bs.next) {
-      bs.head.id = bs.head.id + count++;
+      bs.head.id = bs.head.id + Compilation.current().fresh(Binding.class);
     }
   }
 
@@ -370,7 +368,7 @@ class Binding extends DefVar {
   Code compBinding(final CGEnv env, final Temp t1, final Type kty, final Code code) {
     return e.compTail(
         env,
-        MILProgram.abort,
+        MILProgram.abort(),
         kty,
         new TailCont() {
           Code with(Tail t) {
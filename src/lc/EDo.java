@@ -117,7 +117,7 @@ class EDo extends PosExpr {
                 Temp.noTemps,
                 new BlockCall(
                     new LCBlock(
-                        pos, rty, e.compTailM(env, MILProgram.abort, rty, TailCont.done))))),
+                        pos, rty, e.compTailM(env, MILProgram.abort(), rty, TailCont.done))))),
         kt.with(Cfun.Proc.withArgs(t)));
   }
 
@@ -132,13 +132,13 @@ class EFrom extends PosExpr {
       final CGEnv env, final Block abort, final Type kty, final TailCont kt) { // v <- e; e1
     return e.compTailM(
         env,
-        MILProgram.abort,
+        MILProgram.abort(),
         kty,
         new TailCont() {
           Code with(final Tail t) {
             Temp t1 = v.freshTemp();
             return new Bind(
-                t1, t, e1.compTailM(new CGEnvVar(env, v, t1), MILProgram.abort, kty, kt));
+                t1, t, e1.compTailM(new CGEnvVar(env, v, t1), MILProgram.abort(), kty, kt));
           }
         });
   }
@@ -132,7 +132,7 @@ class ELam extends PosExpr {
             new LCBlock(
                 pos,
                 ety,
-                e.compTail(new CGEnvVars(env, vs, ts), MILProgram.abort, ety, TailCont.done)));
+                e.compTail(new CGEnvVars(env, vs, ts), MILProgram.abort(), ety, TailCont.done)));
     for (int i = vs.length - 1; i >= 0; i--) {
       Type tty = ts[i].instantiate(); // Type of ts[i]
       Type fty = Type.milfunTuple(tty, ety);
@@ -138,7 +138,7 @@ class EUpdate extends PosExpr {
     //     Bind(tN <- update_labN((vN, tN-1)),
     //     kt(C(tN))
     if (cf == null) {
-      return e.compTail(env, MILProgram.abort, kty, new UpdateCont(env, 0, kty, kt));
+      return e.compTail(env, MILProgram.abort(), kty, new UpdateCont(env, 0, kty, kt));
     } else {
       final TailCont kn =
           new UpdateCont(
@@ -157,7 +157,7 @@ class EUpdate extends PosExpr {
               return new Bind(a, t, kn.with(new Sel(cf, 0, a)));
             }
           };
-      return e.compTail(env, MILProgram.abort, kty, ks);
+      return e.compTail(env, MILProgram.abort(), kty, ks);
     }
   }
 
@@ -64,11 +64,20 @@ abstract class Expr {
 
   public static final String trueName = "True";
 
-  public static final Expr trueCon = new EId(BuiltinPosition.pos, trueName);
+  /**
+   * Return a new reference to the True constructor. Scope analysis records the constructor in each
+   * reference, so they cannot be shared between uses, or between compilations.
+   */
+  public static Expr trueCon() {
+    return new EId(BuiltinPosition.pos, trueName);
+  }
 
   public static final String falseName = "False";
 
-  public static final Expr falseCon = new EId(BuiltinPosition.pos, falseName);
+  /** Return a new reference to the False constructor. */
+  public static Expr falseCon() {
+    return new EId(BuiltinPosition.pos, falseName);
+  }
 
   /**
    * The abstract syntax for LC does not have an if-then-else construct, so we provide the following
@@ -172,7 +181,7 @@ abstract class Expr {
    * tail by introducing a new Block, if necessary.
    */
   Tail compTopLevel(Position pos) {
-    return compTail(null, MILProgram.abort, type, TailCont.done).forceTail(pos, type);
+    return compTail(null, MILProgram.abort(), type, TailCont.done).forceTail(pos, type);
   }
 
   /**
@@ -182,7 +191,7 @@ abstract class Expr {
   Code compAtom(final CGEnv env, final Type kty, final AtomCont ka) {
     return compTail(
         env,
-        MILProgram.abort,
+        MILProgram.abort(),
         kty,
         new TailCont() {
           Code with(final Tail t) {
@@ -25,12 +25,10 @@ import mil.*;
 /** Represents a fresh variable (not named in the LC source). */
 class FreshVar extends DefVar {
 
-  private static int count = 0;
-
   private String id;
 
   public FreshVar() {
-    this.id = "t" + count++;
+    this.id = "t" + Compilation.current().fresh(FreshVar.class);
   }
 
   /** Find an identifier associated with this variable. */
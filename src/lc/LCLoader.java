@@ -24,6 +24,14 @@ import mil.*;
 
 public class LCLoader extends core.Loader {
 
+  /** The compilation in which programs are loaded. */
+  private Compilation comp;
+
+  /** Default constructor. */
+  public LCLoader(Compilation comp) {
+    this.comp = comp;
+  }
+
   /** Records the list of objects that have already been loaded. */
   private LCPrograms loaded = null;
 
@@ -105,11 +113,21 @@ public class LCLoader extends core.Loader {
    * dependencies.
    */
   public MILProgram load(Handler handler, String mainName) throws Failure {
+    Compilation prev = comp.enter();
+    try {
+      return loadProgram(handler, mainName);
+    } finally {
+      Compilation.leave(prev);
+    }
+  }
+
+  /** Load all of the files that have been requested from this loader in the current compilation. */
+  private MILProgram loadProgram(Handler handler, String mainName) throws Failure {
     // Load all of the required LCProgram objects:
     LCProgramSCCs sccs = LCPrograms.scc(syntaxAnalysis(handler));
 
     // Load all of the required MIL files:
-    MILProgram mil = new MILProgram(); // Construct an empty MIL program
+    MILProgram mil = new MILProgram(comp); // Construct an empty MIL program
     MILEnv milenv = milLoader.load(handler, mil);
 
     // Load all of the specified LC files:
@@ -543,14 +543,14 @@ public class LCParser extends CoreParser implements LCTokens {
         {
           Position pos = lexer.getPos();
           lexer.nextToken(/* && */ );
-          return Expr.ifthenelse(pos, e, pos, parseInfixExpr(), pos, Expr.falseCon);
+          return Expr.ifthenelse(pos, e, pos, parseInfixExpr(), pos, Expr.falseCon());
         }
 
       case BARBAR:
         {
           Position pos = lexer.getPos();
           lexer.nextToken(/* || */ );
-          return Expr.ifthenelse(pos, e, pos, Expr.trueCon, pos, parseInfixExpr());
+          return Expr.ifthenelse(pos, e, pos, Expr.trueCon(), pos, parseInfixExpr());
         }
     }
     return e;
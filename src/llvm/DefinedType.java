@@ -22,21 +22,16 @@ package llvm;
 /** Represents a type that is introduced in a type definition. */
 public class DefinedType extends Type {
 
+  private String name;
+
   private Type definition;
 
   /** Default constructor. */
-  public DefinedType(Type definition) {
+  public DefinedType(String name, Type definition) {
+    this.name = name;
     this.definition = definition;
   }
 
-  private static int count = 0;
-
-  private String name = "%dt" + count++;
-
-  public DefinedType() {
-    this(null);
-  }
-
   public void define(Type definition) {
     this.definition = definition;
   }
@@ -52,13 +52,6 @@ public class FuncDefn extends Defn {
     this.bodies = bodies;
   }
 
-  /**
-   * Default name for the main/initialization function. Made public so that it can be changed by a
-   * command line option. If the name is empty, then, we will either report an error (if there is
-   * initialization code) or else just not generate an initialization function at all.
-   */
-  public static String mainFunctionName = "";
-
   /** Print full text for this definition on the specified PrintWriter. */
   void print(PrintWriter out) {
     out.print("define ");
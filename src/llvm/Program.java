@@ -46,10 +46,15 @@ public class Program {
   }
 
   /**
-   * Holds the LLVM target triple string that will be included in generated programs (or null, in
-   * which case, no target triple declaration will be included).
+   * Holds the LLVM target triple string that will be included in this program (or null, in which
+   * case, no target triple declaration will be included).
    */
-  public static String targetTriple = null;
+  private String targetTriple = null;
+
+  /** Set the LLVM target triple for this program. */
+  public void setTargetTriple(String targetTriple) {
+    this.targetTriple = targetTriple;
+  }
 
   static void printComment(PrintWriter out, String indent, String comment) {
     // Attempt to print a comment over multiple lines if necessary by interpreting embedded newlines
@@ -85,9 +90,16 @@ public class Program {
     }
   }
 
-  private static int count = 0;
+  private int count = 0;
 
   public String freshName(String prefix) {
     return prefix + "." + count++;
   }
+
+  private int typeCount = 0;
+
+  /** Return a new type, with a fresh name, that will be defined in this program. */
+  public DefinedType definedType(Type definition) {
+    return new DefinedType("%dt" + typeCount++, definition);
+  }
 }
@@ -67,22 +67,23 @@ public abstract class Type {
   public static final Type i64 = new Basic("i64", Word.ZERO);
 
   /**
-   * Holds the LLVM type corresponding to the MIL Word type. Should obviously be set to a non-null
-   * value before use, and should be fixed throughout any given LLVM program.
+   * Holds the LLVM type corresponding to the MIL Word type for the program that is being generated
+   * by each thread. Should obviously be set to a non-null value before use, and should be fixed
+   * throughout any given LLVM program.
    */
-  private static Type word;
+  private static final ThreadLocal<Type> word = new ThreadLocal<Type>();
 
   /** Return the LLVM type corresponding to the MIL Word type. */
   public static Type word() {
-    return word;
+    return word.get();
   }
 
   /** Set the LLVM type for Word using the given size value (which must be either 32 or 64). */
   public static void setWord(int size) {
     if (size == 32) {
-      word = i32;
+      word.set(i32);
     } else if (size == 64) {
-      word = i64;
+      word.set(i64);
     } else {
       debug.Internal.error("Invalid LLVM wordsize " + size);
     }
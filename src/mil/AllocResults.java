@@ -0,0 +1,85 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.HashSet;
+
+/**
+ * Determines whether every value that is returned by a block is a newly allocated object, built by
+ * allocators of the same form (i.e., the same constructor or closure definition). Blocks that are
+ * reached by tail calls are included in the analysis. If the analysis succeeds, then calls to the
+ * block whose results do not escape can be replaced by calls to a derived block that returns the
+ * fields of the object instead of a pointer to it.
+ */
+class AllocResults {
+
+  /** The maximum number of blocks that we will include in the analysis of a single block. */
+  static final int MAX_BLOCKS = 16;
+
+  /** The allocator form that has been found for all of the results so far. */
+  private Allocator form = null;
+
+  /** Set to true if we find a result that is not built using the same form of allocator. */
+  private boolean fails = false;
+
+  /** Records the set of blocks that have been visited. */
+  private HashSet<Block> visited = new HashSet<Block>();
+
+  /**
+   * Return an allocator that describes the form of all of the values returned by the given block,
+   * or null if there is no such allocator.
+   */
+  static Allocator find(Block b) {
+    AllocResults ar = new AllocResults();
+    ar.visit(b);
+    return (ar.fails || ar.form == null) ? null : ar.form;
+  }
+
+  /**
+   * Visit the code for a block that is reached by a tail call. Blocks that have already been
+   * visited do not need to be revisited: a cycle of tail calls does not return any new results.
+   */
+  void visit(Block b) {
+    if (!fails && visited.add(b)) {
+      if (visited.size() > MAX_BLOCKS) {
+        fails = true;
+      } else {
+        b.allocResults(this);
+      }
+    }
+  }
+
+  /** Record an allocator that is used to build one of the results of the block. */
+  void found(Allocator alloc) {
+    if (alloc.getArity() == 0) {
+      fails = true; // allocators without fields are better shared at the top level
+    } else if (form == null) {
+      form = alloc;
+    } else if (!form.sameCallForm(alloc)) {
+      fails = true;
+    }
+  }
+
+  /** Record a result that is not built using an allocator. */
+  void fail() {
+    fails = true;
+  }
+}
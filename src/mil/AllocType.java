@@ -212,6 +212,15 @@ public class AllocType {
     return this.result.alphaType(left.result, corresp);
   }
 
+  /** Compute a hash code for this allocator type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    int h = result.alphaHash();
+    for (int i = 0; i < stored.length; i++) {
+      h = 31 * h + stored[i].alphaHash();
+    }
+    return h;
+  }
+
   /** Test to see if this allocator type is monomorphic. */
   public AllocType isMonomorphic() {
     return this;
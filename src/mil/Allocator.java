@@ -39,7 +39,7 @@ public abstract class Allocator extends Call {
       }
     }
     TopLevel topLevel = new TopLevel(/*pos*/ null, new TopLhs(), this); // TODO: fix position.
-    MILProgram.report("lifting static allocator to top-level " + topLevel);
+    MILProgram.report(OptimizerStats.LIFT, "lifting static allocator to top-level " + topLevel);
     return new Return(new TopDef(topLevel, 0));
   }
 
@@ -60,6 +60,16 @@ public abstract class Allocator extends Call {
     return true;
   }
 
+  /** Add information about the values that are returned by this tail to the given analysis. */
+  void allocResults(AllocResults ar) {
+    ar.found(this);
+  }
+
+  /** Return a version of this tail that returns the fields of an allocated result. */
+  Tail deriveWithUnboxedResult() {
+    return new Return(args);
+  }
+
   public Tail lookupFact(TopLevel tl) {
     this.tl = tl;
     return this;
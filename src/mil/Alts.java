@@ -67,6 +67,28 @@ public abstract class Alts {
    */
   abstract Alts deriveWithCont(Atom cont);
 
+  /**
+   * Modify these alternatives to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original alternatives.
+   */
+  abstract Alts deriveWithUnboxedResult();
+
+  /** Add information about the values returned by these alternatives to the given analysis. */
+  abstract void allocResults(AllocResults ar);
+
+  /**
+   * Test to see if the value of v might escape from these alternatives, which is the case if it is
+   * passed as an argument in any of their block calls.
+   */
+  abstract boolean escapes(Temp v);
+
+  /**
+   * Return a version of these alternatives in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  abstract Alts redirectLoopCalls(LoopHoist lh);
+
   abstract Alts copy();
 
   /** Test for code that is guaranteed not to return. */
@@ -104,11 +126,17 @@ public abstract class Alts {
     /* nothing to do */
   }
 
+  /** Propagate approximate values to the blocks that might be called from these alternatives. */
+  void constProp(ConstProp cp) {
+    /* nothing to do */
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  abstract int summary();
+  abstract int summary(Temps vars);
 
   /** Test to see if two Alts sequences are alpha equivalent. */
   abstract boolean alphaAlts(Temps thisvars, Alts that, Temps thatvars);
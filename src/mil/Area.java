@@ -125,7 +125,7 @@ public abstract class Area extends TopDefn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures) {
+  boolean summarizeDefns(SummaryTable blocks, SummaryTable topLevels, SummaryTable closures) {
     return false;
   }
 
@@ -108,6 +108,55 @@ public class Assert extends Code {
     return new Assert(a, cf, c.deriveWithCont(cont));
   }
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  Code deriveWithUnboxedResult() {
+    return new Assert(a, cf, c.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  void allocResults(AllocResults ar) {
+    c.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return c.escapes(v);
+  }
+
+  /**
+   * Rewrite non-tail calls in this code to blocks that always return newly allocated objects, using
+   * derived blocks that return the fields of those objects, provided that the results of the calls
+   * do not escape.
+   */
+  Code unboxResults() {
+    c = c.unboxResults();
+    return this;
+  }
+
+  /**
+   * Remove bindings at the start of this code that can be hoisted out of the enclosing loop,
+   * recording them in the given LoopHoist object. This should only be used on a copy of the code.
+   */
+  Code hoistInvariants(LoopHoist lh) {
+    c = c.hoistInvariants(lh);
+    return this;
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Code redirectLoopCalls(LoopHoist lh) {
+    return new Assert(a, cf, c.redirectLoopCalls(lh));
+  }
+
   boolean noCallsWithinSCC(DefnSCC scc) {
     return c.noCallsWithinSCC(scc);
   }
@@ -133,7 +182,7 @@ public class Assert extends Code {
   Code cleanup(Block src) {
     c = c.cleanup(src);
     if (!a.isLive()) { // Rewrite (assert cf _; c) ==> c
-      MILProgram.report("eliminated an unused assertion in " + src);
+      MILProgram.report(OptimizerStats.DEAD, "eliminated an unused assertion in " + src);
       return c;
     }
     return this;
@@ -166,6 +215,11 @@ public class Assert extends Code {
     return c.suffixInlineLength(len);
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  int codeSize() {
+    return 1 + c.codeSize();
+  }
+
   /**
    * Determine if, for the purposes of suffix inlining, it is possible to get back to the specified
    * source block via a sequence of tail calls. (i.e., without an If or Case guarding against an
@@ -209,7 +263,8 @@ public class Assert extends Code {
   Temps liveness() {
     Temps us = c.liveness();
     if (a.isLive() && !a.isIn(us)) {
-      MILProgram.report("liveness replaced " + a + " in assertion with a wildcard");
+      MILProgram.report(
+          OptimizerStats.DEAD, "liveness replaced " + a + " in assertion with a wildcard");
       a = a.notLive();
     }
     return us;
@@ -227,12 +282,24 @@ public class Assert extends Code {
     c.calcSources(d, params, rebound);
   }
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  void constProp(ConstProp cp) {
+    c.constProp(cp);
+  }
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  Code constRewrite(ConstProp cp) {
+    c = c.constRewrite(cp);
+    return this;
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return cf.summary() * 7 + c.summary() * 13 + 257;
+  int summary(Temps vars) {
+    return cf.summary() * 7 + a.summary(vars) * 5 + c.summary(vars) * 13 + 257;
   }
 
   /** Test to see if two Code sequences are alpha equivalent. */
@@ -265,7 +332,8 @@ public class Assert extends Code {
   Code cfunSimplify() {
     c = c.cfunSimplify(); // Simplify rest of code
     if (cf.isSingleConstructor()) { // Eliminate assert for a single constructor type
-      MILProgram.report("eliminating assert for singleton constructor " + cf.getId());
+      MILProgram.report(
+          OptimizerStats.KNOWN_CONS, "eliminating assert for singleton constructor " + cf.getId());
       return c;
     }
     return this;
@@ -328,9 +328,10 @@ public abstract class Atom {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
+  int summary(Temps vars) {
     return -17;
   }
 
@@ -128,6 +128,67 @@ public class Bind extends Code {
     return new Bind(vs, t, c.deriveWithCont(cont));
   }
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  Code deriveWithUnboxedResult() {
+    return new Bind(vs, t, c.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  void allocResults(AllocResults ar) {
+    c.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return t.escapes(v) || (!v.occursIn(vs) && c.escapes(v));
+  }
+
+  /**
+   * Rewrite non-tail calls in this code to blocks that always return newly allocated objects, using
+   * derived blocks that return the fields of those objects, provided that the results of the calls
+   * do not escape.
+   */
+  Code unboxResults() {
+    c = c.unboxResults();
+    if (vs.length == 1 && !c.escapes(vs[0])) {
+      Allocator alloc = t.resultAllocator();
+      if (alloc != null) {
+        MILProgram.report(
+            OptimizerStats.UNBOX, "unboxing allocated result of block call for " + vs[0]);
+        Temp[] ws = Temp.makeTemps(alloc.getArity());
+        return new Bind(ws, t.deriveWithUnboxedResult(), new Bind(vs[0], alloc.callDup(ws), c));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Remove bindings at the start of this code that can be hoisted out of the enclosing loop,
+   * recording them in the given LoopHoist object. This should only be used on a copy of the code.
+   */
+  Code hoistInvariants(LoopHoist lh) {
+    if (lh.hoist(vs, t)) {
+      return c.hoistInvariants(lh);
+    }
+    c = c.hoistInvariants(lh);
+    return this;
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Code redirectLoopCalls(LoopHoist lh) {
+    return new Bind(vs, t.redirectLoopCalls(lh), c.redirectLoopCalls(lh));
+  }
+
   boolean noCallsWithinSCC(DefnSCC scc) {
     return t.noCallsWithinSCC(scc) && c.noCallsWithinSCC(scc);
   }
@@ -155,17 +216,18 @@ public class Bind extends Code {
   Code cleanup(Block src) {
     if (Temp.noneLive(vs)
         && t.hasNoEffect()) { // Rewrite (_ <- t; c) ==> c, if t has no visible effect
-      MILProgram.report("inlining eliminated a wildcard binding in " + src);
+      MILProgram.report(OptimizerStats.DEAD, "inlining eliminated a wildcard binding in " + src);
       return c.cleanup(src);
     } else if (c.isReturn(vs)) { // Rewrite (vs <- t; return vs) ==> t
-      MILProgram.report("applied right monad law in " + src);
+      MILProgram.report(OptimizerStats.MONAD, "applied right monad law in " + src);
       return new Done(t);
     } else if (t.blackholes()) { // Rewrite (vs <- loop(()); c) ==> loop(())
-      MILProgram.report("rewrite (vs <- loop(()); c) ==> loop(())");
+      MILProgram.report(OptimizerStats.DEAD, "rewrite (vs <- loop(()); c) ==> loop(())");
       return new Done(Prim.loop.withArgs());
     } else if (t.doesntReturn()
         && !c.blackholes()) { // Rewrite (vs <- t; c) ==> vs <- t; loop(()), if t doesn't return
-      MILProgram.report("removed code after a tail that does not return in " + src);
+      MILProgram.report(
+          OptimizerStats.DEAD, "removed code after a tail that does not return in " + src);
       return new Bind(vs, t, new Done(Prim.loop.withArgs()));
     } else {
       c = c.cleanup(src);
@@ -192,13 +254,13 @@ public class Bind extends Code {
     if (bc != null) {
       Code nc;
       if ((nc = c.enters(vs, bc)) != null) {
-        MILProgram.report("pushed enter into call in " + src);
+        MILProgram.report(OptimizerStats.MONAD, "pushed enter into call in " + src);
         return nc;
       } else if ((nc = c.casesOn(vs, bc)) != null) {
-        MILProgram.report("pushed case into call in " + src);
+        MILProgram.report(OptimizerStats.MONAD, "pushed case into call in " + src);
         return nc;
       } else if ((nc = bc.localLoop(src, vs, c)) != null) {
-        MILProgram.report("pushed continuation into block call in " + src);
+        MILProgram.report(OptimizerStats.MONAD, "pushed continuation into block call in " + src);
         return nc;
       }
 
@@ -226,6 +288,11 @@ public class Bind extends Code {
     return t.noinline() ? (-1) : c.suffixInlineLength(len + 1);
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  int codeSize() {
+    return 1 + c.codeSize();
+  }
+
   /**
    * Determine if, for the purposes of suffix inlining, it is possible to get back to the specified
    * source block via a sequence of tail calls. (i.e., without an If or Case guarding against an
@@ -270,7 +337,7 @@ public class Bind extends Code {
         // For the purposes of the following message, we assume that allocators return exactly one
         // result.  With that assumption, we could also have simplified the preceding safety check
         // ...
-        MILProgram.report("lifted allocator for " + parent.vs[0]);
+        MILProgram.report(OptimizerStats.LIFT, "lifted allocator for " + parent.vs[0]);
         c.liftAllocators(this); // Now this node is a non-allocator parent of c.
 
         return true;
@@ -306,7 +373,8 @@ public class Bind extends Code {
     // TODO: do we need to limit the places where this is used?
     Temp p = Facts.find(t, facts); // Look for previously computed value
     if (p != null && vs.length == 1) {
-      MILProgram.report("cse: using previously computed value " + p + " for " + vs[0]);
+      MILProgram.report(
+          OptimizerStats.CSE, "cse: using previously computed value " + p + " for " + vs[0]);
       return c.flow(d, facts, vs[0].mapsTo(p, s));
     }
     // TODO: this code needs careful attention!
@@ -314,6 +382,7 @@ public class Bind extends Code {
     Atom[] as = t.returnsAtom(); // Check for vs <- return as; c
     if (as != null) {
       MILProgram.report(
+          OptimizerStats.MONAD,
           "applied left monad law for " + Atom.toString(vs) + " <- return " + Atom.toString(as));
       return c.flow(d, facts, TempSubst.extend(vs, as, s));
     }
@@ -362,8 +431,10 @@ public class Bind extends Code {
             nvs[j] = vs[j];
           }
         }
-        MILProgram.report("liveness replaced " + vs[i] + " with a wildcard");
+        MILProgram.report(OptimizerStats.DEAD, "liveness replaced " + vs[i] + " with a wildcard");
         nvs[i] = vs[i].notLive();
+      } else if (nvs != null) {
+        nvs[i] = vs[i];
       }
     }
     if (nvs != null) {
@@ -387,12 +458,31 @@ public class Bind extends Code {
     c.calcSources(d, params, Temp.extersect(params, vs, rebound));
   }
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  void constProp(ConstProp cp) {
+    t.constProp(cp);
+    cp.bind(vs, t);
+    c.constProp(cp);
+  }
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  Code constRewrite(ConstProp cp) {
+    cp.bind(vs, t);
+    c = c.constRewrite(cp);
+    return this;
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return t.summary() * 17 + c.summary() * 11 + 511;
+  int summary(Temps vars) {
+    int sum = t.summary(vars) * 17 + vs.length;
+    for (int i = 0; i < vs.length; i++) {
+      vars = vs[i].add(vars);
+    }
+    return sum + c.summary(vars) * 11 + 511;
   }
 
   /** Test to see if two Code sequences are alpha equivalent. */
@@ -385,7 +385,8 @@ public class BitdataLayout extends DataName {
       int n = Word.numWords(total); // number of words in output
       Atom[] mask = Const.atoms(maskNat, total, true);
       Atom[] bits = Const.atoms(bitsNat, total);
-      maskTestBlock = eq ? Block.returnFalse : Block.returnTrue; // base case, if no data to compare
+      // Base case, if no data to compare:
+      maskTestBlock = eq ? Block.returnFalse() : Block.returnTrue();
 
       for (int i = 1; i <= n; i++) {
         Temp[] vs = Temp.makeTemps(i); // i parameters
@@ -395,7 +396,7 @@ public class BitdataLayout extends DataName {
           // This branch is used when we are testing the last word of the input, so the final result
           // will be
           // determined exclusively by the result of this comparison.
-          c = new Done(new BlockCall(eq ? bmaskneq : bmaskeq, as));
+          c = new Done(new BlockCall(eq ? bmaskneq() : bmaskeq(), as));
         } else {
           // This branch is used when there are still other words to compare.  Each of these tests
           // uses a call to
@@ -408,20 +409,26 @@ public class BitdataLayout extends DataName {
           c =
               new Bind(
                   t,
-                  new BlockCall(bmaskeq, as),
+                  new BlockCall(bmaskeq(), as),
                   new If(
                       t,
                       new BlockCall(maskTestBlock, Temp.tail(vs)),
-                      new BlockCall(eq ? Block.returnTrue : Block.returnFalse, Atom.noAtoms)));
+                      new BlockCall(eq ? Block.returnTrue() : Block.returnFalse(), Atom.noAtoms)));
         }
         maskTestBlock = new Block(cf.getPos(), vs, c);
       }
     }
   }
 
-  public static Block bmaskeq = masktestBlock("bmaskeq", Prim.eq);
+  /** Return the single word masktest block for equality in the current compilation. */
+  static Block bmaskeq() {
+    return Compilation.current().bmaskeq;
+  }
 
-  public static Block bmaskneq = masktestBlock("bmaskneq", Prim.neq);
+  /** Return the single word masktest block for inequality in the current compilation. */
+  static Block bmaskneq() {
+    return Compilation.current().bmaskneq;
+  }
 
   /**
    * Make a block of the following form for implementing a single word masktest predicate with mask
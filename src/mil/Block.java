@@ -21,6 +21,7 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 
 public class Block extends Defn {
 
@@ -38,10 +39,15 @@ public class Block extends Defn {
     this.code = code;
   }
 
-  private static int count = 0;
-
   public Block(Position pos, Temp[] params, Code code) {
-    this(pos, "b" + count++, params, code);
+    this(pos, null, params, code);
+    Compilation.current()
+        .freshName(
+            new NameEvent(null) {
+              void assignName() {
+                id = "b" + Compilation.current().fresh(Block.class);
+              }
+            });
   }
 
   /**
@@ -217,7 +223,7 @@ public class Block extends Defn {
   /** Second pass code generation: produce code for block and closure definitions. */
   void generateFunctions(MachineBuilder builder) {
     builder.resetFrame();
-    builder.setAddr(this, builder.getNextAddr());
+    builder.setEntry(this);
     builder.extend(params, 0);
     code.generateCode(builder, params.length);
   }
@@ -232,24 +238,28 @@ public class Block extends Defn {
    * of additional arguments that will eventually be passed when the closure is entered.
    */
   public Block deriveWithEnter(int m) {
-    // Look to see if we have already derived a suitable version of this block:
-    for (Blocks bs = derived; bs != null; bs = bs.next) {
-      if (bs.head instanceof BlockWithEnter) {
-        return bs.head;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this block:
+      for (Blocks bs = derived; bs != null; bs = bs.next) {
+        if (bs.head instanceof BlockWithEnter) {
+          comp.reuse(bs.head);
+          return bs.head;
+        }
       }
-    }
 
-    // Generate a fresh block; we have to make sure that the new block is added to the derived list
-    // before we begin
-    // generating code to ensure that we do not end up with multiple (or potentially, infinitely
-    // many copies of the
-    // new block).
-    Temp[] iargs = Temp.makeTemps(m); // temps for extra args
-    Temp[] nps = Temp.append(params, iargs); // added to original params
-    Block b = new BlockWithEnter(pos, nps, null);
-    derived = new Blocks(b, derived);
-    b.code = code.deriveWithEnter(iargs);
-    return b;
+      // Generate a fresh block; we have to make sure that the new block is added to the derived
+      // list before we begin generating code to ensure that we do not end up with multiple (or
+      // potentially, infinitely many copies of the new block).
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Temp[] iargs = Temp.makeTemps(m); // temps for extra args
+      Temp[] nps = Temp.append(params, iargs); // added to original params
+      Block b = new BlockWithEnter(pos, nps, null);
+      derived = new Blocks(b, derived);
+      b.code = code.deriveWithEnter(iargs);
+      comp.endDerived(b, saved);
+      return b;
+    }
   }
 
   /**
@@ -257,30 +267,65 @@ public class Block extends Defn {
    * specifed continuation function instead of returning that value to the calling code.
    */
   public Block deriveWithCont() {
-    // Look to see if we have already derived a suitable version of this block:
-    for (Blocks bs = derived; bs != null; bs = bs.next) {
-      if (bs.head instanceof BlockWithCont) {
-        return bs.head;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this block:
+      for (Blocks bs = derived; bs != null; bs = bs.next) {
+        if (bs.head instanceof BlockWithCont) {
+          comp.reuse(bs.head);
+          return bs.head;
+        }
       }
+
+      // Generate a fresh block; we have to make sure that the new block is added to the derived
+      // list before we begin generating code to ensure that we do not end up with multiple (or
+      // potentially, infinitely many copies of the new block).
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Temp arg = new Temp(); // represents continuation
+      int l = params.length; // extend params with arg
+      Temp[] nps = new Temp[l + 1];
+      nps[l] = arg;
+      for (int i = 0; i < l; i++) {
+        nps[i] = params[i];
+      }
+      Block b = new BlockWithCont(pos, nps, null);
+      derived = new Blocks(b, derived);
+      b.code = code.deriveWithCont(arg);
+      comp.endDerived(b, saved);
+      return b;
     }
+  }
 
-    // Generate a fresh block; we have to make sure that the new block is added to the derived list
-    // before we
-    // begin generating code to ensure that we do not end up with multiple (or potentially,
-    // infinitely many
-    // copies of the new block).
-
-    Temp arg = new Temp(); // represents continuation
-    int l = params.length; // extend params with arg
-    Temp[] nps = new Temp[l + 1];
-    nps[l] = arg;
-    for (int i = 0; i < l; i++) {
-      nps[i] = params[i];
+  /**
+   * Derive a new version of this block that returns the fields of each allocated result instead of
+   * a pointer to the allocated object. This should only be used if AllocResults has found a single
+   * allocator form for all of the results of this block.
+   */
+  public Block deriveWithUnboxedResult() {
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this block:
+      for (Blocks bs = derived; bs != null; bs = bs.next) {
+        if (bs.head instanceof BlockWithUnboxedResult) {
+          comp.reuse(bs.head);
+          return bs.head;
+        }
+      }
+
+      // Add the new block to the derived list before we generate its code so that recursive calls
+      // will use the same block:
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Block b = new BlockWithUnboxedResult(pos, Temp.clone(params), null);
+      derived = new Blocks(b, derived);
+      b.code = code.deriveWithUnboxedResult();
+      comp.endDerived(b, saved);
+      return b;
     }
-    Block b = new BlockWithCont(pos, nps, null);
-    derived = new Blocks(b, derived);
-    b.code = code.deriveWithCont(arg);
-    return b;
+  }
+
+  /** Add information about the values that are returned by this block to the given analysis. */
+  void allocResults(AllocResults ar) {
+    code.allocResults(ar);
   }
 
   /**
@@ -301,38 +346,45 @@ public class Block extends Defn {
   }
 
   public Block deriveWithKnownCons(Call[] calls) {
-    // Look to see if we have already derived a suitable version of this block:
-    for (Blocks bs = derived; bs != null; bs = bs.next) {
-      if (bs.head.hasKnownCons(calls)) {
-        // Return pointer to previous occurrence, or decline the request to specialize
-        // the block if the original block already has the requested allocator pattern.
-        return (this == bs.head) ? null : bs.head;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this block:
+      for (Blocks bs = derived; bs != null; bs = bs.next) {
+        if (bs.head.hasKnownCons(calls)) {
+          // Return pointer to previous occurrence, or decline the request to specialize
+          // the block if the original block already has the requested allocator pattern.
+          if (this == bs.head) {
+            return null;
+          }
+          comp.reuse(bs.head);
+          return bs.head;
+        }
       }
-    }
 
-    // Generate a fresh block; unlike the case for trailing Enter, we're only going to create one
-    // block here
-    // whose code is the same as the original block except that it adds a group of one or more
-    // initializers.
-    // Our first step is to initialize the block:
-    Block b = new BlockWithKnownCons(pos, /*params*/ null, /*code*/ null, calls);
-    derived = new Blocks(b, derived);
-
-    // Next we pick temporary variables for new parameters:
-    Temp[][] tss = Call.makeTempsFor(calls);
-
-    // Combine old parameters and new temporaries to make new parameter list:
-    if (tss == null) {
-      b.params = params; // TODO: safe to reuse params, or should we make a copy?
-      b.derived = new Blocks(b, b.derived);
-    } else {
-      b.params = mergeParams(tss, params);
-    }
+      // Generate a fresh block; unlike the case for trailing Enter, we're only going to create one
+      // block here whose code is the same as the original block except that it adds a group of
+      // one or more initializers. Our first step is to initialize the block:
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Block b = new BlockWithKnownCons(pos, /*params*/ null, /*code*/ null, calls);
+      derived = new Blocks(b, derived);
+
+      // Next we pick temporary variables for new parameters:
+      Temp[][] tss = Call.makeTempsFor(calls);
+
+      // Combine old parameters and new temporaries to make new parameter list:
+      if (tss == null) {
+        b.params = params; // TODO: safe to reuse params, or should we make a copy?
+        b.derived = new Blocks(b, b.derived);
+      } else {
+        b.params = mergeParams(tss, params);
+      }
 
-    // Fill in the code for the new block by prepending some initializers:
-    b.code = addInitializers(calls, params, tss, code.copy());
-    b.flow(); // perform an initial flow analysis to inline initializers.
-    return b;
+      // Fill in the code for the new block by prepending some initializers:
+      b.code = addInitializers(calls, params, tss, code.copy());
+      b.flow(); // perform an initial flow analysis to inline initializers.
+      comp.endDerived(b, saved);
+      return b;
+    }
   }
 
   boolean hasKnownCons(Call[] calls) {
@@ -344,48 +396,54 @@ public class Block extends Defn {
       debug.Internal.error("null argument for deriveWithDuplicateArgs");
     }
 
-    // Look to see if we have already derived a suitable version of this block:
-    for (Blocks bs = derived; bs != null; bs = bs.next) {
-      if (bs.head.hasDuplicateArgs(dups)) {
-        // Return pointer to previous occurrence:
-        return bs.head;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this block:
+      for (Blocks bs = derived; bs != null; bs = bs.next) {
+        if (bs.head.hasDuplicateArgs(dups)) {
+          // Return pointer to previous occurrence:
+          comp.reuse(bs.head);
+          return bs.head;
+        }
       }
-    }
 
-    // Count the number of duplicate params to remove so that we can determine
-    // how many formal parameters the derived block should have.
-    int numDups = 0;
-    for (int i = 0; i < dups.length; i++) {
-      if (dups[i] != 0) {
-        numDups++;
+      // Count the number of duplicate params to remove so that we can determine
+      // how many formal parameters the derived block should have.
+      int numDups = 0;
+      for (int i = 0; i < dups.length; i++) {
+        if (dups[i] != 0) {
+          numDups++;
+        }
+      }
+      if (numDups == 0) {
+        debug.Internal.error("no duplicates found for deriveWithDuplicateArgs");
+      } else if (numDups >= params.length) {
+        debug.Internal.error("too many duplicates in deriveWithDuplicateArgs");
       }
-    }
-    if (numDups == 0) {
-      debug.Internal.error("no duplicates found for deriveWithDuplicateArgs");
-    } else if (numDups >= params.length) {
-      debug.Internal.error("too many duplicates in deriveWithDuplicateArgs");
-    }
 
-    // Create a new list of params (a subsequence of the original list) and build a substitution to
-    // describe
-    // what will happen to params that are eliminated as duplicates.
-    Temp[] nps = Temp.makeTemps(params.length - numDups);
-    int j = 0;
-    TempSubst s = null;
-    for (int i = 0; i < dups.length; i++) {
-      if (dups[i] == 0) { // Not a duplicated parameter:
-        s = params[i].mapsTo(nps[j++], s); // - map old to new
-      } else { // Duplicated parameter:
-        s = params[i].mapsTo(params[dups[i] - 1].apply(s), s); // - map to where original went
+      // Create a new list of params (a subsequence of the original list) and build a substitution
+      // to describe what will happen to params that are eliminated as duplicates.
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Temp[] nps = Temp.makeTemps(params.length - numDups);
+      int j = 0;
+      TempSubst s = null;
+      for (int i = 0; i < dups.length; i++) {
+        if (dups[i] == 0) { // Not a duplicated parameter:
+          s = params[i].mapsTo(nps[j++], s); // - map old to new
+        } else { // Duplicated parameter:
+          s = params[i].mapsTo(params[dups[i] - 1].apply(s), s); // - map to where original went
+        }
       }
-    }
 
-    Block b = new BlockWithDuplicateArgs(pos, nps, code.apply(s), dups);
-    // TODO: should we set a declared type for b if this block has one?
-    derived = new Blocks(b, derived);
-    return b;
+      Block b = new BlockWithDuplicateArgs(pos, nps, code.apply(s), dups);
+      // TODO: should we set a declared type for b if this block has one?
+      derived = new Blocks(b, derived);
+      comp.endDerived(b, saved);
+      return b;
+    }
   }
 
+
   /**
    * Check to see if this is a derived version of a block with duplicate arguments that matches the
    * given pattern.
@@ -437,7 +495,7 @@ public class Block extends Defn {
   boolean detectLoops(Blocks visited) {
     // Check to see if this block calls code for an already visited block:
     if (Blocks.isIn(this, visited) || code.detectLoops(this, visited)) {
-      MILProgram.report("detected an infinite loop in block " + this);
+      MILProgram.report(OptimizerStats.DEAD, "detected an infinite loop in block " + this);
       code = new Done(Prim.loop.withArgs());
       return true;
     }
@@ -461,10 +519,28 @@ public class Block extends Defn {
 
   public static final int INLINE_LINES_LIMIT = 6;
 
+  /** Limit on the length of code that will be inlined into a block that is hot in a profile. */
+  public static final int HOT_INLINE_LINES_LIMIT = 24;
+
+  /**
+   * Return the limit on the length of code that may be duplicated by inlining a call in the given
+   * block. If a profile is available, this limit is increased for blocks that are hot, and is zero
+   * for blocks that were never executed.
+   */
+  static int inlineLinesLimit(Block src) {
+    long hotExecCount = Compilation.current().hotExecCount;
+    if (hotExecCount == 0 || src.execCount < 0) {
+      return INLINE_LINES_LIMIT;
+    } else if (src.execCount == 0) {
+      return 0;
+    }
+    return (src.execCount >= hotExecCount) ? HOT_INLINE_LINES_LIMIT : INLINE_LINES_LIMIT;
+  }
+
   boolean canPrefixInline(Block src) {
     if (this.getScc() != src.getScc()) { // Restrict to different SCCs
       int n = code.prefixInlineLength();
-      return n > 0 && (occurs == 1 || n <= INLINE_LINES_LIMIT);
+      return n > 0 && (occurs == 1 || n <= inlineLinesLimit(src));
     }
     return false;
   }
@@ -477,8 +553,10 @@ public class Block extends Defn {
    * passed in at that call. A null return indicates that no inlining was performed.
    */
   Code prefixInline(Block src, Atom[] args, Temp[] rs, Code rest) {
-    if (canPrefixInline(src)) {
-      MILProgram.report("prefixInline succeeded for call to block " + this + " from block " + src);
+    if (canPrefixInline(src) && withinBudget(src, args, code.prefixInlineLength())) {
+      MILProgram.report(
+          OptimizerStats.INLINE,
+          "prefixInline succeeded for call to block " + this + " from block " + src);
       return code.prefixInline(TempSubst.extend(params, args, null), rs, rest);
     }
     return null;
@@ -490,13 +568,45 @@ public class Block extends Defn {
    * included in the Block d. A null return indicates that no inlining was performed.
    */
   Code suffixInline(Block d, Atom[] args) {
-    if (canSuffixInline(d)) {
-      MILProgram.report("suffixInline succeeded for call to block " + this + " from block " + d);
+    if (canSuffixInline(d) && withinBudget(d, args, code.suffixInlineLength(0))) {
+      MILProgram.report(
+          OptimizerStats.INLINE,
+          "suffixInline succeeded for call to block " + this + " from block " + d);
       return forceSuffixInline(args);
     }
     return null;
   }
 
+  /**
+   * Determine whether inlining a copy of this block into src, with the given length and arguments,
+   * fits in the current inlining budget. Inlining the only call to a block, or a block with only a
+   * single line, does not increase the size of the program.
+   */
+  private boolean withinBudget(Block src, Atom[] args, int len) {
+    InlineBudget budget = Compilation.current().budget;
+    return budget == null
+        || occurs == 1
+        || len <= 1
+        || budget.allow(src.getScc(), len - 1, isBeneficial(args));
+  }
+
+  /**
+   * Estimate whether inlining a call to this block with the given arguments is likely to enable
+   * further optimization: this is the case if the block starts by testing one of its parameters
+   * with a Case or an If, and the corresponding argument is a constant or a top-level value.
+   */
+  private boolean isBeneficial(Atom[] args) {
+    Atom a = code.scrutinee();
+    if (a != null) {
+      for (int i = 0; i < params.length; i++) {
+        if (params[i] == a && args[i].isStatic()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   Code forceSuffixInline(Atom[] args) {
     return code.apply(TempSubst.extend(params, args, null));
   }
@@ -504,7 +614,7 @@ public class Block extends Defn {
   /**
    * We allow a block to be inlined if the original call is in a different block, the code for the
    * block ends with a Done, and either there is only one reference to the block in the whole
-   * program, or else the length of the code sequence is at most INLINE_LINES_LIMIT lines long.
+   * program, or else the length of the code sequence is at most inlineLinesLimit(src) lines long.
    */
   boolean canSuffixInline(Block src) {
     DefnSCC srcscc = src.getScc();
@@ -520,7 +630,7 @@ public class Block extends Defn {
       return false;
     } else {
       int n = code.suffixInlineLength(0); // Inline code blocks that are short
-      return n > 0 && n <= INLINE_LINES_LIMIT;
+      return n > 0 && n <= inlineLinesLimit(src);
     }
   }
 
@@ -551,7 +661,7 @@ public class Block extends Defn {
   BlockCall bypassGotoBlockCall(Atom[] args) {
     BlockCall bc = this.isGotoBlock();
     if (bc != null) {
-      MILProgram.report("elided call to goto block " + this);
+      MILProgram.report(OptimizerStats.INLINE, "elided call to goto block " + this);
       return bc.applyBlockCall(TempSubst.extend(params, args, null));
     }
     return null;
@@ -684,7 +794,8 @@ public class Block extends Defn {
         if (usedArgs != null && usedArgs[i]) {
           newTemps[j++] = dsts[i];
         } else {
-          MILProgram.report("removing unused argument " + dsts[i] + " from " + this);
+          MILProgram.report(
+              OptimizerStats.UNUSED_ARGS, "removing unused argument " + dsts[i] + " from " + this);
         }
       }
       return newTemps;
@@ -694,14 +805,18 @@ public class Block extends Defn {
 
   private BlockCalls uses = null;
 
-  public void calledFrom(BlockCall bc) {
+  public synchronized void calledFrom(BlockCall bc) {
     uses = new BlockCalls(bc, uses);
   }
 
-  /** Remove unused arguments from block calls and closure definitions. */
-  void removeUnusedArgs() {
+  /**
+   * Remove unused arguments from block calls and closure definitions, returning true if any
+   * arguments were removed.
+   */
+  boolean removeUnusedArgs() {
     if (!isEntrypoint && numUsedArgs < params.length) {
       MILProgram.report(
+          OptimizerStats.UNUSED_ARGS,
           "Rewrote block "
               + this
               + " to eliminate "
@@ -714,7 +829,9 @@ public class Block extends Defn {
       for (BlockCalls bcs = uses; bcs != null; bcs = bcs.next) {
         bcs.head.removeUnusedArgs(numUsedArgs, usedArgs);
       }
+      return true;
     }
+    return false;
   }
 
   /** Perform flow analysis on this definition. */
@@ -762,6 +879,90 @@ public class Block extends Defn {
     code.calcSources(this, params, null);
   }
 
+  /**
+   * Start constant propagation for this definition, propagating values from any calls that it
+   * contains, or recording that it can be called with unknown arguments if it is a root.
+   */
+  void constProp(ConstProp cp) {
+    if (cp.isRoot(this)) {
+      cp.root(this, params.length);
+    }
+  }
+
+  /** Propagate approximate values through the code of this block for the given arguments. */
+  void constProp(ConstProp cp, ConstProp.Approx[] vals) {
+    cp.enter(params, vals);
+    code.constProp(cp);
+  }
+
+  /**
+   * Rewrite this block using the results of constant propagation: tests whose outcomes are fixed
+   * are replaced by the branch that is taken, and parameters that always hold the same static value
+   * are replaced by that value.
+   */
+  void constRewrite(ConstProp cp) {
+    ConstProp.Approx[] vals = cp.lookup(this);
+    if (vals != null) { // no rewriting if this block is never called
+      cp.enter(params, vals);
+      code = code.constRewrite(cp);
+      // Substituting constants could make the type of a polymorphic block less general, and only
+      // pays off if the parameter can then be removed; otherwise callers still pass the value and
+      // the body loads the constant again (which costs an extra load on each trip round a loop):
+      if (!isEntrypoint && (declared == null || declared.isMonomorphic() != null)) {
+        TempSubst s = null;
+        for (int i = 0; i < params.length; i++) {
+          Atom a = cp.atomValue(params[i]);
+          if (a != null && code.contains(params[i])) {
+            MILProgram.report(
+                OptimizerStats.CONST_PROP,
+                "constant propagation replaced parameter "
+                    + params[i]
+                    + " of "
+                    + id
+                    + " with "
+                    + a);
+            s = new TempSubst(params[i], a, s);
+          }
+        }
+        if (s != null) {
+          code = code.apply(s);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rewrite calls to blocks whose results are newly allocated objects that do not escape, using
+   * derived blocks that return the fields of those objects.
+   */
+  void unboxResults() {
+    code = code.unboxResults();
+  }
+
+  /** Add this definition to the loop that is described by lh. */
+  void addToLoop(LoopHoist lh) {
+    lh.add(this);
+  }
+
+  /**
+   * Return the index of the parameter of d that holds the value of parameter i of this block when
+   * the enclosing loop is entered at d, or (-1) if there is no such parameter.
+   */
+  int invariantSource(int i, Defn d) {
+    return (sources == null) ? (-1) : sources[i].sourceIndex(d);
+  }
+
+  /** Return a copy of the code for this block with loop invariant calls at its start removed. */
+  Code hoistInvariants(LoopHoist lh) {
+    lh.startBlock(this, params);
+    return code.copy().hoistInvariants(lh);
+  }
+
+  /** Make a new block for a loop that has the same parameters as this block plus ext. */
+  Block loopBlock(Temp[] ext) {
+    return new Block(pos, Temp.append(params, ext), null);
+  }
+
   void updateSources(int i, Defn d, int j) {
     sources[i].updateSources(this, i, d, j);
   }
@@ -809,7 +1010,7 @@ public class Block extends Defn {
    * equivalent program fragments have the same summary value.
    */
   int summary() {
-    return id.hashCode();
+    return (id == null) ? 0 : id.hashCode(); // id is null until the end of a parallel pass
   }
 
   /** Test to see if two Block values are alpha equivalent. */
@@ -848,21 +1049,23 @@ public class Block extends Defn {
    * Look for a previously summarized version of this definition, returning true iff a duplicate was
    * found.
    */
-  boolean findIn(Blocks[] table) {
-    summary = code.summary();
-    int idx = this.summary % table.length;
-    if (idx < 0) {
-      idx += table.length;
+  boolean findIn(SummaryTable table) {
+    Temps vars = null;
+    for (int i = 0; i < params.length; i++) {
+      vars = params[i].add(vars);
     }
+    summary = code.summary(vars) * 31 + params.length;
 
-    for (Blocks ds = table[idx]; ds != null; ds = ds.next) {
-      if (ds.head.summary == this.summary && ds.head.alphaBlock(this)) {
+    for (Defns ds = table.find(summary); ds != null; ds = ds.next) {
+      Block b = (Block) ds.head;
+      table.compared();
+      if (b.alphaBlock(this)) {
         if (isEntrypoint) { // Cannot replace an entrypoint, even though a replacement is available
           return false;
-        } else if (ds.head.declared == null
-            || (this.declared != null && ds.head.declared.alphaEquiv(this.declared))) {
-          MILProgram.report("Replacing " + this + " with " + ds.head);
-          this.replaceWith = ds.head;
+        } else if (b.declared == null
+            || (this.declared != null && b.declared.alphaEquiv(this.declared))) {
+          MILProgram.report(OptimizerStats.DUPLICATES, "Replacing " + this + " with " + b);
+          this.replaceWith = b;
           return true;
         }
       }
@@ -870,7 +1073,7 @@ public class Block extends Defn {
 
     // First sighting of this definition, add to the table:
     this.replaceWith = null; // There is no replacement for this definition (yet)
-    table[idx] = new Blocks(this, table[idx]);
+    table.add(summary, this);
     return false;
   }
 
@@ -879,7 +1082,7 @@ public class Block extends Defn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures) {
+  boolean summarizeDefns(SummaryTable blocks, SummaryTable topLevels, SummaryTable closures) {
     return findIn(blocks);
   }
 
@@ -917,6 +1120,11 @@ public class Block extends Defn {
     this(b.pos, mkid(b.id, num), null, null);
   }
 
+  /** Set the name of this definition to match instance number num of the original definition. */
+  void setSpecName(Block b, int num) {
+    id = mkid(b.id, num);
+  }
+
   /** Fill in the body of this definition as a specialized version of the given block. */
   void specialize(MILSpec spec, Block borig) {
     TVarSubst s = borig.declared.specializingSubst(borig.generics, this.declared);
@@ -983,9 +1191,15 @@ public class Block extends Defn {
     return (params.length == 0) ? new BlockCall(this, Atom.noAtoms) : super.makeTail();
   }
 
-  public static Block returnTrue = atomBlock("returnTrue", Flag.True);
+  /** Return the block that returns True in the current compilation. */
+  public static Block returnTrue() {
+    return Compilation.current().returnTrue;
+  }
 
-  public static Block returnFalse = atomBlock("returnFalse", Flag.False);
+  /** Return the block that returns False in the current compilation. */
+  public static Block returnFalse() {
+    return Compilation.current().returnFalse;
+  }
 
   /**
    * Make a block of the following form that immediately returns the atom a, which could be an Word
@@ -1075,6 +1289,11 @@ public class Block extends Defn {
     return code.identifyBlocks(this, bs);
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in the code for this block. */
+  int codeSize() {
+    return code.codeSize();
+  }
+
   /**
    * Determine if this block is "small", which is intended to capture the intuition that this block
    * will not do a lot of work before returning. In concrete, albeit somewhat arbitrary terms, we
@@ -41,6 +41,11 @@ public class BlockCall extends Call {
     this.args = args;
   }
 
+  /** Return the block that is called by this BlockCall. */
+  Block getBlock() {
+    return b;
+  }
+
   /** Test if two Tail expressions are the same. */
   public boolean sameTail(Tail that) {
     return that.sameBlockCall(this);
@@ -235,7 +240,8 @@ public class BlockCall extends Call {
   }
 
   Code forceSuffixInline(Block d) {
-    MILProgram.report("forced suffixInline for call to block " + b + " from block " + d);
+    MILProgram.report(
+        OptimizerStats.INLINE, "forced suffixInline for call to block " + b + " from block " + d);
     return b.forceSuffixInline(args);
   }
 
@@ -255,7 +261,11 @@ public class BlockCall extends Call {
   public Tail inlineTail() {
     BlockCall bc = this.inlineBlockCall();
     Tail tail = bc.b.inlineTail(bc.args);
-    return (tail == null) ? bc : tail;
+    if (tail == null) {
+      return bc;
+    }
+    MILProgram.report(OptimizerStats.INLINE, "replaced call to block " + bc.b + " with its tail");
+    return tail;
   }
 
   /**
@@ -317,7 +327,9 @@ public class BlockCall extends Call {
       BlockCall bc1 = bc.deriveWithKnownCons(d, calls);
       if (bc1 != null) {
         bc = bc1;
-        MILProgram.report("deriving specialized block " + bc.b + " for BlockCall to block " + b);
+        MILProgram.report(
+            OptimizerStats.SPECIALIZE,
+            "deriving specialized block " + bc.b + " for BlockCall to block " + b);
       }
     }
 
@@ -327,7 +339,8 @@ public class BlockCall extends Call {
       BlockCall bc1 = bc.deriveWithDuplicateArgs(dups);
       if (bc1 != null) {
         bc = bc1;
-        MILProgram.report("eliminating duplicate args in call within " + b);
+        MILProgram.report(
+            OptimizerStats.SPECIALIZE, "eliminating duplicate args in call within " + b);
       }
     }
 
@@ -350,12 +363,45 @@ public class BlockCall extends Call {
     updateSources(d, params, rebound, b);
   }
 
+  /** Propagate approximate values to any blocks that are called by this tail. */
+  void constProp(ConstProp cp) {
+    cp.call(b, args);
+  }
+
+  /** Add information about the values that are returned by this tail to the given analysis. */
+  void allocResults(AllocResults ar) {
+    ar.visit(b);
+  }
+
+  /**
+   * Return an allocator that describes the form of all of the values that are returned by this
+   * tail, or null if there is no such allocator.
+   */
+  Allocator resultAllocator() {
+    return AllocResults.find(b);
+  }
+
+  /** Return a version of this tail that returns the fields of an allocated result. */
+  BlockCall deriveWithUnboxedResult() {
+    return new BlockCall(b.deriveWithUnboxedResult(), args);
+  }
+
+  /**
+   * Return a version of this tail in which a call to a block in a loop is redirected to the
+   * corresponding block in the new version of the loop that is being built by lh.
+   */
+  BlockCall redirectLoopCalls(LoopHoist lh) {
+    BlockCall bc = lh.redirect(b, args);
+    return (bc == null) ? this : bc;
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(b.summary()) * 33;
+  int summary(Temps vars) {
+    return summary(b.summary(), vars) * 33;
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
@@ -145,6 +145,11 @@ public class BlockType {
     return this.dom.alphaType(left.dom, corresp) && this.rng.alphaType(left.rng, corresp);
   }
 
+  /** Compute a hash code for this block type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return 31 * dom.alphaHash() + rng.alphaHash();
+  }
+
   /** Test to see if this block type is monomorphic. */
   public BlockType isMonomorphic() {
     return this;
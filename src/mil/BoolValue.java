@@ -41,4 +41,12 @@ class BoolValue extends Value {
   boolean getBool() throws Failure {
     return bool;
   }
+
+  boolean isUnboxed() {
+    return true;
+  }
+
+  long unboxedWord() {
+    return bool ? 1 : 0;
+  }
 }
@@ -77,7 +77,7 @@ public abstract class Call extends Tail {
 
   /** Add the variables mentioned in this tail to the given list of variables. */
   public Temps add(Temps vs) {
-    return Temps.add(args, vs);
+    return (args == null) ? vs : Temps.add(args, vs);
   }
 
   /**
@@ -487,9 +487,11 @@ public abstract class Call extends Tail {
   }
 
   /** Calculate a summary value for the arguments in a call, starting with a given seed value. */
-  int summary(int sum) {
-    for (int i = 0; i < args.length; i++) {
-      sum = 53 * sum + args[i].summary();
+  int summary(int sum, Temps vars) {
+    if (args != null) {
+      for (int i = 0; i < args.length; i++) {
+        sum = 53 * sum + args[i].summary(vars);
+      }
     }
     return sum;
   }
@@ -106,6 +106,36 @@ public class Case extends Code {
     return new Case(a, alts.deriveWithCont(cont));
   }
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  Code deriveWithUnboxedResult() {
+    return new Case(a, alts.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  void allocResults(AllocResults ar) {
+    alts.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return alts.escapes(v);
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Code redirectLoopCalls(LoopHoist lh) {
+    return new Case(a, alts.redirectLoopCalls(lh));
+  }
+
   /**
    * Test to determine if this code is an expression of the form case v of alts where v is the
    * result of a preceding block call. If so, return a transformed version of the code that makes
@@ -141,7 +171,8 @@ public class Case extends Code {
   Code cleanup(Block src) {
     BlockCall bc = alts.sameBlockCalls();
     if (bc != null) { // Rewrite a case in which all of the targets are the same
-      MILProgram.report("eliminated a case with the same block in each branch in " + src);
+      MILProgram.report(
+          OptimizerStats.BRANCH, "eliminated a case with the same block in each branch in " + src);
       return new Done(bc);
     }
     return this;
@@ -166,6 +197,16 @@ public class Case extends Code {
     return len + 1;
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  int codeSize() {
+    return 1;
+  }
+
+  /** Return the atom that is tested at the start of this Code if it is a Case or an If. */
+  Atom scrutinee() {
+    return a;
+  }
+
   /**
    * Determine if, for the purposes of suffix inlining, it is possible to get back to the specified
    * source block via a sequence of tail calls. (i.e., without an If or Case guarding against an
@@ -239,12 +280,37 @@ public class Case extends Code {
     alts.calcSources(d, params, rebound);
   }
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  void constProp(ConstProp cp) {
+    Cfun cf = cp.cfunValue(a);
+    BlockCall bc = (cf == null) ? null : alts.blockCallFor(cf);
+    if (bc != null) {
+      bc.constProp(cp);
+    } else {
+      alts.constProp(cp);
+    }
+  }
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  Code constRewrite(ConstProp cp) {
+    Cfun cf = cp.cfunValue(a);
+    BlockCall bc = (cf == null) ? null : alts.blockCallFor(cf);
+    if (bc == null) {
+      return this;
+    }
+    MILProgram.report(
+        OptimizerStats.CONST_PROP,
+        "constant propagation fixed match on " + a + " to constructor " + cf);
+    return new Done(bc);
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return alts.summary();
+  int summary(Temps vars) {
+    return a.summary(vars) * 3 + alts.summary(vars);
   }
 
   /** Test to see if two Code sequences are alpha equivalent. */
@@ -276,7 +342,7 @@ public class Case extends Code {
     // If there are no alternatives, replace this Case with a Done:
     Tail t = alts.noCfunAltTail();
     if (t != null) { // no alternatives; use default
-      MILProgram.report("eliminating case with no alternatives");
+      MILProgram.report(OptimizerStats.BRANCH, "eliminating case with no alternatives");
       return new Done(t);
     }
 
@@ -294,7 +360,7 @@ public class Case extends Code {
     // possible newtype match:
     if (count == used.length) {
       if (count == 1) { // Look for a single constructor type:
-        MILProgram.report("eliminating case on single constructor type");
+        MILProgram.report(OptimizerStats.BRANCH, "eliminating case on single constructor type");
         return new Done(alts.firstBlockCall());
       }
       alts = alts.elimDefAlt(); // Eliminate the default case
@@ -69,9 +69,16 @@ public class Cfun extends Name {
   /** A constructor for defining Cfuns that have BuiltinPosition. */
   public Cfun(String id, DataName dn, int num, AllocType allocType) {
     this(BuiltinPosition.pos, id, dn, num, allocType);
+    this.builtin = true;
     // TODO: add this constructor to some builtin environment here?
   }
 
+  /**
+   * Set for builtin constructors, which are shared by all compilations, and so have a separate
+   * top-level definition in each compilation.
+   */
+  private boolean builtin = false;
+
   private static final AllocType funcType =
       new PolyAllocType(
           new Type[] {Type.milfunTuple(Type.gen(0), Type.gen(1))},
@@ -123,6 +130,9 @@ public class Cfun extends Name {
     Tycon.phys.setCfuns(new Cfun[0]);
   }
 
+  /** Lists the builtin constructors; each compilation makes its own top-level definitions. */
+  static final Cfun[] builtins = {Unit, Null, Ref, Func, Proc};
+
   /** Find the name of the associated bitdata type, if any. */
   public BitdataType bitdataType() {
     return dn.bitdataType();
@@ -140,11 +150,11 @@ public class Cfun extends Name {
   }
 
   public Top getTop() {
-    return new TopDef(topLevel, 0);
+    return new TopDef(getTopLevel(), 0);
   }
 
   public Scheme getDeclared() {
-    return topLevel.getDeclared(0);
+    return getTopLevel().getDeclared(0);
   }
 
   public Call withArgs(Atom[] args) {
@@ -176,12 +186,20 @@ public class Cfun extends Name {
 
   /** Return the top-level LC constructor function corresponding to this constructor. */
   public TopLevel getTopLevel() {
-    return topLevel;
+    return builtin ? Compilation.current().cfunTopLevel(this) : topLevel;
   }
 
   public void addTopLevel() {
-    topLevel = new TopLevel(pos, id, new DataAlloc(this).maker(pos, getArity()));
-    topLevel.setDeclared(0, allocType.toScheme());
+    if (!builtin) {
+      topLevel = makeTopLevel();
+    }
+  }
+
+  /** Make a top-level LC constructor function for this constructor. */
+  TopLevel makeTopLevel() {
+    TopLevel tl = new TopLevel(pos, id, new DataAlloc(this).maker(pos, getArity()));
+    tl.setDeclared(0, allocType.toScheme());
+    return tl;
   }
 
   AllocType instantiate() {
@@ -248,19 +266,25 @@ public class Cfun extends Name {
     return dn.isSingleton();
   }
 
-  private static int count = 0;
-
   Cfun makeSpecializeCfun(MILSpec spec, DataName newDn, Type inst) {
     AllocType at = allocType.instantiate();
     if (!at.resultMatches(inst)) {
       debug.Internal.error("failed to specialize allocType " + this + " :: " + at + " to " + inst);
     }
-    return new Cfun(pos, id + count++, newDn, num, at.canonAllocType(spec));
+    SpecCfun e = spec.startCfun(this);
+    String newId = (e != null) ? id : id + Compilation.current().fresh(Cfun.class);
+    Cfun cf = new Cfun(pos, newId, newDn, num, at.canonAllocType(spec));
+    if (e != null) {
+      e.cf = cf;
+    }
+    return cf;
   }
 
   Cfun specializeCfun(MILSpec spec, AllocType type, TVarSubst s) {
-    Type inst = type.resultType().apply(s).canonArgs(null, spec, 0);
-    return dn.specializeDataName(spec, inst).getCfuns()[num];
+    Type inst = type.resultType().apply(s);
+    synchronized (spec) { // The canonical type table in spec may be shared by several threads
+      return dn.specializeDataName(spec, inst.canonArgs(null, spec, 0)).getCfuns()[num];
+    }
   }
 
   /** Find the bitdata representation for this object, or null if there is none. */
@@ -100,6 +100,37 @@ public class CfunAlt extends Alts {
     return new CfunAlt(cf, bc.deriveWithCont(cont), next.deriveWithCont(cont));
   }
 
+  /**
+   * Modify these alternatives to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original alternatives.
+   */
+  Alts deriveWithUnboxedResult() {
+    return new CfunAlt(cf, bc.deriveWithUnboxedResult(), next.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values returned by these alternatives to the given analysis. */
+  void allocResults(AllocResults ar) {
+    bc.allocResults(ar);
+    next.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from these alternatives, which is the case if it is
+   * passed as an argument in any of their block calls.
+   */
+  boolean escapes(Temp v) {
+    return bc.escapes(v) || next.escapes(v);
+  }
+
+  /**
+   * Return a version of these alternatives in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Alts redirectLoopCalls(LoopHoist lh) {
+    return new CfunAlt(cf, bc.redirectLoopCalls(lh), next.redirectLoopCalls(lh));
+  }
+
   Alts copy() {
     return new CfunAlt(cf, bc, next.copy());
   }
@@ -159,12 +190,19 @@ public class CfunAlt extends Alts {
     next.calcSources(d, params, rebound);
   }
 
+  /** Propagate approximate values to the blocks that might be called from these alternatives. */
+  void constProp(ConstProp cp) {
+    bc.constProp(cp);
+    next.constProp(cp);
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return (3 + 7 * bc.summary()) + 13 * next.summary();
+  int summary(Temps vars) {
+    return (3 + 7 * bc.summary(vars)) + 13 * next.summary(vars);
   }
 
   /** Test to see if two Alts sequences are alpha equivalent. */
@@ -127,6 +127,7 @@ public class ClosAlloc extends Allocator {
       ClosAlloc ca = deriveWithKnownCons(d, calls);
       if (ca != null) {
         MILProgram.report(
+            OptimizerStats.SPECIALIZE,
             "deriving specialized closure definition " + ca.k + " for ClosAlloc using " + k);
         return new Done(ca);
       }
@@ -168,10 +169,11 @@ public class ClosAlloc extends Allocator {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(k.summary()) * 33 + 3;
+  int summary(Temps vars) {
+    return summary(k.summary(), vars) * 33 + 3;
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
@@ -21,6 +21,7 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 
 public class ClosureDefn extends Defn {
 
@@ -41,10 +42,15 @@ public class ClosureDefn extends Defn {
     this.tail = tail;
   }
 
-  private static int count = 0;
-
   public ClosureDefn(Position pos, Temp[] params, Temp[] args, Tail tail) {
-    this(pos, "k" + count++, params, args, tail);
+    this(pos, null, params, args, tail);
+    Compilation.current()
+        .freshName(
+            new NameEvent(null) {
+              void assignName() {
+                id = "k" + Compilation.current().fresh(ClosureDefn.class);
+              }
+            });
   }
 
   protected AllocType declared;
@@ -215,7 +221,7 @@ public class ClosureDefn extends Defn {
   /** Second pass code generation: produce code for block and closure definitions. */
   void generateFunctions(MachineBuilder builder) {
     builder.resetFrame();
-    builder.setAddr(this, builder.getNextAddr());
+    builder.setClosureEntry(this, args.length);
     builder.extend(args, 0);
     int o = args.length;
     builder.extend(params, o);
@@ -229,59 +235,66 @@ public class ClosureDefn extends Defn {
   private ClosureDefns derived = null;
 
   public ClosureDefn deriveWithKnownCons(Call[] calls) {
-    // Look to see if we have already derived a suitable version of this ClosureDefn:
-    for (ClosureDefns cs = derived; cs != null; cs = cs.next) {
-      if (cs.head.hasKnownCons(calls)) {
-        // Return pointer to previous occurrence, or decline the request to specialize
-        // if the original closure definition already has the requested allocator pattern.
-        return (this == cs.head) ? null : cs.head;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      // Look to see if we have already derived a suitable version of this ClosureDefn:
+      for (ClosureDefns cs = derived; cs != null; cs = cs.next) {
+        if (cs.head.hasKnownCons(calls)) {
+          // Return pointer to previous occurrence, or decline the request to specialize
+          // if the original closure definition already has the requested allocator pattern.
+          if (this == cs.head) {
+            return null;
+          }
+          comp.reuse(cs.head);
+          return cs.head;
+        }
       }
-    }
-
-    // Given this closure definition, this{params} [args] = t, we want to be able to replace a
-    // closure allocation
-    // for this and a set of known constructors specified by calls[] with corresponding allocations
-    // for a
-    // specialized closure constructor, k, that is defined by:
-    //    k{newparams} [newargs] = b[newparams++newargs]
-    //    b[newparams++newargs]  = ... initializers for calls ...
-    //                             newtail
-
-    // newargs provides fresh names for args to avoid naming conflicts:
-    Temp[] newargs = Temp.makeTemps(args.length);
-
-    // make the new closure definition; the params and tail will be filled in later:
-    ClosureDefn k =
-        new ClosureDefnWithKnownCons(/*pos*/ null, /*params*/ null, newargs, null, calls);
-    derived = new ClosureDefns(k, derived);
-
-    // We pick temporary variables for new parameters:
-    Temp[][] tss = Call.makeTempsFor(calls);
-
-    // Combine old parameters and new temporaries to calculate newparams:
-    if (tss == null) {
-      k.params = params; // TODO: safe to reuse params, or should we make a copy?
-      k.derived = new ClosureDefns(k, k.derived);
-    } else {
-      k.params = mergeParams(tss, params);
-    }
 
-    // Concatenate k.params and newargs to find parameters for b:
-    Temp[] bparams = Temp.append(k.params, newargs);
+      // Given this closure definition, this{params} [args] = t, we want to be able to replace a
+      // closure allocation for this and a set of known constructors specified by calls[] with
+      // corresponding allocations for a specialized closure constructor, k, that is defined by:
+      //    k{newparams} [newargs] = b[newparams++newargs]
+      //    b[newparams++newargs]  = ... initializers for calls ...
+      //                             newtail
+
+      // newargs provides fresh names for args to avoid naming conflicts:
+      ArrayList<NameEvent> saved = comp.startDerived();
+      Temp[] newargs = Temp.makeTemps(args.length);
+
+      // make the new closure definition; the params and tail will be filled in later:
+      ClosureDefn k =
+          new ClosureDefnWithKnownCons(/*pos*/ null, /*params*/ null, newargs, null, calls);
+      derived = new ClosureDefns(k, derived);
+
+      // We pick temporary variables for new parameters:
+      Temp[][] tss = Call.makeTempsFor(calls);
+
+      // Combine old parameters and new temporaries to calculate newparams:
+      if (tss == null) {
+        k.params = params; // TODO: safe to reuse params, or should we make a copy?
+        k.derived = new ClosureDefns(k, k.derived);
+      } else {
+        k.params = mergeParams(tss, params);
+      }
 
-    // Generate the code for the body of b using a suitably renamed version of tail:
-    Tail newtail = tail.apply(TempSubst.extend(args, newargs, null));
-    Code bcode = addInitializers(calls, params, tss, new Done(newtail));
+      // Concatenate k.params and newargs to find parameters for b:
+      Temp[] bparams = Temp.append(k.params, newargs);
 
-    // Make the definition for the new block b:
-    Block b = new Block(BuiltinPosition.pos, bparams, bcode); // TODO: diff position?
+      // Generate the code for the body of b using a suitably renamed version of tail:
+      Tail newtail = tail.apply(TempSubst.extend(args, newargs, null));
+      Code bcode = addInitializers(calls, params, tss, new Done(newtail));
 
-    // Fill in the tail for k:
-    k.tail = new BlockCall(b, bparams);
+      // Make the definition for the new block b:
+      Block b = new Block(BuiltinPosition.pos, bparams, bcode); // TODO: diff position?
 
-    return k;
+      // Fill in the tail for k:
+      k.tail = new BlockCall(b, bparams);
+      comp.endDerived(k, saved);
+      return k;
+    }
   }
 
+
   boolean hasKnownCons(Call[] calls) {
     return false;
   }
@@ -408,7 +421,8 @@ public class ClosureDefn extends Defn {
         if (usedArgs != null && usedArgs[i]) {
           newTemps[j++] = dsts[i];
         } else {
-          MILProgram.report("removing unused argument " + dsts[i] + " from " + this);
+          MILProgram.report(
+              OptimizerStats.UNUSED_ARGS, "removing unused argument " + dsts[i] + " from " + this);
         }
       }
       return newTemps;
@@ -418,14 +432,18 @@ public class ClosureDefn extends Defn {
 
   private ClosAllocs uses = null;
 
-  public void calledFrom(ClosAlloc ca) {
+  public synchronized void calledFrom(ClosAlloc ca) {
     uses = new ClosAllocs(ca, uses);
   }
 
-  /** Remove unused arguments from block calls and closure definitions. */
-  void removeUnusedArgs() {
+  /**
+   * Remove unused arguments from block calls and closure definitions, returning true if any
+   * arguments were removed.
+   */
+  boolean removeUnusedArgs() {
     if (!isEntrypoint && numUsedArgs < params.length) {
       MILProgram.report(
+          OptimizerStats.UNUSED_ARGS,
           "Rewrote closure definition "
               + this
               + " to eliminate "
@@ -438,7 +456,9 @@ public class ClosureDefn extends Defn {
       for (ClosAllocs cas = uses; cas != null; cas = cas.next) {
         cas.head.removeUnusedArgs(numUsedArgs, usedArgs);
       }
+      return true;
     }
+    return false;
   }
 
   /** Perform flow analysis on this definition. */
@@ -477,6 +497,15 @@ public class ClosureDefn extends Defn {
     tail.calcSources(this, params, Temp.extersect(params, args, null));
   }
 
+  /**
+   * Start constant propagation for this definition, propagating values from any calls that it
+   * contains, or recording that it can be called with unknown arguments if it is a root.
+   */
+  void constProp(ConstProp cp) {
+    cp.enter(Temp.noTemps, null);
+    tail.constProp(cp);
+  }
+
   void updateSources(int i, Defn d, int j) {
     sources[i].updateSources(this, i, d, j);
   }
@@ -524,7 +553,7 @@ public class ClosureDefn extends Defn {
    * equivalent program fragments have the same summary value.
    */
   int summary() {
-    return id.hashCode();
+    return (id == null) ? 0 : id.hashCode(); // id is null until the end of a parallel pass
   }
 
   /** Test to see if two ClosureDefn values are alpha equivalent. */
@@ -567,21 +596,26 @@ public class ClosureDefn extends Defn {
    * Look for a previously summarized version of this definition, returning true iff a duplicate was
    * found.
    */
-  boolean findIn(ClosureDefns[] table) {
-    summary = tail.summary();
-    int idx = this.summary % table.length;
-    if (idx < 0) {
-      idx += table.length;
+  boolean findIn(SummaryTable table) {
+    Temps vars = null;
+    for (int i = 0; i < params.length; i++) {
+      vars = params[i].add(vars);
+    }
+    for (int i = 0; i < args.length; i++) {
+      vars = args[i].add(vars);
     }
+    summary = tail.summary(vars) * 31 + params.length * 7 + args.length;
 
-    for (ClosureDefns ds = table[idx]; ds != null; ds = ds.next) {
-      if (ds.head.summary == this.summary && ds.head.alphaClosureDefn(this)) {
+    for (Defns ds = table.find(summary); ds != null; ds = ds.next) {
+      ClosureDefn k = (ClosureDefn) ds.head;
+      table.compared();
+      if (k.alphaClosureDefn(this)) {
         if (isEntrypoint) { // Cannot replace an entrypoint, even though a replacement is available
           return false;
-        } else if (ds.head.declared == null
-            || (this.declared != null && ds.head.declared.alphaEquiv(this.declared))) {
-          MILProgram.report("Replacing " + this + " with " + ds.head);
-          this.replaceWith = ds.head;
+        } else if (k.declared == null
+            || (this.declared != null && k.declared.alphaEquiv(this.declared))) {
+          MILProgram.report(OptimizerStats.DUPLICATES, "Replacing " + this + " with " + k);
+          this.replaceWith = k;
           return true;
         }
       }
@@ -589,7 +623,7 @@ public class ClosureDefn extends Defn {
 
     // First sighting of this definition, add to the table:
     this.replaceWith = null; // There is no replacement for this definition (yet)
-    table[idx] = new ClosureDefns(this, table[idx]);
+    table.add(summary, this);
     return false;
   }
 
@@ -598,7 +632,7 @@ public class ClosureDefn extends Defn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures) {
+  boolean summarizeDefns(SummaryTable blocks, SummaryTable topLevels, SummaryTable closures) {
     return findIn(closures);
   }
 
@@ -637,6 +671,11 @@ public class ClosureDefn extends Defn {
     this(k.pos, mkid(k.id, num), null, null, null);
   }
 
+  /** Set the name of this definition to match instance number num of the original definition. */
+  void setSpecName(ClosureDefn k, int num) {
+    id = mkid(k.id, num);
+  }
+
   /**
    * Fill in the body of this definition as a specialized version of the given closure definition.
    */
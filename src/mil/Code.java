@@ -100,6 +100,45 @@ public abstract class Code {
    */
   abstract Code deriveWithCont(Atom cont);
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  abstract Code deriveWithUnboxedResult();
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  abstract void allocResults(AllocResults ar);
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  abstract boolean escapes(Temp v);
+
+  /**
+   * Remove bindings at the start of this code that can be hoisted out of the enclosing loop,
+   * recording them in the given LoopHoist object. This should only be used on a copy of the code.
+   */
+  Code hoistInvariants(LoopHoist lh) {
+    return this;
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  abstract Code redirectLoopCalls(LoopHoist lh);
+
+  /**
+   * Rewrite non-tail calls in this code to blocks that always return newly allocated objects, using
+   * derived blocks that return the fields of those objects, provided that the results of the calls
+   * do not escape.
+   */
+  Code unboxResults() {
+    return this;
+  }
+
   /**
    * Determine whether it is possible to rewrite a code sequence of the form (ws <- bc; c)---where c
    * is this code sequence and ws and bc are passed as parameters---by deriving a new block with a
@@ -178,6 +217,9 @@ public abstract class Code {
 
   public static final int INLINE_ITER_LIMIT = 3;
 
+  /** Limit on the number of inlining steps at each node in a block that is hot in a profile. */
+  public static final int HOT_INLINE_ITER_LIMIT = 6;
+
   /**
    * Perform inlining on this Code sequence, looking for opportunities to: inline BlockCalls in both
    * Bind and Done nodes; and to skip goto blocks referenced from Case nodes. As a special case, we
@@ -188,7 +230,9 @@ public abstract class Code {
    * single block call, and we want to avoid oscillation back and forth between these two forms.
    */
   Code inlining(Block src) {
-    return inlining(src, INLINE_ITER_LIMIT);
+    long hotExecCount = Compilation.current().hotExecCount;
+    boolean hot = hotExecCount > 0 && src.getExecCount() >= hotExecCount;
+    return inlining(src, hot ? HOT_INLINE_ITER_LIMIT : INLINE_ITER_LIMIT);
   }
 
   /**
@@ -234,6 +278,14 @@ public abstract class Code {
     return null;
   }
 
+  /** Return the atom that is tested at the start of this Code if it is a Case or an If. */
+  Atom scrutinee() {
+    return null;
+  }
+
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  abstract int codeSize();
+
   BlockCall isGoto(int numParams) {
     return null;
   }
@@ -299,11 +351,18 @@ public abstract class Code {
    */
   abstract void calcSources(Defn d, Temp[] params, Temps rebound);
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  abstract void constProp(ConstProp cp);
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  abstract Code constRewrite(ConstProp cp);
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  abstract int summary();
+  abstract int summary(Temps vars);
 
   /** Test to see if two Code sequences are alpha equivalent. */
   abstract boolean alphaCode(Temps thisvars, Code that, Temps thatvars);
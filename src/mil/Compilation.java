@@ -0,0 +1,563 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the state that belongs to a single compilation: the counters that are used to generate
+ * fresh names, the builtin definitions, the options that control code generation and
+ * optimization, and the bookkeeping for the optimizer. A compilation is passed explicitly to an
+ * LCLoader and to each MILProgram, which enter it while they load, optimize, or generate code; the
+ * code that they run finds it with current(). Several compilations can therefore run at the same
+ * time in one JVM, each on its own thread and with its own options, and each producing the same
+ * output as if it had been run by itself.
+ */
+public class Compilation {
+
+  /** Records the compilation that each thread has entered, if any. */
+  private static final ThreadLocal<Compilation> entered = new ThreadLocal<Compilation>();
+
+  /**
+   * The compilation that is used by any thread that has not entered a compilation of its own, and
+   * in which the builtin definitions are created.
+   */
+  private static final Compilation initial = new Compilation(null);
+
+  /** The values of the counters in the initial compilation before the builtins were created. */
+  private static final HashMap<Class<?>, int[]> builtinCounters = initial.copyCounters();
+
+  static {
+    initial.initBuiltins();
+  }
+
+  /** Return the current compilation for this thread. */
+  public static Compilation current() {
+    Compilation comp = entered.get();
+    return (comp == null) ? initial : comp;
+  }
+
+  /**
+   * Make this the current compilation for this thread, returning the compilation that this thread
+   * had entered previously (or null if there was none), which should be passed to a matching call
+   * of leave().
+   */
+  public Compilation enter() {
+    Compilation prev = entered.get();
+    entered.set(this);
+    return prev;
+  }
+
+  /** Leave the current compilation, restoring the compilation that was returned by enter(). */
+  public static void leave(Compilation prev) {
+    if (prev == null) {
+      entered.remove();
+    } else {
+      entered.set(prev);
+    }
+  }
+
+  /** Default constructor. */
+  public Compilation() {
+    this(initial);
+  }
+
+  /**
+   * Construct a new compilation in which fresh names follow on from those that have already been
+   * used in the given compilation (or start from zero if that is null). This ensures that names
+   * do not clash with those of the builtin definitions, and that the names in each compilation do
+   * not depend on any other compilations that are running at the same time. The builtin
+   * definitions for a new compilation are created in the same way, and so with the same names, as
+   * those in the initial compilation.
+   */
+  private Compilation(Compilation prev) {
+    setWordSize(32); // Default word size is 32 bits.
+    if (prev != null) {
+      counters = copyCounters(builtinCounters);
+      initBuiltins();
+      synchronized (prev) {
+        counters = copyCounters(prev.counters);
+      }
+    }
+  }
+
+  /** Counters for generating fresh names, indexed by the class of the named objects. */
+  private HashMap<Class<?>, int[]> counters = new HashMap<Class<?>, int[]>();
+
+  /** Return a copy of the current values of the counters in this compilation. */
+  private synchronized HashMap<Class<?>, int[]> copyCounters() {
+    return copyCounters(counters);
+  }
+
+  private static HashMap<Class<?>, int[]> copyCounters(HashMap<Class<?>, int[]> counters) {
+    HashMap<Class<?>, int[]> copy = new HashMap<Class<?>, int[]>();
+    for (Class<?> c : counters.keySet()) {
+      copy.put(c, new int[] {counters.get(c)[0]});
+    }
+    return copy;
+  }
+
+  /** Return a new number for a fresh name for an object of the given class. */
+  public synchronized int fresh(Class<?> c) {
+    int[] counter = counters.get(c);
+    if (counter == null) {
+      counters.put(c, counter = new int[1]);
+    }
+    return counter[0]++;
+  }
+
+  /** Generates the numbers for depth-first searches, which are never reused by any compilation. */
+  private static final AtomicInteger dfsNums = new AtomicInteger();
+
+  /** The number of the current depth-first search in this compilation. */
+  private int dfsNum = 0;
+
+  /** Begin a new depth-first search. */
+  void newDFS() {
+    dfsNum = dfsNums.incrementAndGet();
+  }
+
+  /** Return the number of the current depth-first search. */
+  int dfsNum() {
+    return dfsNum;
+  }
+
+  /** The block for aborting the program in this compilation; see MILProgram.abort(). */
+  Block abort;
+
+  /** The blocks that return a constant flag in this compilation; see Block.returnTrue(). */
+  Block returnTrue;
+
+  Block returnFalse;
+
+  /** The single word masktest blocks for this compilation; see BitdataLayout.masktestBlock(). */
+  Block bmaskeq;
+
+  Block bmaskneq;
+
+  /** The top-level unit value for this compilation; see Top.unit(). */
+  Top unit;
+
+  /** Holds the top-level definitions for builtin constructors in this compilation. */
+  private HashMap<Cfun, TopLevel> cfunTopLevels = new HashMap<Cfun, TopLevel>();
+
+  /** Return the top-level definition for the given builtin constructor in this compilation. */
+  synchronized TopLevel cfunTopLevel(Cfun cf) {
+    return cfunTopLevels.get(cf);
+  }
+
+  /**
+   * Create the builtin definitions for this compilation. The optimizer updates the definitions
+   * that it works on, so each compilation must have its own copies.
+   */
+  private void initBuiltins() {
+    Compilation prev = enter();
+    try {
+      abort = MILProgram.abortBlock();
+      for (Cfun cf : Cfun.builtins) {
+        cfunTopLevels.put(cf, cf.makeTopLevel());
+      }
+      unit = Top.unitTop();
+      returnTrue = Block.atomBlock("returnTrue", Flag.True);
+      returnFalse = Block.atomBlock("returnFalse", Flag.False);
+      bmaskeq = BitdataLayout.masktestBlock("bmaskeq", Prim.eq);
+      bmaskneq = BitdataLayout.masktestBlock("bmaskneq", Prim.neq);
+    } finally {
+      leave(prev);
+    }
+  }
+
+  /** Holds the definitions that implement primitives in this compilation, indexed by key. */
+  private HashMap<Object, Defn> primImpls = new HashMap<Object, Defn>();
+
+  /** Return the definition that implements a primitive with the given key, or null if none. */
+  synchronized Defn getPrimImpl(Object key) {
+    return primImpls.get(key);
+  }
+
+  /** Record the definition that implements a primitive with the given key. */
+  synchronized void setPrimImpl(Object key, Defn impl) {
+    primImpls.put(key, impl);
+  }
+
+  /** Counts the optimizer steps that have been performed since this counter was last reset. */
+  int count = 0;
+
+  /** Counts every rewrite that has been reported by the optimizer; unlike count, never reset. */
+  int rewrites = 0;
+
+  /** Records metrics for each optimizer pass, or null if no statistics are required. */
+  private OptimizerStats stats = null;
+
+  /** Return the statistics for optimizer passes in this compilation, or null if not required. */
+  public OptimizerStats getStats() {
+    return stats;
+  }
+
+  /** Request statistics for optimizer passes in this compilation. */
+  public void setStats(OptimizerStats stats) {
+    this.stats = stats;
+  }
+
+  /** Counts the rewrites that have been reported on each thread. */
+  private final ThreadLocal<int[]> reported =
+      new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+          return new int[1];
+        }
+      };
+
+  /** Record a rewrite that has been performed by the optimizer. */
+  synchronized void report(String kind, String msg) {
+    debug.Log.println(msg);
+    count++;
+    rewrites++;
+    reported.get()[0]++;
+    if (stats != null) {
+      stats.rewrite(kind);
+    }
+  }
+
+  /**
+   * Return the number of rewrites that have been reported on the current thread. Unlike count, this
+   * is not changed by a parallel pass that is rewriting other sccs at the same time.
+   */
+  int reported() {
+    return reported.get()[0];
+  }
+
+  /**
+   * Holds the log of name events for the scc that the current thread is visiting in a parallel
+   * optimizer pass, or null if fresh names should be assigned immediately.
+   */
+  private final ThreadLocal<ArrayList<NameEvent>> nameLog = new ThreadLocal<ArrayList<NameEvent>>();
+
+  /** Set the log of name events for the current thread, returning the previous log. */
+  ArrayList<NameEvent> setNameLog(ArrayList<NameEvent> log) {
+    ArrayList<NameEvent> prev = nameLog.get();
+    nameLog.set(log);
+    return prev;
+  }
+
+  /**
+   * Assign a fresh name for a newly created object, or, if the current thread is visiting an scc
+   * in a parallel pass, record the event so that the name can be assigned when the log is replayed.
+   */
+  void freshName(NameEvent e) {
+    ArrayList<NameEvent> log = nameLog.get();
+    if (log == null) {
+      e.assignName();
+    } else {
+      log.add(e);
+    }
+  }
+
+  /**
+   * A lock that must be held while looking for, or constructing, a derived definition, or any
+   * other definition that can be shared by sccs that are rewritten at the same time.
+   */
+  final Object derivations = new Object();
+
+  /**
+   * Maps each definition that was derived in the current parallel pass to the name event for its
+   * construction. Only accessed while holding the derivations lock.
+   */
+  private HashMap<Defn, NameEvent> derivedNames = new HashMap<Defn, NameEvent>();
+
+  /**
+   * Start the construction of a derived definition, returning the log that should be passed to the
+   * corresponding call to endDerived(). Any events that are triggered before then are recorded as
+   * part of the event for the derived definition.
+   */
+  ArrayList<NameEvent> startDerived() {
+    ArrayList<NameEvent> saved = nameLog.get();
+    if (saved != null) {
+      NameEvent e = new NameEvent(new ArrayList<NameEvent>());
+      saved.add(e);
+      nameLog.set(e.getLog());
+    }
+    return saved;
+  }
+
+  /** Finish the construction of the derived definition d. */
+  void endDerived(Defn d, ArrayList<NameEvent> saved) {
+    if (saved != null) {
+      derivedNames.put(d, saved.get(saved.size() - 1));
+      nameLog.set(saved);
+    }
+  }
+
+  /** Record that the current thread has found an existing derived definition d. */
+  void reuse(Defn d) {
+    ArrayList<NameEvent> log = nameLog.get();
+    if (log != null) {
+      NameEvent e = derivedNames.get(d);
+      if (e != null) {
+        log.add(e);
+      }
+    }
+  }
+
+  /** Forget the derived definitions at the end of a parallel pass. */
+  void endDerivations() {
+    synchronized (derivations) {
+      derivedNames.clear();
+    }
+  }
+
+  /** Limits code growth from the inlining pass that is currently running, or null if unlimited. */
+  InlineBudget budget = null;
+
+  /**
+   * The minimum execution count for a block to be considered hot, or 0 if profile-guided inlining
+   * is not in use.
+   */
+  long hotExecCount = 0;
+
+  /** Specifies the number of bits in every value of type Word. (Should be either 32 or 64.) */
+  private int wordSize;
+
+  /** The current Word size, expressed as a BigInteger. */
+  private BigInteger wordSizeBig;
+
+  /** The current Word size, expressed as a type of kind nat. */
+  private Type wordSizeType;
+
+  /** The maximum signed value that can be represented in a Word. */
+  private BigInteger maxSigned;
+
+  /** The maximum unsigned value that can be represented in a Word. */
+  private BigInteger maxUnsigned;
+
+  /** A bit pattern for all Word values. */
+  private obdd.Pat allPat;
+
+  /** A bit pattern for all nonzero Word values. */
+  private obdd.Pat nonzeroPat;
+
+  /** Set the word size for this compilation, and dependent variables. */
+  public void setWordSize(int size) {
+    wordSize = size;
+    wordSizeBig = BigInteger.valueOf(size);
+    wordSizeType = new TNat(wordSizeBig);
+    maxSigned = BigInteger.ONE.shiftLeft(size - 1).subtract(BigInteger.ONE);
+    maxUnsigned = BigInteger.ONE.shiftLeft(size).subtract(BigInteger.ONE);
+    allPat = obdd.Pat.all(size);
+    nonzeroPat = obdd.Pat.nonzero(size);
+  }
+
+  /** Return the word size for this compilation. */
+  public int getWordSize() {
+    return wordSize;
+  }
+
+  BigInteger getWordSizeBig() {
+    return wordSizeBig;
+  }
+
+  Type getWordSizeType() {
+    return wordSizeType;
+  }
+
+  BigInteger getMaxSigned() {
+    return maxSigned;
+  }
+
+  BigInteger getMaxUnsigned() {
+    return maxUnsigned;
+  }
+
+  obdd.Pat getAllPat() {
+    return allPat;
+  }
+
+  obdd.Pat getNonzeroPat() {
+    return nonzeroPat;
+  }
+
+  /**
+   * Holds the LLVM target triple string that will be included in generated programs (or null, in
+   * which case, no target triple declaration will be included).
+   */
+  private String targetTriple = null;
+
+  /** Set the LLVM target triple for this compilation. */
+  public void setTargetTriple(String targetTriple) {
+    this.targetTriple = targetTriple;
+  }
+
+  /** Return the LLVM target triple for this compilation, or null if none has been specified. */
+  public String getTargetTriple() {
+    return targetTriple;
+  }
+
+  /**
+   * The name of the LLVM function that initializes the program and runs its main definition, or
+   * the empty string if no such function is required.
+   */
+  private String mainFunctionName = "";
+
+  /** Set the name of the LLVM main function for this compilation. */
+  public void setMainFunctionName(String mainFunctionName) {
+    this.mainFunctionName = mainFunctionName;
+  }
+
+  /** Return the name of the LLVM main function for this compilation, or "" if there is none. */
+  public String getMainFunctionName() {
+    return mainFunctionName;
+  }
+
+  /**
+   * The number of threads to use for optimizer passes and specialization; a value of 1 runs them
+   * sequentially.
+   */
+  private int optThreads = 1;
+
+  /** Set the number of threads to use for optimizer passes and specialization. */
+  public void setOptThreads(int optThreads) {
+    this.optThreads = optThreads;
+  }
+
+  /** Return the number of threads to use for optimizer passes and specialization. */
+  public int getOptThreads() {
+    return optThreads;
+  }
+
+  /** The pool of worker threads for this compilation, or null if it has not been created yet. */
+  private ForkJoinPool pool = null;
+
+  /**
+   * Return the number of worker threads to use for optimizer passes and specialization. This is
+   * never more than the number of processors, because extra workers would only add the cost of
+   * switching between them; a result of 1 means that the work should be done sequentially.
+   */
+  int getWorkers() {
+    return Math.min(optThreads, Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Return the pool of worker threads for this compilation, creating it if necessary. */
+  synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(getWorkers());
+    }
+    return pool;
+  }
+
+  /** Shut down the pool of worker threads for this compilation, if one was created. */
+  public synchronized void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * The percentage by which the inliner may grow the code of the program in each call to
+   * optimize(), or 0 to allow unlimited growth.
+   */
+  private int inlineGrowth = 400;
+
+  /** Set the percentage by which the inliner may grow the program, or 0 for no limit. */
+  public void setInlineGrowth(int inlineGrowth) {
+    this.inlineGrowth = inlineGrowth;
+  }
+
+  /** Return the percentage by which the inliner may grow the program, or 0 for no limit. */
+  public int getInlineGrowth() {
+    return inlineGrowth;
+  }
+
+  /**
+   * Set to true to run the optimizer in worklist mode. In this mode, each round only revisits the
+   * sccs that contain a definition that was changed in the previous round, or that calls a changed
+   * definition. Definitions that are not affected by earlier rewrites are left untouched.
+   */
+  private boolean worklist = false;
+
+  /** Request worklist mode for the optimizer in this compilation. */
+  public void setWorklist(boolean worklist) {
+    this.worklist = worklist;
+  }
+
+  /** Determine whether the optimizer runs in worklist mode in this compilation. */
+  public boolean getWorklist() {
+    return worklist;
+  }
+
+  /**
+   * Set to true to check the invariant that MILProgram.reshake() relies on, by running each shake()
+   * that it would skip anyway, and comparing the results with the call graph that it kept.
+   */
+  private boolean checkReshake = false;
+
+  /** Request checks for skipped shakes in this compilation. */
+  public void setCheckReshake(boolean checkReshake) {
+    this.checkReshake = checkReshake;
+  }
+
+  /** Determine whether skipped shakes are checked in this compilation. */
+  public boolean getCheckReshake() {
+    return checkReshake;
+  }
+
+  /** Set to false to disable the interprocedural constant propagation pass. */
+  private boolean constantPropagation = true;
+
+  /** Enable or disable interprocedural constant propagation in this compilation. */
+  public void setConstantPropagation(boolean constantPropagation) {
+    this.constantPropagation = constantPropagation;
+  }
+
+  /** Determine whether interprocedural constant propagation is enabled in this compilation. */
+  public boolean getConstantPropagation() {
+    return constantPropagation;
+  }
+
+  /** Flag to indicate whether bitdata representations (e.g., for Maybe (Ix 15)) are in use. */
+  private boolean bitdataRepresentations = false;
+
+  /** Set the bitdataRepresentations flag; intended to be called in the driver as appropriate. */
+  public void setBitdataRepresentations() {
+    bitdataRepresentations = true;
+  }
+
+  /** Determine whether bitdata representations are in use in this compilation. */
+  public boolean getBitdataRepresentations() {
+    return bitdataRepresentations;
+  }
+
+  /** Set to false to disable the fusion of instruction sequences into superinstructions. */
+  private boolean fuseInstructions = true;
+
+  /** Enable or disable superinstructions in the machines built in this compilation. */
+  public void setFuseInstructions(boolean fuseInstructions) {
+    this.fuseInstructions = fuseInstructions;
+  }
+
+  /** Determine whether superinstructions are used in the machines built in this compilation. */
+  public boolean getFuseInstructions() {
+    return fuseInstructions;
+  }
+}
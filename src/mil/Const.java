@@ -71,7 +71,7 @@ public abstract class Const extends Atom {
 
   public static Atom[] atoms(BigInteger v, int w, boolean wantMask) {
     if (w == 0) {
-      return new Atom[] {Top.Unit};
+      return new Atom[] {Top.unit()};
     } else if (w == 1) {
       return new Flag[] {Flag.fromBool(v.compareTo(BigInteger.ZERO) != 0)};
     } else {
@@ -0,0 +1,227 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Implements an interprocedural, sparse conditional constant propagation over the blocks of a MIL
+ * program. For each block parameter, we calculate a value in a simple lattice: a missing entry
+ * indicates that no call to the block has been found yet; a known static atom (such as a constant
+ * word, a flag, or a top-level value); a known constructor (with unknown fields); or an unknown
+ * value. Branches of If and Case constructs are only followed when they might be taken, so the
+ * results can be used to rewrite tests whose outcomes are fixed, and to substitute constants for
+ * parameters that always receive the same static value.
+ */
+class ConstProp {
+
+  /** Represents an approximation to the value of a variable. */
+  static class Approx {
+
+    /** A static atom that holds the value, or null if the value is not a known atom. */
+    private Atom a;
+
+    /** The constructor that was used to build the value, or null if the constructor is unknown. */
+    private Cfun cf;
+
+    /** Default constructor. */
+    Approx(Atom a, Cfun cf) {
+      this.a = a;
+      this.cf = cf;
+    }
+
+    /** Represents an unknown value. */
+    static final Approx unknown = new Approx(null, null);
+
+    /** Return an approximation for the given atom, which is assumed to be static. */
+    static Approx atom(Atom a) {
+      DataAlloc data = a.lookForDataAlloc(null);
+      return new Approx(a, (data == null) ? null : data.getCfun());
+    }
+
+    /** Return an approximation for a value that is constructed using the given constructor. */
+    static Approx cfun(Cfun cf) {
+      return new Approx(null, cf);
+    }
+
+    /**
+     * Calculate the least upper bound of two approximations. A null argument represents the bottom
+     * of the lattice.
+     */
+    static Approx join(Approx x, Approx y) {
+      if (x == null || x == y) {
+        return y;
+      } else if (y == null) {
+        return x;
+      } else if (x.a != null && y.a != null && x.a.sameAtom(y.a)) {
+        return x;
+      } else if (x.cf != null && x.cf == y.cf) {
+        return (x.a == null) ? x : (y.a == null) ? y : cfun(x.cf);
+      }
+      return unknown;
+    }
+
+    /** Test to see if two approximations are the same. */
+    static boolean same(Approx x, Approx y) {
+      if (x == null || y == null) {
+        return x == y;
+      } else if (x.a != null || y.a != null) {
+        return x.a != null && y.a != null && x.a.sameAtom(y.a);
+      }
+      return x.cf == y.cf;
+    }
+
+    public String toString() {
+      return (a != null) ? a.toString() : (cf != null) ? (cf + "(...)") : "?";
+    }
+  }
+
+  /** Records the approximations for the parameters of each block that has been reached. */
+  private HashMap<Block, Approx[]> known = new HashMap<Block, Approx[]>();
+
+  /** Holds the list of blocks whose parameter approximations have changed. */
+  private ArrayList<Block> worklist = new ArrayList<Block>();
+
+  /** Records the set of blocks that are currently on the worklist. */
+  private HashSet<Block> queued = new HashSet<Block>();
+
+  /** Holds the approximations for variables that are in scope in the current definition. */
+  private HashMap<Temp, Approx> env = new HashMap<Temp, Approx>();
+
+  /** The main definition for the program, if specified. */
+  private Defn main;
+
+  /** Default constructor. */
+  ConstProp(Defn main) {
+    this.main = main;
+  }
+
+  /** Test to see if the given definition can be called from outside the program. */
+  boolean isRoot(Defn d) {
+    return d.isEntrypoint() || d == main;
+  }
+
+  /** Run the analysis on the definitions in the given list of sccs. */
+  void analyze(DefnSCCs sccs) {
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
+        ds.head.constProp(this);
+      }
+    }
+    while (!worklist.isEmpty()) {
+      Block b = worklist.remove(worklist.size() - 1);
+      queued.remove(b);
+      b.constProp(this, known.get(b));
+    }
+  }
+
+  /** Record a call to a block with unknown arguments. */
+  void root(Block b, int arity) {
+    Approx[] vals = new Approx[arity];
+    for (int i = 0; i < arity; i++) {
+      vals[i] = Approx.unknown;
+    }
+    update(b, vals);
+  }
+
+  /** Record a call to block b with the given arguments in the current environment. */
+  void call(Block b, Atom[] args) {
+    Approx[] vals = new Approx[args.length];
+    for (int i = 0; i < args.length; i++) {
+      vals[i] = valueOf(args[i]);
+    }
+    update(b, vals);
+  }
+
+  /** Join new approximations for the parameters of b into the table, queueing b on a change. */
+  private void update(Block b, Approx[] vals) {
+    Approx[] olds = known.get(b);
+    boolean changed = false;
+    if (olds == null) {
+      known.put(b, vals);
+      changed = true;
+    } else {
+      for (int i = 0; i < vals.length; i++) {
+        Approx v = Approx.join(olds[i], vals[i]);
+        if (!Approx.same(v, olds[i])) {
+          olds[i] = v;
+          changed = true;
+        }
+      }
+    }
+    if (changed && queued.add(b)) {
+      worklist.add(b);
+    }
+  }
+
+  /** Return the approximations for the parameters of b, or null if b is never called. */
+  Approx[] lookup(Block b) {
+    return known.get(b);
+  }
+
+  /** Reset the environment at the start of a new definition. */
+  void enter(Temp[] params, Approx[] vals) {
+    env.clear();
+    if (vals != null) {
+      for (int i = 0; i < params.length; i++) {
+        env.put(params[i], vals[i]);
+      }
+    }
+  }
+
+  /** Record the approximations for variables that are bound to the result of a tail. */
+  void bind(Temp[] vs, Tail t) {
+    if (vs.length == 1) {
+      env.put(vs[0], t.constValue(this));
+    } else {
+      for (int i = 0; i < vs.length; i++) {
+        env.put(vs[i], Approx.unknown);
+      }
+    }
+  }
+
+  /** Return an approximation for the value of an atom in the current environment. */
+  Approx valueOf(Atom a) {
+    if (a.isStatic()) {
+      return Approx.atom(a);
+    }
+    Approx v = env.get(a);
+    return (v == null) ? Approx.unknown : v;
+  }
+
+  /** Return the static atom that a holds, or null if its value is not a known atom. */
+  Atom atomValue(Atom a) {
+    return valueOf(a).a;
+  }
+
+  /** Return the flag that a holds, or null if its value is not a known flag. */
+  Flag flagValue(Atom a) {
+    Atom v = valueOf(a).a;
+    return (v == null) ? null : v.isFlag();
+  }
+
+  /** Return the constructor used to build the value of a, or null if it is not known. */
+  Cfun cfunValue(Atom a) {
+    return valueOf(a).cf;
+  }
+}
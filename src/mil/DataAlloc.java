@@ -90,6 +90,11 @@ public class DataAlloc extends Allocator {
     return that.cf == this.cf && that.cfunNoArgs() == this.cfunNoArgs();
   }
 
+  /** Return the constructor function for this allocator. */
+  Cfun getCfun() {
+    return cf;
+  }
+
   /**
    * Return the associated constructor function if this is a data allocator without any arguments.
    */
@@ -109,10 +114,15 @@ public class DataAlloc extends Allocator {
    * to find a matching constructor, falling back on the default branch if no other option is
    * available.
    */
+  /** Return an approximation for the value that is produced by this tail. */
+  ConstProp.Approx constValue(ConstProp cp) {
+    return ConstProp.Approx.cfun(cf);
+  }
+
   BlockCall shortCase(TempSubst s, Alts alts) {
     BlockCall bc = alts.blockCallFor(cf);
     if (bc != null) {
-      MILProgram.report("shorting out match on constructor " + cf);
+      MILProgram.report(OptimizerStats.KNOWN_CONS, "shorting out match on constructor " + cf);
       return bc.applyBlockCall(s);
     }
     return null;
@@ -136,10 +146,11 @@ public class DataAlloc extends Allocator {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(cf.summary()) * 33 + 2;
+  int summary(Temps vars) {
+    return summary(cf.summary(), vars) * 33 + 2;
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
@@ -167,7 +167,101 @@ public class DataType extends DataName {
         : null;
   }
 
-  private static int count = 0;
+  /**
+   * Holds a flag for each parameter of this datatype that is a phantom, meaning that it does not
+   * affect the representation of any constructor field, or null if this has not been calculated.
+   */
+  private boolean[] phantoms = null;
+
+  /** Records whether any of the parameters of this datatype are phantoms. */
+  private boolean hasPhantoms = false;
+
+  /** Set while the phantoms of this datatype are being calculated. */
+  private boolean findingPhantoms = false;
+
+  /** The datatype whose phantoms are being calculated by the innermost call to findPhantoms. */
+  private static DataType finding = null;
+
+  /** Candidate phantoms for finding, assuming that recursive uses also have those phantoms. */
+  private static boolean[] candidates = null;
+
+  boolean[] phantomArgs(int n) {
+    if (n != arity || arity == 0 || cfuns == null) {
+      return null;
+    }
+    synchronized (DataType.class) { // Datatypes may be shared by concurrent compilations
+      if (phantoms == null) {
+        if (findingPhantoms) { // Recursive uses of finding can assume the current candidates,
+          return (this == finding) ? candidates : null; // but other types must be conservative
+        }
+        findPhantoms();
+      }
+      return hasPhantoms ? phantoms : null;
+    }
+  }
+
+  /**
+   * Calculate the phantom parameters of this datatype. We start by assuming that every parameter
+   * is a phantom, and then remove any parameter that is live in a constructor field, repeating
+   * until the candidates are stable because recursive uses of this type may also have changed.
+   */
+  private void findPhantoms() {
+    DataType savedFinding = finding;
+    boolean[] savedCandidates = candidates;
+    findingPhantoms = true;
+    finding = this;
+    candidates = new boolean[arity];
+    for (int i = 0; i < arity; i++) {
+      candidates[i] = true;
+    }
+    boolean changed;
+    do {
+      boolean[] live = new boolean[arity];
+      for (int i = 0; i < cfuns.length; i++) {
+        AllocType at = cfuns[i].getAllocType();
+        for (int j = 0; j < at.getArity(); j++) {
+          at.storedType(j).markLiveGens(live);
+        }
+      }
+      changed = false;
+      for (int i = 0; i < arity; i++) {
+        if (live[i] && candidates[i]) {
+          candidates[i] = false;
+          changed = true;
+        }
+      }
+    } while (changed);
+    for (int i = 0; i < arity; i++) {
+      if (candidates[i]) {
+        debug.Log.println("parameter " + i + " of " + id + " is a phantom");
+        hasPhantoms = true;
+      }
+    }
+    phantoms = candidates;
+    findingPhantoms = false;
+    finding = savedFinding;
+    candidates = savedCandidates;
+  }
+
+  /**
+   * Determine whether two instances of this datatype, each applied to a full set of canonical
+   * arguments, will have the same specialized version. Arguments for phantom parameters are not
+   * compared because they do not change the types of any of the constructor fields.
+   */
+  private boolean sameInst(Type left, Type right) {
+    boolean[] phantoms = phantomArgs(arity);
+    if (phantoms == null) {
+      return left.instMatches(right);
+    }
+    for (int i = arity - 1; i >= 0; i--) {
+      if (!phantoms[i] && left.getArg() != right.getArg()) {
+        return false;
+      }
+      left = left.getFun();
+      right = right.getFun();
+    }
+    return true;
+  }
 
   Tycon specializeDataName(MILSpec spec, Type inst) {
     if (spec.containsTycon(this)) { // Already specialized type
@@ -175,7 +269,8 @@ public class DataType extends DataName {
     }
     TypeSpecs typespecs = spec.getTypeSpecs(this); // Search previous specializations
     for (TypeSpecs ts = typespecs; ts != null; ts = ts.next) {
-      if (ts.inst.instMatches(inst)) {
+      if (sameInst(ts.inst, inst)) {
+        spec.useDataType(ts.dt);
         return ts.dt; // return previously specialized version of this type
       }
     }
@@ -184,15 +279,18 @@ public class DataType extends DataName {
       spec.addTycon(this);
       return this;
     }
-    DataType newDt = new DataType(pos, id + count++, KAtom.STAR, 0);
+    String newId = spec.deferNames() ? id : id + Compilation.current().fresh(DataType.class);
+    DataType newDt = new DataType(pos, newId, KAtom.STAR, 0);
     newDt.isRecursive = this.isRecursive;
     spec.addTycon(newDt);
     spec.putTypeSpecs(this, new TypeSpecs(inst, newDt, typespecs));
     debug.Log.println(newDt + " is a specialized DataType for " + inst);
+    SpecDataType e = spec.startDataType(this, newDt, inst);
     newDt.cfuns = new Cfun[this.cfuns.length];
     for (int i = 0; i < cfuns.length; i++) {
       newDt.cfuns[i] = cfuns[i].makeSpecializeCfun(spec, newDt, inst);
     }
+    spec.endDataType(e);
     return newDt;
   }
 
@@ -44,4 +44,9 @@ class DataValue extends Value {
   Value getComponent(int i) throws Failure {
     return fields[i];
   }
+
+  /** Return the number of fields in this data value. */
+  int getNumFields() {
+    return fields.length;
+  }
 }
@@ -122,12 +122,10 @@ public abstract class Defn {
     }
   }
 
-  private static int dfsNum = 0;
-
   private int visitNum = 0;
 
   public static void newDFS() { // Begin a new depth-first search
-    dfsNum++;
+    Compilation.current().newDFS();
   }
 
   protected int occurs;
@@ -136,11 +134,60 @@ public abstract class Defn {
     return occurs;
   }
 
+  /**
+   * Records the number of times that this definition was entered in an execution profile, or (-1)
+   * if no profile information is available.
+   */
+  protected long execCount = (-1);
+
+  public long getExecCount() {
+    return execCount;
+  }
+
+  public void setExecCount(long execCount) {
+    this.execCount = execCount;
+  }
+
+  /** Return a measure of the size of the code for this definition. */
+  int codeSize() {
+    return 1;
+  }
+
+  /**
+   * Records the optimizer round in which this definition, or one of its callees, was last changed.
+   * New definitions start with the maximum value, which marks them as changed in whichever round
+   * first inspects them.
+   */
+  private int lastChanged = Integer.MAX_VALUE;
+
+  /**
+   * Determine whether this definition should be revisited by a worklist optimizer in the given
+   * round, which is the case if it, or one of its callees, changed in this round or the previous
+   * one.
+   */
+  boolean isActive(int round) {
+    if (lastChanged == Integer.MAX_VALUE) {
+      lastChanged = round;
+    }
+    return lastChanged >= round - 1;
+  }
+
+  /** Record that this definition has changed in the given round, requeueing its callers. */
+  void markChanged(int round) {
+    lastChanged = round;
+    for (Defns ds = callers; ds != null; ds = ds.next) {
+      if (ds.head.lastChanged < round) {
+        ds.head.lastChanged = round;
+      }
+    }
+  }
+
   /**
    * Visit this Defn as part of a depth first search, and build a list of Defn nodes that can be
    * used to compute strongly-connected components.
    */
   Defns visitDepends(Defns defns) {
+    int dfsNum = Compilation.current().dfsNum();
     if (visitNum == dfsNum) { // Repeat visit to this Defn?
       occurs++;
     } else { // First time at this Defn
@@ -354,9 +401,12 @@ public abstract class Defn {
     return vs;
   }
 
-  /** Remove unused arguments from block calls and closure definitions. */
-  void removeUnusedArgs() {
-    /* Nothing to do here */
+  /**
+   * Remove unused arguments from block calls and closure definitions, returning true if any
+   * arguments were removed.
+   */
+  boolean removeUnusedArgs() {
+    return false; /* Nothing to do here */
   }
 
   /** Perform flow analysis on this definition. */
@@ -420,6 +470,32 @@ public abstract class Defn {
    */
   abstract void calcSources();
 
+  /**
+   * Start constant propagation for this definition, propagating values from any calls that it
+   * contains, or recording that it can be called with unknown arguments if it is a root.
+   */
+  void constProp(ConstProp cp) {
+    /* nothing to do */
+  }
+
+  /** Rewrite this definition using the results of constant propagation. */
+  void constRewrite(ConstProp cp) {
+    /* nothing to do */
+  }
+
+  /**
+   * Rewrite calls to blocks whose results are newly allocated objects that do not escape, using
+   * derived blocks that return the fields of those objects.
+   */
+  void unboxResults() {
+    /* nothing to do */
+  }
+
+  /** Add this definition to the loop that is described by lh. */
+  void addToLoop(LoopHoist lh) {
+    lh.notLoop();
+  }
+
   void updateSources(int i, Defn d, int j) {
     debug.Internal.error("updateSources should not be called for " + this);
   }
@@ -454,7 +530,8 @@ public abstract class Defn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  abstract boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures);
+  abstract boolean summarizeDefns(
+      SummaryTable blocks, SummaryTable topLevels, SummaryTable closures);
 
   abstract void eliminateDuplicates();
 
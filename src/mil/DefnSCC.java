@@ -84,6 +84,25 @@ public class DefnSCC {
     return false;
   }
 
+  /**
+   * Determine whether any of the definitions in this scc should be revisited by a worklist optimizer
+   * in the given round.
+   */
+  boolean isActive(int round) {
+    boolean active = false;
+    for (Defns ds = bindings; ds != null; ds = ds.next) {
+      active |= ds.head.isActive(round);
+    }
+    return active;
+  }
+
+  /** Record that the definitions in this scc have changed in the given round. */
+  void markChanged(int round) {
+    for (Defns ds = bindings; ds != null; ds = ds.next) {
+      ds.head.markChanged(round);
+    }
+  }
+
   /** Display a printable representation of this object on the specified PrintWriter. */
   public void dump(PrintWriter out) {
     out.println("-----------------------------------------");
@@ -183,6 +202,28 @@ public class DefnSCC {
     } while (changed);
   }
 
+  /**
+   * Calculate unused argument information for the definitions in this scc, iterating until either
+   * there are no unused arguments, or else until we reach a fixed point (i.e., we get the same
+   * number of unused args on two successive passes). Returns the number of unused arguments.
+   */
+  int countUnusedArgs() {
+    // Initialize used argument information for each definition
+    for (Defns ds = bindings; ds != null; ds = ds.next) {
+      ds.head.clearUsedArgsInfo();
+    }
+    int lastUnused = 0;
+    int unused = 0;
+    do {
+      lastUnused = unused;
+      unused = 0;
+      for (Defns ds = bindings; ds != null; ds = ds.next) {
+        unused += ds.head.countUnusedArgs();
+      }
+    } while (unused > 0 && unused != lastUnused);
+    return unused;
+  }
+
   void detectLoops() {
     for (Defns ds = getBindings(); ds != null; ds = ds.next) {
       ds.head.detectLoops(null);
@@ -209,6 +250,13 @@ public class DefnSCC {
     propagateSources();
   }
 
+  /** Hoist loop invariant calls out of the blocks in this scc, if it forms a loop. */
+  void hoistInvariants() {
+    if (isRecursive()) {
+      new LoopHoist(this).run();
+    }
+  }
+
   void initSources() {
     for (Defns ds = bindings; ds != null; ds = ds.next) {
       ds.head.initSources();
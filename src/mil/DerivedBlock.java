@@ -57,8 +57,11 @@ abstract class DerivedBlock extends Block {
     return dsts;
   }
 
-  /** Remove unused arguments from block calls and closure definitions. */
-  void removeUnusedArgs() {
-    /* Nothing to do here */
+  /**
+   * Remove unused arguments from block calls and closure definitions, returning true if any
+   * arguments were removed.
+   */
+  boolean removeUnusedArgs() {
+    return false; /* Nothing to do here */
   }
 }
@@ -103,6 +103,36 @@ public class Done extends Code {
     return new Bind(v, t, new Done(new Enter(cont, v)));
   }
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  Code deriveWithUnboxedResult() {
+    return new Done(t.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  void allocResults(AllocResults ar) {
+    t.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return t.escapes(v);
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Code redirectLoopCalls(LoopHoist lh) {
+    return new Done(t.redirectLoopCalls(lh));
+  }
+
   Code copy() {
     return new Done(t);
   }
@@ -176,6 +206,11 @@ public class Done extends Code {
     return len + 1;
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  int codeSize() {
+    return 1;
+  }
+
   /**
    * Determine if, for the purposes of suffix inlining, it is possible to get back to the specified
    * source block via a sequence of tail calls. (i.e., without an If or Case guarding against an
@@ -262,12 +297,23 @@ public class Done extends Code {
     t.calcSources(d, params, rebound);
   }
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  void constProp(ConstProp cp) {
+    t.constProp(cp);
+  }
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  Code constRewrite(ConstProp cp) {
+    return this;
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return t.summary() * 17 + 3;
+  int summary(Temps vars) {
+    return t.summary(vars) * 17 + 3;
   }
 
   /** Test to see if two Code sequences are alpha equivalent. */
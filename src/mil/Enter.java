@@ -45,6 +45,14 @@ public class Enter extends Call {
     return f == w || super.contains(w);
   }
 
+  /**
+   * Test to see if the value of v might escape from this tail. Uses of v in a selector, or as the
+   * function in an Enter, do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return super.contains(v);
+  }
+
   /**
    * Test if this Tail expression includes an occurrence of any of the variables listed in the given
    * array.
@@ -200,7 +208,8 @@ public class Enter extends Call {
     if (clos != null) {
       // TODO: Is this rewrite always a good idea? Are there cases where it
       // ends up creating more work than it saves?
-      MILProgram.report("rewriting " + f + " @ [" + Atom.toString(args) + "]");
+      MILProgram.report(
+          OptimizerStats.KNOWN_CLOS, "rewriting " + f + " @ [" + Atom.toString(args) + "]");
       return clos.enterWith(args); // If so, apply it in place
     }
     return f.entersTopLevel(args);
@@ -208,10 +217,11 @@ public class Enter extends Call {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(3);
+  int summary(Temps vars) {
+    return summary(3, vars);
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
@@ -38,10 +38,8 @@ public class External extends TopDefn {
     this.imp = imp;
   }
 
-  private static int count = 0;
-
   public External(Position pos, Scheme declared, ExtImp imp) {
-    this(pos, "e" + count++, declared, imp);
+    this(pos, "e" + Compilation.current().fresh(External.class), declared, imp);
   }
 
   public External(Position pos, String id, Scheme declared) {
@@ -166,7 +164,7 @@ public class External extends TopDefn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures) {
+  boolean summarizeDefns(SummaryTable blocks, SummaryTable topLevels, SummaryTable closures) {
     return false;
   }
 
@@ -200,6 +198,11 @@ public class External extends TopDefn {
     this(e.pos, mkid(e.id, num), e.declared, e.imp);
   }
 
+  /** Set the name of this definition to match instance number num of the original definition. */
+  void setSpecName(External e, int num) {
+    id = mkid(e.id, num);
+  }
+
   /** Handle specialization of Externals. */
   void specialize(MILSpec spec, External eorig) {
     debug.Log.println(
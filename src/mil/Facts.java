@@ -22,47 +22,298 @@ import compiler.*;
 import core.*;
 
 /**
- * Lists of Facts are used to represent sets of "facts", each of which is a pair (v = t) indicating
+ * Sets of Facts are used to represent sets of "facts", each of which is a pair (v = t) indicating
  * that the variable v has most recently been bound by the specified tail t (which should be either
- * an allocator or a pure primitive call). We can use lists of facts like this to perform dataflow
+ * an allocator or a pure primitive call). We can use sets of facts like this to perform dataflow
  * analysis and optimizations on Code sequences.
+ *
+ * <p>A set of facts is a persistent value: adding or killing facts produces a new set without
+ * changing the original, so the same set can be shared between the branches of a Case, and a null
+ * reference represents the empty set. Facts are indexed by variable, by tail, and by each of the
+ * variables mentioned in their tail, using hash array mapped tries, so that lookups and kills do
+ * not have to scan every fact in a long block.
  */
 public class Facts {
 
-  private Temp v;
+  /** Maps each variable v to the facts (v = t), most recent first. */
+  private Node byVar;
 
-  private Tail t;
+  /** Maps the hash of each tail t to the facts (v = t), most recent first. */
+  private Node byTail;
 
-  private Facts next;
+  /**
+   * Maps each variable w to the facts (v = t) where w appears in t. Entries for facts that have
+   * since been killed are removed lazily.
+   */
+  private Node users;
+
+  /** Lists facts whose tails are not pure, possibly including some that have since been killed. */
+  private Entry impure;
+
+  private Facts(Node byVar, Node byTail, Node users, Entry impure) {
+    this.byVar = byVar;
+    this.byTail = byTail;
+    this.users = users;
+    this.impure = impure;
+  }
 
   /** Default constructor. */
   public Facts(Temp v, Tail t, Facts next) {
-    this.v = v;
-    this.t = t;
-    this.next = next;
+    Item f = new Item(v, t);
+    if (next != null) {
+      this.byVar = next.byVar;
+      this.byTail = next.byTail;
+      this.users = next.users;
+      this.impure = next.impure;
+    }
+    byVar = add(byVar, hash(v), v, f);
+    byTail = add(byTail, hash(t), null, f);
+    for (Temps ws = t.add(null); ws != null; ws = ws.next) {
+      users = add(users, hash(ws.head), ws.head, f);
+    }
+    if (!t.isPure()) {
+      impure = new Entry(null, f, impure);
+    }
+  }
+
+  /** Represents a single fact (v = t). */
+  private static class Item {
+
+    private Temp v;
+
+    private Tail t;
+
+    /** Default constructor. */
+    private Item(Temp v, Tail t) {
+      this.v = v;
+      this.t = t;
+    }
+  }
+
+  /** A list of facts with the same hash, each tagged with the variable that it is indexed by. */
+  private static class Entry {
+
+    private Temp key;
+
+    private Item item;
+
+    private Entry next;
+
+    /** Default constructor. */
+    private Entry(Temp key, Item item, Entry next) {
+      this.key = key;
+      this.item = item;
+      this.next = next;
+    }
+  }
+
+  /** An interior node of a hash array mapped trie, with up to 32 children. */
+  private static class Node {
+
+    /** Bit i is set if there is a child for the hash bits i at this level. */
+    private int bitmap;
+
+    /** Children, each of which is either a Node or a Leaf, in order of bit position. */
+    private Object[] slots;
+
+    /** Default constructor. */
+    private Node(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+  }
+
+  /** Holds the list of entries for a particular hash value in a trie. */
+  private static class Leaf {
+
+    private int hash;
+
+    private Entry entries;
+
+    /** Default constructor. */
+    private Leaf(int hash, Entry entries) {
+      this.hash = hash;
+      this.entries = entries;
+    }
+  }
+
+  private static int hash(Temp v) {
+    return System.identityHashCode(v);
+  }
+
+  /**
+   * Compute a hash for a tail that is consistent with sameTail(): summaries do not distinguish
+   * between variables, so we also combine the identities of the variables that the tail mentions.
+   */
+  private static int hash(Tail t) {
+    int h = t.summary(null);
+    for (Temps ws = t.add(null); ws != null; ws = ws.next) {
+      h += 31 * hash(ws.head);
+    }
+    return h;
+  }
+
+  /** Return the list of entries for the given hash in a trie. */
+  private static Entry lookup(Node n, int hash) {
+    for (int shift = 0; n != null; shift += 5) {
+      int bit = 1 << ((hash >>> shift) & 31);
+      if ((n.bitmap & bit) == 0) {
+        return null;
+      }
+      Object o = n.slots[Integer.bitCount(n.bitmap & (bit - 1))];
+      if (o instanceof Leaf) {
+        Leaf l = (Leaf) o;
+        return (l.hash == hash) ? l.entries : null;
+      }
+      n = (Node) o;
+    }
+    return null;
   }
 
   /**
-   * Remove any facts that are killed as a result of binding the variable v. The returned list will
-   * be the same as the input list vs if, and only if there are no changes to the list of facts. In
+   * Return a trie that is the same as n except that the list of entries for the given hash is
+   * replaced by entries (or removed, if entries is null).
+   */
+  private static Node update(Node n, int shift, int hash, Entry entries) {
+    int bit = 1 << ((hash >>> shift) & 31);
+    if (n == null) {
+      return (entries == null) ? null : new Node(bit, new Object[] {new Leaf(hash, entries)});
+    }
+    int idx = Integer.bitCount(n.bitmap & (bit - 1));
+    int len = n.slots.length;
+    if ((n.bitmap & bit) == 0) { // No child for this hash: insert a new leaf
+      if (entries == null) {
+        return n;
+      }
+      Object[] slots = new Object[len + 1];
+      for (int i = 0; i < idx; i++) {
+        slots[i] = n.slots[i];
+      }
+      slots[idx] = new Leaf(hash, entries);
+      for (int i = idx; i < len; i++) {
+        slots[i + 1] = n.slots[i];
+      }
+      return new Node(n.bitmap | bit, slots);
+    }
+    Object o = n.slots[idx];
+    Object no;
+    if (o instanceof Leaf) {
+      Leaf l = (Leaf) o;
+      if (l.hash == hash) {
+        no = (entries == null) ? null : new Leaf(hash, entries);
+      } else if (entries == null) {
+        return n;
+      } else { // Two different hashes share a prefix: push both down to the next level
+        no = update(update(null, shift + 5, l.hash, l.entries), shift + 5, hash, entries);
+      }
+    } else {
+      no = update((Node) o, shift + 5, hash, entries);
+    }
+    if (no == null) { // Remove the child for this hash
+      if (len == 1) {
+        return null;
+      }
+      Object[] slots = new Object[len - 1];
+      for (int i = 0; i < idx; i++) {
+        slots[i] = n.slots[i];
+      }
+      for (int i = idx + 1; i < len; i++) {
+        slots[i - 1] = n.slots[i];
+      }
+      return new Node(n.bitmap & ~bit, slots);
+    }
+    Object[] slots = new Object[len];
+    for (int i = 0; i < len; i++) {
+      slots[i] = n.slots[i];
+    }
+    slots[idx] = no;
+    return new Node(n.bitmap, slots);
+  }
+
+  /** Add an entry for the fact f to the front of the list for the given hash. */
+  private static Node add(Node n, int hash, Temp key, Item f) {
+    return update(n, 0, hash, new Entry(key, f, lookup(n, hash)));
+  }
+
+  /** Remove any entry for the fact f from a list, preserving the order of the remaining entries. */
+  private static Entry without(Entry es, Item f) {
+    if (es != null) {
+      Entry rest = without(es.next, f);
+      if (es.item == f) {
+        return rest;
+      } else if (rest != es.next) {
+        return new Entry(es.key, es.item, rest);
+      }
+    }
+    return es;
+  }
+
+  /** Remove any entry for the fact f from the list for the given hash. */
+  private static Node remove(Node n, int hash, Item f) {
+    Entry es = lookup(n, hash);
+    Entry nes = without(es, f);
+    return (nes == es) ? n : update(n, 0, hash, nes);
+  }
+
+  /**
+   * Return a set of facts that does not include f, or this set if f has already been removed. The
+   * users and impure indexes are left unchanged; stale entries in those are skipped on use.
+   */
+  private Facts remove(Item f) {
+    Node nbyVar = remove(byVar, hash(f.v), f);
+    if (nbyVar == byVar) {
+      return this;
+    }
+    return new Facts(nbyVar, remove(byTail, hash(f.t), f), users, impure);
+  }
+
+  /**
+   * Remove any facts that are killed as a result of binding the variable v. The returned set will
+   * be the same as the input set facts if, and only if there are no changes to the set of facts. In
    * particular, this implies that we will not use any destructive updates, but it also allows us to
-   * avoid unnecessarily reallocating copies of the same list when there are no changes, which we
+   * avoid unnecessarily reallocating copies of the same set when there are no changes, which we
    * expect to be the common case.
    */
   public static Facts kills(Temp v, Facts facts) {
-    if (facts != null) {
-      Facts fs = Facts.kills(v, facts.next);
-      // A binding for the variable v kills any fact (w = t) that mentions v.
-      if (facts.v == v || facts.t.contains(v)) {
-        // Head item in facts is killed by binding v, so do not include it in the return result:
-        return fs;
-      } else if (fs != facts.next) {
-        // Some items in facts.next were killed, but the head item in facts is not, so we
-        // create a new list that retains the head fact together with the facts left in fs:
-        return new Facts(facts.v, facts.t, fs);
+    if (facts == null) {
+      return null;
+    }
+    // A binding for the variable v kills any fact (w = t) that mentions v.
+    int h = hash(v);
+    Facts fs = facts;
+    for (Entry es = lookup(facts.byVar, h); es != null; es = es.next) {
+      if (es.key == v) {
+        fs = fs.remove(es.item);
+      }
+    }
+    Entry us = lookup(facts.users, h);
+    for (Entry es = us; es != null; es = es.next) {
+      if (es.key == v && es.item.t.contains(v)) {
+        fs = fs.remove(es.item);
+      }
+    }
+    if (fs == facts) {
+      return facts;
+    } else if (fs.byVar == null) {
+      return null;
+    }
+    // None of the facts that mention v remain, so drop them from the users index:
+    Entry nus = null;
+    for (Entry es = us; es != null; es = es.next) {
+      if (es.key != v) {
+        nus = new Entry(es.key, es.item, nus);
       }
     }
-    return facts;
+    fs.users = update(fs.users, 0, h, reverse(nus));
+    return fs;
+  }
+
+  private static Entry reverse(Entry es) {
+    Entry rs = null;
+    for (; es != null; es = es.next) {
+      rs = new Entry(es.key, es.item, rs);
+    }
+    return rs;
   }
 
   /**
@@ -71,22 +322,29 @@ public class Facts {
    * (potentially) has an effect.
    */
   public static Facts killNonPure(Facts facts) {
-    if (facts != null) {
-      Facts fs = Facts.killNonPure(facts.next);
-      if (!facts.t.isPure()) { // Head item is not pure, so exclude from result.
-        return fs;
-      } else if (fs != facts.next) {
-        return new Facts(facts.v, facts.t, fs);
-      }
+    if (facts == null) {
+      return null;
+    }
+    Facts fs = facts;
+    for (Entry es = facts.impure; es != null; es = es.next) {
+      fs = fs.remove(es.item);
+    }
+    if (fs == facts) {
+      return facts;
+    } else if (fs.byVar == null) {
+      return null;
     }
-    return facts;
+    fs.impure = null;
+    return fs;
   }
 
   /** Look for a fact about a specific variable. */
   public static Tail lookupFact(Temp v, Facts facts) {
-    for (; facts != null; facts = facts.next) {
-      if (facts.v == v) {
-        return facts.t;
+    if (facts != null) {
+      for (Entry es = lookup(facts.byVar, hash(v)); es != null; es = es.next) {
+        if (es.key == v) {
+          return es.item.t;
+        }
       }
     }
     return null;
@@ -97,9 +355,11 @@ public class Facts {
    * the set of facts should only contain pure computations (allocators and pure primitive calls).
    */
   public static Temp find(Tail t, Facts facts) {
-    for (; facts != null; facts = facts.next) {
-      if (facts.t.sameTail(t)) {
-        return facts.v;
+    if (facts != null) {
+      for (Entry es = lookup(facts.byTail, hash(t)); es != null; es = es.next) {
+        if (es.item.t.sameTail(t)) {
+          return es.item.v;
+        }
       }
     }
     return null;
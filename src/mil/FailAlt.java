@@ -75,6 +75,36 @@ public class FailAlt extends Alts {
     return this;
   }
 
+  /**
+   * Modify these alternatives to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original alternatives.
+   */
+  Alts deriveWithUnboxedResult() {
+    return this;
+  }
+
+  /** Add information about the values returned by these alternatives to the given analysis. */
+  void allocResults(AllocResults ar) {
+    /* nothing to do: a match failure does not return */
+  }
+
+  /**
+   * Test to see if the value of v might escape from these alternatives, which is the case if it is
+   * passed as an argument in any of their block calls.
+   */
+  boolean escapes(Temp v) {
+    return false;
+  }
+
+  /**
+   * Return a version of these alternatives in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Alts redirectLoopCalls(LoopHoist lh) {
+    return this;
+  }
+
   Alts copy() {
     return this;
   }
@@ -120,9 +150,10 @@ public class FailAlt extends Alts {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
+  int summary(Temps vars) {
     return 19;
   }
 
@@ -176,7 +207,7 @@ public class FailAlt extends Alts {
   }
 
   BlockCall repTransformBitdataCase(RepTypeSet set, RepEnv env, obdd.Pat pat, Atom[] as) {
-    return new BlockCall(MILProgram.abort, Atom.noAtoms);
+    return new BlockCall(MILProgram.abort(), Atom.noAtoms);
   }
 
   /** Find the argument variables that are used in this Code sequence. */
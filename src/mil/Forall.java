@@ -64,6 +64,11 @@ public class Forall extends Scheme {
     return this.type.alphaType(left, corresp);
   }
 
+  /** Compute a hash code for this type scheme that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return type.alphaHash();
+  }
+
   public String toString(int prec, StringTypeWriter tw) {
     tw.writeQuantifiers();
     return type.toString(prec, tw);
@@ -61,8 +61,10 @@ public class GenImp extends ExtImp {
   /** Generate a specialized version of this external implementation strategy. */
   ExtImp specialize(MILSpec spec, Type[] tenv) {
     Type[] nts = new Type[ts.length];
-    for (int i = 0; i < ts.length; i++) {
-      nts[i] = ts[i].canonType(tenv, spec);
+    synchronized (spec) { // The canonical type table in spec may be shared by several threads
+      for (int i = 0; i < ts.length; i++) {
+        nts[i] = ts[i].canonType(tenv, spec);
+      }
     }
     return new GenImp(ref, nts);
   }
@@ -174,16 +176,8 @@ public class GenImp extends ExtImp {
     return ext.generatePrim(ref, reps);
   }
 
-  /** Flag to indicate whether bitdata representations (e.g., for Maybe (Ix 15)) are in use. */
-  private static boolean bitdataRepresentations = false;
-
-  /** Set the bitdataRepresentations flag; intended to be called in the driver as appropriate. */
-  public static void setBitdataRepresentations() {
-    bitdataRepresentations = true;
-  }
-
   private static void validBitdataRepresentations() throws GeneratorException {
-    if (!bitdataRepresentations) {
+    if (!Compilation.current().getBitdataRepresentations()) {
       throw new GeneratorException("Bitdata representations (\"b\" pass) required");
     }
   }
@@ -1447,8 +1441,8 @@ public class GenImp extends ExtImp {
   }
 
   static {
-    genEqBinOp("primBitEq", Prim.eq, Block.returnFalse, Prim.beq, Block.returnTrue);
-    genEqBinOp("primBitNe", Prim.neq, Block.returnTrue, Prim.bxor, Block.returnFalse);
+    genEqBinOp("primBitEq", Prim.eq, Block.returnFalse(), Prim.beq, Block.returnTrue());
+    genEqBinOp("primBitNe", Prim.neq, Block.returnTrue(), Prim.bxor, Block.returnFalse());
   }
 
   /**
@@ -1502,7 +1496,7 @@ public class GenImp extends ExtImp {
               slsw.withArgs(args[n - 1], args[2 * n - 1]),
               new If(
                   v,
-                  new BlockCall(Block.returnTrue, Atom.noAtoms),
+                  new BlockCall(Block.returnTrue(), Atom.noAtoms),
                   new BlockCall(bitLexCompBlock1(pos, n, lsw, slsw), args)));
     }
     return new Block(pos, args, code);
@@ -1525,14 +1519,14 @@ public class GenImp extends ExtImp {
             new If(
                 v,
                 new BlockCall(bitLexCompBlock(pos, n - 1, lsw, slsw), dropMSWords(n, args)),
-                new BlockCall(Block.returnFalse, Atom.noAtoms))));
+                new BlockCall(Block.returnFalse(), Atom.noAtoms))));
   }
 
   static {
-    genRelBinOp("primBitGt", Prim.ugt, Prim.ugt, Prim.bgt, Block.returnFalse);
-    genRelBinOp("primBitGe", Prim.uge, Prim.ugt, Prim.bge, Block.returnTrue);
-    genRelBinOp("primBitLt", Prim.ult, Prim.ult, Prim.blt, Block.returnFalse);
-    genRelBinOp("primBitLe", Prim.ule, Prim.ult, Prim.ble, Block.returnTrue);
+    genRelBinOp("primBitGt", Prim.ugt, Prim.ugt, Prim.bgt, Block.returnFalse());
+    genRelBinOp("primBitGe", Prim.uge, Prim.ugt, Prim.bge, Block.returnTrue());
+    genRelBinOp("primBitLt", Prim.ult, Prim.ult, Prim.blt, Block.returnFalse());
+    genRelBinOp("primBitLe", Prim.ule, Prim.ult, Prim.ble, Block.returnTrue());
   }
 
   /**
@@ -1586,10 +1580,10 @@ public class GenImp extends ExtImp {
   }
 
   static {
-    genSignedRelBinOp("primBitSGt", Prim.sgt, Prim.bgt, Block.returnFalse);
-    genSignedRelBinOp("primBitSGe", Prim.sge, Prim.bge, Block.returnTrue);
-    genSignedRelBinOp("primBitSLt", Prim.slt, Prim.blt, Block.returnFalse);
-    genSignedRelBinOp("primBitSLe", Prim.sle, Prim.ble, Block.returnTrue);
+    genSignedRelBinOp("primBitSGt", Prim.sgt, Prim.bgt, Block.returnFalse());
+    genSignedRelBinOp("primBitSGe", Prim.sge, Prim.bge, Block.returnTrue());
+    genSignedRelBinOp("primBitSLt", Prim.slt, Prim.blt, Block.returnFalse());
+    genSignedRelBinOp("primBitSLe", Prim.sle, Prim.ble, Block.returnTrue());
   }
 
   /**
@@ -22,6 +22,7 @@ import compiler.*;
 import core.*;
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * An address map structure that uses a hash table to associate addresses of globals and code
@@ -42,6 +43,19 @@ public class HashAddrMap extends AddrMap {
     return (s != null) ? s : super.globalLabel(addr);
   }
 
+  /**
+   * Return the table of labels, indexed using the scheme described above, so that it can be saved
+   * in a machine image.
+   */
+  HashMap<Integer, String> getLabels() {
+    return map;
+  }
+
+  /** Add an entry to the table of labels, using the scheme described above. */
+  void addLabel(int key, String label) {
+    map.put(key, label);
+  }
+
   void addCodeLabel(int addr, String label) {
     map.put(addr, label);
   }
@@ -51,16 +65,18 @@ public class HashAddrMap extends AddrMap {
     return (s != null) ? s : super.codeLabel(addr);
   }
 
+  /** Print the entries in this table, in order of increasing address. */
   void dump(PrintWriter out) {
+    TreeSet<Integer> keys = new TreeSet<Integer>(map.keySet());
     out.println("Global symbols: ------");
-    for (Integer n : map.keySet()) {
+    for (Integer n : keys.descendingSet()) {
       int addr = n.intValue();
       if (addr < 0) {
         out.println("  " + (-(1 + addr)) + "\t" + map.get(n));
       }
     }
     out.println("Code symbols: --------");
-    for (Integer n : map.keySet()) {
+    for (Integer n : keys) {
       int addr = n.intValue();
       if (addr >= 0) {
         out.println("  " + addr + "\t" + map.get(n));
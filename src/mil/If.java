@@ -115,6 +115,37 @@ public class If extends Code {
     return new If(a, ifTrue.deriveWithCont(cont), ifFalse.deriveWithCont(cont));
   }
 
+  /**
+   * Modify this code sequence to return the fields of each allocated result instead of a pointer
+   * to the allocated object. This assumes that AllocResults has found a single allocator form for
+   * all of the results of the original code.
+   */
+  Code deriveWithUnboxedResult() {
+    return new If(a, ifTrue.deriveWithUnboxedResult(), ifFalse.deriveWithUnboxedResult());
+  }
+
+  /** Add information about the values that are returned by this code to the given analysis. */
+  void allocResults(AllocResults ar) {
+    ifTrue.allocResults(ar);
+    ifFalse.allocResults(ar);
+  }
+
+  /**
+   * Test to see if the value of v might escape from this code. Uses of v as the scrutinee of a
+   * Case, in a selector, or as the function in an Enter do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return ifTrue.escapes(v) || ifFalse.escapes(v);
+  }
+
+  /**
+   * Return a version of this code in which calls to blocks in a loop are redirected to the
+   * corresponding blocks in the new version of the loop that is being built by lh.
+   */
+  Code redirectLoopCalls(LoopHoist lh) {
+    return new If(a, ifTrue.redirectLoopCalls(lh), ifFalse.redirectLoopCalls(lh));
+  }
+
   /**
    * Test to determine if this code is an expression of the form case v of alts where v is the
    * result of a preceding block call. If so, return a transformed version of the code that makes
@@ -149,7 +180,8 @@ public class If extends Code {
    */
   Code cleanup(Block src) {
     if (ifTrue.sameBlockCall(ifFalse)) { // Rewrite (if a then bc else bc) ==> bc
-      MILProgram.report("eliminated an if with the same block in each branch in " + src);
+      MILProgram.report(
+          OptimizerStats.BRANCH, "eliminated an if with the same block in each branch in " + src);
       return new Done(ifTrue);
     }
     return this;
@@ -175,6 +207,16 @@ public class If extends Code {
     return len + 1;
   }
 
+  /** Return the number of Bind, Assert, Done, Case, and If nodes in this Code sequence. */
+  int codeSize() {
+    return 1;
+  }
+
+  /** Return the atom that is tested at the start of this Code if it is a Case or an If. */
+  Atom scrutinee() {
+    return a;
+  }
+
   /**
    * Determine if, for the purposes of suffix inlining, it is possible to get back to the specified
    * source block via a sequence of tail calls. (i.e., without an If or Case guarding against an
@@ -221,13 +263,13 @@ public class If extends Code {
       boolean tb = tc.getVal();
       boolean fb = fc.getVal();
       if (tb == fb) {
-        MILProgram.report("eliminating if: branches both return " + tb);
+        MILProgram.report(OptimizerStats.BRANCH, "eliminating if: branches both return " + tb);
         return new Done(ifTrue);
       } else if (tb && !fb) {
-        MILProgram.report("eliminating if: branches true, false, resp.");
+        MILProgram.report(OptimizerStats.BRANCH, "eliminating if: branches true, false, resp.");
         return new Done(new Return(a));
       } else if (fb && !tb) {
-        MILProgram.report("eliminating if: branches false, true, resp.");
+        MILProgram.report(OptimizerStats.BRANCH, "eliminating if: branches false, true, resp.");
         return new Done(Prim.bnot.withArgs(a));
       }
     }
@@ -260,12 +302,35 @@ public class If extends Code {
     ifFalse.calcSources(d, params, rebound);
   }
 
+  /** Propagate approximate values to the blocks that might be called from this code. */
+  void constProp(ConstProp cp) {
+    Flag f = cp.flagValue(a);
+    if (f == null || f.getVal()) {
+      ifTrue.constProp(cp);
+    }
+    if (f == null || !f.getVal()) {
+      ifFalse.constProp(cp);
+    }
+  }
+
+  /** Rewrite tests in this code whose outcomes are fixed by the results of constant propagation. */
+  Code constRewrite(ConstProp cp) {
+    Flag f = cp.flagValue(a);
+    if (f == null) {
+      return this;
+    }
+    MILProgram.report(
+        OptimizerStats.CONST_PROP, "constant propagation fixed test of " + a + " to " + f);
+    return new Done(f.getVal() ? ifTrue : ifFalse);
+  }
+
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return ifTrue.summary() * 3 + ifFalse.summary() * 23;
+  int summary(Temps vars) {
+    return a.summary(vars) * 5 + ifTrue.summary(vars) * 3 + ifFalse.summary(vars) * 23;
   }
 
   /** Test to see if two Code sequences are alpha equivalent. */
@@ -23,6 +23,9 @@ import core.*;
 
 class InitCFG extends CFG {
 
+  /** The name of the LLVM function that this CFG will be used to generate. */
+  private String name;
+
   private InitVarMap ivm;
 
   private Block b;
@@ -30,7 +33,8 @@ class InitCFG extends CFG {
   llvm.Code edoc;
 
   /** Default constructor. */
-  InitCFG(InitVarMap ivm, Block b, llvm.Code edoc) {
+  InitCFG(String name, InitVarMap ivm, Block b, llvm.Code edoc) {
+    this.name = name;
     this.ivm = ivm;
     this.b = b;
     this.edoc = edoc;
@@ -46,7 +50,7 @@ class InitCFG extends CFG {
 
   /** Return a string that can be used as the name of this node in debugging output. */
   String nodeName() {
-    return llvm.FuncDefn.mainFunctionName;
+    return name;
   }
 
   /** Return a string with the options (e.g., fillcolor) for displaying this CFG node. */
@@ -66,6 +70,6 @@ class InitCFG extends CFG {
   llvm.FuncDefn toLLVMFuncDefn(LLVMMap lm, llvm.Local[] formals, String[] ss, llvm.Code[] cs) {
     cs[0] = llvm.Code.reverseOnto(edoc, new llvm.Goto(succs[0].label()));
     return new llvm.FuncDefn(
-        llvm.Mods.NONE, b.retType(lm), llvm.FuncDefn.mainFunctionName, formals, ss, cs);
+        llvm.Mods.NONE, b.retType(lm), name, formals, ss, cs);
   }
 }
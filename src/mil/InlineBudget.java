@@ -0,0 +1,148 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.HashMap;
+
+/**
+ * Tracks the growth in code size that results from inlining, limiting the total growth for a whole
+ * program during a single call to MILProgram.optimize(), as well as the growth for each scc in a
+ * single inlining pass. Inlining a call to a block with only one reference does not duplicate any
+ * code, so it is never charged to the budget. The last part of the program budget is reserved for
+ * call sites where inlining is expected to be particularly beneficial. Each scc in a pass sees the
+ * program budget as it was at the start of the pass, less its own growth, so that its decisions do
+ * not depend on the order in which the sccs are visited; the growth of the last pass can therefore
+ * take the program a little over budget.
+ */
+public class InlineBudget {
+
+  /** The percentage growth in the size of an scc that is allowed during a single inlining pass. */
+  public static final int SCC_GROWTH = 100;
+
+  /** The minimum number of lines that may be added to an scc during a single inlining pass. */
+  public static final int MIN_SCC_GROWTH = 32;
+
+  /** The minimum number of lines that may be added to a program. */
+  public static final int MIN_PROGRAM_GROWTH = 256;
+
+  /** The percentage of the program budget that is reserved for beneficial call sites. */
+  public static final int RESERVE = 25;
+
+  /** The number of lines that the program may still grow by. */
+  private int programLeft;
+
+  /** The number of lines that the program could still grow by at the start of the current pass. */
+  private int passLeft;
+
+  /** Records the budget for each scc that has been visited in the current pass. */
+  private HashMap<DefnSCC, SccBudget> sccBudgets = new HashMap<DefnSCC, SccBudget>();
+
+  /** The budget for a single scc in an inlining pass. */
+  private static class SccBudget {
+
+    /** The number of lines that the scc may still grow by. */
+    private int sccLeft;
+
+    /** The number of lines that the program may still grow by, as seen by this scc. */
+    private int programLeft;
+
+    /** Default constructor. */
+    private SccBudget(int sccLeft, int programLeft) {
+      this.sccLeft = sccLeft;
+      this.programLeft = programLeft;
+    }
+  }
+
+  /** The part of the program budget that is reserved for beneficial call sites. */
+  private int reserve;
+
+  /** The total number of lines that were allowed. */
+  private int allowance;
+
+  /** Counts the number of call sites that were not inlined because of this budget. */
+  private int declined = 0;
+
+  /**
+   * Construct a budget for a program of the given size that allows the given percentage growth
+   * during a single call to optimize().
+   */
+  InlineBudget(int programSize, int programGrowth) {
+    allowance = Math.max(MIN_PROGRAM_GROWTH, (int) ((long) programSize * programGrowth / 100));
+    programLeft = allowance;
+    reserve = allowance * RESERVE / 100;
+  }
+
+  /**
+   * Return a budget for a program of the given size that allows the given percentage growth, or
+   * null if inlining is not limited (because programGrowth is 0).
+   */
+  static InlineBudget forProgram(int programSize, int programGrowth) {
+    return (programGrowth > 0) ? new InlineBudget(programSize, programGrowth) : null;
+  }
+
+  /** Start a new inlining pass. */
+  void startPass() {
+    passLeft = programLeft;
+    sccBudgets.clear();
+  }
+
+  /** Set the budget for an inlining pass over the definitions in the given scc. */
+  void startScc(DefnSCC scc) {
+    int size = 0;
+    for (Defns ds = scc.getBindings(); ds != null; ds = ds.next) {
+      size += ds.head.codeSize();
+    }
+    SccBudget sb = new SccBudget(Math.max(MIN_SCC_GROWTH, size * SCC_GROWTH / 100), passLeft);
+    synchronized (this) {
+      sccBudgets.put(scc, sb);
+    }
+  }
+
+  /**
+   * Decide whether an inlining step that adds the given number of lines to the given scc is
+   * allowed, and charge it to the budget if it is. Call sites with no expected benefit cannot use
+   * the reserved part of the program budget.
+   */
+  synchronized boolean allow(DefnSCC scc, int growth, boolean beneficial) {
+    SccBudget sb = sccBudgets.get(scc);
+    int left = beneficial ? sb.programLeft : (sb.programLeft - reserve);
+    if (growth > left || growth > sb.sccLeft) {
+      declined++;
+      return false;
+    }
+    programLeft -= growth;
+    sb.programLeft -= growth;
+    sb.sccLeft -= growth;
+    return true;
+  }
+
+  /** Display a summary of the use of this budget on the debug log. */
+  void report() {
+    debug.Log.println(
+        "Inlining budget: used "
+            + (allowance - programLeft)
+            + " of "
+            + allowance
+            + " lines, declined "
+            + declined
+            + " call sites");
+  }
+}
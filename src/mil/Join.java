@@ -115,4 +115,12 @@ class Join extends Src {
   boolean isInvariant() {
     return true;
   }
+
+  /**
+   * Return the index of the parameter of d that provides this value when the enclosing loop is
+   * entered at d, or (-1) if there is no such parameter.
+   */
+  int sourceIndex(Defn d) {
+    return find(d, this);
+  }
 }
@@ -0,0 +1,450 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A minimal writer for JVM class files, providing just enough functionality to build the classes
+ * that are generated by JvmCompiler. We use version 49 of the class file format, which allows the
+ * JVM to verify the generated code without StackMapTable attributes.
+ */
+class JvmClass {
+
+  private String name;
+
+  /** Default constructor. */
+  JvmClass(String name) {
+    this.name = name;
+  }
+
+  // Constant pool: --------------------------------------------------------------------------------
+
+  private ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+
+  private DataOutputStream pool = new DataOutputStream(poolBytes);
+
+  private int poolCount = 1;
+
+  private HashMap<String, Integer> poolIndex = new HashMap();
+
+  private int utf8(String s) {
+    Integer i = poolIndex.get("U" + s);
+    if (i == null) {
+      try {
+        pool.writeByte(1);
+        pool.writeUTF(s);
+      } catch (IOException e) {
+        debug.Internal.error("Unable to write constant pool entry");
+      }
+      poolIndex.put("U" + s, i = poolCount++);
+    }
+    return i;
+  }
+
+  private int entry(String key, int tag, int a, int b) {
+    Integer i = poolIndex.get(key);
+    if (i == null) {
+      try {
+        pool.writeByte(tag);
+        pool.writeShort(a);
+        if (b >= 0) {
+          pool.writeShort(b);
+        }
+      } catch (IOException e) {
+        debug.Internal.error("Unable to write constant pool entry");
+      }
+      poolIndex.put(key, i = poolCount++);
+    }
+    return i;
+  }
+
+  int classRef(String cls) {
+    return entry("C" + cls, 7, utf8(cls), -1);
+  }
+
+  private int nameAndType(String id, String desc) {
+    return entry("N" + id + ":" + desc, 12, utf8(id), utf8(desc));
+  }
+
+  int methodRef(String cls, String id, String desc) {
+    return entry("M" + cls + "." + id + desc, 10, classRef(cls), nameAndType(id, desc));
+  }
+
+  int fieldRef(String cls, String id, String desc) {
+    return entry("F" + cls + "." + id + ":" + desc, 9, classRef(cls), nameAndType(id, desc));
+  }
+
+  int intConst(int val) {
+    Integer i = poolIndex.get("I" + val);
+    if (i == null) {
+      try {
+        pool.writeByte(3);
+        pool.writeInt(val);
+      } catch (IOException e) {
+        debug.Internal.error("Unable to write constant pool entry");
+      }
+      poolIndex.put("I" + val, i = poolCount++);
+    }
+    return i;
+  }
+
+  // Methods: --------------------------------------------------------------------------------------
+
+  private ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+
+  private DataOutputStream methods = new DataOutputStream(methodBytes);
+
+  private int numMethods = 0;
+
+  /** Add a public static method with the given name, descriptor, and code to this class. */
+  void addMethod(String id, String desc, Code code, int maxStack, int maxLocals) throws Failure {
+    code.resolve();
+    if (code.len > 65535) {
+      throw new Failure("method " + id + " is too large for the JVM");
+    }
+    try {
+      methods.writeShort(0x0009); // ACC_PUBLIC | ACC_STATIC
+      methods.writeShort(utf8(id));
+      methods.writeShort(utf8(desc));
+      methods.writeShort(1); // One attribute ...
+      methods.writeShort(utf8("Code")); // ... for the code
+      methods.writeInt(12 + code.len);
+      methods.writeShort(maxStack);
+      methods.writeShort(maxLocals);
+      methods.writeInt(code.len);
+      methods.write(code.bytes, 0, code.len);
+      methods.writeShort(0); // No exception table
+      methods.writeShort(0); // No attributes
+    } catch (IOException e) {
+      debug.Internal.error("Unable to write method " + id);
+    }
+    numMethods++;
+  }
+
+  /** Return the bytes of the class file for this class. */
+  byte[] toBytes() throws Failure {
+    int thisClass = classRef(name);
+    int superClass = classRef("java/lang/Object");
+    if (poolCount > 65535) {
+      throw new Failure("too many constants for the JVM");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0); // minor version
+      out.writeShort(49); // major version
+      out.writeShort(poolCount);
+      poolBytes.writeTo(out);
+      out.writeShort(0x0021); // ACC_PUBLIC | ACC_SUPER
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0); // No interfaces
+      out.writeShort(0); // No fields
+      out.writeShort(numMethods);
+      methodBytes.writeTo(out);
+      out.writeShort(0); // No attributes
+    } catch (IOException e) {
+      debug.Internal.error("Unable to write class file for " + name);
+    }
+    return bytes.toByteArray();
+  }
+
+  // Code: -----------------------------------------------------------------------------------------
+
+  static final int ICONST_0 = 0x03;
+
+  static final int LCONST_0 = 0x09;
+
+  static final int LCONST_1 = 0x0a;
+
+  static final int BIPUSH = 0x10;
+
+  static final int SIPUSH = 0x11;
+
+  static final int LDC_W = 0x13;
+
+  static final int ILOAD = 0x15;
+
+  static final int LLOAD = 0x16;
+
+  static final int ALOAD = 0x19;
+
+  static final int LALOAD = 0x2f;
+
+  static final int AALOAD = 0x32;
+
+  static final int ISTORE = 0x36;
+
+  static final int LSTORE = 0x37;
+
+  static final int ASTORE = 0x3a;
+
+  static final int LASTORE = 0x50;
+
+  static final int AASTORE = 0x53;
+
+  static final int DUP = 0x59;
+
+  static final int IADD = 0x60;
+
+  static final int LADD = 0x61;
+
+  static final int LSUB = 0x65;
+
+  static final int LMUL = 0x69;
+
+  static final int LNEG = 0x75;
+
+  static final int LSHL = 0x79;
+
+  static final int LSHR = 0x7b;
+
+  static final int LUSHR = 0x7d;
+
+  static final int LAND = 0x7f;
+
+  static final int LOR = 0x81;
+
+  static final int LXOR = 0x83;
+
+  static final int L2I = 0x88;
+
+  static final int LCMP = 0x94;
+
+  static final int IFEQ = 0x99;
+
+  static final int IFNE = 0x9a;
+
+  static final int IFLT = 0x9b;
+
+  static final int IFGE = 0x9c;
+
+  static final int IFGT = 0x9d;
+
+  static final int IFLE = 0x9e;
+
+  static final int IF_ICMPEQ = 0x9f;
+
+  static final int IF_ICMPNE = 0xa0;
+
+  static final int TABLESWITCH = 0xaa;
+
+  static final int IRETURN = 0xac;
+
+  static final int GETFIELD = 0xb4;
+
+  static final int PUTFIELD = 0xb5;
+
+  static final int INVOKEVIRTUAL = 0xb6;
+
+  static final int INVOKESTATIC = 0xb8;
+
+  static final int ACONST_NULL = 0x01;
+
+  static final int GOTO_W = 0xc8;
+
+  /** Represents a position in a Code sequence that may be the target of a jump. */
+  static class Label {
+
+    private int pos = (-1);
+
+    private Fixup fixups = null;
+  }
+
+  /**
+   * Records the position of a 32 bit offset that must be patched to refer to a label once its
+   * position is known. The offset is calculated relative to the start of the instruction at base.
+   */
+  private static class Fixup {
+
+    private int base;
+
+    private int at;
+
+    private Fixup next;
+
+    /** Default constructor. */
+    private Fixup(int base, int at, Fixup next) {
+      this.base = base;
+      this.at = at;
+      this.next = next;
+    }
+  }
+
+  /** A buffer for the bytecode of a single method. */
+  class Code {
+
+    private byte[] bytes = new byte[256];
+
+    private int len = 0;
+
+    /** Records the labels that are referenced in this code so that they can be resolved. */
+    private Label[] labels = new Label[16];
+
+    private int numLabels = 0;
+
+    int getPos() {
+      return len;
+    }
+
+    void u1(int b) {
+      if (len >= bytes.length) {
+        byte[] newarray = new byte[2 * bytes.length];
+        for (int i = 0; i < len; i++) {
+          newarray[i] = bytes[i];
+        }
+        bytes = newarray;
+      }
+      bytes[len++] = (byte) b;
+    }
+
+    void u2(int v) {
+      u1(v >> 8);
+      u1(v);
+    }
+
+    void u4(int v) {
+      u2(v >> 16);
+      u2(v);
+    }
+
+    void op(int opcode) {
+      u1(opcode);
+    }
+
+    /** Emit an instruction that uses a local variable. */
+    void local(int opcode, int n) {
+      u1(opcode);
+      u1(n);
+    }
+
+    /** Emit code to push an integer constant on the stack. */
+    void push(int v) {
+      if (v >= -1 && v <= 5) {
+        u1(ICONST_0 + v);
+      } else if (v >= -128 && v <= 127) {
+        u1(BIPUSH);
+        u1(v);
+      } else if (v >= -32768 && v <= 32767) {
+        u1(SIPUSH);
+        u2(v);
+      } else {
+        u1(LDC_W);
+        u2(intConst(v));
+      }
+    }
+
+    void invokestatic(String cls, String id, String desc) {
+      u1(INVOKESTATIC);
+      u2(methodRef(cls, id, desc));
+    }
+
+    void invokevirtual(String cls, String id, String desc) {
+      u1(INVOKEVIRTUAL);
+      u2(methodRef(cls, id, desc));
+    }
+
+    void getfield(String cls, String id, String desc) {
+      u1(GETFIELD);
+      u2(fieldRef(cls, id, desc));
+    }
+
+    void putfield(String cls, String id, String desc) {
+      u1(PUTFIELD);
+      u2(fieldRef(cls, id, desc));
+    }
+
+    /** Set the position of a label to the current position in the code. */
+    void place(Label l) {
+      l.pos = len;
+    }
+
+    /** Emit a 32 bit offset to the specified label, relative to the instruction at base. */
+    private void offset(int base, Label l) {
+      if (l.fixups == null) {
+        if (numLabels >= labels.length) {
+          Label[] newarray = new Label[2 * labels.length];
+          for (int i = 0; i < numLabels; i++) {
+            newarray[i] = labels[i];
+          }
+          labels = newarray;
+        }
+        labels[numLabels++] = l;
+      }
+      l.fixups = new Fixup(base, len, l.fixups);
+      u4(0);
+    }
+
+    /** Emit an unconditional jump to the specified label. */
+    void jump(Label l) {
+      int base = len;
+      u1(GOTO_W);
+      offset(base, l);
+    }
+
+    /**
+     * Emit a conditional branch to the specified label. To avoid limits on the distance of the
+     * branch, we use a short branch with the opposite condition to skip over a goto_w.
+     */
+    void branch(int opcode, Label l) {
+      u1(((opcode - IFEQ) ^ 1) + IFEQ); // IFEQ..IF_ICMPNE are paired with their negations
+      u2(8);
+      jump(l);
+    }
+
+    /** Emit a tableswitch instruction covering the given range of values. */
+    void tableswitch(int lo, Label dflt, Label[] targets) {
+      int base = len;
+      u1(TABLESWITCH);
+      while (len % 4 != 0) {
+        u1(0);
+      }
+      offset(base, dflt);
+      u4(lo);
+      u4(lo + targets.length - 1);
+      for (int i = 0; i < targets.length; i++) {
+        offset(base, targets[i]);
+      }
+    }
+
+    /** Patch all references to labels in this code with their final offsets. */
+    void resolve() throws Failure {
+      for (int i = 0; i < numLabels; i++) {
+        Label l = labels[i];
+        if (l.pos < 0) {
+          throw new Failure("reference to undefined label in generated code");
+        }
+        for (Fixup f = l.fixups; f != null; f = f.next) {
+          int d = l.pos - f.base;
+          bytes[f.at] = (byte) (d >> 24);
+          bytes[f.at + 1] = (byte) (d >> 16);
+          bytes[f.at + 2] = (byte) (d >> 8);
+          bytes[f.at + 3] = (byte) d;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,859 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+/**
+ * Translates the bytecode program in a Machine into a JVM class so that it can be compiled by the
+ * JVM's own JIT. The code for each block and closure definition (i.e., the range of addresses from
+ * one entry point in the Machine to the next) becomes a separate static method in the generated
+ * class, as does the main initialization code that starts at address 0. Jumps within a function
+ * become JVM branches, and calls become JVM method calls. Tail calls to other functions (JUMP and
+ * CJUMP) are implemented by returning the index of the target function to a trampoline (the run
+ * method), so that long running loops do not exhaust the JVM stack. Common arithmetic and
+ * comparison primitives are compiled directly to JVM instructions on long values.
+ */
+class JvmCompiler {
+
+  private static final String CLASS = "MILCode";
+
+  private static final String RT = "mil/JvmRuntime";
+
+  private static final String FUNC = "(Lmil/JvmRuntime;I)I";
+
+  private static final String RUN = "(Lmil/JvmRuntime;II)I";
+
+  /** The maximum number of functions that are handled by a single dispatch method. */
+  private static final int CHUNK = 1000;
+
+  // Local variables in the generated methods:
+
+  private static final int L_RT = 0; // the JvmRuntime object
+
+  private static final int L_FP = 1; // the frame pointer
+
+  private static final int L_WORD = 2; // the value register, for words (uses 2 slots)
+
+  private static final int L_REF = 4; // the value register, for heap objects
+
+  private static final int L_WORDS = 5; // the array of word frame slots
+
+  private static final int L_REFS = 6; // the array of heap object frame slots
+
+  private static final int L_RESULT = 7; // the result of a call
+
+  private static final int L_BASE = 8; // the base slot for a primitive
+
+  private static final int MAX_LOCALS = 9;
+
+  private static final int MAX_STACK = 16;
+
+  private int[] prog;
+
+  private int size;
+
+  /** The start address of each function, in increasing order. */
+  private int[] starts;
+
+  /** Maps each address to the index of the function that starts there, or -1. */
+  private int[] index;
+
+  private JvmClass cls = new JvmClass(CLASS);
+
+  /** Default constructor. */
+  JvmCompiler(int[] prog, int size, int[] entries, int numEntries) {
+    this.prog = prog;
+    this.size = size;
+    this.index = new int[size + 1];
+    for (int i = 0; i <= size; i++) {
+      index[i] = (-1);
+    }
+    int n = 0;
+    index[0] = n++; // The main code always starts at address 0
+    for (int i = 0; i < numEntries; i++) {
+      if (index[entries[i]] < 0) {
+        index[entries[i]] = n++;
+      }
+    }
+    starts = new int[n];
+    for (int addr = 0; addr < size; addr++) {
+      if (index[addr] >= 0) {
+        starts[index[addr]] = addr;
+      }
+    }
+  }
+
+  int[] getIndex() {
+    return index;
+  }
+
+  /** A class loader that is used to load the generated code. */
+  private static class Loader extends ClassLoader {
+
+    /** Default constructor. */
+    private Loader(ClassLoader parent) {
+      super(parent);
+    }
+
+    private Class<?> define(byte[] bytes) {
+      return defineClass(CLASS, bytes, 0, bytes.length);
+    }
+  }
+
+  /** Generate and load the JVM code for the program, returning its run method. */
+  Method compile() throws Failure {
+    for (int f = 0; f < starts.length; f++) {
+      compileFunction(f);
+    }
+    compileDispatch();
+    byte[] bytes = cls.toBytes();
+    try {
+      Class<?> c = new Loader(JvmCompiler.class.getClassLoader()).define(bytes);
+      return c.getMethod("run", JvmRuntime.class, int.class, int.class);
+    } catch (LinkageError e) {
+      throw new Failure("generated JVM code could not be loaded: " + e);
+    } catch (NoSuchMethodException e) {
+      throw new Failure("generated JVM code has no run method");
+    }
+  }
+
+  /**
+   * Size (in bytes) of the stack for the thread that runs compiled code. Every active call in the
+   * MIL program uses at least one JVM stack frame, so a default thread stack only supports a
+   * modest call depth.
+   */
+  private static final long STACK_SIZE = 1L << 30;
+
+  /**
+   * Run compiled code using the given runtime, starting with the function at address pc. Execution
+   * takes place on a separate thread with a large stack so that deeply recursive programs can be
+   * run.
+   */
+  static void run(Method run, JvmRuntime rt, int pc) throws Failure {
+    Runner runner = new Runner(run, rt, pc);
+    Thread thread = new Thread(null, runner, "mil-jvm", STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new Failure("interrupted while running compiled code");
+    }
+    if (runner.failure != null) {
+      throw runner.failure;
+    } else if (runner.exception instanceof RuntimeException) {
+      throw (RuntimeException) runner.exception;
+    } else if (runner.exception instanceof Error) {
+      throw (Error) runner.exception;
+    }
+  }
+
+  /** Runs compiled code, capturing any failure or exception so that it can be rethrown. */
+  private static class Runner implements Runnable {
+
+    private Method run;
+
+    private JvmRuntime rt;
+
+    private int pc;
+
+    private Failure failure;
+
+    private Throwable exception;
+
+    /** Default constructor. */
+    private Runner(Method run, JvmRuntime rt, int pc) {
+      this.run = run;
+      this.rt = rt;
+      this.pc = pc;
+    }
+
+    public void run() {
+      try {
+        invoke(run, rt, pc);
+      } catch (Failure f) {
+        failure = f;
+      } catch (Throwable t) {
+        exception = t;
+      }
+    }
+  }
+
+  /** Invoke the run method of the compiled code, starting with the function at address pc. */
+  private static void invoke(Method run, JvmRuntime rt, int pc) throws Failure {
+    try {
+      run.invoke(null, rt, JvmRuntime.index(rt, pc), 0);
+    } catch (InvocationTargetException e) {
+      Throwable t = e.getCause();
+      if (t instanceof Failure) {
+        throw (Failure) t;
+      } else if (t instanceof StackOverflowError) {
+        throw new Failure("JVM stack overflow in compiled code");
+      } else if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      }
+      throw new Failure("exception in compiled code: " + t);
+    } catch (IllegalAccessException e) {
+      throw new Failure("unable to run compiled code: " + e);
+    }
+  }
+
+  private static String funcName(int f) {
+    return "f" + f;
+  }
+
+  /**
+   * Generate the run method, which acts as a trampoline for tail calls between functions, together
+   * with the dispatch methods that map function indices to the corresponding methods.
+   */
+  private void compileDispatch() throws Failure {
+    int numChunks = (starts.length + CHUNK - 1) / CHUNK;
+    for (int c = 0; c < numChunks; c++) {
+      JvmClass.Code code = cls.new Code();
+      int lo = c * CHUNK;
+      int hi = Math.min(starts.length, lo + CHUNK);
+      JvmClass.Label dflt = new JvmClass.Label();
+      JvmClass.Label[] targets = new JvmClass.Label[hi - lo];
+      for (int i = 0; i < targets.length; i++) {
+        targets[i] = new JvmClass.Label();
+      }
+      code.local(JvmClass.ILOAD, 1);
+      code.tableswitch(lo, dflt, targets);
+      for (int i = 0; i < targets.length; i++) {
+        code.place(targets[i]);
+        code.local(JvmClass.ALOAD, 0);
+        code.local(JvmClass.ILOAD, 2);
+        code.invokestatic(CLASS, funcName(lo + i), FUNC);
+        code.op(JvmClass.IRETURN);
+      }
+      code.place(dflt);
+      code.local(JvmClass.ILOAD, 1);
+      code.invokestatic(RT, "noCode", "(I)I");
+      code.op(JvmClass.IRETURN);
+      cls.addMethod("d" + c, RUN, code, 4, 3);
+    }
+
+    // The run method: while (f >= 0) { f = d(f / CHUNK)(rt, f, fp); } return f;
+    JvmClass.Code code = cls.new Code();
+    JvmClass.Label loop = new JvmClass.Label();
+    JvmClass.Label done = new JvmClass.Label();
+    JvmClass.Label dflt = new JvmClass.Label();
+    JvmClass.Label[] targets = new JvmClass.Label[numChunks];
+    code.place(loop);
+    code.local(JvmClass.ILOAD, 1);
+    code.branch(JvmClass.IFLT, done);
+    code.local(JvmClass.ILOAD, 1);
+    code.push(CHUNK);
+    code.op(0x6c); // idiv
+    for (int c = 0; c < numChunks; c++) {
+      targets[c] = new JvmClass.Label();
+    }
+    code.tableswitch(0, dflt, targets);
+    for (int c = 0; c < numChunks; c++) {
+      code.place(targets[c]);
+      code.local(JvmClass.ALOAD, 0);
+      code.local(JvmClass.ILOAD, 1);
+      code.local(JvmClass.ILOAD, 2);
+      code.invokestatic(CLASS, "d" + c, RUN);
+      code.local(JvmClass.ISTORE, 1);
+      code.jump(loop);
+    }
+    code.place(dflt);
+    code.local(JvmClass.ILOAD, 1);
+    code.invokestatic(RT, "noCode", "(I)I");
+    code.op(JvmClass.IRETURN);
+    code.place(done);
+    code.local(JvmClass.ILOAD, 1);
+    code.op(JvmClass.IRETURN);
+    cls.addMethod("run", RUN, code, 4, 3);
+  }
+
+  // Function bodies: ------------------------------------------------------------------------------
+
+  private JvmClass.Code code;
+
+  private int start;
+
+  private int end;
+
+  /** Labels for the addresses within the current function that begin a basic block. */
+  private JvmClass.Label[] labels;
+
+  /** Labels for stubs that transfer control to addresses outside the current function. */
+  private HashMap<Integer, JvmClass.Label> exits;
+
+  private void compileFunction(int f) throws Failure {
+    start = starts[f];
+    end = (f + 1 < starts.length) ? starts[f + 1] : size;
+    code = cls.new Code();
+    labels = new JvmClass.Label[end - start];
+    exits = new HashMap();
+    findLeaders();
+    reload(); // Load the value register and frame arrays into local variables
+    int last = start;
+    for (int pc = start; pc < end; pc += Machine.instrSize(prog[pc])) {
+      if (labels[pc - start] != null) {
+        code.place(labels[pc - start]);
+        countBlock(pc);
+      }
+      compileInstr(pc);
+      last = pc;
+    }
+    if (end == start || !terminates(last)) { // Fall through to the next function
+      exitTo(end);
+    }
+    for (Integer addr : exits.keySet()) {
+      code.place(exits.get(addr));
+      exitTo(addr);
+    }
+    cls.addMethod(funcName(f), FUNC, code, MAX_STACK, MAX_LOCALS);
+  }
+
+  /** Determine whether the instruction at pc always transfers control elsewhere. */
+  private boolean terminates(int pc) {
+    switch (prog[pc]) {
+      case Machine.STOP:
+      case Machine.JUMP:
+      case Machine.RETURN:
+      case Machine.CJUMP:
+        return true;
+    }
+    return false;
+  }
+
+  /** Determine whether the instruction at pc ends a basic block. */
+  private boolean endsBlock(int pc) {
+    switch (prog[pc]) {
+      case Machine.JFALSE:
+      case Machine.JNTAG:
+      case Machine.CALL:
+      case Machine.CCALL:
+      case Machine.JFALSE_SLOT:
+      case Machine.JNTAG_SLOT:
+        return true;
+    }
+    return terminates(pc);
+  }
+
+  /** Return the address that is the target of a branch instruction at pc, or -1. */
+  private int branchTarget(int pc) {
+    switch (prog[pc]) {
+      case Machine.JUMP:
+      case Machine.JFALSE:
+        return prog[pc + 1];
+      case Machine.JNTAG:
+      case Machine.JFALSE_SLOT:
+        return prog[pc + 2];
+      case Machine.JNTAG_SLOT:
+        return prog[pc + 3];
+    }
+    return (-1);
+  }
+
+  /** Mark the start of each basic block in the current function with a label. */
+  private void findLeaders() {
+    boolean leader = true;
+    for (int pc = start; pc < end; pc += Machine.instrSize(prog[pc])) {
+      if (leader) {
+        labels[pc - start] = new JvmClass.Label();
+      }
+      int t = branchTarget(pc);
+      if (t >= start && t < end && labels[t - start] == null) {
+        labels[t - start] = new JvmClass.Label();
+      }
+      leader = endsBlock(pc);
+    }
+  }
+
+  /** Add the number of instructions in the basic block starting at pc to the instruction count. */
+  private void countBlock(int pc) {
+    int n = 0;
+    for (; ; ) {
+      switch (prog[pc]) {
+        case Machine.JFALSE_SLOT:
+        case Machine.JNTAG_SLOT:
+        case Machine.PRIM_COPY:
+        case Machine.COPY2:
+          n += 2;
+          break;
+        default:
+          n++;
+      }
+      if (endsBlock(pc)) {
+        break;
+      }
+      pc += Machine.instrSize(prog[pc]);
+      if (pc >= end || labels[pc - start] != null) {
+        break;
+      }
+    }
+    code.local(JvmClass.ALOAD, L_RT);
+    code.op(JvmClass.DUP);
+    code.getfield(RT, "instrCount", "I");
+    code.push(n);
+    code.op(JvmClass.IADD);
+    code.putfield(RT, "instrCount", "I");
+  }
+
+  /** Return a label for a jump to the specified address from the current function. */
+  private JvmClass.Label target(int addr) {
+    if (addr >= start && addr < end && labels[addr - start] != null) {
+      return labels[addr - start];
+    }
+    JvmClass.Label l = exits.get(addr);
+    if (l == null) {
+      exits.put(addr, l = new JvmClass.Label());
+    }
+    return l;
+  }
+
+  /** Generate code to push the index of the function at the given address. */
+  private void pushIndex(int addr) {
+    if (addr >= 0 && addr <= size && index[addr] >= 0) {
+      code.push(index[addr]);
+    } else {
+      code.local(JvmClass.ALOAD, L_RT);
+      code.push(addr);
+      code.invokestatic(RT, "index", "(Lmil/JvmRuntime;I)I");
+    }
+  }
+
+  /** Generate code for a tail call to the function at the specified address. */
+  private void exitTo(int addr) {
+    spill();
+    pushIndex(addr);
+    code.op(JvmClass.IRETURN);
+  }
+
+  /** Save the value register in the runtime object, before control leaves this function. */
+  private void spill() {
+    code.local(JvmClass.ALOAD, L_RT);
+    code.local(JvmClass.LLOAD, L_WORD);
+    code.putfield(RT, "word", "J");
+    code.local(JvmClass.ALOAD, L_RT);
+    code.local(JvmClass.ALOAD, L_REF);
+    code.putfield(RT, "ref", "Ljava/lang/Object;");
+  }
+
+  /**
+   * Load the value register and frame arrays from the runtime object, on entry to a function, or
+   * after a call.
+   */
+  private void reload() {
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "words", "[J");
+    code.local(JvmClass.ASTORE, L_WORDS);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "refs", "[Ljava/lang/Object;");
+    code.local(JvmClass.ASTORE, L_REFS);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "word", "J");
+    code.local(JvmClass.LSTORE, L_WORD);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "ref", "Ljava/lang/Object;");
+    code.local(JvmClass.ASTORE, L_REF);
+  }
+
+  /** Push the address of frame slot fp+n. */
+  private void slot(int n) {
+    code.local(JvmClass.ILOAD, L_FP);
+    if (n != 0) {
+      code.push(n);
+      code.op(JvmClass.IADD);
+    }
+  }
+
+  /** Load frame slot fp+src into the value register. */
+  private void load(int src) {
+    code.local(JvmClass.ALOAD, L_WORDS);
+    slot(src);
+    code.op(JvmClass.LALOAD);
+    code.local(JvmClass.LSTORE, L_WORD);
+    code.local(JvmClass.ALOAD, L_REFS);
+    slot(src);
+    code.op(JvmClass.AALOAD);
+    code.local(JvmClass.ASTORE, L_REF);
+  }
+
+  /** Store the value register in frame slot fp+dst. */
+  private void store(int dst) {
+    code.local(JvmClass.ALOAD, L_WORDS);
+    slot(dst);
+    code.local(JvmClass.LLOAD, L_WORD);
+    code.op(JvmClass.LASTORE);
+    code.local(JvmClass.ALOAD, L_REFS);
+    slot(dst);
+    code.local(JvmClass.ALOAD, L_REF);
+    code.op(JvmClass.AASTORE);
+  }
+
+  /** Copy frame slot fp+src to frame slot fp+dst. */
+  private void copy(int src, int dst) {
+    code.local(JvmClass.ALOAD, L_WORDS);
+    slot(dst);
+    code.local(JvmClass.ALOAD, L_WORDS);
+    slot(src);
+    code.op(JvmClass.LALOAD);
+    code.op(JvmClass.LASTORE);
+    code.local(JvmClass.ALOAD, L_REFS);
+    slot(dst);
+    code.local(JvmClass.ALOAD, L_REFS);
+    slot(src);
+    code.op(JvmClass.AALOAD);
+    code.op(JvmClass.AASTORE);
+  }
+
+  /** Copy global i to frame slot fp+dst. */
+  private void gcopy(int i, int dst) {
+    code.local(JvmClass.ALOAD, L_WORDS);
+    slot(dst);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "gwords", "[J");
+    code.push(i);
+    code.op(JvmClass.LALOAD);
+    code.op(JvmClass.LASTORE);
+    code.local(JvmClass.ALOAD, L_REFS);
+    slot(dst);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.getfield(RT, "grefs", "[Ljava/lang/Object;");
+    code.push(i);
+    code.op(JvmClass.AALOAD);
+    code.op(JvmClass.AASTORE);
+  }
+
+  /** Jump to the specified label if the value register holds the flag false. */
+  private void jfalse(int addr) {
+    code.local(JvmClass.LLOAD, L_WORD);
+    code.op(JvmClass.LCONST_0);
+    code.op(JvmClass.LCMP);
+    code.branch(JvmClass.IFEQ, target(addr));
+  }
+
+  /** Jump to the specified label if the value register does not hold an object with the tag. */
+  private void jntag(int tag, int addr) {
+    code.local(JvmClass.ALOAD, L_REF);
+    code.invokestatic(RT, "tag", "(Ljava/lang/Object;)I");
+    code.push(tag);
+    code.branch(JvmClass.IF_ICMPNE, target(addr));
+  }
+
+  /**
+   * Generate code for a call to the function with index f, or, if f is negative, to the closure in
+   * the value register. A known function is called directly, using the trampoline only if it
+   * finishes with a tail call.
+   */
+  private void call(int o, int f) {
+    JvmClass.Label done = new JvmClass.Label();
+    JvmClass.Label cont = new JvmClass.Label();
+    spill();
+    code.local(JvmClass.ALOAD, L_RT);
+    slot(o);
+    code.invokevirtual(RT, "enter", "(I)V");
+    if (f >= 0) {
+      code.local(JvmClass.ALOAD, L_RT);
+      slot(o);
+      code.invokestatic(CLASS, funcName(f), FUNC);
+      code.local(JvmClass.ISTORE, L_RESULT);
+      code.local(JvmClass.ILOAD, L_RESULT);
+      code.branch(JvmClass.IFLT, done);
+      code.local(JvmClass.ALOAD, L_RT);
+      code.local(JvmClass.ILOAD, L_RESULT);
+    } else { // Calculate the index of the function from the closure in the value register
+      code.local(JvmClass.ALOAD, L_RT);
+      code.local(JvmClass.ALOAD, L_RT);
+      code.local(JvmClass.ALOAD, L_REF);
+      code.invokestatic(RT, "tag", "(Ljava/lang/Object;)I");
+      code.invokestatic(RT, "index", "(Lmil/JvmRuntime;I)I");
+    }
+    slot(o);
+    code.invokestatic(CLASS, "run", RUN);
+    code.local(JvmClass.ISTORE, L_RESULT);
+    code.place(done);
+    code.local(JvmClass.ILOAD, L_RESULT);
+    code.push(-2);
+    code.branch(JvmClass.IF_ICMPNE, cont);
+    code.push(-2); // Propagate STOP
+    code.op(JvmClass.IRETURN);
+    code.place(cont);
+    code.local(JvmClass.ALOAD, L_RT);
+    code.invokevirtual(RT, "leave", "()V");
+    reload();
+  }
+
+  /** Generate code for the primitive p, using arguments starting at frame slot fp+o. */
+  private void prim(int o, int p) {
+    Prim prim = Prim.findPrim(p);
+    int op = -1; // JVM opcode for a binary or unary operator
+    int cmp = -1; // JVM conditional branch for a comparison
+    boolean unsigned = false;
+    if (prim instanceof PrimBinOp) {
+      String id = prim.getId();
+      op =
+          id.equals("add")
+              ? JvmClass.LADD
+              : id.equals("sub")
+                  ? JvmClass.LSUB
+                  : id.equals("mul")
+                      ? JvmClass.LMUL
+                      : id.equals("and")
+                          ? JvmClass.LAND
+                          : id.equals("or")
+                              ? JvmClass.LOR
+                              : id.equals("xor")
+                                  ? JvmClass.LXOR
+                                  : id.equals("shl")
+                                      ? JvmClass.LSHL
+                                      : id.equals("lshr")
+                                          ? JvmClass.LUSHR
+                                          : id.equals("ashr") ? JvmClass.LSHR : -1;
+    } else if (prim instanceof PrimUnOp) {
+      String id = prim.getId();
+      op = id.equals("neg") ? JvmClass.LNEG : id.equals("not") ? JvmClass.LXOR : -1;
+    } else if (prim instanceof PrimRelOp) {
+      String id = prim.getId();
+      unsigned = id.startsWith("primU");
+      String rel = id.startsWith("primS") || unsigned ? id.substring(5) : id.substring(4);
+      cmp =
+          rel.equals("Eq")
+              ? JvmClass.IFEQ
+              : rel.equals("Neq")
+                  ? JvmClass.IFNE
+                  : rel.equals("lt")
+                      ? JvmClass.IFLT
+                      : rel.equals("le")
+                          ? JvmClass.IFLE
+                          : rel.equals("gt")
+                              ? JvmClass.IFGT
+                              : rel.equals("ge") ? JvmClass.IFGE : -1;
+    }
+
+    if (op < 0 && cmp < 0) { // Use the interpreter's implementation of the primitive
+      code.local(JvmClass.ALOAD, L_RT);
+      code.push(p);
+      slot(o);
+      code.invokevirtual(RT, "prim", "(II)V");
+      return;
+    }
+
+    slot(o);
+    code.local(JvmClass.ISTORE, L_BASE);
+    code.local(JvmClass.ALOAD, L_WORDS); // words[base] = ...
+    code.local(JvmClass.ILOAD, L_BASE);
+    code.local(JvmClass.ALOAD, L_WORDS); // ... words[base] ...
+    code.local(JvmClass.ILOAD, L_BASE);
+    code.op(JvmClass.LALOAD);
+    if (prim instanceof PrimUnOp) {
+      if (op == JvmClass.LXOR) { // bitwise not
+        code.op(JvmClass.LCONST_1);
+        code.op(JvmClass.LNEG);
+      }
+    } else {
+      code.local(JvmClass.ALOAD, L_WORDS); // ... words[base+1]
+      code.local(JvmClass.ILOAD, L_BASE);
+      code.push(1);
+      code.op(JvmClass.IADD);
+      code.op(JvmClass.LALOAD);
+      if (op == JvmClass.LSHL || op == JvmClass.LSHR || op == JvmClass.LUSHR) {
+        code.op(JvmClass.L2I); // JVM shift distances are ints
+      }
+    }
+    if (op >= 0) {
+      code.op(op);
+    } else { // Comparisons produce a flag, represented by 1 or 0
+      JvmClass.Label yes = new JvmClass.Label();
+      JvmClass.Label done = new JvmClass.Label();
+      if (unsigned) {
+        code.invokestatic("java/lang/Long", "compareUnsigned", "(JJ)I");
+      } else {
+        code.op(JvmClass.LCMP);
+      }
+      code.branch(cmp, yes);
+      code.op(JvmClass.LCONST_0);
+      code.jump(done);
+      code.place(yes);
+      code.op(JvmClass.LCONST_1);
+      code.place(done);
+    }
+    code.op(JvmClass.LASTORE);
+    code.local(JvmClass.ALOAD, L_REFS); // refs[base] = null
+    code.local(JvmClass.ILOAD, L_BASE);
+    code.op(JvmClass.ACONST_NULL);
+    code.op(JvmClass.AASTORE);
+  }
+
+  /** Generate code for the instruction at the specified address. */
+  private void compileInstr(int pc) {
+    switch (prog[pc]) {
+      case Machine.STOP:
+        code.push(-2);
+        code.op(JvmClass.IRETURN);
+        return;
+
+      case Machine.JUMP:
+        code.jump(target(prog[pc + 1]));
+        return;
+
+      case Machine.JFALSE:
+        jfalse(prog[pc + 1]);
+        return;
+
+      case Machine.JNTAG:
+        jntag(prog[pc + 1], prog[pc + 2]);
+        return;
+
+      case Machine.CALL:
+        {
+          int addr = prog[pc + 2];
+          int f = (addr >= 0 && addr <= size) ? index[addr] : (-1);
+          if (f < 0) { // Not the start of a function
+            invalid(pc);
+          } else {
+            call(prog[pc + 1], f);
+          }
+        }
+        return;
+
+      case Machine.RETURN:
+        spill();
+        code.push(-1);
+        code.op(JvmClass.IRETURN);
+        return;
+
+      case Machine.CJUMP:
+        spill();
+        code.local(JvmClass.ALOAD, L_RT);
+        code.local(JvmClass.ALOAD, L_REF);
+        code.invokestatic(RT, "tag", "(Ljava/lang/Object;)I");
+        code.invokestatic(RT, "index", "(Lmil/JvmRuntime;I)I");
+        code.op(JvmClass.IRETURN);
+        return;
+
+      case Machine.CCALL:
+        call(prog[pc + 1], -1);
+        return;
+
+      case Machine.PRIM:
+        prim(prog[pc + 1], prog[pc + 2]);
+        return;
+
+      case Machine.LOAD:
+        load(prog[pc + 1]);
+        return;
+
+      case Machine.GLOAD:
+        code.local(JvmClass.ALOAD, L_RT);
+        code.getfield(RT, "gwords", "[J");
+        code.push(prog[pc + 1]);
+        code.op(JvmClass.LALOAD);
+        code.local(JvmClass.LSTORE, L_WORD);
+        code.local(JvmClass.ALOAD, L_RT);
+        code.getfield(RT, "grefs", "[Ljava/lang/Object;");
+        code.push(prog[pc + 1]);
+        code.op(JvmClass.AALOAD);
+        code.local(JvmClass.ASTORE, L_REF);
+        return;
+
+      case Machine.STORE:
+        store(prog[pc + 1]);
+        return;
+
+      case Machine.COPY:
+        copy(prog[pc + 1], prog[pc + 2]);
+        return;
+
+      case Machine.GCOPY:
+        gcopy(prog[pc + 1], prog[pc + 2]);
+        return;
+
+      case Machine.GSAVE:
+        code.local(JvmClass.ALOAD, L_RT);
+        code.getfield(RT, "gwords", "[J");
+        code.push(prog[pc + 2]);
+        code.local(JvmClass.ALOAD, L_WORDS);
+        slot(prog[pc + 1]);
+        code.op(JvmClass.LALOAD);
+        code.op(JvmClass.LASTORE);
+        code.local(JvmClass.ALOAD, L_RT);
+        code.getfield(RT, "grefs", "[Ljava/lang/Object;");
+        code.push(prog[pc + 2]);
+        code.local(JvmClass.ALOAD, L_REFS);
+        slot(prog[pc + 1]);
+        code.op(JvmClass.AALOAD);
+        code.op(JvmClass.AASTORE);
+        code.local(JvmClass.ALOAD, L_RT);
+        code.push(prog[pc + 2]);
+        code.invokevirtual(RT, "savedGlobal", "(I)V");
+        return;
+
+      case Machine.ALLOC:
+        code.push(prog[pc + 1]);
+        code.local(JvmClass.ALOAD, L_WORDS);
+        code.local(JvmClass.ALOAD, L_REFS);
+        slot(prog[pc + 3]);
+        code.push(prog[pc + 2]);
+        code.invokestatic(RT, "alloc", "(I[J[Ljava/lang/Object;II)Ljava/lang/Object;");
+        code.local(JvmClass.ASTORE, L_REF);
+        return;
+
+      case Machine.SEL:
+        code.local(JvmClass.ALOAD, L_REF);
+        code.push(prog[pc + 1]);
+        code.local(JvmClass.ALOAD, L_WORDS);
+        code.local(JvmClass.ALOAD, L_REFS);
+        slot(prog[pc + 2]);
+        code.invokestatic(RT, "sel", "(Ljava/lang/Object;I[J[Ljava/lang/Object;I)V");
+        return;
+
+      case Machine.JFALSE_SLOT:
+        load(prog[pc + 1]);
+        jfalse(prog[pc + 2]);
+        return;
+
+      case Machine.JNTAG_SLOT:
+        load(prog[pc + 1]);
+        jntag(prog[pc + 2], prog[pc + 3]);
+        return;
+
+      case Machine.PRIM_COPY:
+        prim(prog[pc + 1], prog[pc + 2]);
+        copy(prog[pc + 1], prog[pc + 3]);
+        return;
+
+      case Machine.COPY2:
+        copy(prog[pc + 1], prog[pc + 2]);
+        copy(prog[pc + 3], prog[pc + 4]);
+        return;
+    }
+    invalid(pc);
+  }
+
+  /** Generate code to report an invalid instruction at the specified address. */
+  private void invalid(int pc) {
+    code.push(pc);
+    code.invokestatic(RT, "invalid", "(I)I");
+    code.op(JvmClass.IRETURN);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.PrintWriter;
+
+/**
+ * Holds the state of a program that has been compiled to JVM bytecode by JvmCompiler, and provides
+ * support functions that are called from the generated code. The generated classes are loaded by a
+ * separate class loader, so any members that they access must be public. Frame slots use the same
+ * representation as the unboxed engine in Machine: words and flags are stored in the words array,
+ * and the refs array is only used for heap objects.
+ */
+public class JvmRuntime {
+
+  public long[] words = new long[4000];
+
+  public Object[] refs = new Object[4000];
+
+  public long[] gwords;
+
+  public Object[] grefs;
+
+  /** Holds the contents of the value register when control passes between functions. */
+  public long word;
+
+  public Object ref;
+
+  public int instrCount;
+
+  public int callDepth;
+
+  public int maxCallDepth;
+
+  private PrintWriter out;
+
+  /** Maps code addresses to the indices of the corresponding functions in the generated code. */
+  private int[] index;
+
+  /** The maximum number of frame slots that can be accessed by any single instruction. */
+  private int frameSize;
+
+  /** Default constructor. */
+  JvmRuntime(PrintWriter out, int[] index, Value[] globals, int numGlobals, int frameSize) {
+    this.out = out;
+    this.index = index;
+    this.frameSize = frameSize;
+    ensureSlots(0);
+    gwords = new long[numGlobals];
+    grefs = new Object[numGlobals];
+    for (int i = 0; i < numGlobals; i++) {
+      Value v = globals[i];
+      if (v != null && v.isUnboxed()) {
+        gwords[i] = v.unboxedWord();
+      } else {
+        grefs[i] = v;
+      }
+    }
+  }
+
+  /**
+   * Record entry to a new function call with its frame at the given fp. Generated code reloads its
+   * copies of words and refs after every call, so the frame slot arrays may be replaced here.
+   */
+  public void enter(int fp) {
+    ensureSlots(fp);
+    if (++callDepth > maxCallDepth) {
+      maxCallDepth = callDepth;
+    }
+  }
+
+  /** Ensure that the frame slot arrays have room for a full frame at the given fp. */
+  private void ensureSlots(int fp) {
+    if (fp + frameSize > words.length) {
+      int size = Machine.growSize(words.length, fp, frameSize);
+      long[] newWords = new long[size];
+      Object[] newRefs = new Object[size];
+      for (int i = 0; i < words.length; i++) {
+        newWords[i] = words[i];
+        newRefs[i] = refs[i];
+      }
+      words = newWords;
+      refs = newRefs;
+    }
+  }
+
+  /** Record a return from a function call. */
+  public void leave() {
+    callDepth--;
+  }
+
+  /** Find the index of the function that starts at the given address. */
+  public static int index(JvmRuntime rt, int addr) throws Failure {
+    int i = (addr >= 0 && addr < rt.index.length) ? rt.index[addr] : (-1);
+    if (i < 0) {
+      throw new Failure("no compiled function at address " + addr);
+    }
+    return i;
+  }
+
+  /** Report an attempt to run a function index that does not exist in the generated code. */
+  public static int noCode(int i) throws Failure {
+    throw new Failure("no compiled function with index " + i);
+  }
+
+  /** Report an attempt to execute an invalid instruction. */
+  public static int invalid(int addr) throws Failure {
+    throw new Failure("invalid instruction at address " + addr);
+  }
+
+  /** Return the tag of a heap object. */
+  public static int tag(Object ref) throws Failure {
+    if (ref == null) {
+      throw new Failure("value is not tagged");
+    }
+    return ((Value) ref).getTag();
+  }
+
+  /** Allocate a heap object with the given tag and n fields, starting at the given frame slot. */
+  public static Object alloc(int tag, long[] words, Object[] refs, int base, int n) {
+    Value[] vals = new Value[n];
+    for (int i = 0; i < n; i++) {
+      Value v = (Value) refs[base + i];
+      vals[i] = (v != null) ? v : new WordValue(words[base + i]);
+    }
+    return new DataValue(tag, vals);
+  }
+
+  /** Extract the ith component of a heap object and save it in the specified frame slot. */
+  public static void sel(Object ref, int i, long[] words, Object[] refs, int dst) throws Failure {
+    if (ref == null) {
+      throw new Failure("value does not have components");
+    }
+    Value v = ((Value) ref).getComponent(i);
+    if (v.isUnboxed()) {
+      words[dst] = v.unboxedWord();
+      refs[dst] = null;
+    } else {
+      refs[dst] = v;
+    }
+  }
+
+  /** Execute the primitive with number p using the arguments in the frame slots starting at base. */
+  public void prim(int p, int base) throws Failure {
+    Prim.exec(out, p, base, words);
+    refs[base] = null;
+  }
+
+  /** Log an update to the global variable i. */
+  public void savedGlobal(int i) {
+    debug.Log.println(
+        "Saved global: " + i + " [" + (grefs[i] == null ? Long.toString(gwords[i]) : grefs[i]) + "]");
+  }
+}
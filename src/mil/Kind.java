@@ -41,7 +41,7 @@ public abstract class Kind {
 
   private static Kind[] simpleCache;
 
-  public static Kind simple(int n) {
+  public static synchronized Kind simple(int n) {
     if (simpleCache == null) {
       simpleCache = new Kind[10];
     } else if (n >= simpleCache.length) {
@@ -60,7 +60,7 @@ public abstract class Kind {
 
   private static Kind[] tupleCache;
 
-  public static Kind tuple(int n) {
+  public static synchronized Kind tuple(int n) {
     if (tupleCache == null) {
       tupleCache = new Kind[10];
     } else if (n >= tupleCache.length) {
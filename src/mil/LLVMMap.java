@@ -45,6 +45,11 @@ class LLVMMap extends TypeSet {
     prog.add(new llvm.DefnComment(comment, new llvm.Typedef(dt)));
   }
 
+  /** Return a new type with the given definition, named for use in the associated program. */
+  llvm.DefinedType definedType(llvm.Type definition) {
+    return prog.definedType(definition);
+  }
+
   /** Add a declaration for a primitive function to the program associated with this LLVMMap. */
   void declare(String name, llvm.FunctionType ftype) {
     prog.add(new llvm.FuncDecl(name, ftype));
@@ -70,7 +75,7 @@ class LLVMMap extends TypeSet {
   }
 
   llvm.Type dataPtrTypeCalc(Type c) {
-    llvm.DefinedType dt = new llvm.DefinedType(new llvm.StructType(new llvm.Type[] {tagType()}));
+    llvm.DefinedType dt = definedType(new llvm.StructType(new llvm.Type[] {tagType()}));
     typedef("data layout for values of type " + c, dt);
     return dt.ptr();
   }
@@ -80,7 +85,7 @@ class LLVMMap extends TypeSet {
   llvm.Type cfunLayoutType(Cfun key) {
     llvm.Type t = cfunLayoutTypeCache.get(key);
     if (t == null) {
-      llvm.DefinedType dt = new llvm.DefinedType(key.cfunLayoutTypeCalc(this));
+      llvm.DefinedType dt = definedType(key.cfunLayoutTypeCalc(this));
       typedef("layout for " + key, dt);
       cfunLayoutTypeCache.put(key, dt);
       return dt;
@@ -93,8 +98,8 @@ class LLVMMap extends TypeSet {
    * assumed to be in canonical form.
    */
   llvm.Type closurePtrTypeCalc(Type c) {
-    llvm.DefinedType fun = new llvm.DefinedType(); // %fun = type %rng (%clo*, %dom...)*
-    llvm.DefinedType clo = new llvm.DefinedType(); // %clo = type { %fun }
+    llvm.DefinedType fun = definedType(null); // %fun = type %rng (%clo*, %dom...)*
+    llvm.DefinedType clo = definedType(null); // %clo = type { %fun }
     llvm.Type ptr = clo.ptr(); // %ptr = type %clo*
     llvm.Type[] dom = stackArg(1).closureArgs(this, ptr, 0, 0);
     llvm.Type rng = toLLVM(stackArg(2));
@@ -114,7 +119,7 @@ class LLVMMap extends TypeSet {
   llvm.Type closureLayoutType(ClosureDefn key) {
     llvm.Type t = closureLayoutTypeCache.get(key);
     if (t == null) {
-      llvm.DefinedType dt = new llvm.DefinedType(key.closureLayoutTypeCalc(this));
+      llvm.DefinedType dt = definedType(key.closureLayoutTypeCalc(this));
       typedef("layout for " + key, dt);
       closureLayoutTypeCache.put(key, dt);
       return dt;
@@ -0,0 +1,249 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Implements loop invariant code motion for a recursive scc of blocks. Pure primitive calls at the
+ * start of a block in the loop whose arguments are loop invariant (i.e., invariant parameters, as
+ * determined by invariantAnalysis, or the results of other hoisted calls) are removed from the
+ * loop. Each block in the loop is replaced by a preheader that calculates the hoisted values once
+ * and then enters a new version of the loop in which the hoisted values are passed as extra
+ * parameters. Every block in the loop is treated as a potential loop header, so the scc may be
+ * entered at any point.
+ */
+class LoopHoist {
+
+  /** The blocks in the loop. */
+  private ArrayList<Block> blocks = new ArrayList<Block>();
+
+  /** Set to false if the scc contains a definition that is not a block. */
+  private boolean isLoop = true;
+
+  /** Records the variables whose values are loop invariant in the block that is being scanned. */
+  private Temps invariant;
+
+  /** Holds the variables that are bound by calls hoisted from each block. */
+  private ArrayList<ArrayList<Temp[]>> hoistedVars = new ArrayList<ArrayList<Temp[]>>();
+
+  /** Holds the calls that are hoisted from each block. */
+  private ArrayList<ArrayList<Tail>> hoistedTails = new ArrayList<ArrayList<Tail>>();
+
+  /** Maps each block in the original loop to the corresponding block in the new loop. */
+  private HashMap<Block, Block> loopBlocks = new HashMap<Block, Block>();
+
+  /** The extra parameters for the block in the new loop whose code is being generated. */
+  private Temp[] ext;
+
+  /** Default constructor. */
+  LoopHoist(DefnSCC scc) {
+    for (Defns ds = scc.getBindings(); ds != null; ds = ds.next) {
+      ds.head.addToLoop(this);
+    }
+  }
+
+  /** Add a block to the loop. */
+  void add(Block b) {
+    blocks.add(b);
+  }
+
+  /** Record that the scc contains a definition that is not a block. */
+  void notLoop() {
+    isLoop = false;
+  }
+
+  /**
+   * Return true if the given parameter of b is loop invariant, with a value that can be found in a
+   * parameter of every block that might be used to enter the loop.
+   */
+  private boolean isInvariant(Block b, int i) {
+    for (int k = 0; k < blocks.size(); k++) {
+      if (b.invariantSource(i, blocks.get(k)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Start scanning the code for a block in the loop, given the parameters of that block. */
+  void startBlock(Block b, Temp[] params) {
+    invariant = null;
+    for (int i = 0; i < params.length; i++) {
+      if (isInvariant(b, i)) {
+        invariant = params[i].add(invariant);
+      }
+    }
+    hoistedVars.add(new ArrayList<Temp[]>());
+    hoistedTails.add(new ArrayList<Tail>());
+  }
+
+  /**
+   * Determine whether a binding (vs <- t) in the block that is being scanned can be hoisted out of
+   * the loop, recording the binding if it can. Otherwise, the variables in vs will no longer be
+   * treated as invariant in the rest of the block.
+   */
+  boolean hoist(Temp[] vs, Tail t) {
+    if (t.isHoistable() && vs.length > 0 && allInvariant(t.add(null))) {
+      for (int i = 0; i < vs.length; i++) {
+        if (!vs[i].isLive()) {
+          invariant = Temps.remove(vs, invariant);
+          return false;
+        }
+      }
+      for (int i = 0; i < vs.length; i++) {
+        invariant = vs[i].add(invariant);
+      }
+      hoistedVars.get(hoistedVars.size() - 1).add(vs);
+      hoistedTails.get(hoistedTails.size() - 1).add(t);
+      MILProgram.report(
+          OptimizerStats.HOIST, "hoisting loop invariant binding for " + Atom.toString(vs));
+      return true;
+    }
+    invariant = Temps.remove(vs, invariant);
+    return false;
+  }
+
+  /** Test to see if all of the variables in the given list are loop invariant. */
+  private boolean allInvariant(Temps vs) {
+    for (; vs != null; vs = vs.next) {
+      if (!vs.head.isIn(invariant)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Collect the variables that are bound by calls hoisted from the kth block of the loop. */
+  private Temp[] hoistedFrom(int k) {
+    ArrayList<Temp[]> vss = hoistedVars.get(k);
+    Temp[][] tss = new Temp[vss.size()][];
+    for (int i = 0; i < tss.length; i++) {
+      tss[i] = vss.get(i);
+    }
+    return Temp.concat(tss);
+  }
+
+  /** Hoist invariant calls out of the loop, returning true if any changes were made. */
+  boolean run() {
+    if (!isLoop) {
+      return false;
+    }
+
+    // Scan the blocks in the loop to find bindings that can be hoisted:
+    int n = blocks.size();
+    Code[] bodies = new Code[n];
+    Temp[][] hoisted = new Temp[n][];
+    int total = 0;
+    for (int k = 0; k < n; k++) {
+      bodies[k] = blocks.get(k).hoistInvariants(this);
+      hoisted[k] = hoistedFrom(k);
+      total += hoisted[k].length;
+    }
+    if (total == 0) {
+      return false;
+    }
+
+    // Create the blocks for the new loop, each with extra parameters for the hoisted values:
+    Temp[][] exts = new Temp[n][];
+    for (int k = 0; k < n; k++) {
+      Temp[][] tss = new Temp[n][];
+      for (int m = 0; m < n; m++) {
+        tss[m] = (m == k) ? hoisted[m] : Temp.makeTemps(hoisted[m].length);
+      }
+      exts[k] = Temp.concat(tss);
+      Block b = blocks.get(k);
+      loopBlocks.put(b, b.loopBlock(exts[k]));
+    }
+
+    // Generate code for the new loop, redirecting calls within the loop to the new blocks:
+    for (int k = 0; k < n; k++) {
+      ext = exts[k];
+      loopBlocks.get(blocks.get(k)).setCode(bodies[k].redirectLoopCalls(this));
+    }
+
+    // Replace the code for each block in the original loop with a preheader:
+    for (int k = 0; k < n; k++) {
+      Block b = blocks.get(k);
+      b.setCode(preheader(b, loopBlocks.get(b)));
+    }
+    return true;
+  }
+
+  /**
+   * Redirect a call to a block in the original loop to the corresponding block in the new loop,
+   * passing the hoisted values as extra arguments. Returns null if the call is to a block outside
+   * the loop.
+   */
+  BlockCall redirect(Block b, Atom[] args) {
+    Block nb = loopBlocks.get(b);
+    if (nb == null) {
+      return null;
+    }
+    Atom[] nargs = new Atom[args.length + ext.length];
+    for (int i = 0; i < args.length; i++) {
+      nargs[i] = args[i];
+    }
+    for (int i = 0; i < ext.length; i++) {
+      nargs[args.length + i] = ext[i];
+    }
+    return new BlockCall(nb, nargs);
+  }
+
+  /**
+   * Generate a preheader for the loop when it is entered at block b: the hoisted calls are executed
+   * with arguments taken from the parameters of b, and then the new loop is entered at nb.
+   */
+  private Code preheader(Block b, Block nb) {
+    Temp[] params = b.getParams();
+    ArrayList<Temp[]> vss = new ArrayList<Temp[]>();
+    ArrayList<Tail> ts = new ArrayList<Tail>();
+    for (int k = 0; k < blocks.size(); k++) {
+      Block c = blocks.get(k);
+      Temp[] cparams = c.getParams();
+      TempSubst s = null;
+      for (int i = 0; i < cparams.length; i++) {
+        int j = c.invariantSource(i, b);
+        if (j >= 0) {
+          s = new TempSubst(cparams[i], params[j], s);
+        }
+      }
+      ArrayList<Temp[]> hvs = hoistedVars.get(k);
+      ArrayList<Tail> hts = hoistedTails.get(k);
+      for (int i = 0; i < hvs.size(); i++) {
+        Temp[] vs = Temp.makeTemps(hvs.get(i).length);
+        ts.add(hts.get(i).apply(s));
+        vss.add(vs);
+        s = TempSubst.extend(hvs.get(i), vs, s);
+      }
+    }
+    Temp[][] tss = new Temp[vss.size()][];
+    for (int i = 0; i < tss.length; i++) {
+      tss[i] = vss.get(i);
+    }
+    Code code = new Done(new BlockCall(nb, Temp.append(params, Temp.concat(tss))));
+    for (int i = vss.size() - 1; i >= 0; i--) {
+      code = new Bind(vss.get(i), ts.get(i), code);
+    }
+    return code;
+  }
+}
@@ -79,7 +79,7 @@ public class MILLoader extends core.Loader {
     // Run through strongly connected components to build up a MIL environment for the complete
     // program.
     MILEnv milenv = Builtin.obj;
-    MILProgram full = new MILProgram();
+    MILProgram full = new MILProgram(program.getCompilation());
     for (; sccs != null; sccs = sccs.next) {
       MILASTSCC scc = sccs.head;
       // TODO: At some point, we may be able to allow for mutual recursion between MIL files,
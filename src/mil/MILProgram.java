@@ -21,10 +21,24 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Provides a representation for MIL programs. */
 public class MILProgram {
 
+  /** The compilation that this program belongs to. */
+  private Compilation comp;
+
+  /** Construct an empty program that belongs to the given compilation. */
+  public MILProgram(Compilation comp) {
+    this.comp = comp;
+  }
+
+  /** Return the compilation that this program belongs to. */
+  public Compilation getCompilation() {
+    return comp;
+  }
+
   /** The main definition for this program, if specified. */
   private Defn main = null;
 
@@ -70,6 +84,52 @@ public class MILProgram {
    */
   public void shake() {
     sccs = Defns.searchReverse(reachable()); // Compute the strongly-connected components
+    shakenAt = comp.rewrites;
+  }
+
+  /**
+   * Records the value of the rewrites counter at the time of the last call to shake(), or (-1) if
+   * the call graph information for this program must be recomputed before it is next used.
+   */
+  private int shakenAt = (-1);
+
+  /**
+   * Repeat tree shaking during optimization, but only if a rewrite has been reported since the
+   * previous call to shake(). Every optimizer rewrite that changes the code is reported, so the
+   * reachable definitions, their occurrence counts, and the strongly-connected components that a
+   * new shake() would compute are otherwise identical to those that are already available. This
+   * invariant can be tested with the --check-reshake option. The call graph is not updated
+   * incrementally: after any rewrite, shake() recomputes it from scratch. The order of the sccs,
+   * and of the callers of each definition, depends on the order of a depth-first search over the
+   * whole program; that order determines the order in which later passes create and name new
+   * definitions, and so a local update would also have to reproduce it exactly.
+   */
+  private void reshake() {
+    if (shakenAt != comp.rewrites) {
+      shake();
+    } else if (comp.getCheckReshake()) {
+      String before = shakeSummary();
+      shake();
+      if (!before.equals(shakeSummary())) {
+        debug.Internal.error("reshake skipped a shake() that would have changed the call graph");
+      }
+    }
+  }
+
+  /** Return a description of the call graph information that was computed by the last shake(). */
+  private String shakeSummary() {
+    StringBuilder buf = new StringBuilder();
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      buf.append(dsccs.head.isRecursive() ? "recursive" : "not recursive");
+      for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
+        buf.append(' ').append(ds.head).append('/').append(ds.head.getOccurs()).append(" <-");
+        for (Defns cs = ds.head.getCallers(); cs != null; cs = cs.next) {
+          buf.append(' ').append(cs.head);
+        }
+      }
+      buf.append('\n');
+    }
+    return buf.toString();
   }
 
   /** Generate a dot description of this program's call graph on the specified PrintWriter. */
@@ -108,9 +168,15 @@ public class MILProgram {
     out.println();
   }
 
-  /** Add a special block for aborting the program. */
-  public static final Block abort =
-      new Block(BuiltinPosition.pos, Temp.noTemps, new Done(Prim.halt.withArgs()));
+  /** Return the special block for aborting the program in the current compilation. */
+  public static Block abort() {
+    return Compilation.current().abort;
+  }
+
+  /** Make a special block for aborting the program. */
+  static Block abortBlock() {
+    return new Block(BuiltinPosition.pos, Temp.noTemps, new Done(Prim.halt.withArgs()));
+  }
 
   public void typeChecking(Handler handler) throws Failure {
     shake();
@@ -121,7 +187,7 @@ public class MILProgram {
   }
 
   public MachineBuilder generateMachineBuilder(Handler handler) {
-    MachineBuilder builder = new MachineBuilder();
+    MachineBuilder builder = new MachineBuilder(comp.getFuseInstructions());
 
     // In the first pass over the MIL program, we generate code for the main function, starting at
     // address 0,
@@ -143,11 +209,22 @@ public class MILProgram {
     return builder;
   }
 
-  public static int count = 0;
+  /** Report a rewrite of the given kind (one of the constants in OptimizerStats). */
+  public static void report(String kind, String msg) {
+    Compilation.current().report(kind, msg);
+  }
 
-  public static void report(String msg) {
-    debug.Log.println(msg);
-    count++;
+  /** Start recording metrics for an optimizer pass, if statistics are enabled. */
+  private OptimizerStats.Pass startPass(String name) {
+    OptimizerStats stats = comp.getStats();
+    return (stats == null) ? null : stats.start(name, round, this);
+  }
+
+  /** Finish recording metrics for an optimizer pass that was started by startPass(). */
+  private void endPass(OptimizerStats.Pass p) {
+    if (p != null) {
+      comp.getStats().end(p, this);
+    }
   }
 
   /**
@@ -158,42 +235,160 @@ public class MILProgram {
    */
   public static final int MAX_OPTIMIZE_PASSES = 42;
 
-  /** Run the optimizer on this program. */
+  /** Counts the optimizer rounds, used to track which definitions have changed recently. */
+  private int round = 0;
+
+  /** The first round of the current call to optimize(), in which every scc is visited. */
+  private int firstRound = 0;
+
+  /** Determine whether the definitions in the given scc should be visited in this round. */
+  private boolean visit(DefnSCC scc) {
+    return !comp.getWorklist() || scc.isActive(round) || round == firstRound;
+  }
+
+  /**
+   * Record that the definitions in the given scc have changed if any steps were reported on the
+   * current thread since its count of reported steps had the given value.
+   */
+  private void changed(DefnSCC scc, int before) {
+    if (comp.getWorklist() && comp.reported() != before) {
+      scc.markChanged(round);
+    }
+  }
+
+  /** Limits code growth from inlining in the current call to optimize(), or null if unlimited. */
+  private InlineBudget budget = null;
+
+  /** Return the number of definitions in this program. */
+  int numDefns() {
+    int n = 0;
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      n += Defns.length(dsccs.head.getBindings());
+    }
+    return n;
+  }
+
+  /** Return the total size of the code for the definitions in this program. */
+  int codeSize() {
+    int size = 0;
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
+        size += ds.head.codeSize();
+      }
+    }
+    return size;
+  }
+
+  /** Run the optimizer on this program, within the compilation that it belongs to. */
   public void optimize() {
+    Compilation prev = comp.enter();
+    try {
+      runOptimizer();
+    } finally {
+      Compilation.leave(prev);
+    }
+  }
+
+  /** Run the main and cleanup loops of the optimizer on this program. */
+  private void runOptimizer() {
     int totalCount = 0;
-    count = 1;
-    for (int i = 0; i < MAX_OPTIMIZE_PASSES && count > 0; i++) {
+    OptimizerStats.Pass p;
+    budget = InlineBudget.forProgram(codeSize(), comp.getInlineGrowth());
+    shakenAt = (-1);
+    firstRound = ++round;
+    comp.count = 1;
+    for (int i = 0; i < MAX_OPTIMIZE_PASSES && comp.count > 0; i++, round++) {
       debug.Log.println("-------------------------");
-      count = 0;
+      comp.count = 0;
+      p = startPass("inlining");
       inlining();
+      endPass(p);
       debug.Log.println("Inlining pass finished, running shake.");
-      shake();
+      p = startPass("shake");
+      reshake();
+      endPass(p);
+      p = startPass("liftAllocators");
       liftAllocators(); // TODO: Is this the right position for liftAllocators?
+      endPass(p);
+      p = startPass("unboxResults");
+      unboxResults();
+      endPass(p);
+      p = startPass("eliminateUnusedArgs");
       eliminateUnusedArgs();
-      shake();
+      endPass(p);
+      p = startPass("shake");
+      reshake();
+      endPass(p);
+      p = startPass("flow");
       flow();
+      endPass(p);
+      // Constant propagation is the most expensive pass, and its roots (the entry points and main)
+      // do not change while the optimizer runs, so it is only run in the first round:
+      if (i == 0 && comp.getConstantPropagation()) {
+        p = startPass("constProp");
+        constProp();
+        endPass(p);
+      }
+      p = startPass("hoistInvariants");
+      hoistInvariants();
+      endPass(p);
       debug.Log.println("Flow pass finished, running shake.");
-      shake();
-      debug.Log.println("Steps performed = " + count);
-      totalCount += count;
+      p = startPass("shake");
+      reshake();
+      endPass(p);
+      debug.Log.println("Steps performed = " + comp.count);
+      totalCount += comp.count;
     }
 
     // Final cleanup: look for opportunities to collapse duplicated definitions:
-    count = 1;
-    for (int i = 0; i < MAX_OPTIMIZE_PASSES && count > 0; i++) {
+    comp.count = 1;
+    for (int i = 0; i < MAX_OPTIMIZE_PASSES && comp.count > 0; i++, round++) {
       debug.Log.println("-------------------------");
-      count = 0;
+      comp.count = 0;
+      p = startPass("collapse");
       collapse(); // TODO: move inside loop?
+      endPass(p);
       //    collect();
-      shake();
+      p = startPass("shake");
+      reshake();
+      endPass(p);
+      p = startPass("inlining");
       inlining();
-      shake();
+      endPass(p);
+      p = startPass("shake");
+      reshake();
+      endPass(p);
+      p = startPass("flow");
       flow();
-      shake(); // restore SCCs
-      debug.Log.println("Cleanup steps performed = " + count);
-      totalCount += count;
+      endPass(p);
+      p = startPass("shake");
+      reshake(); // restore SCCs
+      endPass(p);
+      debug.Log.println("Cleanup steps performed = " + comp.count);
+      totalCount += comp.count;
     }
     debug.Log.println("TOTAL steps performed = " + totalCount);
+    if (budget != null) {
+      budget.report();
+      budget = null;
+    }
+  }
+
+  /**
+   * Run the optimizer on this program using an execution profile, obtained by running the machine
+   * that was generated by the given builder, to guide inlining decisions. Calls in blocks that are
+   * hot are inlined more aggressively, while calls in blocks that were never executed are only
+   * inlined if that will not duplicate code. If the profile is empty (for example, because the
+   * program has no main definition), then the optimizer runs without profile information.
+   */
+  public void optimize(MachineBuilder builder, Profile profile) {
+    long hot = profile.hotThreshold();
+    if (hot > 0) {
+      builder.applyProfile(profile);
+    }
+    comp.hotExecCount = hot;
+    optimize();
+    comp.hotExecCount = 0;
   }
 
   /**
@@ -205,15 +400,35 @@ public class MILProgram {
    * main inliner!
    */
   public void inlining() {
-    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
-      DefnSCC scc = dsccs.head;
-      scc.returnAnalysis(); // Identify blocks that are guaranteed not to return
-      scc.cleanup(); // Use results of return analysis to clean up code
-      scc
-          .detectLoops(); // Rewrite block definitions that could send the inliner into an infinite
-                          // loop
-      scc.inlining(); // Perform inlining on the definitions inside this scc
-    }
+    // Identify blocks that are guaranteed not to return. Each scc only reads the results for the
+    // sccs that it depends on, none of which are changed by the cleanup or inlining steps below,
+    // so this can be done for all sccs before any of them are rewritten.
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        scc.returnAnalysis();
+      }
+    }.run(sccs, true);
+    // Each scc is rewritten after the sccs that it depends on, so the code that it inlines is not
+    // changed by any other scc that is being rewritten at the same time:
+    if (budget != null) {
+      budget.startPass();
+    }
+    comp.budget = budget;
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        if (MILProgram.this.visit(scc)) {
+          int before = comp.reported();
+          if (budget != null) {
+            budget.startScc(scc);
+          }
+          scc.cleanup(); // Use results of return analysis to clean up code
+          scc.detectLoops(); // Rewrite blocks that could send the inliner into an infinite loop
+          scc.inlining(); // Perform inlining on the definitions inside this scc
+          changed(scc, before);
+        }
+      }
+    }.run(sccs, true);
+    comp.budget = null;
   }
 
   /**
@@ -221,70 +436,127 @@ public class MILProgram {
    * SCCs.
    */
   public void liftAllocators() {
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        if (MILProgram.this.visit(scc)) {
+          int before = comp.reported();
+          for (Defns ds = scc.getBindings(); ds != null; ds = ds.next) {
+            ds.head.liftAllocators();
+          }
+          changed(scc, before);
+        }
+      }
+    }.run(sccs, true);
+  }
+
+  /**
+   * Run an interprocedural constant propagation over the blocks of this program, and use the
+   * results to eliminate tests with fixed outcomes and to replace parameters that always hold the
+   * same static value. Parameters that are no longer used will be removed by eliminateUnusedArgs.
+   * Removing a parameter from a loop can still change the slots that hold the remaining arguments
+   * and turn a fused copy on the back edge into a swap, so a few loops execute slightly more
+   * bytecode instructions than without this pass (which can be disabled with --no-const-prop).
+   */
+  void constProp() {
+    ConstProp cp = new ConstProp(main);
+    cp.analyze(sccs);
     for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      int before = comp.reported();
       for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
-        ds.head.liftAllocators();
+        ds.head.constRewrite(cp);
       }
+      changed(dsccs.head, before);
     }
   }
 
-  /** Analyze and rewrite this program to remove unused Block and ClosureDefn arguments. */
-  void eliminateUnusedArgs() {
-    int totalUnused = 0;
-
-    // Phase 1: Calculate unused argument information for every Block and ClosureDefn:
+  /**
+   * Replace non-tail calls to blocks that always return newly allocated objects with calls to
+   * derived blocks that return the fields of those objects, provided that the results do not
+   * escape from the calling block. The allocation is then rebuilt in the caller, where it can
+   * usually be eliminated by a subsequent flow pass.
+   */
+  void unboxResults() {
     for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
-      // Initialize used argument information for each definition
+      int before = comp.reported();
       for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
-        ds.head.clearUsedArgsInfo();
+        ds.head.unboxResults();
       }
+      changed(dsccs.head, before);
+    }
+  }
 
-      // Calculate the number of unused arguments for the definitions in this strongly-connected
-      // component, iterating until either there are no unused arguments, or else until we reach
-      // a fixed point (i.e., we get the same number of unused args on two successive passes).
-      int lastUnused = 0;
-      int unused = 0;
-      do {
-        lastUnused = unused;
-        unused = 0;
-        for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
-          unused += ds.head.countUnusedArgs();
-        }
-      } while (unused > 0 && unused != lastUnused);
-      totalUnused += unused;
+  /**
+   * Hoist loop invariant calls out of the recursive sccs in this program, replacing each loop with
+   * a new version that receives the hoisted values as extra parameters.
+   */
+  void hoistInvariants() {
+    invariantAnalysis();
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      int before = comp.reported();
+      dsccs.head.hoistInvariants();
+      changed(dsccs.head, before);
     }
+  }
 
-    // Phase 2: Rewrite the program if there are unused arguments:
-    if (totalUnused > 0) {
-      for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
-        for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
-          ds.head.removeUnusedArgs();
-        }
+  /** Analyze and rewrite this program to remove unused Block and ClosureDefn arguments. */
+  void eliminateUnusedArgs() {
+    // Phase 1: Calculate unused argument information for every Block and ClosureDefn:
+    final AtomicInteger totalUnused = new AtomicInteger();
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        totalUnused.addAndGet(scc.countUnusedArgs());
       }
+    }.run(sccs, true);
+
+    // Phase 2: Rewrite the program if there are unused arguments. Each definition only rewrites
+    // its own parameters and the calls to it, so the sccs can be visited in any order (markChanged
+    // may also update the callers in other sccs, but only ever sets them to the current round):
+    if (totalUnused.get() > 0) {
+      new SCCScheduler() {
+        void visit(DefnSCC scc) {
+          boolean changed = false;
+          for (Defns ds = scc.getBindings(); ds != null; ds = ds.next) {
+            changed |= ds.head.removeUnusedArgs();
+          }
+          if (comp.getWorklist() && changed) {
+            scc.markChanged(round);
+          }
+        }
+      }.run(sccs, false);
     }
   }
 
   /** Run a flow pass over this program. */
   public void flow() {
     invariantAnalysis();
-    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
-      for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
-        ds.head.flow();
+    // Each scc is rewritten after the sccs that it depends on; derived blocks for callees that are
+    // shared with other sccs are constructed while holding the derivations lock:
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        if (MILProgram.this.visit(scc)) {
+          int before = comp.reported();
+          for (Defns ds = scc.getBindings(); ds != null; ds = ds.next) {
+            ds.head.flow();
+          }
+          changed(scc, before);
+        }
       }
-    }
+    }.run(sccs, true);
   }
 
   void invariantAnalysis() {
-    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
-      dsccs.head.invariantAnalysis();
-    }
+    // The sources for each scc are calculated independently of all other sccs:
+    new SCCScheduler() {
+      void visit(DefnSCC scc) {
+        scc.invariantAnalysis();
+      }
+    }.run(sccs, false);
   }
 
   public void collapse() {
-    final int SIZE = 251;
-    Blocks[] blocks = new Blocks[SIZE];
-    TopLevels[] topLevels = new TopLevels[SIZE];
-    ClosureDefns[] closures = new ClosureDefns[SIZE];
+    SummaryTable blocks = new SummaryTable();
+    SummaryTable topLevels = new SummaryTable();
+    SummaryTable closures = new SummaryTable();
     boolean found = false;
 
     // Visit each definition to compute summaries and populate the tables:
@@ -294,14 +566,22 @@ public class MILProgram {
       found |= ds.head.summarizeDefns(blocks, topLevels, closures);
     }
 
-    // Visit definitions that are not entrypoints:
+    // Visit definitions that are not entrypoints, requeueing the callers of any that are replaced:
     for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      int before = comp.reported();
       for (Defns ds = dsccs.head.getBindings(); ds != null; ds = ds.next) {
         if (!ds.head.isEntrypoint()) {
           found |= ds.head.summarizeDefns(blocks, topLevels, closures);
         }
       }
+      changed(dsccs.head, before);
     }
+    debug.Log.println(
+        "Collapse: "
+            + (blocks.getSize() + topLevels.getSize() + closures.getSize())
+            + " distinct definitions, "
+            + (blocks.getComparisons() + topLevels.getComparisons() + closures.getComparisons())
+            + " alpha equivalence tests");
 
     // Update the program to eliminate duplicate blocks:
     if (found) {
@@ -338,7 +618,7 @@ public class MILProgram {
   /** Generate a new, monomorphically typed version of this program using type specialization. */
   public MILSpec specialize(Handler handler) throws Failure {
     MILSpec spec =
-        new MILSpec(); // Used to record information about generated/requested specializations
+        new MILSpec(comp); // Used to record information about generated/requested specializations
 
     // Step 1: Generate specialized versions of each entry point, and a specialized main if
     // necessary:
@@ -495,12 +775,23 @@ public class MILProgram {
     CFGs.toDot(out, cfgs);
   }
 
-  /** Generate an LLVM implementation of this MIL program. */
+  /** Generate an LLVM implementation of this MIL program, within the compilation it belongs to. */
   public llvm.Program toLLVM() throws Failure {
+    Compilation prev = comp.enter();
+    try {
+      return generateLLVM();
+    } finally {
+      Compilation.leave(prev);
+    }
+  }
+
+  /** Generate an LLVM implementation of this MIL program in the current compilation. */
+  private llvm.Program generateLLVM() throws Failure {
     llvm.Type.setWord(Word.size());
     analyzeCalls();
 
     llvm.Program prog = new llvm.Program();
+    prog.setTargetTriple(comp.getTargetTriple());
     LLVMMap lm = new LLVMMap(prog);
     llvm.Code edoc = null;
     InitVarMap ivm = new InitVarMap();
@@ -522,9 +813,10 @@ public class MILProgram {
       }
     }
 
-    if (!llvm.FuncDefn.mainFunctionName.equals("")) {
+    String mainFunctionName = comp.getMainFunctionName();
+    if (!mainFunctionName.equals("")) {
       Block mainBlock = getMainBlock();
-      InitCFG cfg = new InitCFG(ivm, mainBlock, edoc);
+      InitCFG cfg = new InitCFG(mainFunctionName, ivm, mainBlock, edoc);
       TempSubst s = cfg.paramElim();
       prog.add(cfg.toLLVMFuncDefn(lm, s));
       cfgs = new CFGs(cfg, cfgs);
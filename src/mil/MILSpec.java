@@ -21,7 +21,12 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CountedCompleter;
 
 public class MILSpec extends TypeSet {
 
@@ -50,13 +55,26 @@ public class MILSpec extends TypeSet {
     for (Defn d : specialized.keySet()) {
       out.print("Specialized instances of: ");
       d.printlnSig(out);
-      for (Defns ds = specialized.get(d); ds != null; ds = ds.next) {
+      for (Defns ds = specialized.get(d).all; ds != null; ds = ds.next) {
         out.print("   ");
         ds.head.printlnSig(out);
       }
       out.println();
     }
 
+    out.println("Specialization cache: -------------------");
+    out.println("Hits: " + hits + ", misses: " + misses + ", definitions: " + specialized.size());
+    Defn most = null;
+    for (Defn d : specialized.keySet()) {
+      if (most == null || instancesOf(d) > instancesOf(most)) {
+        most = d;
+      }
+    }
+    if (most != null) {
+      out.println("Most instances: " + instancesOf(most) + " of " + most);
+    }
+    out.println();
+
     out.println("Specialized Datatypes: ------------------");
     for (DataType dt : dataTypeSpecs.keySet()) {
       for (TypeSpecs ts = getTypeSpecs(dt); ts != null; ts = ts.next) {
@@ -78,141 +96,242 @@ public class MILSpec extends TypeSet {
   }
 
   /**
-   * A mapping from definitions in the original program to the list of all specialized versions of
-   * that definition in the specialized program.
+   * Records the specialized versions of a single definition, indexed by the alphaHash of their
+   * types so that a new request need only be compared (using alphaEquiv) with previous instances
+   * that have the same hash.
    */
-  private HashMap<Defn, Defns> specialized = new HashMap();
+  private static class DefnSpecs {
+
+    /** All specialized versions of the definition, most recent first. */
+    private Defns all = null;
+
+    /** The number of specialized versions of the definition. */
+    private int count = 0;
+
+    /** Specialized versions of the definition, in the order assigned by replaying events. */
+    private Defns replayAll = null;
+
+    /** The number of specialized versions of the definition that have been replayed. */
+    private int replayCount = 0;
+
+    /** Specialized versions of the definition, indexed by the alphaHash of their types. */
+    private HashMap<Integer, Defns> byHash = new HashMap();
+
+    /** The total code size of the specialized versions, as calculated by summarize(). */
+    private int size = 0;
+
+    /** Return the list of previous specializations whose types have the given hash. */
+    Defns candidates(int hash) {
+      return byHash.get(hash);
+    }
+
+    /** Calculate the total code size of the specialized versions of the definition. */
+    void summarize() {
+      size = 0;
+      for (Defns ds = all; ds != null; ds = ds.next) {
+        size += ds.head.codeSize();
+      }
+    }
+
+    /** Add a new specialization whose type has the given hash. */
+    void add(int hash, Defn d) {
+      all = new Defns(d, all);
+      count++;
+      byHash.put(hash, new Defns(d, byHash.get(hash)));
+    }
+  }
+
+  /**
+   * A mapping from definitions in the original program to the specialized versions of that
+   * definition in the specialized program.
+   */
+  private HashMap<Defn, DefnSpecs> specialized = new HashMap();
+
+  /** Return the table of specializations for the given definition, creating it if necessary. */
+  private DefnSpecs specsFor(Defn d) {
+    DefnSpecs specs = specialized.get(d);
+    if (specs == null) {
+      specs = new DefnSpecs();
+      specialized.put(d, specs);
+    }
+    return specs;
+  }
+
+  /** Counts requests that were satisfied by a previous specialization. */
+  private int hits = 0;
+
+  /** Counts requests that required a new specialization. */
+  private int misses = 0;
+
+  /** Return the number of requests that were satisfied by a previous specialization. */
+  public int getHits() {
+    return hits;
+  }
+
+  /** Return the number of requests that required a new specialization. */
+  public int getMisses() {
+    return misses;
+  }
+
+  /** Return the number of specialized versions of the given definition. */
+  public int instancesOf(Defn d) {
+    DefnSpecs specs = specialized.get(d);
+    return (specs == null) ? 0 : specs.count;
+  }
 
   /** A list of requested specializations. */
   private SpecReqs requested = null;
 
   /** Request a new specialization. */
   public void request(SpecReq req) {
-    requested = new SpecReqs(req, requested);
+    if (deferNames) {
+      reqs.put(req.getSpec(), req);
+      SpecTask task = current.get();
+      task.log.add(req);
+      task.children.add(req);
+    } else {
+      requested = new SpecReqs(req, requested);
+    }
+  }
+
+  /** Record a request that was satisfied by the previously specialized definition prev. */
+  private void hit(Defn prev) {
+    hits++;
+    if (deferNames) {
+      SpecReq req = reqs.get(prev);
+      if (req != null) {
+        current.get().log.add(req);
+      }
+    }
   }
 
   /** Request a version of a definition that is specialized to a given monomorphic type. */
-  public Block specializedBlock(Block d, BlockType inst) {
+  public synchronized Block specializedBlock(Block d, BlockType inst) {
     debug.Log.println("Requesting specialization of " + d + " :: " + inst);
-    // Get the list of previous specializations:
-    Defns specs = specialized.get(d);
-    int num = 0; // count number of existing specializations
+    // Get the table of previous specializations:
+    DefnSpecs specs = specsFor(d);
+    int hash = inst.alphaHash();
 
-    // Search previous specializations for a matching type:
-    for (Defns ds = specs; ds != null; ds = ds.next) {
+    // Search previous specializations with the same hash for a matching type:
+    for (Defns ds = specs.candidates(hash); ds != null; ds = ds.next) {
       Block prev = ds.head.isBlockOfType(inst);
       if (prev != null) {
+        hit(prev);
         return prev;
       }
-      num++;
     }
 
     // Create a new item, insert in specialized table, and add a request to complete the definition
     // later:
-    Block newDefn = new Block(d, num);
+    misses++;
+    Block newDefn = new Block(d, specs.count);
     newDefn.setDeclared(inst);
-    specialized.put(d, new Defns(newDefn, specs));
-    requested = new SpecReqs(new SpecBlock(d, newDefn), requested);
+    specs.add(hash, newDefn);
+    request(new SpecBlock(d, newDefn));
     return newDefn;
   }
 
   /** Request a version of a definition that is specialized to a given monomorphic type. */
-  public ClosureDefn specializedClosureDefn(ClosureDefn d, AllocType inst) {
+  public synchronized ClosureDefn specializedClosureDefn(ClosureDefn d, AllocType inst) {
     debug.Log.println("Requesting specialization of " + d + " :: " + inst);
-    // Get the list of previous specializations:
-    Defns specs = specialized.get(d);
-    int num = 0; // count number of existing specializations
+    // Get the table of previous specializations:
+    DefnSpecs specs = specsFor(d);
+    int hash = inst.alphaHash();
 
-    // Search previous specializations for a matching type:
-    for (Defns ds = specs; ds != null; ds = ds.next) {
+    // Search previous specializations with the same hash for a matching type:
+    for (Defns ds = specs.candidates(hash); ds != null; ds = ds.next) {
       ClosureDefn prev = ds.head.isClosureDefnOfType(inst);
       if (prev != null) {
+        hit(prev);
         return prev;
       }
-      num++;
     }
 
     // Create a new item, insert in specialized table, and add a request to complete the definition
     // later:
-    ClosureDefn newDefn = new ClosureDefn(d, num);
+    misses++;
+    ClosureDefn newDefn = new ClosureDefn(d, specs.count);
     newDefn.setDeclared(inst);
-    specialized.put(d, new Defns(newDefn, specs));
-    requested = new SpecReqs(new SpecClosureDefn(d, newDefn), requested);
+    specs.add(hash, newDefn);
+    request(new SpecClosureDefn(d, newDefn));
     return newDefn;
   }
 
   /** Request a version of a definition that is specialized to a given monomorphic type. */
-  public TopLevel specializedTopLevel(TopLevel d, Scheme inst) {
+  public synchronized TopLevel specializedTopLevel(TopLevel d, Scheme inst) {
     debug.Log.println("Requesting specialization of " + d + " :: " + inst);
-    // Get the list of previous specializations:
-    Defns specs = specialized.get(d);
-    int num = 0; // count number of existing specializations
+    // Get the table of previous specializations:
+    DefnSpecs specs = specsFor(d);
+    int hash = inst.alphaHash();
 
-    // Search previous specializations for a matching type:
-    for (Defns ds = specs; ds != null; ds = ds.next) {
+    // Search previous specializations with the same hash for a matching type:
+    for (Defns ds = specs.candidates(hash); ds != null; ds = ds.next) {
       TopLevel prev = ds.head.isTopLevelOfType(inst);
       if (prev != null) {
+        hit(prev);
         return prev;
       }
-      num++;
     }
 
     // Create a new item, insert in specialized table, and add a request to complete the definition
     // later:
-    TopLevel newDefn = new TopLevel(d, num);
+    misses++;
+    TopLevel newDefn = deferNames ? new TopLevel(d) : new TopLevel(d, specs.count);
     newDefn.setDeclared(inst);
-    specialized.put(d, new Defns(newDefn, specs));
-    requested = new SpecReqs(new SpecTopLevel(d, newDefn), requested);
+    specs.add(hash, newDefn);
+    request(new SpecTopLevel(d, newDefn));
     return newDefn;
   }
 
   /** Request a version of a definition that is specialized to a given monomorphic type. */
-  public External specializedExternal(External d, Scheme inst) {
+  public synchronized External specializedExternal(External d, Scheme inst) {
     debug.Log.println("Requesting specialization of " + d + " :: " + inst);
-    // Get the list of previous specializations:
-    Defns specs = specialized.get(d);
-    int num = 0; // count number of existing specializations
+    // Get the table of previous specializations:
+    DefnSpecs specs = specsFor(d);
+    int hash = inst.alphaHash();
 
-    // Search previous specializations for a matching type:
-    for (Defns ds = specs; ds != null; ds = ds.next) {
+    // Search previous specializations with the same hash for a matching type:
+    for (Defns ds = specs.candidates(hash); ds != null; ds = ds.next) {
       External prev = ds.head.isExternalOfType(inst);
       if (prev != null) {
+        hit(prev);
         return prev;
       }
-      num++;
     }
 
     // Create a new item, insert in specialized table, and add a request to complete the definition
     // later:
-    External newDefn = new External(d, num);
+    misses++;
+    External newDefn = new External(d, specs.count);
     newDefn.setDeclared(inst);
-    specialized.put(d, new Defns(newDefn, specs));
-    requested = new SpecReqs(new SpecExternal(d, newDefn), requested);
+    specs.add(hash, newDefn);
+    request(new SpecExternal(d, newDefn));
     return newDefn;
   }
 
   /** Request a version of a definition that is specialized to a given monomorphic type. */
-  public MemArea specializedMemArea(MemArea d, Scheme inst) {
+  public synchronized MemArea specializedMemArea(MemArea d, Scheme inst) {
     debug.Log.println("Requesting specialization of " + d + " :: " + inst);
-    // Get the list of previous specializations:
-    Defns specs = specialized.get(d);
-    int num = 0; // count number of existing specializations
+    // Get the table of previous specializations:
+    DefnSpecs specs = specsFor(d);
+    int hash = inst.alphaHash();
 
-    // Search previous specializations for a matching type:
-    for (Defns ds = specs; ds != null; ds = ds.next) {
+    // Search previous specializations with the same hash for a matching type:
+    for (Defns ds = specs.candidates(hash); ds != null; ds = ds.next) {
       MemArea prev = ds.head.isMemAreaOfType(inst);
       if (prev != null) {
+        hit(prev);
         return prev;
       }
-      num++;
     }
 
     // Create a new item, insert in specialized table, and add a request to complete the definition
     // later:
-    MemArea newDefn = new MemArea(d, num);
+    misses++;
+    MemArea newDefn = new MemArea(d, specs.count);
     newDefn.setDeclared(inst);
-    specialized.put(d, new Defns(newDefn, specs));
-    requested = new SpecReqs(new SpecMemArea(d, newDefn), requested);
+    specs.add(hash, newDefn);
+    request(new SpecMemArea(d, newDefn));
     return newDefn;
   }
 
@@ -226,7 +345,13 @@ public class MILSpec extends TypeSet {
     primSpecMap.put(p, ps);
   }
 
-  private MILProgram prog = new MILProgram();
+  /** Default constructor. */
+  MILSpec(Compilation comp) {
+    this.comp = comp;
+    this.prog = new MILProgram(comp);
+  }
+
+  private MILProgram prog;
 
   public MILProgram getProg() {
     return prog;
@@ -259,12 +384,289 @@ public class MILSpec extends TypeSet {
    * fact that new requests might be added in the process.
    */
   void generate() {
+    if (comp.getWorkers() > 1 && requested != null) {
+      generateParallel();
+    }
     while (requested != null) { // Process the queue of specialization requests
       SpecReq req = requested.head;
       requested = requested.next;
       req.specialize(this);
     }
+    debug.Log.println(
+        "Specialization cache: " + hits + " hits, " + misses + " misses, for "
+            + specialized.size() + " definitions");
     prog.shake(); // Calculate SCCs for the resulting specialized program
     prog.canonDeclared(this); // Update declared types to use the specialized datatypes
+    for (DefnSpecs specs : specialized.values()) {
+      specs.summarize(); // Record sizes before the optimizer changes the specialized code
+    }
+  }
+
+  /**
+   * Write a report on the results of specialization, listing the number of instances and their
+   * total code size for each definition in the original program (largest first), followed by the
+   * number of specialized versions and phantom parameters for each parameterized datatype.
+   */
+  public void writeReport(PrintWriter out) {
+    Defn[] defns = specialized.keySet().toArray(new Defn[0]);
+    Arrays.sort(
+        defns,
+        new Comparator<Defn>() {
+          public int compare(Defn a, Defn b) {
+            int c = Integer.compare(specialized.get(b).size, specialized.get(a).size);
+            return (c != 0) ? c : a.toString().compareTo(b.toString());
+          }
+        });
+    out.println(" instances      size  definition");
+    int instances = 0;
+    int size = 0;
+    for (int i = 0; i < defns.length; i++) {
+      DefnSpecs specs = specialized.get(defns[i]);
+      out.println(String.format("%10d%10d  %s", specs.count, specs.size, defns[i]));
+      instances += specs.count;
+      size += specs.size;
+    }
+    out.println(
+        String.format("%10d%10d  (total for %d definitions)", instances, size, defns.length));
+    out.println();
+
+    DataType[] dts = dataTypeSpecs.keySet().toArray(new DataType[0]);
+    Arrays.sort(
+        dts,
+        new Comparator<DataType>() {
+          public int compare(DataType a, DataType b) {
+            return a.getId().compareTo(b.getId());
+          }
+        });
+    out.println("  versions  phantoms  datatype");
+    for (int i = 0; i < dts.length; i++) {
+      int versions = 0;
+      for (TypeSpecs ts = getTypeSpecs(dts[i]); ts != null; ts = ts.next) {
+        versions++;
+      }
+      int phantoms = 0;
+      boolean[] flags = dts[i].phantomArgs(dts[i].getArity());
+      for (int j = 0; flags != null && j < flags.length; j++) {
+        if (flags[j]) {
+          phantoms++;
+        }
+      }
+      out.println(String.format("%10d%10d  %s", versions, phantoms, dts[i].getId()));
+    }
+  }
+
+  /**
+   * Set while requests are being specialized in parallel. Fresh names are not allocated during
+   * that time; instead, each task records the events that would have needed them, and the events
+   * are replayed afterwards in the order that a sequential traversal would have encountered them.
+   */
+  private boolean deferNames = false;
+
+  /** Return true if names for specialized definitions and types should not be allocated yet. */
+  boolean deferNames() {
+    return deferNames;
+  }
+
+  /** Maps each specialized definition to the request that completes it. */
+  private HashMap<Defn, SpecReq> reqs = new HashMap();
+
+  /** Maps each DataType that is created during parallel specialization to its creation event. */
+  private HashMap<DataType, SpecDataType> dataTypeEvents = new HashMap();
+
+  /** Records the task that is running on each worker thread. */
+  private ThreadLocal<SpecTask> current = new ThreadLocal<SpecTask>();
+
+  /** Record a use of the specialized DataType dt. */
+  void useDataType(DataType dt) {
+    if (deferNames) {
+      SpecDataType e = dataTypeEvents.get(dt);
+      if (e != null) {
+        current.get().log.add(e);
+      }
+    }
+  }
+
+  /**
+   * Record the start of the construction of dt as a specialized version of orig, returning an
+   * event that should be passed to endDataType once the construction is complete, or null if names
+   * are not being deferred. Events that are triggered in the meantime are recorded as part of the
+   * new event.
+   */
+  SpecDataType startDataType(DataType orig, DataType dt, Type inst) {
+    if (!deferNames) {
+      return null;
+    }
+    SpecDataType e = new SpecDataType(orig, dt, inst);
+    dataTypeEvents.put(dt, e);
+    SpecTask task = current.get();
+    task.log.add(e);
+    e.saved = task.log;
+    task.log = e.log;
+    return e;
+  }
+
+  /** Record the end of the construction of a specialized DataType. */
+  void endDataType(SpecDataType e) {
+    if (e != null) {
+      current.get().log = e.saved;
+    }
+  }
+
+  /**
+   * Record the construction of a specialized version of cf, returning an event whose cf field
+   * should be set to the new Cfun, or null if names are not being deferred.
+   */
+  SpecCfun startCfun(Cfun cf) {
+    if (!deferNames) {
+      return null;
+    }
+    SpecCfun e = new SpecCfun(cf);
+    current.get().log.add(e);
+    return e;
+  }
+
+  /**
+   * Specialize the pending requests, and all of the requests that they trigger, in parallel, and
+   * then replay the recorded events to assign names. Note that the canonical type table is not a
+   * concurrent structure: every lookup in the specialization tables and every canonicalization
+   * (in Cfun, Prim, and GenImp) holds the lock on this MILSpec. Only the traversal of definition
+   * bodies runs concurrently, so the available parallelism is limited by that lock.
+   */
+  private void generateParallel() {
+    for (DefnSpecs specs : specialized.values()) {
+      specs.replayAll = specs.all;
+      specs.replayCount = specs.count;
+    }
+    SpecReqs initial = requested;
+    requested = null;
+    for (SpecReqs rs = initial; rs != null; rs = rs.next) {
+      reqs.put(rs.head.getSpec(), rs.head);
+    }
+    replayTypeSpecs = new HashMap<DataType, TypeSpecs>(dataTypeSpecs);
+    deferNames = true;
+    try {
+      comp.getPool().invoke(new SpecRoot(initial));
+    } finally {
+      deferNames = false;
+    }
+
+    // Replay events in the order that they would have been encountered sequentially:
+    replayed = new HashSet<SpecEvent>();
+    replayQueue = initial;
+    for (SpecReqs rs = initial; rs != null; rs = rs.next) {
+      replayed.add(rs.head);
+    }
+    while (replayQueue != null) {
+      SpecReq req = replayQueue.head;
+      replayQueue = replayQueue.next;
+      replay(req.log);
+      req.log = null;
+    }
+    for (DefnSpecs specs : specialized.values()) {
+      specs.all = specs.replayAll;
+      specs.replayAll = null;
+    }
+    dataTypeSpecs = replayTypeSpecs;
+    replayTypeSpecs = null;
+    replayed = null;
+    reqs.clear();
+    dataTypeEvents.clear();
+  }
+
+  /** Holds the set of events that have already been replayed. */
+  private HashSet<SpecEvent> replayed;
+
+  /** Holds the requests whose events are still to be replayed. */
+  private SpecReqs replayQueue;
+
+  /** Holds the mapping from DataTypes to their specializations, in replay order. */
+  private HashMap<DataType, TypeSpecs> replayTypeSpecs;
+
+  /** Replay each of the events in the given log that has not been replayed already. */
+  void replay(ArrayList<SpecEvent> log) {
+    for (int i = 0; i < log.size(); i++) {
+      SpecEvent e = log.get(i);
+      if (replayed.add(e)) {
+        e.replay(this);
+      }
+    }
+  }
+
+  /** Return the instance number for the specialized definition d of orig, in replay order. */
+  int replayNum(Defn orig, Defn d) {
+    DefnSpecs specs = specialized.get(orig);
+    specs.replayAll = new Defns(d, specs.replayAll);
+    return specs.replayCount++;
+  }
+
+  /** Queue the events for a request so that they are replayed after those already queued. */
+  void replayLater(SpecReq req) {
+    replayQueue = new SpecReqs(req, replayQueue);
+  }
+
+  /** Record dt as a specialized version of orig at the given instance, in replay order. */
+  void replayTypeSpecs(DataType orig, Type inst, DataType dt) {
+    replayTypeSpecs.put(orig, new TypeSpecs(inst, dt, replayTypeSpecs.get(orig)));
+  }
+
+  /** The compilation in which specialization is performed, including by worker threads. */
+  private Compilation comp;
+
+  /** Starts a task for each of the initial requests, and completes when all tasks are done. */
+  private class SpecRoot extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private SpecReqs initial;
+
+    /** Default constructor. */
+    private SpecRoot(SpecReqs initial) {
+      this.initial = initial;
+    }
+
+    public void compute() {
+      for (SpecReqs rs = initial; rs != null; rs = rs.next) {
+        addToPendingCount(1);
+        new SpecTask(this, rs.head).fork();
+      }
+      tryComplete();
+    }
+  }
+
+  /** Specializes a single request, and then starts tasks for any new requests that it made. */
+  private class SpecTask extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private SpecReq req;
+
+    /** The log in which events are currently being recorded. */
+    private ArrayList<SpecEvent> log;
+
+    /** The new requests that were made while specializing req. */
+    private ArrayList<SpecReq> children = new ArrayList<SpecReq>();
+
+    /** Default constructor. */
+    private SpecTask(CountedCompleter<?> parent, SpecReq req) {
+      super(parent);
+      this.req = req;
+      this.log = req.log;
+    }
+
+    public void compute() {
+      Compilation prev = comp.enter();
+      current.set(this);
+      try {
+        req.specialize(MILSpec.this);
+      } finally {
+        current.remove();
+        Compilation.leave(prev);
+      }
+      for (int i = 0; i < children.size(); i++) {
+        addToPendingCount(1);
+        new SpecTask(this, children.get(i)).fork();
+      }
+      tryComplete();
+    }
   }
 }
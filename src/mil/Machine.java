@@ -21,6 +21,7 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.lang.reflect.Method;
 
 /** Defines an abstract machine with a bytecode (really "int"code) execution engine. */
 public class Machine {
@@ -43,44 +44,182 @@ public class Machine {
     return numGlobals++;
   }
 
+  /**
+   * Holds the entry points for each block and closure definition in the program, in increasing
+   * order of address.
+   */
+  private int[] entries;
+
+  private int numEntries = 0;
+
+  /**
+   * Holds the arity (number of arguments) for each closure definition in entries, or (-1) for an
+   * entry point that is not a closure definition.
+   */
+  private int[] arities;
+
+  void addEntry(int addr, int arity) {
+    if (entries == null) {
+      entries = new int[40];
+      arities = new int[40];
+    } else if (numEntries >= entries.length) {
+      int[] newarray = new int[2 * entries.length];
+      int[] newarities = new int[2 * entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        newarray[i] = entries[i];
+        newarities[i] = arities[i];
+      }
+      entries = newarray;
+      arities = newarities;
+    }
+    arities[numEntries] = arity;
+    entries[numEntries++] = addr;
+  }
+
+  /** Return the arity of the closure definition at the given address, or (-1) if there is none. */
+  int closureArity(int addr) {
+    for (int i = 0; i < numEntries; i++) {
+      if (entries[i] == addr) {
+        return arities[i];
+      }
+    }
+    return (-1);
+  }
+
+  // Access to the components of a machine for reading and writing images (see MachineImage):
+
+  int[] getProg() {
+    return prog;
+  }
+
+  Value[] getGlobals() {
+    return globals;
+  }
+
+  int getNumGlobals() {
+    return numGlobals;
+  }
+
+  int[] getEntries() {
+    return entries;
+  }
+
+  int[] getArities() {
+    return arities;
+  }
+
+  int getNumEntries() {
+    return numEntries;
+  }
+
+  /** Initialize this machine with a program that has been read from an image. */
+  void load(int[] prog, int size, Value[] globals, int[] entries, int[] arities) {
+    this.prog = prog;
+    this.nextAddr = size;
+    this.globals = globals;
+    this.numGlobals = globals.length;
+    this.entries = entries;
+    this.arities = arities;
+    this.numEntries = entries.length;
+  }
+
   private String showGlobal(int i) {
     String d = (i >= 0 && i < numGlobals && globals[i] != null) ? globals[i].toString() : "?";
     return "[" + d + "]";
   }
 
-  private static final int STOP = 0;
+  static final int STOP = 0;
+
+  static final int JUMP = 1;
+
+  static final int JFALSE = 2;
+
+  static final int JNTAG = 3;
 
-  private static final int JUMP = 1;
+  static final int CALL = 4;
 
-  private static final int JFALSE = 2;
+  static final int RETURN = 5;
 
-  private static final int JNTAG = 3;
+  static final int CJUMP = 6;
 
-  private static final int CALL = 4;
+  static final int CCALL = 7;
 
-  private static final int RETURN = 5;
+  static final int PRIM = 8;
 
-  private static final int CJUMP = 6;
+  static final int LOAD = 9;
 
-  private static final int CCALL = 7;
+  static final int GLOAD = 10;
 
-  private static final int PRIM = 8;
+  static final int STORE = 11;
 
-  private static final int LOAD = 9;
+  static final int COPY = 12;
 
-  private static final int GLOAD = 10;
+  static final int GCOPY = 13;
 
-  private static final int STORE = 11;
+  static final int GSAVE = 14;
 
-  private static final int COPY = 12;
+  static final int ALLOC = 15;
 
-  private static final int GCOPY = 13;
+  static final int SEL = 16;
 
-  private static final int GSAVE = 14;
+  // Superinstructions, formed by fusing common instruction sequences in MachineBuilder:
 
-  private static final int ALLOC = 15;
+  static final int JFALSE_SLOT = 17; // LOAD src; JFALSE addr
 
-  private static final int SEL = 16;
+  static final int JNTAG_SLOT = 18; // LOAD src; JNTAG tag addr
+
+  static final int PRIM_COPY = 19; // PRIM o p; COPY o dst
+
+  static final int COPY2 = 20; // COPY src1 dst1; COPY src2 dst2
+
+  private static final String[] opNames =
+      new String[] {
+        "STOP", "JUMP", "JFALSE", "JNTAG", "CALL", "RETURN", "CJUMP", "CCALL", "PRIM", "LOAD",
+        "GLOAD", "STORE", "COPY", "GCOPY", "GSAVE", "ALLOC", "SEL", "JFALSE_SLOT", "JNTAG_SLOT",
+        "PRIM_COPY", "COPY2"
+      };
+
+  /** Return the name of the given opcode. */
+  static String opName(int op) {
+    return (op >= 0 && op < opNames.length) ? opNames[op] : ("op" + op);
+  }
+
+  /** Return the number of words used to encode an instruction with the given opcode. */
+  static int instrSize(int op) {
+    switch (op) {
+      case STOP:
+      case RETURN:
+      case CJUMP:
+        return 1;
+
+      case JUMP:
+      case JFALSE:
+      case CCALL:
+      case LOAD:
+      case GLOAD:
+      case STORE:
+        return 2;
+
+      case JNTAG:
+      case CALL:
+      case PRIM:
+      case COPY:
+      case GCOPY:
+      case GSAVE:
+      case SEL:
+      case JFALSE_SLOT:
+        return 3;
+
+      case ALLOC:
+      case JNTAG_SLOT:
+      case PRIM_COPY:
+        return 4;
+
+      case COPY2:
+        return 5;
+    }
+    return 1;
+  }
 
   private int[] prog;
 
@@ -202,6 +341,50 @@ public class Machine {
     emit(dst);
   }
 
+  int jfalseSlot(int src, int addr) {
+    emit(JFALSE_SLOT);
+    emit(src);
+    emit(addr);
+    return nextAddr - 1;
+  }
+
+  int jntagSlot(int src, int tag, int addr) {
+    emit(JNTAG_SLOT);
+    emit(src);
+    emit(tag);
+    emit(addr);
+    return nextAddr - 1;
+  }
+
+  void primCopy(int o, int p, int dst) {
+    emit(PRIM_COPY);
+    emit(o);
+    emit(p);
+    emit(dst);
+  }
+
+  void copy2(int src1, int dst1, int src2, int dst2) {
+    emit(COPY2);
+    emit(src1);
+    emit(dst1);
+    emit(src2);
+    emit(dst2);
+  }
+
+  /** Return the value that is stored at the specified address in the program memory. */
+  int fetch(int addr) {
+    return prog[addr];
+  }
+
+  /**
+   * Reset the address for the next instruction to an earlier position, discarding the previously
+   * generated code from that point. This is used by MachineBuilder to replace a recently emitted
+   * instruction with a superinstruction.
+   */
+  void rewind(int addr) {
+    nextAddr = addr;
+  }
+
   /**
    * Set the value of a particular address in the program memory. This is used to backpatch the
    * generated code with values (such as forward references) that were not known at the point where
@@ -316,79 +499,385 @@ public class Machine {
           out.println("SEL " + prog[pc] + ", " + prog[pc + 1]);
           pc += 2;
           continue;
+
+        case JFALSE_SLOT:
+          out.println("JFALSE_SLOT " + prog[pc] + ", " + addrMap.codeLabel(prog[pc + 1]));
+          out.println();
+          pc += 2;
+          continue;
+
+        case JNTAG_SLOT:
+          out.println(
+              "JNTAG_SLOT "
+                  + prog[pc]
+                  + ", "
+                  + prog[pc + 1]
+                  + ", "
+                  + addrMap.codeLabel(prog[pc + 2]));
+          out.println();
+          pc += 3;
+          continue;
+
+        case PRIM_COPY:
+          out.println(
+              "PRIM_COPY o="
+                  + prog[pc]
+                  + ", "
+                  + Prim.showPrim(prog[pc + 1])
+                  + ", "
+                  + prog[pc + 2]);
+          pc += 3;
+          continue;
+
+        case COPY2:
+          out.println(
+              "COPY2 "
+                  + prog[pc]
+                  + ", "
+                  + prog[pc + 1]
+                  + "; "
+                  + prog[pc + 2]
+                  + ", "
+                  + prog[pc + 3]);
+          pc += 4;
+          continue;
       }
     }
     addrMap.dump(out); // dump symbol table
     out.println("Code size = " + nextAddr + " words");
   }
 
-  private static class Context {
+  /**
+   * The control stack, holding a saved (fp, pc) pair for each active call. Entries are stored in
+   * adjacent elements of a single int array, which is doubled in size whenever more space is
+   * needed, so there is no allocation on a CALL or CCALL once the stack has reached its peak size.
+   */
+  private int[] control = new int[200];
 
-    private int fp;
+  private int callDepth;
 
-    private int pc;
+  private int maxCallDepth;
 
-    private Context enclosing;
+  /** Set the control stack for this machine to empty (but keep the array for reuse). */
+  private void resetControlStack() {
+    callDepth = 0;
+    maxCallDepth = 0;
+  }
+
+  public int getMaxCallDepth() {
+    return maxCallDepth;
+  }
 
-    /** Default constructor. */
-    private Context(int fp, int pc, Context enclosing) {
-      this.fp = fp;
-      this.pc = pc;
-      this.enclosing = enclosing;
+  /** Push an entry on to the current control stack to save the specified fp and pc values. */
+  private void saveContext(int fp, int pc) {
+    int i = 2 * callDepth;
+    if (i >= control.length) {
+      int[] newControl = new int[2 * control.length];
+      for (int j = 0; j < control.length; j++) {
+        newControl[j] = control[j];
+      }
+      control = newControl;
+    }
+    control[i] = fp;
+    control[i + 1] = pc;
+    if (++callDepth > maxCallDepth) {
+      maxCallDepth = callDepth;
     }
+  }
+
+  /** Return the frame pointer from the top entry of the control stack. */
+  private int savedFp() {
+    return control[2 * callDepth - 2];
+  }
+
+  /** Return the program counter from the top entry of the control stack. */
+  private int savedPc() {
+    return control[2 * callDepth - 1];
+  }
 
-    Context reuse(int fp, int pc, Context enclosing) {
-      this.fp = fp;
-      this.pc = pc;
-      Context old = this.enclosing;
-      this.enclosing = enclosing;
-      return old;
+  /**
+   * Holds the maximum number of slots, counting from the frame pointer, that could be accessed by
+   * any single instruction in the program, or -1 if this has not yet been calculated.
+   */
+  private int frameSize = -1;
+
+  /**
+   * Return the maximum number of frame slots that can be accessed by any instruction in the
+   * program. The value stacks must have at least this many slots above the current frame pointer
+   * for execution to proceed safely.
+   */
+  int getFrameSize() {
+    if (frameSize < 0) {
+      int size = 1;
+      for (int pc = 0; pc < nextAddr; pc += instrSize(prog[pc])) {
+        int n = 0;
+        switch (prog[pc]) {
+          case LOAD:
+          case STORE:
+          case GSAVE:
+          case JFALSE_SLOT:
+          case JNTAG_SLOT:
+            n = prog[pc + 1] + 1;
+            break;
+          case COPY:
+            n = Math.max(prog[pc + 1], prog[pc + 2]) + 1;
+            break;
+          case GCOPY:
+            n = prog[pc + 2] + 1;
+            break;
+          case COPY2:
+            n =
+                Math.max(
+                        Math.max(prog[pc + 1], prog[pc + 2]), Math.max(prog[pc + 3], prog[pc + 4]))
+                    + 1;
+            break;
+          case SEL:
+            n = prog[pc + 2] + 1;
+            break;
+          case ALLOC:
+            n = prog[pc + 2] + prog[pc + 3];
+            break;
+          case PRIM:
+            n = prog[pc + 1] + primWidth(prog[pc + 2]);
+            break;
+          case PRIM_COPY:
+            n = Math.max(prog[pc + 1] + primWidth(prog[pc + 2]), prog[pc + 3] + 1);
+            break;
+          case CALL:
+          case CCALL:
+            n = prog[pc + 1];
+            break;
+        }
+        if (n > size) {
+          size = n;
+        }
+      }
+      frameSize = size;
     }
+    return frameSize;
   }
 
-  private Context saved;
+  /** Return the number of frame slots used for the arguments and result of the given primitive. */
+  private static int primWidth(int i) {
+    Prim p = Prim.findPrim(i);
+    if (p == null) {
+      return 1;
+    }
+    BlockType bt = p.getBlockType().instantiate();
+    return Math.max(1, Math.max(bt.getArity(), bt.getOutity()));
+  }
 
-  private Context cached = null;
+  /**
+   * Return a new stack size, obtained by repeated doubling of the given size, with room for a full
+   * frame above the given frame pointer.
+   */
+  static int growSize(int size, int fp, int frameSize) {
+    while (fp + frameSize > size) {
+      size *= 2;
+    }
+    return size;
+  }
 
-  private int callDepth;
+  private Value[] stack = new Value[4000];
 
-  private int maxCallDepth;
+  /** Ensure that the value stack for exec has room for a full frame at the given fp. */
+  private void ensureStack(int fp) {
+    if (fp + getFrameSize() > stack.length) {
+      Value[] newStack = new Value[growSize(stack.length, fp, frameSize)];
+      for (int i = 0; i < stack.length; i++) {
+        newStack[i] = stack[i];
+      }
+      stack = newStack;
+    }
+  }
 
   /**
-   * Set the control stack for this machine to empty (but cached contexts from previous runs may be
-   * kept).
+   * Holds a count of the number of times that each opcode is executed, or null if these dynamic
+   * counts are not required.
    */
-  private void resetControlStack() {
-    saved = null;
-    callDepth = 0;
-    maxCallDepth = 0;
+  private long[] opCounts = null;
+
+  /**
+   * Enable or disable the collection of dynamic opcode counts during execution. Counts are only
+   * collected by the exec method, which switches to an instrumented version of its main loop.
+   */
+  public void countOpcodes(boolean on) {
+    opCounts = on ? new long[COPY2 + 1] : null;
   }
 
-  public int getMaxCallDepth() {
-    return maxCallDepth;
+  /**
+   * Print a table showing the number of occurrences of each superinstruction in the program, and
+   * the number of times that it was executed (if dynamic opcode counts have been collected).
+   */
+  public void dumpFusionStats(PrintWriter out) {
+    int[] staticCounts = new int[COPY2 + 1];
+    for (int pc = 0; pc < nextAddr; pc += instrSize(prog[pc])) {
+      staticCounts[prog[pc]]++;
+    }
+    out.println("Fused op\t\tstatic\tdynamic");
+    dumpFusionStats(out, "JFALSE_SLOT", JFALSE_SLOT, staticCounts);
+    dumpFusionStats(out, "JNTAG_SLOT", JNTAG_SLOT, staticCounts);
+    dumpFusionStats(out, "PRIM_COPY", PRIM_COPY, staticCounts);
+    dumpFusionStats(out, "COPY2", COPY2, staticCounts);
+  }
+
+  private void dumpFusionStats(PrintWriter out, String name, int op, int[] staticCounts) {
+    out.println(
+        name
+            + "\t"
+            + (name.length() < 8 ? "\t" : "")
+            + staticCounts[op]
+            + "\t"
+            + (opCounts == null ? "-" : Long.toString(opCounts[op])));
   }
 
   /**
-   * Push an entry on to the current control stack to save the specified fp and pc values. This will
-   * either use a previously cached Context, or, if required, allocate a new one.
+   * Monomorphic inline caches for closure calls. For each CJUMP or CCALL site (indexed by the
+   * address of the instruction), icTargets holds the code address of the closure that was most
+   * recently called from that site, or (-1) if there have been no calls. The cache is keyed on the
+   * code address rather than the closure value, so calls to different closures for the same code,
+   * including closures that were allocated just before the call, are all hits. When countCalls is
+   * set, the icHits and icMisses arrays count the number of calls at each site that did or did not
+   * go to the same code address as the previous call.
    */
-  private void saveContext(int fp, int pc) {
-    if (++callDepth > maxCallDepth) {
-      maxCallDepth = callDepth;
+  private int[] icTargets;
+
+  private long[] icHits;
+
+  private long[] icMisses;
+
+  /** Set if the inline cache hit and miss counts should be recorded. */
+  private boolean countCalls = false;
+
+  /** Enable or disable the collection of inline cache hit and miss counts during execution. */
+  public void countInlineCaches(boolean on) {
+    countCalls = on;
+  }
+
+  /** Clear the inline caches and hit/miss counts at the start of a new execution. */
+  private void resetInlineCaches() {
+    if (icTargets == null || icTargets.length < nextAddr) {
+      icTargets = new int[nextAddr];
+      icHits = new long[nextAddr];
+      icMisses = new long[nextAddr];
     }
-    if (cached != null) { // Use a cached context if one is available
-      cached.fp = fp;
-      cached.pc = pc;
-      Context ncached = cached.enclosing;
-      cached.enclosing = saved;
-      saved = cached;
-      cached = ncached;
-    } else { // Or allocate a new context if necessary
-      saved = new Context(fp, pc, saved);
+    for (int i = 0; i < icTargets.length; i++) {
+      icTargets[i] = (-1);
+      icHits[i] = 0;
+      icMisses[i] = 0;
     }
   }
 
-  private Value[] stack = new Value[4000];
+  /**
+   * Find the code address for a call to the given closure from the site at address pc, updating
+   * the inline cache (and counts, if required) for that site.
+   */
+  private int closureTarget(int pc, Value val) throws Failure {
+    if (val == null) {
+      throw new Failure("value is not a closure");
+    }
+    int t = val.getTag();
+    if (icTargets[pc] == t) {
+      if (countCalls) {
+        icHits[pc]++;
+      }
+    } else {
+      if (countCalls) {
+        icMisses[pc]++;
+      }
+      icTargets[pc] = t;
+    }
+    return t;
+  }
+
+  /**
+   * Print a table showing the number of hits and misses for the inline cache at each closure call
+   * site that was executed, with the most frequently executed sites first. Sites with more than one
+   * miss call more than one closure definition; the site is described as megamorphic if at least
+   * half of its calls miss.
+   */
+  public void dumpInlineCaches(PrintWriter out, AddrMap addrMap) {
+    if (icTargets == null) {
+      out.println("No inline cache statistics available");
+      return;
+    }
+    int[] sites = new int[10];
+    int numSites = 0;
+    for (int pc = 0; pc < nextAddr && pc < icTargets.length; pc += instrSize(prog[pc])) {
+      if (icHits[pc] + icMisses[pc] > 0) {
+        if (numSites >= sites.length) {
+          int[] newSites = new int[2 * sites.length];
+          for (int i = 0; i < numSites; i++) {
+            newSites[i] = sites[i];
+          }
+          sites = newSites;
+        }
+        int i = numSites++; // Insertion sort, in decreasing order of the number of calls
+        long calls = icHits[pc] + icMisses[pc];
+        for (; i > 0 && icHits[sites[i - 1]] + icMisses[sites[i - 1]] < calls; i--) {
+          sites[i] = sites[i - 1];
+        }
+        sites[i] = pc;
+      }
+    }
+    out.println("Closure call site		hits	misses	hit%	kind	last target");
+    for (int i = 0; i < numSites; i++) {
+      int pc = sites[i];
+      long calls = icHits[pc] + icMisses[pc];
+      int target = icTargets[pc];
+      int arity = closureArity(target);
+      String site = siteLabel(addrMap, pc) + " " + opName(prog[pc]);
+      out.println(
+          site
+              + (site.length() < 16 ? "\t\t" : "\t")
+              + icHits[pc]
+              + "\t"
+              + icMisses[pc]
+              + "\t"
+              + String.format("%.1f", (100.0 * icHits[pc]) / calls)
+              + "\t"
+              + (icMisses[pc] <= 1 ? "mono" : (2 * icMisses[pc] >= calls) ? "mega" : "poly")
+              + "\t"
+              + addrMap.codeLabel(target)
+              + (arity < 0 ? "" : ("/" + arity)));
+    }
+  }
+
+  /**
+   * Return a label for the given code address, written as an offset from the entry point of the
+   * enclosing definition.
+   */
+  private String siteLabel(AddrMap addrMap, int pc) {
+    int entry = 0;
+    for (int i = 0; i < numEntries && entries[i] <= pc; i++) {
+      entry = entries[i];
+    }
+    return addrMap.codeLabel(entry) + ((pc == entry) ? "" : ("+" + (pc - entry)));
+  }
+
+  /** Holds the execution profile for this machine, or null if profiling is not enabled. */
+  private Profile profile = null;
+
+  /**
+   * Enable or disable the collection of an execution profile. Profiles are only collected by the
+   * exec method, which switches to an instrumented version of its main loop.
+   */
+  public void profile(boolean on) {
+    profile = on ? new Profile(prog, nextAddr, entries, numEntries) : null;
+  }
+
+  /**
+   * Return true if execution has been instrumented to collect opcode counts or a profile, which
+   * are only supported by the exec method.
+   */
+  public boolean isInstrumented() {
+    return opCounts != null || profile != null;
+  }
+
+  /** Return the execution profile for the most recent run, or null if profiling is disabled. */
+  public Profile getProfile() {
+    return profile;
+  }
 
   private int instrCount = 0;
 
@@ -397,7 +886,13 @@ public class Machine {
   }
 
   public void exec(PrintWriter out, int pc) {
+    if (isInstrumented() || countCalls) {
+      execInstrumented(out, pc);
+      return;
+    }
     resetControlStack();
+    ensureStack(0);
+    resetInlineCaches();
     int fp = 0; // Current frame pointer
     instrCount = 0; // Count number of instructions executed
     Value val = null; // Special "value" register
@@ -439,11 +934,12 @@ public class Machine {
             // by a subsequent RETURN instruction.
             saveContext(fp, pc + 3);
             fp += prog[pc + 1];
+            ensureStack(fp);
             pc = prog[pc + 2];
             continue;
 
           case CJUMP: // CJUMP:  Jump to closure in the value register
-            pc = val.getTag();
+            pc = closureTarget(pc, val);
             continue;
 
           case CCALL: // CCALL o:  Call closure in the value register, starting a new frame at the
@@ -451,30 +947,218 @@ public class Machine {
             // offset in the current frame.
             saveContext(fp, pc + 2);
             fp += prog[pc + 1];
-            pc = val.getTag();
+            ensureStack(fp);
+            pc = closureTarget(pc, val);
             continue;
 
           case RETURN: // RETURN:  Return to calling procedure, restoring fp and pc from saved
-                       // context.  We cache a
-            // small number of Context structures so that they can be reused on subsequent calls
-            // without
-            // additional allocation; this may prove to be an unnecessary/premature "optimization"
-            // ...
+                       // context.
+            fp = savedFp();
+            pc = savedPc();
+            callDepth--;
+            continue;
+
+          case LOAD: // LOAD src:  Load from specified frame slot into the value register.
+            val = stack[fp + prog[pc + 1]];
+            pc += 2;
+            continue;
+
+          case GLOAD: // GLOAD i:  Load global item i into the value register.
+            val = globals[prog[pc + 1]];
+            pc += 2;
+            continue;
+
+          case STORE: // STORE dst:  Store the contents of the value register in the specified frame
+                      // slot.
+            stack[fp + prog[pc + 1]] = val;
+            pc += 2;
+            continue;
+
+          case COPY: // COPY src dst:  Copy a value from a source slot into a destination slot.  We
+                     // could produce
+            // a similar effect by using a sequence: LOAD src; STORE dst.  The COPY instruction,
+            // however,
+            // provides a more compact encoding, and allows us to hold another temporary in the
+            // value
+            // register.  For example, we can swap the values in a pair of locations using the code
+            // sequence:  LOAD v; COPY w v; STORE w
+            stack[fp + prog[pc + 2]] = stack[fp + prog[pc + 1]];
+            pc += 3;
+            continue;
+
+          case GCOPY: // GCOPY i dst:  Copy global item i into the specified frame slot.
+            stack[fp + prog[pc + 2]] = globals[prog[pc + 1]];
+            pc += 3;
+            continue;
+
+          case GSAVE: // GSAVE src i:  Save value in the source frame location as global item i.
+            globals[prog[pc + 2]] = stack[fp + prog[pc + 1]];
+            debug.Log.println("Saved global: " + prog[pc + 2] + " [" + globals[prog[pc + 2]] + "]");
+            pc += 3;
+            continue;
+
+          case ALLOC: // ALLOC tag n o:  Allocate a new data value with the specified tag and n
+                      // fields, starting at
+            // offset o in the current frame.  The result is saved in the value register.
             {
-              Context restore = saved;
-              saved = saved.enclosing;
-              fp = restore.fp;
-              pc = restore.pc;
-              if (cached == null) {
-                restore.fp = 0;
-                restore.enclosing = null;
-                cached = restore;
-              } else if (cached.fp < 10) {
-                restore.fp = cached.fp + 1;
-                restore.enclosing = cached;
-                cached = restore;
+              int n = prog[pc + 2];
+              int base = fp + prog[pc + 3];
+              Value[] vals = new Value[n];
+              for (int i = 0; i < n; i++) {
+                vals[i] = stack[base + i];
               }
+              val = new DataValue(prog[pc + 1], vals);
+              pc += 4;
             }
+            continue;
+
+          case SEL: // SEL i dst:  Extract the ith component of the data object in the value
+                    // register and store
+            // the result in frame slot dst.
+            stack[fp + prog[pc + 2]] = val.getComponent(prog[pc + 1]);
+            pc += 3;
+            continue;
+
+          case PRIM: // PRIM o p:  Execute primitive number p using parameters at offset o in the
+                     // current frame.
+            Prim.exec(out, prog[pc + 2], fp + prog[pc + 1], stack);
+            pc += 3;
+            continue;
+
+          case JFALSE_SLOT: // JFALSE_SLOT src addr:  Equivalent to LOAD src; JFALSE addr.
+            instrCount++;
+            val = stack[fp + prog[pc + 1]];
+            if (val.getBool()) {
+              pc += 3; // skip address
+            } else {
+              pc = prog[pc + 2]; // perform jump
+            }
+            continue;
+
+          case JNTAG_SLOT: // JNTAG_SLOT src t addr:  Equivalent to LOAD src; JNTAG t addr.
+            instrCount++;
+            val = stack[fp + prog[pc + 1]];
+            if (val.getTag() == prog[pc + 2]) {
+              pc += 4; // skip address
+            } else {
+              pc = prog[pc + 3]; // perform jump
+            }
+            continue;
+
+          case PRIM_COPY: // PRIM_COPY o p dst:  Equivalent to PRIM o p; COPY o dst.
+            instrCount++;
+            Prim.exec(out, prog[pc + 2], fp + prog[pc + 1], stack);
+            stack[fp + prog[pc + 3]] = stack[fp + prog[pc + 1]];
+            pc += 4;
+            continue;
+
+          case COPY2: // COPY2 src1 dst1 src2 dst2:  Equivalent to COPY src1 dst1; COPY src2 dst2.
+            instrCount++;
+            stack[fp + prog[pc + 2]] = stack[fp + prog[pc + 1]];
+            stack[fp + prog[pc + 4]] = stack[fp + prog[pc + 3]];
+            pc += 5;
+            continue;
+        }
+      }
+    } catch (Failure f) {
+      out.println("Execution aborted: pc=" + pc + ", " + f.getText());
+      out.println("Value: " + (val == null ? "null" : val.toString()));
+      out.println("Frame:");
+      for (int i = 0; i < 10 && fp + i < stack.length && stack[fp + i] != null; i++) {
+        out.println(" +" + i + ": " + stack[fp + i]);
+      }
+    }
+  }
+
+  /**
+   * A version of exec that also collects dynamic opcode counts and execution profiles. This
+   * duplicates the main loop of exec so that the uninstrumented loop does not have to test for
+   * instrumentation on every instruction and call.
+   */
+  private void execInstrumented(PrintWriter out, int pc) {
+    resetControlStack();
+    ensureStack(0);
+    resetInlineCaches();
+    if (profile != null) {
+      profile.reset();
+    }
+    int fp = 0; // Current frame pointer
+    instrCount = 0; // Count number of instructions executed
+    Value val = null; // Special "value" register
+    try {
+      for (; ; ) {
+        instrCount++;
+        if (opCounts != null) {
+          opCounts[prog[pc]]++;
+        }
+        if (profile != null) {
+          profile.count(pc);
+        }
+        switch (prog[pc]) {
+          case STOP: // STOP:  Terminate execution.
+            return;
+
+          case JUMP: // JUMP addr:  Continue execution at the specified address.
+            pc = prog[pc + 1];
+            continue;
+
+          case JFALSE: // JFALSE addr:  Conditional jump if the content of the value register is
+                       // false.
+            if (val.getBool()) {
+              pc += 2; // skip address
+            } else {
+              pc = prog[pc + 1]; // perform jump
+            }
+            continue;
+
+          case JNTAG: // JNTAG t addr:  Conditional jump if the content of the value register is not
+                      // tagged with t.
+            if (val.getTag() == prog[pc + 1]) {
+              pc += 3; // skip address
+            } else {
+              pc = prog[pc + 2]; // perform jump
+            }
+            continue;
+
+          case CALL: // CALL o, addr:  Jump to the specified address, incrementing fp by o (which is
+                     // typically
+            // where any parameters for the call are stored).  The value of the program counter
+            // (after
+            // this instruction) and the current frame offset are stored so that they can be
+            // restored
+            // by a subsequent RETURN instruction.
+            if (profile != null) {
+              profile.call();
+            }
+            saveContext(fp, pc + 3);
+            fp += prog[pc + 1];
+            ensureStack(fp);
+            pc = prog[pc + 2];
+            continue;
+
+          case CJUMP: // CJUMP:  Jump to closure in the value register
+            pc = closureTarget(pc, val);
+            continue;
+
+          case CCALL: // CCALL o:  Call closure in the value register, starting a new frame at the
+                      // specified
+            // offset in the current frame.
+            if (profile != null) {
+              profile.call();
+            }
+            saveContext(fp, pc + 2);
+            fp += prog[pc + 1];
+            ensureStack(fp);
+            pc = closureTarget(pc, val);
+            continue;
+
+          case RETURN: // RETURN:  Return to calling procedure, restoring fp and pc from saved
+                       // context.
+            if (profile != null) {
+              profile.ret();
+            }
+            fp = savedFp();
+            pc = savedPc();
             callDepth--;
             continue;
 
@@ -544,6 +1228,40 @@ public class Machine {
             Prim.exec(out, prog[pc + 2], fp + prog[pc + 1], stack);
             pc += 3;
             continue;
+
+          case JFALSE_SLOT: // JFALSE_SLOT src addr:  Equivalent to LOAD src; JFALSE addr.
+            instrCount++;
+            val = stack[fp + prog[pc + 1]];
+            if (val.getBool()) {
+              pc += 3; // skip address
+            } else {
+              pc = prog[pc + 2]; // perform jump
+            }
+            continue;
+
+          case JNTAG_SLOT: // JNTAG_SLOT src t addr:  Equivalent to LOAD src; JNTAG t addr.
+            instrCount++;
+            val = stack[fp + prog[pc + 1]];
+            if (val.getTag() == prog[pc + 2]) {
+              pc += 4; // skip address
+            } else {
+              pc = prog[pc + 3]; // perform jump
+            }
+            continue;
+
+          case PRIM_COPY: // PRIM_COPY o p dst:  Equivalent to PRIM o p; COPY o dst.
+            instrCount++;
+            Prim.exec(out, prog[pc + 2], fp + prog[pc + 1], stack);
+            stack[fp + prog[pc + 3]] = stack[fp + prog[pc + 1]];
+            pc += 4;
+            continue;
+
+          case COPY2: // COPY2 src1 dst1 src2 dst2:  Equivalent to COPY src1 dst1; COPY src2 dst2.
+            instrCount++;
+            stack[fp + prog[pc + 2]] = stack[fp + prog[pc + 1]];
+            stack[fp + prog[pc + 4]] = stack[fp + prog[pc + 3]];
+            pc += 5;
+            continue;
         }
       }
     } catch (Failure f) {
@@ -555,4 +1273,333 @@ public class Machine {
       }
     }
   }
+
+  /**
+   * Frame slots for the unboxed execution engine. Every slot has an entry in the words array, which
+   * holds the value of any word or flag (using 1 for true and 0 for false). The refs array is only
+   * used for heap objects (data values and closures); a null entry in refs indicates that the value
+   * in the corresponding slot is stored in words.
+   */
+  private long[] words = new long[4000];
+
+  private Value[] refs = new Value[4000];
+
+  /** Ensure that the unboxed frame slots have room for a full frame at the given fp. */
+  private void ensureSlots(int fp) {
+    if (fp + getFrameSize() > words.length) {
+      int size = growSize(words.length, fp, frameSize);
+      long[] newWords = new long[size];
+      Value[] newRefs = new Value[size];
+      for (int i = 0; i < words.length; i++) {
+        newWords[i] = words[i];
+        newRefs[i] = refs[i];
+      }
+      words = newWords;
+      refs = newRefs;
+    }
+  }
+
+  /** Return a printable description of the value in the specified slot of the unboxed machine. */
+  private String showSlot(long word, Value ref) {
+    return (ref == null) ? Long.toString(word) : ref.toString();
+  }
+
+  /**
+   * Run the program in this machine using the unboxed execution engine. This executes exactly the
+   * same instruction sequence as exec, producing the same output and instruction count, but holds
+   * words and flags in a long[] array instead of allocating Value objects for them. As a result,
+   * PRIM, LOAD, STORE, and COPY instructions do not allocate. The unboxed engine does not track
+   * the distinction between words and flags, so it will not detect some type errors that would be
+   * reported by exec (but these should not occur for programs that pass the MIL type checker).
+   */
+  public void execUnboxed(PrintWriter out, int pc) {
+    resetControlStack();
+    ensureSlots(0);
+    resetInlineCaches();
+    int fp = 0; // Current frame pointer
+    instrCount = 0; // Count number of instructions executed
+    long word = 0; // Special "value" register, for words and flags
+    Value ref = null; // Special "value" register, for heap objects
+
+    // Make unboxed copies of the global values:
+    long[] gwords = new long[numGlobals];
+    Value[] grefs = new Value[numGlobals];
+    for (int i = 0; i < numGlobals; i++) {
+      Value v = globals[i];
+      if (v != null && v.isUnboxed()) {
+        gwords[i] = v.unboxedWord();
+      } else {
+        grefs[i] = v;
+      }
+    }
+
+    try {
+      for (; ; ) {
+        instrCount++;
+        switch (prog[pc]) {
+          case STOP:
+            return;
+
+          case JUMP:
+            pc = prog[pc + 1];
+            continue;
+
+          case JFALSE:
+            if (word != 0) {
+              pc += 2; // skip address
+            } else {
+              pc = prog[pc + 1]; // perform jump
+            }
+            continue;
+
+          case JNTAG:
+            if (ref.getTag() == prog[pc + 1]) {
+              pc += 3; // skip address
+            } else {
+              pc = prog[pc + 2]; // perform jump
+            }
+            continue;
+
+          case CALL:
+            saveContext(fp, pc + 3);
+            fp += prog[pc + 1];
+            ensureSlots(fp);
+            pc = prog[pc + 2];
+            continue;
+
+          case CJUMP:
+            pc = closureTarget(pc, ref);
+            continue;
+
+          case CCALL:
+            saveContext(fp, pc + 2);
+            fp += prog[pc + 1];
+            ensureSlots(fp);
+            pc = closureTarget(pc, ref);
+            continue;
+
+          case RETURN:
+            fp = savedFp();
+            pc = savedPc();
+            callDepth--;
+            continue;
+
+          case LOAD:
+            {
+              int src = fp + prog[pc + 1];
+              word = words[src];
+              ref = refs[src];
+              pc += 2;
+            }
+            continue;
+
+          case GLOAD:
+            {
+              int i = prog[pc + 1];
+              word = gwords[i];
+              ref = grefs[i];
+              pc += 2;
+            }
+            continue;
+
+          case STORE:
+            {
+              int dst = fp + prog[pc + 1];
+              words[dst] = word;
+              refs[dst] = ref;
+              pc += 2;
+            }
+            continue;
+
+          case COPY:
+            {
+              int src = fp + prog[pc + 1];
+              int dst = fp + prog[pc + 2];
+              words[dst] = words[src];
+              refs[dst] = refs[src];
+              pc += 3;
+            }
+            continue;
+
+          case GCOPY:
+            {
+              int i = prog[pc + 1];
+              int dst = fp + prog[pc + 2];
+              words[dst] = gwords[i];
+              refs[dst] = grefs[i];
+              pc += 3;
+            }
+            continue;
+
+          case GSAVE:
+            {
+              int src = fp + prog[pc + 1];
+              int i = prog[pc + 2];
+              gwords[i] = words[src];
+              grefs[i] = refs[src];
+              debug.Log.println("Saved global: " + i + " [" + showSlot(gwords[i], grefs[i]) + "]");
+              pc += 3;
+            }
+            continue;
+
+          case ALLOC: // Word and flag fields are boxed when they are stored in a heap object.
+            {
+              int n = prog[pc + 2];
+              int base = fp + prog[pc + 3];
+              Value[] vals = new Value[n];
+              for (int i = 0; i < n; i++) {
+                Value v = refs[base + i];
+                vals[i] = (v != null) ? v : new WordValue(words[base + i]);
+              }
+              ref = new DataValue(prog[pc + 1], vals);
+              pc += 4;
+            }
+            continue;
+
+          case SEL: // Word and flag fields are unboxed when they are extracted from a heap object.
+            {
+              Value v = ref.getComponent(prog[pc + 1]);
+              int dst = fp + prog[pc + 2];
+              if (v.isUnboxed()) {
+                words[dst] = v.unboxedWord();
+                refs[dst] = null;
+              } else {
+                refs[dst] = v;
+              }
+              pc += 3;
+            }
+            continue;
+
+          case PRIM: // Primitives only operate on words and flags, returning at most one result.
+            {
+              int base = fp + prog[pc + 1];
+              Prim.exec(out, prog[pc + 2], base, words);
+              refs[base] = null;
+              pc += 3;
+            }
+            continue;
+
+          case JFALSE_SLOT:
+            {
+              instrCount++;
+              int src = fp + prog[pc + 1];
+              word = words[src];
+              ref = refs[src];
+              if (word != 0) {
+                pc += 3; // skip address
+              } else {
+                pc = prog[pc + 2]; // perform jump
+              }
+            }
+            continue;
+
+          case JNTAG_SLOT:
+            {
+              instrCount++;
+              int src = fp + prog[pc + 1];
+              word = words[src];
+              ref = refs[src];
+              if (ref.getTag() == prog[pc + 2]) {
+                pc += 4; // skip address
+              } else {
+                pc = prog[pc + 3]; // perform jump
+              }
+            }
+            continue;
+
+          case PRIM_COPY:
+            {
+              instrCount++;
+              int base = fp + prog[pc + 1];
+              Prim.exec(out, prog[pc + 2], base, words);
+              refs[base] = null;
+              int dst = fp + prog[pc + 3];
+              words[dst] = words[base];
+              refs[dst] = null;
+              pc += 4;
+            }
+            continue;
+
+          case COPY2:
+            {
+              instrCount++;
+              int src = fp + prog[pc + 1];
+              int dst = fp + prog[pc + 2];
+              words[dst] = words[src];
+              refs[dst] = refs[src];
+              src = fp + prog[pc + 3];
+              dst = fp + prog[pc + 4];
+              words[dst] = words[src];
+              refs[dst] = refs[src];
+              pc += 5;
+            }
+            continue;
+        }
+      }
+    } catch (Failure f) {
+      out.println("Execution aborted: pc=" + pc + ", " + f.getText());
+      out.println("Value: " + showSlot(word, ref));
+      out.println("Frame:");
+      for (int i = 0; i < 10 && fp + i < words.length; i++) {
+        out.println(" +" + i + ": " + showSlot(words[fp + i], refs[fp + i]));
+      }
+    }
+  }
+
+  /** Holds a threaded code version of this program, built on the first call to execThreaded. */
+  private ThreadedCode threaded = null;
+
+  /**
+   * Run the program in this machine using a threaded code version of the bytecode in which the
+   * operands of each instruction are decoded in advance (see ThreadedCode). This produces the same
+   * output and instruction counts as exec. The threaded code is constructed on the first call, so
+   * any later changes to the program will not be reflected in subsequent runs.
+   */
+  public void execThreaded(PrintWriter out, int pc) {
+    if (threaded == null) {
+      threaded = new ThreadedCode(prog, nextAddr, globals, getFrameSize());
+    }
+    threaded.exec(out, pc, countCalls);
+    instrCount = threaded.getInstrCount();
+    maxCallDepth = threaded.getMaxCallDepth();
+    resetInlineCaches();
+    threaded.getInlineCacheCounts(icHits, icMisses, icTargets);
+  }
+
+  /** Holds the entry point for a JVM bytecode version of this program, built by execJvm. */
+  private Method jvmRun = null;
+
+  /** Maps code addresses to function indices in the JVM bytecode version of this program. */
+  private int[] jvmIndex;
+
+  /**
+   * Run the program in this machine by translating it into JVM bytecode (see JvmCompiler) so that it
+   * can be compiled by the JVM's JIT. The generated code uses the same data representation as the
+   * unboxed engine, and produces the same output and instruction counts as exec. The translation is
+   * performed on the first call. If the program cannot be translated (for example, because one of
+   * its functions exceeds the JVM's limits on the size of a method), then we fall back to using
+   * threaded code.
+   */
+  public void execJvm(PrintWriter out, int pc) {
+    if (jvmRun == null) {
+      try {
+        JvmCompiler compiler = new JvmCompiler(prog, nextAddr, entries, numEntries);
+        jvmRun = compiler.compile();
+        jvmIndex = compiler.getIndex();
+      } catch (Failure f) {
+        debug.Log.println("JVM code generation failed: " + f.getText());
+        execThreaded(out, pc);
+        return;
+      }
+    }
+    icTargets = null; // Inline cache statistics are not collected for compiled code
+    JvmRuntime rt = new JvmRuntime(out, jvmIndex, globals, numGlobals, getFrameSize());
+    try {
+      JvmCompiler.run(jvmRun, rt, pc);
+    } catch (Failure f) {
+      out.println("Execution aborted: " + f.getText());
+    }
+    instrCount = rt.instrCount;
+    maxCallDepth = rt.maxCallDepth;
+  }
 }
@@ -36,6 +36,11 @@ public class MachineBuilder {
 
     abstract void extendAddrMap(Handler handler, HashAddrMap addrMap, Defn d);
 
+    /** Record the execution count for a definition, if its address is known. */
+    void applyProfile(Profile profile, Defn d) {
+      /* do nothing */
+    }
+
     /** Process fixup updates once the address for a given definition is known. */
     abstract void setAddr(Defn d, int addr, MachineBuilder builder);
 
@@ -96,6 +101,11 @@ public class MachineBuilder {
       d.extendAddrMap(addrMap, addr);
     }
 
+    /** Record the execution count for a definition, if its address is known. */
+    void applyProfile(Profile profile, Defn d) {
+      d.setExecCount(profile.getCount(addr));
+    }
+
     /** Process fixup updates once the address for a given definition is known. */
     void setAddr(Defn d, int addr, MachineBuilder builder) {
       debug.Internal.error("Repeated attempts to resolve address of \"" + d + "\"");
@@ -110,8 +120,62 @@ public class MachineBuilder {
     }
   }
 
+  /**
+   * Determines whether common instruction sequences should be replaced by superinstructions as the
+   * code is generated.
+   */
+  private boolean fuseInstructions;
+
+  /** Default constructor. */
+  MachineBuilder(boolean fuseInstructions) {
+    this.fuseInstructions = fuseInstructions;
+  }
+
+  /**
+   * Holds the address of the most recently emitted instruction. This is used to determine whether
+   * the next instruction can be fused with its predecessor.
+   */
+  private int prevAddr = (-1);
+
+  /**
+   * Holds the most recent address that has been used as the target of a jump or call. We cannot
+   * fuse an instruction at this address with its predecessor because that would leave the target
+   * pointing into the middle of a superinstruction.
+   */
+  private int labelAddr = (-1);
+
+  /** Record the start of a new (unfused) instruction at the next address. */
+  private void start() {
+    prevAddr = machine.getNextAddr();
+  }
+
+  /**
+   * Test whether the next instruction could be fused with the previous instruction, which must have
+   * the given opcode, without changing the program.
+   */
+  private boolean canFuseWith(int op) {
+    return fuseInstructions
+        && prevAddr >= 0
+        && labelAddr != machine.getNextAddr()
+        && machine.fetch(prevAddr) == op;
+  }
+
+  /**
+   * Determine whether the next instruction can be fused with the previous instruction, which must
+   * have the given opcode. If so, the previous instruction is removed from the program, and the
+   * caller is responsible for emitting an equivalent superinstruction in its place.
+   */
+  private boolean fuseWith(int op) {
+    if (canFuseWith(op)) {
+      machine.rewind(prevAddr);
+      return true;
+    }
+    start();
+    return false;
+  }
+
   int getNextAddr() {
-    return machine.getNextAddr();
+    return labelAddr = machine.getNextAddr();
   }
 
   void patch(int iaddr, int addr) {
@@ -122,6 +186,16 @@ public class MachineBuilder {
     machine.patch(iaddr, getNextAddr());
   }
 
+  /**
+   * Copy the entry counts from an execution profile of the machine that was built here to the
+   * corresponding definitions in the MIL program.
+   */
+  public void applyProfile(Profile profile) {
+    for (Defn d : fixups.keySet()) {
+      fixups.get(d).applyProfile(profile, d);
+    }
+  }
+
   public HashAddrMap makeAddrMap(Handler handler) {
     HashAddrMap addrMap = new HashAddrMap();
     for (Defn d : fixups.keySet()) {
@@ -146,6 +220,26 @@ public class MachineBuilder {
     }
   }
 
+  /**
+   * Specify that the code for the given block definition starts at the next address in the machine,
+   * recording that address as the entry point of a new function.
+   */
+  void setEntry(Defn d) {
+    int addr = getNextAddr();
+    machine.addEntry(addr, (-1));
+    setAddr(d, addr);
+  }
+
+  /**
+   * Record the start of the code for a closure definition that expects the given number of
+   * arguments.
+   */
+  void setClosureEntry(ClosureDefn k, int arity) {
+    int addr = getNextAddr();
+    machine.addEntry(addr, arity);
+    setAddr(k, addr);
+  }
+
   /** Add a fixup entry that associates the given definition with a specific address. */
   void resolve(Defn d, int addr) {
     fixups.put(d, new FixupResolved(addr));
@@ -173,94 +267,129 @@ public class MachineBuilder {
   }
 
   void stop() {
+    start();
     machine.stop();
   }
 
   void jump(Block b) {
+    start();
     patchAddr(machine.jump(0), b, 0);
   }
 
   int jfalse(int addr) {
+    if (fuseWith(Machine.LOAD)) { // LOAD src; JFALSE addr ==> JFALSE_SLOT src addr
+      return machine.jfalseSlot(machine.fetch(prevAddr + 1), addr);
+    }
     return machine.jfalse(addr);
   }
 
   int jntag(int tag, int addr) {
+    if (fuseWith(Machine.LOAD)) { // LOAD src; JNTAG tag addr ==> JNTAG_SLOT src tag addr
+      return machine.jntagSlot(machine.fetch(prevAddr + 1), tag, addr);
+    }
     return machine.jntag(tag, addr);
   }
 
   void call(int o, Block b) {
+    start();
     patchAddr(machine.call(o, 0), b, 0);
   }
 
   void retn() {
+    start();
     machine.retn();
   }
 
   void cjump() {
+    start();
     machine.cjump();
   }
 
   void ccall(int o) {
+    start();
     machine.ccall(o);
   }
 
   void prim(int o, int p) {
+    start();
     machine.prim(o, p);
   }
 
   void load(int src) {
+    start();
     machine.load(src);
   }
 
   void gload(TopLevel t, int i) {
+    start();
     patchAddr(machine.gload(0), t, i);
   }
 
   void gload(External e) {
+    start();
     patchAddr(machine.gload(0), e, 0);
   }
 
   void gload(Area a) {
+    start();
     patchAddr(machine.gload(0), a, 0);
   }
 
   void gload(Value v) {
+    start();
     machine.gload(machine.addGlobal(v));
   }
 
   void store(int dst) {
+    start();
     machine.store(dst);
   }
 
   void copy(int src, int dst) {
-    machine.copy(src, dst);
+    if (canFuseWith(Machine.PRIM) && machine.fetch(prevAddr + 1) == src) {
+      // PRIM o p; COPY o dst ==> PRIM_COPY o p dst
+      int p = machine.fetch(prevAddr + 2);
+      machine.rewind(prevAddr);
+      machine.primCopy(src, p, dst);
+    } else if (fuseWith(Machine.COPY)) { // COPY s1 d1; COPY s2 d2 ==> COPY2 s1 d1 s2 d2
+      machine.copy2(machine.fetch(prevAddr + 1), machine.fetch(prevAddr + 2), src, dst);
+    } else {
+      machine.copy(src, dst);
+    }
   }
 
   void gcopy(TopLevel t, int i, int dst) {
+    start();
     patchAddr(machine.gcopy(0, dst), t, i);
   }
 
   void gcopy(External e, int dst) {
+    start();
     patchAddr(machine.gcopy(0, dst), e, 0);
   }
 
   void gcopy(Area a, int dst) {
+    start();
     patchAddr(machine.gcopy(0, dst), a, 0);
   }
 
   void gcopy(Value v, int dst) {
+    start();
     machine.gcopy(machine.addGlobal(v), dst);
   }
 
   void alloc(int tag, int n, int o) {
+    start();
     machine.alloc(tag, n, o);
   }
 
   void alloc(ClosureDefn k, int n, int o) {
+    start();
     patchAddr(machine.alloc(0, n, o), k, 0);
   }
 
   void sel(int i, int dst) {
+    start();
     machine.sel(i, dst);
   }
 
@@ -294,6 +423,7 @@ public class MachineBuilder {
 
   int saveGlobal(int i) {
     int addr = machine.addGlobal(null);
+    start();
     machine.gsave(i, addr);
     return addr;
   }
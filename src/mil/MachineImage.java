@@ -0,0 +1,302 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes binary images of the program in a Machine, so that a program can be executed
+ * without repeating the work of the front end and code generator. An image is a sequence of 32 bit
+ * big-endian integers containing, in order: a header (MAGIC, VERSION); a table giving the name of
+ * each primitive that is used in the code; the code itself; the entry points and closure arities;
+ * the globals table; and the symbol table from a HashAddrMap. Images are loaded by mapping the file
+ * into memory and reading it through an IntBuffer; the code is copied into the machine as a single
+ * block, and only needs to be scanned if the primitive numbering in the current run is different
+ * from the numbering that was used when the image was written.
+ */
+public class MachineImage {
+
+  /** Identifies a mil-tools bytecode image ("MILB"). */
+  private static final int MAGIC = 0x4d494c42;
+
+  private static final int VERSION = 1;
+
+  // Tags for encoding global values:
+
+  private static final int NULL_VALUE = 0;
+
+  private static final int WORD_VALUE = 1;
+
+  private static final int BOOL_VALUE = 2;
+
+  private static final int DATA_VALUE = 3;
+
+  private Machine machine;
+
+  private HashAddrMap addrMap;
+
+  /** Default constructor. */
+  private MachineImage(Machine machine, HashAddrMap addrMap) {
+    this.machine = machine;
+    this.addrMap = addrMap;
+  }
+
+  public Machine getMachine() {
+    return machine;
+  }
+
+  public HashAddrMap getAddrMap() {
+    return addrMap;
+  }
+
+  /** Write an image of the program in the given machine, with its symbol table, to a file. */
+  public static void write(String filename, Machine machine, HashAddrMap addrMap)
+      throws Failure {
+    try {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+      try {
+        write(out, machine, addrMap);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new Failure("Unable to write machine image \"" + filename + "\": " + e.getMessage());
+    }
+  }
+
+  private static void write(DataOutputStream out, Machine machine, HashAddrMap addrMap)
+      throws IOException, Failure {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    // Primitive table: the highest primitive number used in the code, and the name of each one:
+    int[] prog = machine.getProg();
+    int size = machine.getNextAddr();
+    int maxPrim = (-1);
+    for (int pc = 0; pc < size; pc += Machine.instrSize(prog[pc])) {
+      if ((prog[pc] == Machine.PRIM || prog[pc] == Machine.PRIM_COPY) && prog[pc + 2] > maxPrim) {
+        maxPrim = prog[pc + 2];
+      }
+    }
+    out.writeInt(maxPrim + 1);
+    for (int p = 0; p <= maxPrim; p++) {
+      writeString(out, Prim.showPrim(p));
+    }
+
+    // Code:
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      out.writeInt(prog[i]);
+    }
+
+    // Entry points and arities:
+    int numEntries = machine.getNumEntries();
+    int[] entries = machine.getEntries();
+    int[] arities = machine.getArities();
+    out.writeInt(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      out.writeInt(entries[i]);
+      out.writeInt(arities[i]);
+    }
+
+    // Globals:
+    int numGlobals = machine.getNumGlobals();
+    Value[] globals = machine.getGlobals();
+    out.writeInt(numGlobals);
+    for (int i = 0; i < numGlobals; i++) {
+      writeValue(out, globals[i]);
+    }
+
+    // Symbol table:
+    HashMap<Integer, String> labels = addrMap.getLabels();
+    out.writeInt(labels.size());
+    for (Map.Entry<Integer, String> e : labels.entrySet()) {
+      out.writeInt(e.getKey());
+      writeString(out, e.getValue());
+    }
+  }
+
+  /** Write a string as a length followed by its characters, packed two to a word. */
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    int len = s.length();
+    out.writeInt(len);
+    for (int i = 0; i < len; i += 2) {
+      out.writeChar(s.charAt(i));
+      out.writeChar((i + 1 < len) ? s.charAt(i + 1) : 0);
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Value v) throws IOException, Failure {
+    if (v == null) {
+      out.writeInt(NULL_VALUE);
+    } else if (v instanceof BoolValue) {
+      out.writeInt(BOOL_VALUE);
+      out.writeInt(v.getBool() ? 1 : 0);
+    } else if (v instanceof WordValue) {
+      long w = v.unboxedWord();
+      out.writeInt(WORD_VALUE);
+      out.writeInt((int) (w >>> 32));
+      out.writeInt((int) w);
+    } else if (v instanceof DataValue) {
+      DataValue dv = (DataValue) v;
+      int n = dv.getNumFields();
+      out.writeInt(DATA_VALUE);
+      out.writeInt(dv.getTag());
+      out.writeInt(n);
+      for (int i = 0; i < n; i++) {
+        writeValue(out, dv.getComponent(i));
+      }
+    } else {
+      throw new Failure("Unable to save value " + v + " in machine image");
+    }
+  }
+
+  /** Read a machine image from the specified file. */
+  public static MachineImage read(String filename) throws Failure {
+    try {
+      RandomAccessFile file = new RandomAccessFile(filename, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        IntBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+        return read(in);
+      } finally {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new Failure("Unable to read machine image \"" + filename + "\": " + e.getMessage());
+    } catch (RuntimeException e) { // e.g., BufferUnderflowException for a truncated image
+      throw new Failure("Invalid machine image \"" + filename + "\": " + e);
+    }
+  }
+
+  private static MachineImage read(IntBuffer in) throws Failure {
+    if (in.get() != MAGIC) {
+      throw new Failure("File is not a machine image");
+    } else if (in.get() != VERSION) {
+      throw new Failure("Unsupported machine image version");
+    }
+
+    // Primitive table: calculate a mapping to primitive numbers in the current run, if necessary:
+    String[] primNames = new String[in.get()];
+    int[] primMap = null;
+    for (int p = 0; p < primNames.length; p++) {
+      String id = primNames[p] = readString(in);
+      if (!id.equals(Prim.showPrim(p))) {
+        if (primMap == null) {
+          primMap = new int[primNames.length];
+          for (int q = 0; q < p; q++) {
+            primMap[q] = q;
+          }
+        }
+        primMap[p] = Prim.findPrimIndex(id);
+      } else if (primMap != null) {
+        primMap[p] = p;
+      }
+    }
+
+    // Code:
+    int size = in.get();
+    int[] prog = new int[Math.max(size, 1)];
+    in.get(prog, 0, size);
+    if (primMap != null) {
+      for (int pc = 0; pc < size; pc += Machine.instrSize(prog[pc])) {
+        if (prog[pc] == Machine.PRIM || prog[pc] == Machine.PRIM_COPY) {
+          int p = prog[pc + 2];
+          if (primMap[p] < 0) {
+            throw new Failure("Machine image uses unknown primitive \"" + primNames[p] + "\"");
+          }
+          prog[pc + 2] = primMap[p];
+        }
+      }
+    }
+
+    // Entry points and arities:
+    int numEntries = in.get();
+    int[] entries = new int[numEntries];
+    int[] arities = new int[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      entries[i] = in.get();
+      arities[i] = in.get();
+    }
+
+    // Globals:
+    Value[] globals = new Value[in.get()];
+    for (int i = 0; i < globals.length; i++) {
+      globals[i] = readValue(in);
+    }
+
+    // Symbol table:
+    HashAddrMap addrMap = new HashAddrMap();
+    for (int n = in.get(); n > 0; n--) {
+      int key = in.get();
+      addrMap.addLabel(key, readString(in));
+    }
+
+    Machine machine = new Machine();
+    machine.load(prog, size, globals, entries, arities);
+    return new MachineImage(machine, addrMap);
+  }
+
+  private static String readString(IntBuffer in) {
+    int len = in.get();
+    char[] chars = new char[len + 1];
+    for (int i = 0; i < len; i += 2) {
+      int w = in.get();
+      chars[i] = (char) (w >>> 16);
+      chars[i + 1] = (char) w;
+    }
+    return new String(chars, 0, len);
+  }
+
+  private static Value readValue(IntBuffer in) throws Failure {
+    switch (in.get()) {
+      case NULL_VALUE:
+        return null;
+      case WORD_VALUE:
+        {
+          long hi = in.get();
+          long lo = in.get() & 0xffffffffL;
+          return new WordValue((hi << 32) | lo);
+        }
+      case BOOL_VALUE:
+        return BoolValue.make(in.get() != 0);
+      case DATA_VALUE:
+        {
+          int tag = in.get();
+          Value[] fields = new Value[in.get()];
+          for (int i = 0; i < fields.length; i++) {
+            fields[i] = readValue(in);
+          }
+          return new DataValue(tag, fields);
+        }
+    }
+    throw new Failure("Invalid value in machine image");
+  }
+}
@@ -112,6 +112,11 @@ public class MemArea extends Area {
     this(a.pos, mkid(a.id, num), a.alignment, a.areaType, a.size);
   }
 
+  /** Set the name of this definition to match instance number num of the original definition. */
+  void setSpecName(MemArea a, int num) {
+    id = mkid(a.id, num);
+  }
+
   /**
    * Fill in the initializer for this area with a specialized version of the original's initializer.
    */
@@ -0,0 +1,70 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.ArrayList;
+
+/**
+ * Represents the creation of a block, closure definition, or top-level left hand side during a
+ * parallel optimizer pass, which would have used up a number for a fresh name if the pass had been
+ * run sequentially. Each scc records the events that it triggers, in order, and the logs are then
+ * replayed in the order of the scc list so that the optimized program uses exactly the same names
+ * as a sequential run. The construction of a derived block has an event of its own that holds the
+ * events for any definitions that were created at the same time; an scc that finds an existing
+ * derived block records that event again, because a sequential run could have been the first to
+ * create it at that point.
+ */
+class NameEvent {
+
+  /** The events that were triggered while constructing a derived definition, or null. */
+  private ArrayList<NameEvent> log;
+
+  /** Set to true once this event has been replayed. */
+  private boolean replayed = false;
+
+  /** Default constructor. */
+  NameEvent(ArrayList<NameEvent> log) {
+    this.log = log;
+  }
+
+  /** Return the log of events that were triggered while constructing a derived definition. */
+  ArrayList<NameEvent> getLog() {
+    return log;
+  }
+
+  /** Assign a name for this event; by default, there is nothing to name. */
+  void assignName() {
+    /* nothing to do */
+  }
+
+  /** Assign names for each event in the given log that has not already been replayed. */
+  static void replay(ArrayList<NameEvent> log) {
+    for (NameEvent e : log) {
+      if (!e.replayed) {
+        e.replayed = true;
+        e.assignName();
+        if (e.log != null) {
+          replay(e.log);
+        }
+      }
+    }
+  }
+}
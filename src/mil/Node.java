@@ -24,9 +24,7 @@ import java.io.PrintWriter;
 
 abstract class Node {
 
-  protected int num = count++;
-
-  protected static int count = 0;
+  protected int num = Compilation.current().fresh(Node.class);
 
   /**
    * The list of Labels that are successors to this Node. TODO: we don't really need the full
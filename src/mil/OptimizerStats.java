@@ -0,0 +1,296 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * Records metrics for each optimizer pass (time, allocation, rewrite steps, and program size
+ * before and after), together with counts of each kind of rewrite, and writes them as JSON or CSV
+ * so that compile time and optimizer behavior can be compared across versions.
+ */
+public class OptimizerStats {
+
+  /** Records the metrics for a single invocation of an optimizer pass. */
+  static class Pass {
+
+    private String name;
+
+    private int round;
+
+    private long startTime;
+
+    private long time;
+
+    private long startAlloc;
+
+    private long alloc;
+
+    private int startCount;
+
+    private int steps;
+
+    private int defnsBefore;
+
+    private int defnsAfter;
+
+    private int sizeBefore;
+
+    private int sizeAfter;
+
+    /** Counts the rewrites of each kind that were performed during this pass. */
+    private TreeMap<String, Integer> rewrites = new TreeMap<String, Integer>();
+
+    /** Default constructor. */
+    private Pass(String name, int round) {
+      this.name = name;
+      this.round = round;
+    }
+  }
+
+  /** Records the passes that have been completed, in order. */
+  private ArrayList<Pass> passes = new ArrayList<Pass>();
+
+  /** The pass that is currently running, if any. */
+  private Pass current = null;
+
+  /** Counts the rewrites of each kind over all passes. */
+  private TreeMap<String, Integer> rewrites = new TreeMap<String, Integer>();
+
+  /** Used to measure allocation, or null if that is not supported by this JVM. */
+  private com.sun.management.ThreadMXBean threads = null;
+
+  /** Default constructor. */
+  public OptimizerStats() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean tbean = (com.sun.management.ThreadMXBean) bean;
+      if (tbean.isThreadAllocatedMemorySupported() && tbean.isThreadAllocatedMemoryEnabled()) {
+        threads = tbean;
+      }
+    }
+  }
+
+  /** Return the number of bytes allocated so far by the current thread, or 0 if unknown. */
+  private long allocated() {
+    return (threads == null) ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** Start recording metrics for a pass over the given program. */
+  Pass start(String name, int round, MILProgram prog) {
+    Pass p = new Pass(name, round);
+    p.defnsBefore = prog.numDefns();
+    p.sizeBefore = prog.codeSize();
+    p.startCount = prog.getCompilation().count;
+    p.startAlloc = allocated();
+    p.startTime = System.nanoTime();
+    current = p;
+    return p;
+  }
+
+  /** Finish recording metrics for a pass. */
+  void end(Pass p, MILProgram prog) {
+    p.time = System.nanoTime() - p.startTime;
+    p.alloc = allocated() - p.startAlloc;
+    p.steps = prog.getCompilation().count - p.startCount;
+    p.defnsAfter = prog.numDefns();
+    p.sizeAfter = prog.codeSize();
+    passes.add(p);
+    current = null;
+  }
+
+  /** Kinds of rewrite, as reported by each optimizer rewrite. */
+  public static final String FOLD = "constant folding";
+
+  public static final String ALGEBRA = "algebraic simplification";
+
+  public static final String CONST_PROP = "constant propagation";
+
+  public static final String BRANCH = "branch elimination";
+
+  public static final String KNOWN_CONS = "known constructor";
+
+  public static final String KNOWN_CLOS = "known closure";
+
+  public static final String MONAD = "monad laws";
+
+  public static final String DEAD = "dead code elimination";
+
+  public static final String CSE = "common subexpression elimination";
+
+  public static final String INLINE = "inlining";
+
+  public static final String SPECIALIZE = "specialization";
+
+  public static final String UNUSED_ARGS = "unused argument elimination";
+
+  public static final String DUPLICATES = "duplicate elimination";
+
+  public static final String LIFT = "allocator lifting";
+
+  public static final String HOIST = "loop invariant hoisting";
+
+  public static final String UNBOX = "result unboxing";
+
+  /** Record a rewrite of the given kind that was reported by the optimizer. */
+  void rewrite(String kind) {
+    increment(rewrites, kind);
+    if (current != null) {
+      increment(current.rewrites, kind);
+    }
+  }
+
+  private static void increment(TreeMap<String, Integer> map, String key) {
+    Integer n = map.get(key);
+    map.put(key, (n == null) ? 1 : (n + 1));
+  }
+
+  /** Write the recorded metrics as a JSON object. */
+  public void writeJson(PrintWriter out) {
+    out.println("{");
+    out.println("  \"passes\": [");
+    for (int i = 0; i < passes.size(); i++) {
+      Pass p = passes.get(i);
+      out.print("    {\"pass\": " + quote(p.name));
+      out.print(", \"round\": " + p.round);
+      out.print(", \"timeNs\": " + p.time);
+      out.print(", \"allocBytes\": " + p.alloc);
+      out.print(", \"steps\": " + p.steps);
+      out.print(", \"defnsBefore\": " + p.defnsBefore);
+      out.print(", \"defnsAfter\": " + p.defnsAfter);
+      out.print(", \"sizeBefore\": " + p.sizeBefore);
+      out.print(", \"sizeAfter\": " + p.sizeAfter);
+      out.print(", \"rewrites\": ");
+      writeJson(out, p.rewrites);
+      out.println((i + 1 < passes.size()) ? "}," : "}");
+    }
+    out.println("  ],");
+    out.println("  \"totals\": {");
+    TreeMap<String, long[]> totals = totals();
+    int n = 0;
+    for (String name : totals.keySet()) {
+      long[] t = totals.get(name);
+      out.print("    " + quote(name) + ": {\"calls\": " + t[0]);
+      out.print(", \"timeNs\": " + t[1]);
+      out.print(", \"allocBytes\": " + t[2]);
+      out.print(", \"steps\": " + t[3]);
+      out.println((++n < totals.size()) ? "}," : "}");
+    }
+    out.println("  },");
+    out.print("  \"rewrites\": ");
+    writeJson(out, rewrites);
+    out.println();
+    out.println("}");
+  }
+
+  private static void writeJson(PrintWriter out, TreeMap<String, Integer> map) {
+    out.print("{");
+    int n = 0;
+    for (String key : map.keySet()) {
+      if (n++ > 0) {
+        out.print(", ");
+      }
+      out.print(quote(key) + ": " + map.get(key));
+    }
+    out.print("}");
+  }
+
+  /** Return a JSON string literal for the given text. */
+  private static String quote(String s) {
+    StringBuilder buf = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      } else if (c < ' ') {
+        buf.append(String.format("\\u%04x", (int) c));
+      } else {
+        buf.append(c);
+      }
+    }
+    return buf.append('"').toString();
+  }
+
+  /**
+   * Calculate the totals for each pass name: an array with the number of calls, time, allocation,
+   * and rewrite steps.
+   */
+  private TreeMap<String, long[]> totals() {
+    TreeMap<String, long[]> totals = new TreeMap<String, long[]>();
+    for (Pass p : passes) {
+      long[] t = totals.get(p.name);
+      if (t == null) {
+        totals.put(p.name, t = new long[4]);
+      }
+      t[0]++;
+      t[1] += p.time;
+      t[2] += p.alloc;
+      t[3] += p.steps;
+    }
+    return totals;
+  }
+
+  /**
+   * Write the recorded metrics in CSV format: one row for each pass, followed, after a blank line,
+   * by one row for each kind of rewrite.
+   */
+  public void writeCsv(PrintWriter out) {
+    out.println(
+        "pass,round,timeNs,allocBytes,steps,defnsBefore,defnsAfter,sizeBefore,sizeAfter");
+    for (Pass p : passes) {
+      out.println(
+          p.name
+              + ","
+              + p.round
+              + ","
+              + p.time
+              + ","
+              + p.alloc
+              + ","
+              + p.steps
+              + ","
+              + p.defnsBefore
+              + ","
+              + p.defnsAfter
+              + ","
+              + p.sizeBefore
+              + ","
+              + p.sizeAfter);
+    }
+    out.println();
+    out.println("rewrite,count");
+    for (String key : rewrites.keySet()) {
+      out.println(csvField(key) + "," + rewrites.get(key));
+    }
+  }
+
+  /** Return a CSV field for the given text, quoting it if necessary. */
+  private static String csvField(String s) {
+    if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0) {
+      return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+    return s;
+  }
+}
@@ -106,7 +106,7 @@ public class Prim {
     return index;
   }
 
-  int addToPrimTable(Prim val) {
+  private static synchronized int addToPrimTable(Prim val) {
     if (table == null) {
       table = new Prim[40];
     } else if (numPrims >= table.length) {
@@ -891,6 +891,14 @@ public class Prim {
       stack[fp] = new WordValue(n / d);
     }
 
+    void exec(PrintWriter out, int fp, long[] words) throws Failure {
+      long d = words[fp + 1];
+      if (d == 0) {
+        throw new Failure("divide by zero error");
+      }
+      words[fp] = words[fp] / d;
+    }
+
     /**
      * Generate code for a MIL PrimCall with the specified arguments in a context where the
      * primitive is not expected to produce any results, but execution is expected to continue with
@@ -955,6 +963,14 @@ public class Prim {
       stack[fp] = new WordValue(n % d);
     }
 
+    void exec(PrintWriter out, int fp, long[] words) throws Failure {
+      long d = words[fp + 1];
+      if (d == 0) {
+        throw new Failure("divide by zero error (for mod)");
+      }
+      words[fp] = words[fp] % d;
+    }
+
     /**
      * Generate code for a MIL PrimCall with the specified arguments in a context where the
      * primitive is not expected to produce any results, but execution is expected to continue with
@@ -1571,6 +1587,10 @@ public class Prim {
       throw new Failure("halt primitive executed");
     }
 
+    void exec(PrintWriter out, int fp, long[] words) throws Failure {
+      throw new Failure("halt primitive executed");
+    }
+
     /**
      * Return true if this code enters a non-productive black hole (i.e., immediately calls halt or
      * loop).
@@ -1616,6 +1636,32 @@ public class Prim {
     table[prim].exec(out, fp, stack);
   }
 
+  /**
+   * Execute a primitive in the unboxed machine, where arguments and results are stored as words in
+   * the given array. Flag values are represented by 1 (true) and 0 (false).
+   */
+  static void exec(PrintWriter out, int prim, int fp, long[] words) throws Failure {
+    if (prim < 0 || prim >= numPrims) {
+      throw new Failure("primitive number " + prim + " is not defined");
+    }
+    table[prim].exec(out, fp, words);
+  }
+
+  /** Return the primitive with the specified number, or null if there is no such primitive. */
+  static Prim findPrim(int i) {
+    return (i >= 0 && i < numPrims) ? table[i] : null;
+  }
+
+  /** Return the number of the first primitive with the given name, or (-1) if there is none. */
+  static int findPrimIndex(String id) {
+    for (int i = 0; i < numPrims; i++) {
+      if (id.equals(table[i].id)) {
+        return i;
+      }
+    }
+    return (-1);
+  }
+
   static String showPrim(int i) {
     return (i >= 0 && i < numPrims && table[i].id != null) ? table[i].id : ("?prim_" + i);
   }
@@ -1641,12 +1687,20 @@ public class Prim {
     void exec(PrintWriter out, int fp, Value[] stack) throws Failure {
       out.println("printWord: " + stack[fp].getInt());
     }
+
+    void exec(PrintWriter out, int fp, long[] words) throws Failure {
+      out.println("printWord: " + words[fp]);
+    }
   }
 
   void exec(PrintWriter out, int fp, Value[] stack) throws Failure {
     throw new Failure("primitive \"" + id + "\" not available");
   }
 
+  void exec(PrintWriter out, int fp, long[] words) throws Failure {
+    throw new Failure("primitive \"" + id + "\" not available");
+  }
+
   /**
    * Return true if this code enters a non-productive black hole (i.e., immediately calls halt or
    * loop).
@@ -1712,7 +1766,14 @@ public class Prim {
    * specialized versions if available, or returns original primitive if type is monomorphic.
    */
   Prim specializePrim(MILSpec spec, BlockType type, TVarSubst s) {
-    BlockType inst = type.apply(s).canonBlockType(spec);
+    BlockType inst = type.apply(s);
+    synchronized (spec) { // The canonical type table in spec may be shared by several threads
+      return specializePrim(spec, inst.canonBlockType(spec));
+    }
+  }
+
+  /** Find or create a version of this primitive with the given canonical type. */
+  private Prim specializePrim(MILSpec spec, BlockType inst) {
     if (inst.alphaEquiv(this.blockType)) {
       return this;
     } else {
@@ -1953,6 +2014,7 @@ public class Prim {
       if (wordsize == 64) {
         return super.repTransformPrim(set, targs);
       } else if (wordsize == 32) {
+        Block impl = (Block) Compilation.current().getPrimImpl(load64.class);
         if (impl == null) {
           Temp[] vs = Temp.makeTemps(1);
           Temp a = new Temp();
@@ -1971,6 +2033,7 @@ public class Prim {
                           Prim.add.withArgs(vs[0], 4),
                           new Bind(
                               msw, p.withArgs(a), new Done(new Return(new Atom[] {lsw, msw}))))));
+          Compilation.current().setPrimImpl(load64.class, impl);
         }
         return new BlockCall(impl, targs);
       } else {
@@ -1980,8 +2043,6 @@ public class Prim {
       }
     }
 
-    private static Block impl = null;
-
     /**
      * Generate code for a MIL PrimCall with the specified arguments in a context where the
      * primitive is expected to return a result (that should be captured in the specified lhs), and
@@ -2133,6 +2194,7 @@ public class Prim {
       if (wordsize == 64) {
         return super.repTransformPrim(set, targs);
       } else if (wordsize == 32) {
+        Block impl = (Block) Compilation.current().getPrimImpl(store64.class);
         if (impl == null) {
           Temp[] vs = Temp.makeTemps(3);
           Temp a = new Temp();
@@ -2148,6 +2210,7 @@ public class Prim {
                           a,
                           Prim.add.withArgs(vs[0], 4), //     a  <- add((addr, 4))
                           new Done(p.withArgs(a, vs[2]))))); //     store32((a, msw))
+          Compilation.current().setPrimImpl(store64.class, impl);
         }
         return new BlockCall(impl, targs);
       } else {
@@ -2157,8 +2220,6 @@ public class Prim {
       }
     }
 
-    private static Block impl = null;
-
     /**
      * Generate code for a MIL PrimCall with the specified arguments in a context where the
      * primitive is not expected to produce any results, but execution is expected to continue with
@@ -2191,10 +2252,9 @@ public class Prim {
       return new initSeq(bt);
     }
 
-    /** Records the closure structure that is used to implement this primitive. */
-    private ClosureDefn impl = null;
-
     Tail repTransformPrim(RepTypeSet set, Atom[] targs) {
+      // Each compilation records the closure structure that is used to implement this primitive:
+      ClosureDefn impl = (ClosureDefn) Compilation.current().getPrimImpl(this);
       if (impl == null) {
         Temp[] ijr = Temp.makeTemps(3);
         Block b =
@@ -2213,6 +2273,7 @@ public class Prim {
                 ij,
                 r, // impl{i, j} r
                 new BlockCall(b).withArgs(Temp.append(ij, r))); //   = b[i, j, r]
+        Compilation.current().setPrimImpl(this, impl);
       }
       return new ClosAlloc(impl).withArgs(targs);
     }
@@ -2242,10 +2303,9 @@ public class Prim {
       return new initSelf(bt);
     }
 
-    /** Records the closure structure that is used to implement this primitive. */
-    private ClosureDefn impl = null;
-
     Tail repTransformPrim(RepTypeSet set, Atom[] targs) {
+      // Each compilation records the closure structure that is used to implement this primitive:
+      ClosureDefn impl = (ClosureDefn) Compilation.current().getPrimImpl(this);
       if (impl == null) {
         Temp[] fr = Temp.makeTemps(2);
         Temp g = new Temp();
@@ -2265,6 +2325,7 @@ public class Prim {
                 f,
                 r, // impl{f} r
                 new BlockCall(b).withArgs(Temp.append(f, r))); //   = b[f, r]
+        Compilation.current().setPrimImpl(this, impl);
       }
       return new ClosAlloc(impl).withArgs(targs);
     }
@@ -2289,10 +2350,9 @@ public class Prim {
       return new reInit(bt);
     }
 
-    /** Records the closure structure that is used to implement this primitive. */
-    private ClosureDefn impl = null;
-
     Tail repTransformPrim(RepTypeSet set, Atom[] targs) {
+      // Each compilation records the closure structure that is used to implement this primitive:
+      ClosureDefn impl = (ClosureDefn) Compilation.current().getPrimImpl(this);
       if (impl == null) {
         Temp[] ri = Temp.makeTemps(2);
         Block b =
@@ -2308,6 +2368,7 @@ public class Prim {
                 r,
                 i, // impl{r} i
                 new BlockCall(b).withArgs(Temp.append(r, i))); //   = b[r, i]
+        Compilation.current().setPrimImpl(this, impl);
       }
       return new ClosAlloc(impl).withArgs(targs);
     }
@@ -2334,18 +2395,18 @@ public class Prim {
     }
 
     /**
-     * A closure for representing structure field initializer functions with types of the form Init
-     * T -> Init S, where T is the type of a field within structure S at offset O. The
-     * initStructFieldClos has two stored fields, one for the Init T initializer and one for the
-     * offset O; when entered with a reference to a structure, it calculates a reference to the
-     * field (by adding O to the incoming reference) and then runs the initializer using the
-     * resulting address.
+     * Return a closure, made once in each compilation, for representing structure field initializer
+     * functions with types of the form Init T -> Init S, where T is the type of a field within
+     * structure S at offset O. The initStructFieldClos has two stored fields, one for the Init T
+     * initializer and one for the offset O; when entered with a reference to a structure, it
+     * calculates a reference to the field (by adding O to the incoming reference) and then runs the
+     * initializer using the resulting address.
      */
-    private static ClosureDefn initStructFieldClos = null;
-
-    static {
-
-      // Initialize initStructFieldClos:
+    private static ClosureDefn initStructFieldClos() {
+      ClosureDefn clos = (ClosureDefn) Compilation.current().getPrimImpl(initStructField.class);
+      if (clos != null) {
+        return clos;
+      }
       Temp[] ior = Temp.makeTemps(3);
       Temp a = new Temp();
       Block b =
@@ -2358,12 +2419,14 @@ public class Prim {
                   new Done(new Enter(ior[0], a)))); //     i @ a
       Temp[] io = Temp.makeTemps(2);
       Temp[] r = Temp.makeTemps(1);
-      initStructFieldClos =
+      clos =
           new ClosureDefn(
               BuiltinPosition.pos,
               io,
               r, // initStructFieldClos{i, o} r
               new BlockCall(b).withArgs(Temp.append(io, r))); //   = b[i, o, r]
+      Compilation.current().setPrimImpl(initStructField.class, clos);
+      return clos;
     }
 
     /**
@@ -2371,7 +2434,7 @@ public class Prim {
      * initStructFieldClos(i, o), for the associated field offset o.
      */
     Tail repTransformPrim(RepTypeSet set, Atom[] targs) {
-      return new ClosAlloc(initStructFieldClos).withArgs(targs[0], offset);
+      return new ClosAlloc(initStructFieldClos()).withArgs(targs[0], offset);
     }
   }
 
@@ -32,7 +32,7 @@ public abstract class PrimBinFOp extends Prim {
   abstract boolean op(boolean n, boolean m);
 
   Code fold(boolean n, boolean m) {
-    MILProgram.report("constant folding for " + getId());
+    MILProgram.report(OptimizerStats.FOLD, "constant folding for " + getId());
     return new Done(new Return(Flag.fromBool(op(n, m))));
   }
 
@@ -36,8 +36,12 @@ public abstract class PrimBinOp extends Prim {
     stack[fp] = new WordValue(op(stack[fp].getInt(), stack[fp + 1].getInt()));
   }
 
+  void exec(PrintWriter out, int fp, long[] words) throws Failure {
+    words[fp] = op(words[fp], words[fp + 1]);
+  }
+
   Code fold(long n, long m) {
-    MILProgram.report("constant folding for " + getId());
+    MILProgram.report(OptimizerStats.FOLD, "constant folding for " + getId());
     return PrimCall.done(op(n, m));
   }
 
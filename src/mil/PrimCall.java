@@ -130,6 +130,14 @@ public class PrimCall extends Call {
     return p.isPure();
   }
 
+  /**
+   * Test to see if this tail can be hoisted out of a loop when its arguments are loop invariant.
+   * This requires a tail that is pure and that cannot fail.
+   */
+  boolean isHoistable() {
+    return isPure();
+  }
+
   Atom isBnot() {
     return p == Prim.bnot ? args[0] : null;
   }
@@ -295,12 +303,12 @@ public class PrimCall extends Call {
         if (a != null) {
           long n = a.getVal(); // Look for a constant numerator
           if (n >= 0) { // To be cautious, only consider nonnegative values
-            MILProgram.report("constant folding for nzdiv");
+            MILProgram.report(OptimizerStats.FOLD, "constant folding for nzdiv");
             return done(n / d);
           }
         }
         if (d == 1) { // Look for a (redundant) divide by 1
-          MILProgram.report("eliminate division by 1");
+          MILProgram.report(OptimizerStats.ALGEBRA, "eliminate division by 1");
           return done(x);
         }
         if ((d & (d - 1)) == 0) { // Look for division by a power of two, d=(1L<<n)
@@ -308,7 +316,8 @@ public class PrimCall extends Call {
           for (long i = (d >>> 1); (i >>>= 1) > 0; n++) {
             /* no extra work here */
           }
-          MILProgram.report("rewrite: nzdiv((x, " + d + ")) ==> lshr((x, " + n + "))");
+          MILProgram.report(
+              OptimizerStats.ALGEBRA, "rewrite: nzdiv((x, " + d + ")) ==> lshr((x, " + n + "))");
           return done(Prim.lshr, x, n);
         }
       }
@@ -323,16 +332,18 @@ public class PrimCall extends Call {
         if (a != null) {
           long n = a.getVal(); // Look for a constant numerator
           if (n >= 0) { // To be cautious, only consider nonnegative values
-            MILProgram.report("constant folding for nzrem");
+            MILProgram.report(OptimizerStats.FOLD, "constant folding for nzrem");
             return done(n % d);
           }
         }
         if (d == 1) { // Look for a (trivial) remainder modulo 1
-          MILProgram.report("eliminate remainder modulo 1");
+          MILProgram.report(OptimizerStats.ALGEBRA, "eliminate remainder modulo 1");
           return done(0L);
         }
         if ((d & (d - 1)) == 0) { // Look for remainder modulo a power of two, d=(1L<<n)
-          MILProgram.report("rewrite: nzrem((x, " + d + ")) ==> and((x, " + (d - 1) + "))");
+          MILProgram.report(
+              OptimizerStats.ALGEBRA,
+              "rewrite: nzrem((x, " + d + ")) ==> and((x, " + (d - 1) + "))");
           return done(Prim.and, x, d - 1);
         }
       }
@@ -629,14 +640,16 @@ public class PrimCall extends Call {
   Code bnotRewrite() {
     // Eliminate double negation:
     if (p == Prim.bnot) {
-      MILProgram.report("eliminated double bnot");
+      MILProgram.report(OptimizerStats.ALGEBRA, "eliminated double bnot");
       return done(args[0]); // bnot(bnot(u)) == u
     }
 
     // Handle negations of relational operators:
     Prim q = p.bnotDual();
     if (q != null) { //  bnot(p(x,y)) --> q(x,y)
-      MILProgram.report("replaced bnot(" + p.getId() + "(x,y)) with " + q.getId() + "(x,y)");
+      MILProgram.report(
+          OptimizerStats.ALGEBRA,
+          "replaced bnot(" + p.getId() + "(x,y)) with " + q.getId() + "(x,y)");
       return done(q, args);
     }
 
@@ -649,7 +662,7 @@ public class PrimCall extends Call {
       // Eliminate double negation:
       Atom[] ap = a.isPrim(Prim.not);
       if (ap != null) {
-        MILProgram.report("eliminated double not");
+        MILProgram.report(OptimizerStats.ALGEBRA, "eliminated double not");
         return done(ap[0]); // not(not(u)) == u
       }
     }
@@ -661,11 +674,11 @@ public class PrimCall extends Call {
     if (a != null) {
       Atom[] ap = a.isPrim(Prim.neg);
       if (ap != null) {
-        MILProgram.report("rewrite: -(-x) ==> x");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: -(-x) ==> x");
         return done(ap[0]); // neg(neg(u)) == u
       }
       if ((ap = a.isPrim(Prim.sub)) != null) {
-        MILProgram.report("rewrite: -(x - y) ==> y - x");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: -(x - y) ==> y - x");
         return done(Prim.sub, ap[1], ap[0]);
       }
       // TODO: -(x * m) ==> x * (-m)   (but careful about large m)
@@ -688,7 +701,7 @@ public class PrimCall extends Call {
       // includes an
       // or with y (or vice versa); handling this would require the addition of Prim and a Facts
       // arguments.
-      MILProgram.report("rewrite: x ! x ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x ! x ==> x");
       return done(x);
     }
     return null;
@@ -718,14 +731,15 @@ public class PrimCall extends Call {
 
     if (c != null) {
       if (d != null) { // (u `q` c) `p` (w `q` d)
-        MILProgram.report("rewrite: (u ! c) ! (w ! d) ==> (u ! w) ! (c ! d)");
+        MILProgram.report(
+            OptimizerStats.ALGEBRA, "rewrite: (u ! c) ! (w ! d) ==> (u ! w) ! (c ! d)");
         return varVarConst(p, ap[0], bp[0], q, p.op(c.getVal(), d.getVal()));
       } else { // (u `q` c) `p` y
-        MILProgram.report("rewrite: (u ! c) ! y==> (u ! y) ! c");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u ! c) ! y==> (u ! y) ! c");
         return varVarConst(p, ap[0], y, q, c.getVal());
       }
     } else if (d != null) { // x `p` (w `q` d)
-      MILProgram.report("rewrite: x ! (w ! d) ==> (x ! w) ! d");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x ! (w ! d) ==> (x ! w) ! d");
       return varVarConst(p, x, bp[0], p, d.getVal());
     }
     return null;
@@ -763,7 +777,7 @@ public class PrimCall extends Call {
     Atom[] ap;
     Atom[] bp;
     if (a != null && (ap = a.isPrim(inv)) != null && b != null && (bp = b.isPrim(inv)) != null) {
-      MILProgram.report("applied a version of deMorgan's law");
+      MILProgram.report(OptimizerStats.ALGEBRA, "applied a version of deMorgan's law");
       Temp v = new Temp();
       return new Bind(v, q.withArgs(ap[0], bp[0]), done(inv, v));
     }
@@ -787,7 +801,7 @@ public class PrimCall extends Call {
 
   private static Code addVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x + 0 == x
-      MILProgram.report("rewrite: x + 0 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x + 0 ==> x");
       return done(x);
     }
     Tail a = x.lookupFact(facts);
@@ -796,21 +810,21 @@ public class PrimCall extends Call {
       if ((ap = a.isPrim(Prim.add)) != null) {
         Word c = ap[1].isWord();
         if (c != null) {
-          MILProgram.report("rewrite: (x + n) + m == x + (n + m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x + n) + m == x + (n + m)");
           return done(Prim.add, ap[0], c.getVal() + m);
         }
       } else if ((ap = a.isPrim(Prim.sub)) != null) {
         Word c;
         if ((c = ap[1].isWord()) != null) {
-          MILProgram.report("rewrite: (x - n) + m == x + (m - n)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x - n) + m == x + (m - n)");
           return done(Prim.add, ap[0], m - c.getVal());
         }
         if ((c = ap[0].isWord()) != null) {
-          MILProgram.report("rewrite: (n - x) + m == (n + m) - x");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (n - x) + m == (n + m) - x");
           return done(Prim.add, c.getVal() + m, ap[1]);
         }
       } else if ((ap = a.isPrim(Prim.neg)) != null) {
-        MILProgram.report("rewrite: (-x) + m  ==> m - x");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-x) + m  ==> m - x");
         return done(Prim.sub, m, ap[0]);
       }
     }
@@ -932,11 +946,13 @@ public class PrimCall extends Call {
   private static Code distCC(
       Atom u, Prim m, long c, PrimBinOp a, Atom v, long d) { // (u `m` c) `a` (v `m` d) = ...
     if (u == v) {
-      MILProgram.report("rewrite: (u `m` c) `a` (u `m` d) ==> u `m` (c `a` d)");
+      MILProgram.report(
+          OptimizerStats.ALGEBRA, "rewrite: (u `m` c) `a` (u `m` d) ==> u `m` (c `a` d)");
       return done(m, u, a.op(c, d));
     }
     if (c == d) {
-      MILProgram.report("rewrite: (u `m` c) `a` (v `m` c) ==> (u `a` v) `m` c");
+      MILProgram.report(
+          OptimizerStats.ALGEBRA, "rewrite: (u `m` c) `a` (v `m` c) ==> (u `a` v) `m` c");
       Temp t = new Temp();
       return new Bind(t, a.withArgs(u, v), done(m, t, c));
     }
@@ -959,19 +975,19 @@ public class PrimCall extends Call {
   }
 
   private static Code distAddNegNeg(Atom u, Atom v) {
-    MILProgram.report("rewrite: (-u) + (-v) ==> - (u + v)");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) + (-v) ==> - (u + v)");
     Temp t = new Temp();
     return new Bind(t, Prim.add.withArgs(u, v), done(Prim.neg, t));
   }
 
   private static Code distSubNegNeg(Atom u, Atom v) {
-    MILProgram.report("rewrite: (-u) - (-v) ==> v - u)");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) - (-v) ==> v - u)");
     return done(Prim.sub, v, u);
   }
 
   private static Code distAddCMulNeg(Atom x, Atom u, long c, Atom v) { // x@(u * c) + (-v) = ...
     if (u == v) {
-      MILProgram.report("rewrite: (u * c) + (-u) ==> u * (c - 1)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u * c) + (-u) ==> u * (c - 1)");
       return done(Prim.mul, u, c - 1);
     }
     return distAddAnyNeg(x, v);
@@ -979,7 +995,7 @@ public class PrimCall extends Call {
 
   private static Code distAddNegCMul(Atom u, Atom y, Atom v, long d) { // (-u) + y@(v * d) = ...
     if (u == v) {
-      MILProgram.report("rewrite: (-u) + (u * d)  ==>  u * (d - 1)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) + (u * d)  ==>  u * (d - 1)");
       return done(Prim.mul, u, d - 1);
     }
     return distAddNegAny(u, y);
@@ -987,7 +1003,7 @@ public class PrimCall extends Call {
 
   private static Code distSubCMulNeg(Atom x, Atom u, long c, Atom v) { // x@(u * c) - (-v) = ...
     if (u == v) {
-      MILProgram.report("rewrite: (u * c) - (-u) ==> u * (c + 1)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u * c) - (-u) ==> u * (c + 1)");
       return done(Prim.mul, u, c + 1);
     }
     return distAddAnyNeg(x, v);
@@ -995,7 +1011,7 @@ public class PrimCall extends Call {
 
   private static Code distSubNegCMul(Atom u, Atom y, Atom v, long d) { // (-u) - y@(v * d) = ...
     if (u == v) {
-      MILProgram.report("rewrite: (-u) - (u * d)  ==>  u * (-(1 + d))");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) - (u * d)  ==>  u * (-(1 + d))");
       return done(Prim.mul, u, -(1 + d));
     }
     return distAddNegAny(u, y);
@@ -1003,7 +1019,7 @@ public class PrimCall extends Call {
 
   private static Code distAddCMulAny(Atom u, long c, Atom y) { // (u * c) + y = ...
     if (u == y) {
-      MILProgram.report("rewrite: (u * c) + u ==> u * (c + 1)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u * c) + u ==> u * (c + 1)");
       return done(Prim.mul, u, c + 1);
     }
     return null;
@@ -1011,7 +1027,7 @@ public class PrimCall extends Call {
 
   private static Code distAddAnyCMul(Atom x, Atom v, long d) { // x + (v * d) = ...
     if (x == v) {
-      MILProgram.report("rewrite: v + (v * d)  ==>  v * (1 + d)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: v + (v * d)  ==>  v * (1 + d)");
       return done(Prim.mul, v, 1 + d);
     }
     return null;
@@ -1019,7 +1035,7 @@ public class PrimCall extends Call {
 
   private static Code distSubCMulAny(Atom u, long c, Atom y) { // (u * c) - y = ...
     if (u == y) {
-      MILProgram.report("rewrite: (u * c) - u ==> u * (c - 1)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u * c) - u ==> u * (c - 1)");
       return done(Prim.mul, u, c - 1);
     }
     return null;
@@ -1027,36 +1043,36 @@ public class PrimCall extends Call {
 
   private static Code distSubAnyCMul(Atom x, Atom v, long d) { // x - (v * d) = ...
     if (x == v) {
-      MILProgram.report("rewrite: v - (v * d)  ==>  v * (1 - d)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: v - (v * d)  ==>  v * (1 - d)");
       return done(Prim.mul, v, 1 - d);
     }
     return null;
   }
 
   private static Code distAddNegAny(Atom u, Atom y) {
-    MILProgram.report("rewrite: (-u) + y ==> y - u");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) + y ==> y - u");
     return done(Prim.sub, y, u);
   }
 
   private static Code distAddAnyNeg(Atom x, Atom v) {
-    MILProgram.report("rewrite: x + (-v) ==> x - v");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x + (-v) ==> x - v");
     return done(Prim.sub, x, v);
   }
 
   private static Code distSubNegAny(Atom u, Atom y) {
-    MILProgram.report("rewrite: (-u) - y ==> -(u + y)");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-u) - y ==> -(u + y)");
     Temp t = new Temp();
     return new Bind(t, Prim.add.withArgs(u, y), done(Prim.neg, t));
   }
 
   private static Code distSubAnyNeg(Atom x, Atom v) {
-    MILProgram.report("rewrite: x - (-v) ==> x + v");
+    MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x - (-v) ==> x + v");
     return done(Prim.add, x, v);
   }
 
   private static Code distAddAnyAny(Atom x, Atom y) {
     if (x == y) {
-      MILProgram.report("rewrite: x + x ==> x * 2");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x + x ==> x * 2");
       return done(Prim.mul, x, 2);
     }
     return null;
@@ -1064,7 +1080,7 @@ public class PrimCall extends Call {
 
   private static Code distSubAnyAny(Atom x, Atom y) {
     if (x == y) {
-      MILProgram.report("rewrite: x - x ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x - x ==> 0");
       return done(0);
     }
     return null;
@@ -1076,15 +1092,15 @@ public class PrimCall extends Call {
 
   private static Code mulVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x * 0 == 0
-      MILProgram.report("rewrite: x * 0 ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x * 0 ==> 0");
       return done(0);
     }
     if (m == 1) { // x * 1 == x
-      MILProgram.report("rewrite: x * 1 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x * 1 ==> x");
       return done(x);
     }
     if (m == (-1)) { // x * -1 == neg(x)
-      MILProgram.report("rewrite: x * (-1) ==> -x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x * (-1) ==> -x");
       return done(Prim.neg, x);
     }
     if (m > 2 && (m & (m - 1)) == 0) { // x * (1 << n) == x << n
@@ -1093,7 +1109,7 @@ public class PrimCall extends Call {
       while ((m >>= 1) > 0) {
         n++;
       } // calculate n
-      MILProgram.report("rewrite: x * " + m0 + " ==> x << " + n);
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x * " + m0 + " ==> x << " + n);
       return done(Prim.shl, x, n);
     }
     Tail a = x.lookupFact(facts);
@@ -1131,11 +1147,11 @@ public class PrimCall extends Call {
 
   private static Code orVarConst(Atom x, long m, Facts facts) {
     if (m == 0) {
-      MILProgram.report("rewrite: x | 0 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x | 0 ==> x");
       return done(x);
     }
     if (m == (~0)) {
-      MILProgram.report("rewrite: x | (~0) ==> (~0)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x | (~0) ==> (~0)");
       return done(~0);
     }
     Tail a = x.lookupFact(facts);
@@ -1144,11 +1160,11 @@ public class PrimCall extends Call {
       if ((ap = a.isPrim(Prim.or)) != null) {
         Word c = ap[1].isWord();
         if (c != null) {
-          MILProgram.report("rewrite: (u | c) | m ==> u | (c | n)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u | c) | m ==> u | (c | n)");
           return done(Prim.or.withArgs(ap[0], c.getVal() | m));
         }
       } else if ((ap = a.isPrim(Prim.not)) != null) {
-        MILProgram.report("rewrite: (~u) | m ==> ~(u & ~m)");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (~u) | m ==> ~(u & ~m)");
         Temp v = new Temp();
         return new Bind(v, Prim.and.withArgs(ap[0], ~m), done(Prim.not.withArgs(v)));
       } else if ((ap = a.isPrim(Prim.and)) != null) {
@@ -1160,7 +1176,9 @@ public class PrimCall extends Call {
             if (bp != null) {
               Word d = bp[1].isWord(); // ((_ | d) & c) | m
               if (d != null) {
-                MILProgram.report("rewrite: ((u | d) & c) | m ==> (u & c) | ((d & c) | m)");
+                MILProgram.report(
+                    OptimizerStats.ALGEBRA,
+                    "rewrite: ((u | d) & c) | m ==> (u & c) | ((d & c) | m)");
                 Temp v = new Temp();
                 long n = (d.getVal() & c.getVal()) | m;
                 return new Bind(v, Prim.and.withArgs(bp[0], c), done(Prim.or.withArgs(v, n)));
@@ -1189,11 +1207,11 @@ public class PrimCall extends Call {
 
   private static Code andVarConst(Atom x, long m, Facts facts) {
     if (m == 0) {
-      MILProgram.report("rewrite: x & 0 ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x & 0 ==> 0");
       return done(0);
     }
     if (m == (~0)) {
-      MILProgram.report("rewrite: x & (~0) ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x & (~0) ==> x");
       return done(x);
     }
     Tail a = x.lookupFact(facts); // (a) & m
@@ -1202,17 +1220,17 @@ public class PrimCall extends Call {
       if ((ap = a.isPrim(Prim.and)) != null) {
         Word c = ap[1].isWord();
         if (c != null) {
-          MILProgram.report("rewrite: (u & c) & m ==> u & (c & n)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (u & c) & m ==> u & (c & n)");
           return done(Prim.and.withArgs(ap[0], c.getVal() & m));
         }
       } else if ((ap = a.isPrim(Prim.not)) != null) {
-        MILProgram.report("rewrite: (~u) & m ==> ~(u | ~m)");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (~u) & m ==> ~(u | ~m)");
         Temp v = new Temp();
         return new Bind(v, Prim.or.withArgs(ap[0], ~m), done(Prim.not.withArgs(v)));
       } else if ((ap = a.isPrim(Prim.or)) != null) {
         Word c = ap[1].isWord(); // (_ | c) & m
         if (c != null) {
-          MILProgram.report("rewrite: (a | c) & m ==> (a & m) | (c & m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (a | c) & m ==> (a & m) | (c & m)");
           Temp v = new Temp();
           return new Bind(
               v, Prim.and.withArgs(ap[0], m), done(Prim.or.withArgs(v, c.getVal() & m)));
@@ -1230,6 +1248,7 @@ public class PrimCall extends Call {
             long em = ~((1L << w) - 1);
             if ((m & em) == em) { // if specified mask doesn't do more than effective mask ...
               MILProgram.report(
+                  OptimizerStats.ALGEBRA,
                   "rewrite: (x << " + w + ") & 0x" + Long.toHexString(m) + " ==> (x << " + w + ")");
               return done(x);
             }
@@ -1244,6 +1263,7 @@ public class PrimCall extends Call {
             long em = (1L << (Word.size() - w)) - 1;
             if ((m & em) == em) { // if specified mask doesn't do more than effective mask ...
               MILProgram.report(
+                  OptimizerStats.ALGEBRA,
                   "rewrite: (x >> " + w + ") & 0x" + Long.toHexString(m) + " ==> (x >> " + w + ")");
               return done(x);
             }
@@ -1259,6 +1279,7 @@ public class PrimCall extends Call {
             Word c = bp[1].isWord();
             if (c != null && modarith(c.getVal(), m)) { // ((u & m) + y) & m
               MILProgram.report(
+                  OptimizerStats.ALGEBRA,
                   "rewrite: ((x & 0x"
                       + Long.toHexString(c.getVal())
                       + ") + y) & 0x"
@@ -1295,7 +1316,7 @@ public class PrimCall extends Call {
     if (x == y) { // simple annihilator
       // TODO: in an expression of the form (x ^ y), we could further
       // exploit annihilation if x includes an or with y (or vice versa).
-      MILProgram.report("rewrite: x ^ x ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x ^ x ==> 0");
       return done(0);
     }
     return commuteRearrange(Prim.xor, x, x.lookupFact(facts), y, y.lookupFact(facts));
@@ -1303,11 +1324,11 @@ public class PrimCall extends Call {
 
   private static Code xorVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x ^ 0 == x
-      MILProgram.report("rewrite: x ^ 0 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x ^ 0 ==> x");
       return done(x);
     }
     if (m == (~0)) { // x ^ (~0) == not(x)
-      MILProgram.report("rewrite: x ^ (~0) ==> not(x)");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x ^ (~0) ==> not(x)");
       return done(Prim.not.withArgs(x));
     }
     return null;
@@ -1315,7 +1336,7 @@ public class PrimCall extends Call {
 
   private static Code subVarVar(Atom x, Atom y, Facts facts) {
     if (x == y) { // x - x == 0
-      MILProgram.report("rewrite: x - x ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x - x ==> 0");
       return done(0);
     }
     Tail a = x.lookupFact(facts);
@@ -1332,7 +1353,7 @@ public class PrimCall extends Call {
 
   private static Code subVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x - 0 == x
-      MILProgram.report("rewrite: x - 0 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x - 0 ==> x");
       return done(x);
     }
     Tail a = x.lookupFact(facts);
@@ -1341,21 +1362,21 @@ public class PrimCall extends Call {
       if ((ap = a.isPrim(Prim.add)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x + n) - m == x + (n - m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x + n) - m == x + (n - m)");
           return done(Prim.add, ap[0], b.getVal() - m);
         }
       } else if ((ap = a.isPrim(Prim.sub)) != null) {
         Word c;
         if ((c = ap[1].isWord()) != null) {
-          MILProgram.report("rewrite: (x - n) - m == x - (n + m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x - n) - m == x - (n + m)");
           return done(Prim.sub, ap[0], c.getVal() + m);
         }
         if ((c = ap[0].isWord()) != null) {
-          MILProgram.report("rewrite: (n - x) - m == (n - m) - x");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (n - x) - m == (n - m) - x");
           return done(Prim.sub, c.getVal() - m, ap[1]);
         }
       } else if ((ap = a.isPrim(Prim.neg)) != null) {
-        MILProgram.report("rewrite: (-x) - m  == -(x + m)");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (-x) - m  == -(x + m)");
         Temp v = new Temp();
         return new Bind(v, Prim.add.withArgs(ap[0], m), done(Prim.neg, v));
       }
@@ -1376,7 +1397,7 @@ public class PrimCall extends Call {
 
   private static Code subConstVar(long n, Atom y, Facts facts) {
     if (n == 0) { // 0 - y == -y
-      MILProgram.report("rewrite: 0 - y ==> -y");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: 0 - y ==> -y");
       return done(Prim.neg, y);
     }
     Tail b = y.lookupFact(facts);
@@ -1385,21 +1406,21 @@ public class PrimCall extends Call {
       if ((bp = b.isPrim(Prim.add)) != null) {
         Word c = bp[1].isWord();
         if (c != null) {
-          MILProgram.report("rewrite: n - (x + m) == (n - m) - x");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: n - (x + m) == (n - m) - x");
           return done(Prim.sub, n - c.getVal(), bp[0]);
         }
       } else if ((bp = b.isPrim(Prim.sub)) != null) {
         Word c;
         if ((c = bp[1].isWord()) != null) {
-          MILProgram.report("rewrite: n - (x - m) == (n + m) - x");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: n - (x - m) == (n + m) - x");
           return done(Prim.sub, n + c.getVal(), bp[0]);
         }
         if ((c = bp[0].isWord()) != null) {
-          MILProgram.report("rewrite: n - (m - x) == (n - m) + x");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: n - (m - x) == (n - m) + x");
           return done(Prim.add, n - c.getVal(), bp[0]);
         }
       } else if ((bp = b.isPrim(Prim.neg)) != null) {
-        MILProgram.report("rewrite: n - (-x) == x + n");
+        MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: n - (-x) == x + n");
         return done(Prim.add, bp[0], n);
       }
     }
@@ -1412,14 +1433,14 @@ public class PrimCall extends Call {
 
   private static Code shlVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x << 0 == x
-      MILProgram.report("rewrite: x << 0 ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x << 0 ==> x");
       return done(x);
     }
     final int wordsize = Word.size();
     if (m < 0 || m >= wordsize) { // x << m == x << (m % Wordsize)
       long n = m % wordsize;
       // TODO: Is this architecture dependent?
-      MILProgram.report("rewrite: x << " + m + " ==> x << " + n);
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x << " + m + " ==> x << " + n);
       return done(Prim.shl, x, n);
     }
     Tail a = x.lookupFact(facts);
@@ -1431,10 +1452,13 @@ public class PrimCall extends Call {
           long n = b.getVal();
           if (n >= 0 && n < wordsize && m >= 0 && m < wordsize) {
             if (n + m >= wordsize) {
-              MILProgram.report("rewrite: (x << " + n + ") << " + m + " ==> 0");
+              MILProgram.report(
+                  OptimizerStats.ALGEBRA, "rewrite: (x << " + n + ") << " + m + " ==> 0");
               return done(0);
             } else {
-              MILProgram.report("rewrite: (x << " + n + ") << " + m + " ==> x << " + (n + m));
+              MILProgram.report(
+                  OptimizerStats.ALGEBRA,
+                  "rewrite: (x << " + n + ") << " + m + " ==> x << " + (n + m));
               return done(Prim.shl, ap[0], n + m);
             }
           }
@@ -1446,6 +1470,7 @@ public class PrimCall extends Call {
           if (n == m && n > 0 && n < wordsize) {
             long mask = (-1) << m;
             MILProgram.report(
+                OptimizerStats.ALGEBRA,
                 "rewrite: (x >>> " + m + ") << " + m + " ==>  x & 0x" + Long.toHexString(mask));
             return done(Prim.and, ap[0], mask);
           }
@@ -1454,7 +1479,7 @@ public class PrimCall extends Call {
         Word b = ap[1].isWord();
         if (b != null) {
           // TODO: is this a good idea?  Unless n << m == 0, this makes the mask bigger ...
-          MILProgram.report("rewrite: (x & n) << m  ==  (x<<m) & (n<<m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x & n) << m  ==  (x<<m) & (n<<m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.shl.withArgs(ap[0], m), done(Prim.and, v, n << m));
@@ -1465,7 +1490,7 @@ public class PrimCall extends Call {
           // TODO: is this a good idea?  Unless n << m == 0, this makes the constant bigger ...
           // (But it might reduce the need for a shift if the shift on x can be combined with
           // another shift (i.e., if x = (y << p), say) ... which can happen in practice ...
-          MILProgram.report("rewrite: (x | n) << m  ==  (x<<m) | (n<<m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x | n) << m  ==  (x<<m) | (n<<m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.shl.withArgs(ap[0], m), done(Prim.or, v, n << m));
@@ -1473,7 +1498,7 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.xor)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x ^ n) << m  ==  (x<<m) ^ (n<<m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x ^ n) << m  ==  (x<<m) ^ (n<<m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.shl.withArgs(ap[0], m), done(Prim.xor, v, n << m));
@@ -1483,7 +1508,7 @@ public class PrimCall extends Call {
         // ... can we generalize and perhaps include other operators too?
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x + n) << m  ==  (x<<m) + (n<<m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x + n) << m  ==  (x<<m) + (n<<m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.shl.withArgs(ap[0], m), done(Prim.add, v, n << m));
@@ -1495,7 +1520,7 @@ public class PrimCall extends Call {
 
   private static Code shlConstVar(long n, Atom y, Facts facts) {
     if (n == 0) { // 0 << y == 0
-      MILProgram.report("rewrite: 0 << y ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: 0 << y ==> 0");
       return done(0);
     }
     return null;
@@ -1507,14 +1532,14 @@ public class PrimCall extends Call {
 
   private static Code lshrVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x >>> 0 == x
-      MILProgram.report("rewrite: lshr((x, 0)) ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: lshr((x, 0)) ==> x");
       return done(x);
     }
     final int wordsize = Word.size();
     if (m < 0 || m >= wordsize) { // x >>> m == x >>> (m % Wordsize)
       long n = m % wordsize;
       // TODO: Is this architecture dependent?
-      MILProgram.report("rewrite: x >>> " + m + " ==> x >>> " + n);
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x >>> " + m + " ==> x >>> " + n);
       return done(Prim.lshr, x, n);
     }
     Tail a = x.lookupFact(facts);
@@ -1526,10 +1551,13 @@ public class PrimCall extends Call {
           long n = b.getVal();
           if (n >= 0 && n < wordsize && m >= 0 && m < wordsize) {
             if (n + m >= wordsize) {
-              MILProgram.report("rewrite: (x >>> " + n + ") >>> " + m + " ==> 0");
+              MILProgram.report(
+                  OptimizerStats.ALGEBRA, "rewrite: (x >>> " + n + ") >>> " + m + " ==> 0");
               return done(0);
             } else {
-              MILProgram.report("rewrite: (x >>> " + n + ") >>> " + m + " ==> x >>> " + (n + m));
+              MILProgram.report(
+                  OptimizerStats.ALGEBRA,
+                  "rewrite: (x >>> " + n + ") >>> " + m + " ==> x >>> " + (n + m));
               return done(Prim.lshr, ap[0], n + m);
             }
           }
@@ -1541,6 +1569,7 @@ public class PrimCall extends Call {
           if (n == m && n > 0 && n < wordsize) {
             long mask = (-1) >>> m;
             MILProgram.report(
+                OptimizerStats.ALGEBRA,
                 "rewrite: (x << " + m + ") >>> " + m + " ==>  x & 0x" + Long.toHexString(mask));
             return done(Prim.and, ap[0], mask);
           }
@@ -1548,7 +1577,8 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.and)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x & n) >>> m  ==  (x>>>m) & (n>>>m)");
+          MILProgram.report(
+              OptimizerStats.ALGEBRA, "rewrite: (x & n) >>> m  ==  (x>>>m) & (n>>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.lshr.withArgs(ap[0], m), done(Prim.and, v, n >>> m));
@@ -1556,7 +1586,8 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.or)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x | n) >>> m  ==  (x>>>m) | (n>>>m)");
+          MILProgram.report(
+              OptimizerStats.ALGEBRA, "rewrite: (x | n) >>> m  ==  (x>>>m) | (n>>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.lshr.withArgs(ap[0], m), done(Prim.or, v, n >>> m));
@@ -1564,7 +1595,8 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.xor)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x ^ n) >>> m  ==  (x>>>m) ^ (n>>>m)");
+          MILProgram.report(
+              OptimizerStats.ALGEBRA, "rewrite: (x ^ n) >>> m  ==  (x>>>m) ^ (n>>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.lshr.withArgs(ap[0], m), done(Prim.xor, v, n >>> m));
@@ -1576,7 +1608,7 @@ public class PrimCall extends Call {
 
   private static Code lshrConstVar(long n, Atom y, Facts facts) {
     if (n == 0) { // 0 >>> y == 0
-      MILProgram.report("rewrite: lshr((0, y)) ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: lshr((0, y)) ==> 0");
       return done(0);
     }
     return null;
@@ -1588,14 +1620,14 @@ public class PrimCall extends Call {
 
   private static Code ashrVarConst(Atom x, long m, Facts facts) {
     if (m == 0) { // x >> 0 == x
-      MILProgram.report("rewrite: ashr((x, 0)) ==> x");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: ashr((x, 0)) ==> x");
       return done(x);
     }
     final int wordsize = Word.size();
     if (m < 0 || m >= wordsize) { // x >>> m == x >>> (m % Wordsize)
       long n = m % wordsize;
       // TODO: Is this architecture dependent?
-      MILProgram.report("rewrite: x >> " + m + " ==> x >> " + n);
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: x >> " + m + " ==> x >> " + n);
       return done(Prim.ashr, x, n);
     }
     Tail a = x.lookupFact(facts);
@@ -1608,10 +1640,13 @@ public class PrimCall extends Call {
           if (n >= 0 && n < wordsize && m >= 0 && m < wordsize) {
             if (n + m >= wordsize) {
               MILProgram.report(
+                  OptimizerStats.ALGEBRA,
                   "rewrite: (x >> " + n + ") >> " + m + " ==> x >> " + (wordsize - 1));
               return done(Prim.ashr, ap[0], wordsize - 1);
             } else {
-              MILProgram.report("rewrite: (x >> " + n + ") >> " + m + " ==> x >> " + (n + m));
+              MILProgram.report(
+                  OptimizerStats.ALGEBRA,
+                  "rewrite: (x >> " + n + ") >> " + m + " ==> x >> " + (n + m));
               return done(Prim.ashr, ap[0], n + m);
             }
           }
@@ -1621,7 +1656,7 @@ public class PrimCall extends Call {
         // but it shouldn't do any harm to include these optimization cases ...
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x & n) >> m  ==  (x>>m) & (n>>m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x & n) >> m  ==  (x>>m) & (n>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.ashr.withArgs(ap[0], m), done(Prim.and, v, n >> m));
@@ -1629,7 +1664,7 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.or)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x | n) >> m  ==  (x>>m) | (n>>m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x | n) >> m  ==  (x>>m) | (n>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.ashr.withArgs(ap[0], m), done(Prim.or, v, n >> m));
@@ -1637,7 +1672,7 @@ public class PrimCall extends Call {
       } else if ((ap = a.isPrim(Prim.xor)) != null) {
         Word b = ap[1].isWord();
         if (b != null) {
-          MILProgram.report("rewrite: (x ^ n) >> m  ==  (x>>m) ^ (n>>m)");
+          MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: (x ^ n) >> m  ==  (x>>m) ^ (n>>m)");
           long n = b.getVal();
           Temp v = new Temp();
           return new Bind(v, Prim.ashr.withArgs(ap[0], m), done(Prim.xor, v, n >> m));
@@ -1649,10 +1684,10 @@ public class PrimCall extends Call {
 
   private static Code ashrConstVar(long n, Atom y, Facts facts) {
     if (n == 0) { // 0 >> y == 0
-      MILProgram.report("rewrite: ashr((0, y)) ==> 0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: ashr((0, y)) ==> 0");
       return done(0);
     } else if (n == (~0)) { // ~0 >> y = ~0
-      MILProgram.report("rewrite: ashr((~0, y)) ==> ~0");
+      MILProgram.report(OptimizerStats.ALGEBRA, "rewrite: ashr((~0, y)) ==> ~0");
       return done(n);
     }
     return null;
@@ -1660,10 +1695,11 @@ public class PrimCall extends Call {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(p.summary()) * 33 + 1;
+  int summary(Temps vars) {
+    return summary(p.summary(), vars) * 33 + 1;
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
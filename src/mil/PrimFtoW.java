@@ -36,8 +36,12 @@ public abstract class PrimFtoW extends Prim {
     stack[fp] = new WordValue(op(stack[fp].getBool()));
   }
 
+  void exec(PrintWriter out, int fp, long[] words) throws Failure {
+    words[fp] = op(words[fp] != 0);
+  }
+
   Code fold(boolean n) {
-    MILProgram.report("constant folding for " + getId());
+    MILProgram.report(OptimizerStats.FOLD, "constant folding for " + getId());
     return PrimCall.done(op(n));
   }
 }
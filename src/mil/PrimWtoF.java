@@ -36,8 +36,12 @@ public abstract class PrimWtoF extends Prim {
     stack[fp] = new BoolValue(op(stack[fp].getInt()));
   }
 
+  void exec(PrintWriter out, int fp, long[] words) throws Failure {
+    words[fp] = op(words[fp]) ? 1 : 0;
+  }
+
   Code fold(long n) {
-    MILProgram.report("constant folding for " + getId());
+    MILProgram.report(OptimizerStats.FOLD, "constant folding for " + getId());
     return PrimCall.done(op(n));
   }
 }
@@ -0,0 +1,337 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Records an execution profile for a bytecode program running in a Machine. This includes a count
+ * of the number of times that each instruction is executed, from which we can calculate per
+ * definition counts for entries, instructions, allocations, and primitive calls, as well as a
+ * calling context tree that can be written as a collapsed stack file for use with flame graph
+ * tools.
+ */
+public class Profile {
+
+  private int[] prog;
+
+  private int size;
+
+  /** The entry point addresses for each definition in the program, in increasing order. */
+  private int[] entries;
+
+  private int numEntries;
+
+  /**
+   * Records the index in entries of the definition that contains each code address, or (-1) for
+   * code that precedes the first definition (i.e., the initialization code for the program).
+   */
+  private int[] owner;
+
+  /** Counts the number of times that the instruction at each address has been executed. */
+  private long[] counts;
+
+  /** Default constructor. */
+  Profile(int[] prog, int size, int[] entries, int numEntries) {
+    this.prog = prog;
+    this.size = size;
+    this.entries = entries;
+    this.numEntries = numEntries;
+    this.owner = new int[size];
+    this.counts = new long[size];
+    int d = (-1);
+    for (int pc = 0; pc < size; pc++) {
+      while (d + 1 < numEntries && entries[d + 1] <= pc) {
+        d++;
+      }
+      owner[pc] = d;
+    }
+    reset();
+  }
+
+  /** Return the number of times that the instruction at the given address was executed. */
+  long getCount(int addr) {
+    return (addr >= 0 && addr < size) ? counts[addr] : 0;
+  }
+
+  /**
+   * Return the minimum number of entries for a definition to be considered hot: at least one
+   * percent of all entries to definitions in this profile. Returns 0 if no definitions were
+   * entered.
+   */
+  public long hotThreshold() {
+    long total = 0;
+    for (int i = 0; i < numEntries; i++) {
+      total += counts[entries[i]];
+    }
+    return (total == 0) ? 0 : Math.max(1, total / 100);
+  }
+
+  /** Maximum depth for the calling context tree; deeper calls are attributed to the frame above. */
+  private static final int MAX_DEPTH = 200;
+
+  /** Represents a node in the calling context tree. */
+  private static class Node {
+
+    /** The definition for this node (an index into entries). */
+    private int defn;
+
+    private Node parent;
+
+    private int depth;
+
+    private Node children;
+
+    private Node sibling;
+
+    /** The number of instructions executed in this context (excluding calls). */
+    private long count;
+
+    /** Default constructor. */
+    private Node(int defn, Node parent) {
+      this.defn = defn;
+      this.parent = parent;
+      this.depth = (parent == null) ? 0 : (1 + parent.depth);
+      if (parent != null) {
+        this.sibling = parent.children;
+        parent.children = this;
+      }
+    }
+
+    /** Find the child of this node for the given definition, adding a new node if necessary. */
+    Node child(int d) {
+      for (Node c = children; c != null; c = c.sibling) {
+        if (c.defn == d) {
+          return c;
+        }
+      }
+      return new Node(d, this);
+    }
+  }
+
+  /** The root of the calling context tree. */
+  private Node root;
+
+  /** The node for the currently executing definition. */
+  private Node current;
+
+  /** Set to true when the next instruction to be executed is the first in a called definition. */
+  private boolean calling;
+
+  /** Counts the number of calls that have been made beyond MAX_DEPTH and not yet returned. */
+  private int excess;
+
+  /** Reset all counts and the control context at the start of a new execution. */
+  void reset() {
+    for (int pc = 0; pc < size; pc++) {
+      counts[pc] = 0;
+    }
+    root = new Node((-2), null);
+    current = root;
+    calling = true;
+    excess = 0;
+  }
+
+  /**
+   * Record the execution of the instruction at the given address. If the instruction belongs to a
+   * different definition than the one that is currently running, then we treat it as a tail call.
+   */
+  void count(int pc) {
+    counts[pc]++;
+    int d = owner[pc];
+    if (calling) {
+      current = current.child(d);
+      calling = false;
+    } else if (d != current.defn && excess == 0) {
+      current = current.parent.child(d);
+    }
+    current.count++;
+  }
+
+  /** Record a CALL or CCALL instruction. */
+  void call() {
+    if (current.depth >= MAX_DEPTH) {
+      excess++;
+    } else {
+      calling = true;
+    }
+  }
+
+  /** Record a RETURN instruction. */
+  void ret() {
+    if (excess > 0) {
+      excess--;
+    } else if (current.parent != null) {
+      current = current.parent;
+    }
+  }
+
+  /** Return a printable name for the definition with the given index. */
+  private String defnName(AddrMap addrMap, int d) {
+    return (d < 0) ? "(init)" : addrMap.codeLabel(entries[d]);
+  }
+
+  /** Return a printable label for the given code address, relative to its enclosing definition. */
+  private String addrName(AddrMap addrMap, int pc) {
+    int d = owner[pc];
+    int base = (d < 0) ? 0 : entries[d];
+    return defnName(addrMap, d) + ((pc == base) ? "" : ("+" + (pc - base)));
+  }
+
+  /** Number of individual instructions to list in the hot spot report. */
+  private static final int HOT_INSTRS = 20;
+
+  /**
+   * Write a report showing the definitions in which most instructions were executed, together
+   * with a summary of primitive calls and a list of the most frequently executed instructions.
+   */
+  public void report(PrintWriter out, AddrMap addrMap) {
+    int n = numEntries + 1; // Index 0 is used for the initialization code
+    long[] entered = new long[n];
+    long[] instrs = new long[n];
+    long[] allocs = new long[n];
+    long[] prims = new long[n];
+    long[] primCalls = new long[0];
+    long total = 0;
+    for (int pc = 0; pc < size; pc += Machine.instrSize(prog[pc])) {
+      long c = counts[pc];
+      int d = owner[pc] + 1;
+      total += c;
+      instrs[d] += c;
+      if (d > 0 && pc == entries[d - 1]) {
+        entered[d] += c;
+      }
+      switch (prog[pc]) {
+        case Machine.ALLOC:
+          allocs[d] += c;
+          break;
+        case Machine.PRIM:
+        case Machine.PRIM_COPY:
+          {
+            prims[d] += c;
+            int p = prog[pc + 2];
+            if (p >= primCalls.length) {
+              long[] newCalls = new long[p + 1];
+              for (int i = 0; i < primCalls.length; i++) {
+                newCalls[i] = primCalls[i];
+              }
+              primCalls = newCalls;
+            }
+            primCalls[p] += c;
+          }
+          break;
+      }
+    }
+
+    out.println("Execution profile: " + total + " instructions (superinstructions count once)");
+    out.println("Hot spots:");
+    out.println("      instrs       %     entries      allocs       prims  definition");
+    int[] order = sortByCount(instrs);
+    for (int i = 0; i < order.length && instrs[order[i]] > 0; i++) {
+      int d = order[i];
+      out.println(
+          pad(instrs[d], 12)
+              + pad(percent(instrs[d], total), 8)
+              + pad(entered[d], 12)
+              + pad(allocs[d], 12)
+              + pad(prims[d], 12)
+              + "  "
+              + defnName(addrMap, d - 1));
+    }
+
+    out.println("Primitive calls:");
+    order = sortByCount(primCalls);
+    for (int i = 0; i < order.length && primCalls[order[i]] > 0; i++) {
+      out.println(pad(primCalls[order[i]], 12) + "  " + Prim.showPrim(order[i]));
+    }
+
+    out.println("Hot instructions:");
+    order = sortByCount(counts);
+    for (int i = 0; i < order.length && i < HOT_INSTRS && counts[order[i]] > 0; i++) {
+      int pc = order[i];
+      out.println(
+          pad(counts[pc], 12)
+              + pad(percent(counts[pc], total), 8)
+              + "  "
+              + addrName(addrMap, pc)
+              + "\t"
+              + Machine.opName(prog[pc]));
+    }
+  }
+
+  /** Return an array of the indices of the given counts, sorted into decreasing order of count. */
+  private static int[] sortByCount(final long[] counts) {
+    Integer[] idxs = new Integer[counts.length];
+    for (int i = 0; i < idxs.length; i++) {
+      idxs[i] = i;
+    }
+    Arrays.sort(
+        idxs,
+        new Comparator<Integer>() {
+          public int compare(Integer a, Integer b) {
+            return Long.compare(counts[b], counts[a]);
+          }
+        });
+    int[] order = new int[idxs.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = idxs[i];
+    }
+    return order;
+  }
+
+  private static String percent(long n, long total) {
+    return (total == 0) ? "-" : String.format("%.1f", (100.0 * n) / total);
+  }
+
+  private static String pad(long n, int width) {
+    return pad(Long.toString(n), width);
+  }
+
+  private static String pad(String s, int width) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = s.length(); i < width; i++) {
+      buf.append(' ');
+    }
+    return buf.append(s).toString();
+  }
+
+  /**
+   * Write the calling context tree in the collapsed stack format that is used by flame graph tools:
+   * each line lists the definitions on a call stack, separated by semicolons, followed by the number
+   * of instructions executed with that stack.
+   */
+  public void collapsedStacks(PrintWriter out, AddrMap addrMap) {
+    for (Node c = root.children; c != null; c = c.sibling) {
+      collapsedStacks(out, addrMap, c, defnName(addrMap, c.defn));
+    }
+  }
+
+  private void collapsedStacks(PrintWriter out, AddrMap addrMap, Node node, String path) {
+    if (node.count > 0) {
+      out.println(path + " " + node.count);
+    }
+    for (Node c = node.children; c != null; c = c.sibling) {
+      collapsedStacks(out, addrMap, c, path + ";" + defnName(addrMap, c.defn));
+    }
+  }
+}
@@ -148,6 +148,11 @@ public class Return extends Call {
     return args;
   }
 
+  /** Return an approximation for the value that is produced by this tail. */
+  ConstProp.Approx constValue(ConstProp cp) {
+    return args.length == 1 ? cp.valueOf(args[0]) : ConstProp.Approx.unknown;
+  }
+
   Atom shortTopLevel(Top d, int i) {
     if (i < 0 || i >= args.length) {
       debug.Internal.error("Index for shortTopLevel is out of bounds");
@@ -155,17 +160,19 @@ public class Return extends Call {
     if (args[i].sameAtom(d)) {
       return d;
     } else {
-      MILProgram.report("replacing reference to top level " + d + " with " + args[i]);
+      MILProgram.report(
+          OptimizerStats.CONST_PROP, "replacing reference to top level " + d + " with " + args[i]);
       return args[i];
     }
   }
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return summary(1);
+  int summary(Temps vars) {
+    return summary(1, vars);
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
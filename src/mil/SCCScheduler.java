@@ -0,0 +1,169 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an analysis or a rewrite over each of the strongly-connected components of a program, using
+ * the fork/join pool of the current compilation to process components that do not depend on one
+ * another at the same time. The visit must only update definitions in the scc that it is visiting,
+ * and only read information from the sccs that it depends on; with those restrictions, the results
+ * are the same as a sequential traversal of the scc list. Definitions that are created during a
+ * visit, including derived blocks that may be shared with other sccs, are named afterwards by
+ * replaying the name events for each scc in the order of the scc list.
+ */
+public abstract class SCCScheduler {
+
+  /** Visit a single scc. */
+  abstract void visit(DefnSCC scc);
+
+  /** The compilation in which the sccs are visited, including those visited by worker threads. */
+  private Compilation comp = Compilation.current();
+
+  /**
+   * Lists with fewer sccs than this are visited sequentially, because the cost of scheduling the
+   * tasks would be greater than the work that they could share.
+   */
+  public static final int MIN_PARALLEL_SCCS = 256;
+
+  /**
+   * Visit every scc in the given list. If ordered is true, then each scc will only be visited after
+   * all of the sccs that it depends on; otherwise, the sccs are treated as independent.
+   */
+  void run(DefnSCCs sccs, boolean ordered) {
+    int size = 0;
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      size++;
+    }
+    if (comp.getWorkers() <= 1 || size < MIN_PARALLEL_SCCS) {
+      for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+        visit(dsccs.head);
+      }
+      return;
+    }
+
+    // Build a node for each scc, linking it to the nodes for the sccs that depend on it:
+    HashMap<DefnSCC, Node> nodes = new HashMap<DefnSCC, Node>();
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      nodes.put(dsccs.head, new Node(dsccs.head));
+    }
+    ArrayList<Node> ready = new ArrayList<Node>();
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      Node n = nodes.get(dsccs.head);
+      if (ordered) {
+        for (DefnSCCs deps = dsccs.head.getDependsOn(); deps != null; deps = deps.next) {
+          Node d = nodes.get(deps.head);
+          if (d != null) {
+            n.waiting.incrementAndGet();
+            d.dependents.add(n);
+          }
+        }
+      }
+      if (n.waiting.get() == 0) {
+        ready.add(n);
+      }
+    }
+    comp.getPool().invoke(new Root(ready));
+
+    // Assign names to any definitions that were created, in the order of a sequential traversal:
+    for (DefnSCCs dsccs = sccs; dsccs != null; dsccs = dsccs.next) {
+      NameEvent.replay(nodes.get(dsccs.head).names);
+    }
+    comp.endDerivations();
+  }
+
+  /** Records scheduling information for a single scc. */
+  private static class Node {
+
+    private DefnSCC scc;
+
+    /** Counts the number of sccs that must be visited before this one. */
+    private AtomicInteger waiting = new AtomicInteger();
+
+    /** Lists the sccs that depend on this one. */
+    private ArrayList<Node> dependents = new ArrayList<Node>();
+
+    /** Records the name events that are triggered while visiting this scc. */
+    private ArrayList<NameEvent> names = new ArrayList<NameEvent>();
+
+    /** Default constructor. */
+    private Node(DefnSCC scc) {
+      this.scc = scc;
+    }
+  }
+
+  /** Starts a task for each scc that has no dependencies, and completes when they are all done. */
+  private class Root extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private ArrayList<Node> ready;
+
+    /** Default constructor. */
+    private Root(ArrayList<Node> ready) {
+      this.ready = ready;
+    }
+
+    public void compute() {
+      for (Node n : ready) {
+        addToPendingCount(1);
+        new Task(this, n).fork();
+      }
+      tryComplete();
+    }
+  }
+
+  /** Visits a single scc, and then starts tasks for any dependents that have become ready. */
+  private class Task extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Node node;
+
+    /** Default constructor. */
+    private Task(CountedCompleter<?> parent, Node node) {
+      super(parent);
+      this.node = node;
+    }
+
+    public void compute() {
+      Compilation prev = comp.enter();
+      ArrayList<NameEvent> log = comp.setNameLog(node.names);
+      try {
+        visit(node.scc);
+      } finally {
+        comp.setNameLog(log);
+        Compilation.leave(prev);
+      }
+      for (Node d : node.dependents) {
+        if (d.waiting.decrementAndGet() == 0) {
+          addToPendingCount(1);
+          new Task(this, d).fork();
+        }
+      }
+      tryComplete();
+    }
+  }
+}
@@ -49,6 +49,12 @@ public abstract class Scheme {
    */
   abstract boolean alphaType(Type left, TGenCorresp corresp);
 
+  /**
+   * Compute a hash code for this type scheme that is consistent with alphaEquiv: alpha equivalent
+   * type schemes are guaranteed to have the same hash code.
+   */
+  abstract int alphaHash();
+
   /** Construct a printable representation of a type scheme. */
   public String toString() {
     return toString(TypeWriter.NEVER);
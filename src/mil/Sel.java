@@ -47,6 +47,14 @@ public class Sel extends Tail {
     return a == w;
   }
 
+  /**
+   * Test to see if the value of v might escape from this tail. Uses of v in a selector, or as the
+   * function in an Enter, do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return false;
+  }
+
   /**
    * Test if this Tail expression includes an occurrence of any of the variables listed in the given
    * array.
@@ -185,7 +193,8 @@ public class Sel extends Tail {
     if (data != null) {
       Atom a1 = data.select(cf, n); // find matching component
       if (a1 != null) {
-        MILProgram.report("rewriting " + cf + " " + n + " " + a + " -> " + a1);
+        MILProgram.report(
+            OptimizerStats.KNOWN_CONS, "rewriting " + cf + " " + n + " " + a + " -> " + a1);
         return new Return(a1);
       }
     }
@@ -194,10 +203,11 @@ public class Sel extends Tail {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
-    return 4 + cf.summary() + n;
+  int summary(Temps vars) {
+    return 4 + cf.summary() + n + 29 * a.summary(vars);
   }
 
   /** Test to see if two Tail expressions are alpha equivalent. */
@@ -40,4 +40,19 @@ class SpecBlock extends SpecReq {
   void specialize(MILSpec spec) {
     bspec.specialize(spec, borig);
   }
+
+  /** Return the definition in the original program. */
+  Defn getOrig() {
+    return borig;
+  }
+
+  /** Return the specialized definition. */
+  Defn getSpec() {
+    return bspec;
+  }
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  void setSpecName(int num) {
+    bspec.setSpecName(borig, num);
+  }
 }
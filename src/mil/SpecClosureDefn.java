@@ -40,4 +40,19 @@ class SpecClosureDefn extends SpecReq {
   void specialize(MILSpec spec) {
     kspec.specialize(spec, korig);
   }
+
+  /** Return the definition in the original program. */
+  Defn getOrig() {
+    return korig;
+  }
+
+  /** Return the specialized definition. */
+  Defn getSpec() {
+    return kspec;
+  }
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  void setSpecName(int num) {
+    kspec.setSpecName(korig, num);
+  }
 }
@@ -0,0 +1,53 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.util.ArrayList;
+
+/** Records the creation of a specialized DataType during parallel specialization. */
+class SpecDataType extends SpecEvent {
+
+  private DataType orig;
+
+  private DataType dt;
+
+  private Type inst;
+
+  /** The events that were triggered while the specialized DataType was being constructed. */
+  ArrayList<SpecEvent> log = new ArrayList<SpecEvent>();
+
+  /** The log that was in use before construction of the specialized DataType began. */
+  ArrayList<SpecEvent> saved;
+
+  /** Default constructor. */
+  SpecDataType(DataType orig, DataType dt, Type inst) {
+    this.orig = orig;
+    this.dt = dt;
+    this.inst = inst;
+  }
+
+  /** Assign names for this event, which is being encountered for the first time. */
+  void replay(MILSpec spec) {
+    dt.id = orig.id + Compilation.current().fresh(DataType.class);
+    spec.replayTypeSpecs(orig, inst, dt);
+    spec.replay(log);
+  }
+}
@@ -0,0 +1,35 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+
+/**
+ * Represents an event during parallel specialization that would have used up a number for a fresh
+ * name (or the next instance number of a definition) if specialization had been performed
+ * sequentially. Each task records the events that it triggers, in order, and the events are then
+ * replayed in the order that a sequential traversal would have encountered them so that the
+ * specialized program uses exactly the same names as a sequential run.
+ */
+abstract class SpecEvent {
+
+  /** Assign names for this event, which is being encountered for the first time. */
+  abstract void replay(MILSpec spec);
+}
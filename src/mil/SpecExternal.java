@@ -40,4 +40,19 @@ class SpecExternal extends SpecReq {
   void specialize(MILSpec spec) {
     espec.specialize(spec, eorig);
   }
+
+  /** Return the definition in the original program. */
+  Defn getOrig() {
+    return eorig;
+  }
+
+  /** Return the specialized definition. */
+  Defn getSpec() {
+    return espec;
+  }
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  void setSpecName(int num) {
+    espec.setSpecName(eorig, num);
+  }
 }
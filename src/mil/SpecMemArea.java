@@ -40,4 +40,19 @@ class SpecMemArea extends SpecReq {
   void specialize(MILSpec spec) {
     aspec.specialize(spec, aorig);
   }
+
+  /** Return the definition in the original program. */
+  Defn getOrig() {
+    return aorig;
+  }
+
+  /** Return the specialized definition. */
+  Defn getSpec() {
+    return aspec;
+  }
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  void setSpecName(int num) {
+    aspec.setSpecName(aorig, num);
+  }
 }
@@ -20,6 +20,7 @@ package mil;
 
 import compiler.*;
 import core.*;
+import java.util.ArrayList;
 
 /**
  * Represents a specialization request, each of which pairs a definition in the original program
@@ -28,11 +29,29 @@ import core.*;
  * created, the specialized definition will be initialized with the required monomorphic type, but
  * the body of the definition will not have been specified.
  */
-abstract class SpecReq {
+abstract class SpecReq extends SpecEvent {
 
   /**
    * Complete the construction of a specialized version of a definition in the original program as
    * specified by a specialization request.
    */
   abstract void specialize(MILSpec spec);
+
+  /** Return the definition in the original program. */
+  abstract Defn getOrig();
+
+  /** Return the specialized definition. */
+  abstract Defn getSpec();
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  abstract void setSpecName(int num);
+
+  /** The events that were triggered while specializing this request in parallel. */
+  ArrayList<SpecEvent> log = new ArrayList<SpecEvent>();
+
+  /** Assign names for this event, which is being encountered for the first time. */
+  void replay(MILSpec spec) {
+    setSpecName(spec.replayNum(getOrig(), getSpec()));
+    spec.replayLater(this);
+  }
 }
@@ -40,4 +40,19 @@ class SpecTopLevel extends SpecReq {
   void specialize(MILSpec spec) {
     tspec.specialize(spec, torig);
   }
+
+  /** Return the definition in the original program. */
+  Defn getOrig() {
+    return torig;
+  }
+
+  /** Return the specialized definition. */
+  Defn getSpec() {
+    return tspec;
+  }
+
+  /** Set the name of the specialized definition for instance number num of the original. */
+  void setSpecName(int num) {
+    tspec.setSpecName(torig, num);
+  }
 }
@@ -59,4 +59,12 @@ abstract class Src {
   boolean isInvariant() {
     return false;
   }
+
+  /**
+   * Return the index of the parameter of d that provides this value when the enclosing loop is
+   * entered at d, or (-1) if there is no such parameter.
+   */
+  int sourceIndex(Defn d) {
+    return (-1);
+  }
 }
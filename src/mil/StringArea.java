@@ -32,14 +32,12 @@ public class StringArea extends Area {
     this.str = str;
   }
 
-  private static int count = 0;
-
   public static final Type refString = Type.ref(Tycon.string.asType());
 
   private Type expected = refString;
 
   public StringArea(Position pos, String str) {
-    this(pos, "str" + count++, str);
+    this(pos, "str" + Compilation.current().fresh(StringArea.class), str);
   }
 
   /** Find the list of Defns that this Defn depends on. */
@@ -0,0 +1,125 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+
+/**
+ * A hash table of definitions, keyed by summary value, that is used to find duplicate definitions
+ * in MILProgram.collapse(). The table grows as definitions are added so that the chains remain
+ * short, even for programs with very large numbers of definitions. The table also counts the
+ * number of alpha equivalence tests that are needed to find duplicates.
+ */
+class SummaryTable {
+
+  /** Records a definition with a particular summary. */
+  private static class Entry {
+
+    private int summary;
+
+    private Defn defn;
+
+    private Entry next;
+
+    /** Default constructor. */
+    private Entry(int summary, Defn defn, Entry next) {
+      this.summary = summary;
+      this.defn = defn;
+      this.next = next;
+    }
+  }
+
+  private Entry[] table = new Entry[64];
+
+  /** Counts the number of definitions in this table. */
+  private int size = 0;
+
+  /** Counts the number of alpha equivalence tests that were performed. */
+  private int comparisons = 0;
+
+  int getSize() {
+    return size;
+  }
+
+  int getComparisons() {
+    return comparisons;
+  }
+
+  /** Record that an alpha equivalence test has been performed. */
+  void compared() {
+    comparisons++;
+  }
+
+  private int index(int summary, int length) {
+    return (summary ^ (summary >>> 16)) & (length - 1);
+  }
+
+  /**
+   * Return the list of definitions in this table with the given summary, most recently added
+   * first.
+   */
+  Defns find(int summary) {
+    Defns ds = null;
+    Defns last = null;
+    for (Entry es = table[index(summary, table.length)]; es != null; es = es.next) {
+      if (es.summary == summary) {
+        Defns d = new Defns(es.defn, null);
+        if (last == null) {
+          ds = d;
+        } else {
+          last.next = d;
+        }
+        last = d;
+      }
+    }
+    return ds;
+  }
+
+  /** Add a definition with the given summary to this table. */
+  void add(int summary, Defn defn) {
+    if (++size > table.length) {
+      grow();
+    }
+    int idx = index(summary, table.length);
+    table[idx] = new Entry(summary, defn, table[idx]);
+  }
+
+  /**
+   * Double the number of chains in this table, preserving the relative order of the entries in
+   * each chain.
+   */
+  private void grow() {
+    Entry[] ntable = new Entry[2 * table.length];
+    Entry[] tails = new Entry[ntable.length];
+    for (int i = 0; i < table.length; i++) {
+      for (Entry es = table[i]; es != null; es = es.next) {
+        int idx = index(es.summary, ntable.length);
+        Entry e = new Entry(es.summary, es.defn, null);
+        if (tails[idx] == null) {
+          ntable[idx] = e;
+        } else {
+          tails[idx].next = e;
+        }
+        tails[idx] = e;
+      }
+    }
+    table = ntable;
+  }
+}
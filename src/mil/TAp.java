@@ -55,6 +55,11 @@ public class TAp extends Type {
     return right.fun.alphaType(this.fun, corresp) && right.arg.alphaType(this.arg, corresp);
   }
 
+  /** Compute a hash code for this type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return 31 * fun.alphaHash() + arg.alphaHash();
+  }
+
   /**
    * Write this type to the specified writer, in a context with the specified precedence and number
    * of arguments.
@@ -76,6 +81,11 @@ public class TAp extends Type {
     return this.arg.tvars(thisenv, this.fun.tvars(thisenv, tvs));
   }
 
+  /** Mark live generics in this type, which is applied to the n arguments in args. */
+  void markLiveGens(boolean[] live, Types args, int n) {
+    fun.markLiveGens(live, new Types(arg, args), n + 1);
+  }
+
   /**
    * Calculate a type skeleton for this type, replacing occurrences of any of the TVar objects in
    * generics with a TGen value corresponding to its index. Any other unbound TVars are kept as is.
@@ -186,14 +196,6 @@ public class TAp extends Type {
     return fun.canonType(env, set, args + 1);
   }
 
-  /**
-   * Determine whether the arguments of this (canonical) type match the types on the top of the
-   * stack.
-   */
-  boolean matches(TypeSet set, int n) {
-    return n > 0 && this.arg == set.stackArg(n) && this.fun.matches(set, n - 1);
-  }
-
   Type apply(Type[] thisenv, TVarSubst s) {
     return new TAp(fun.apply(thisenv, s), arg.apply(thisenv, s));
   }
@@ -396,6 +398,10 @@ public class TAp extends Type {
     return arg;
   }
 
+  Type getFun() {
+    return fun;
+  }
+
   /**
    * Calculate an array of llvm Types corresponding to the components of a given MIL Tuple type.
    * Unit types are filtered out in the process, so the resulting array may not actually have as
@@ -59,6 +59,14 @@ public class TGen extends Type {
     return this.mapsTo(right, corresp);
   }
 
+  /**
+   * Compute a hash code for this type that is consistent with alphaEquiv. All TGens have the same
+   * hash code because alphaEquiv allows them to be renamed.
+   */
+  int alphaHash() {
+    return 17;
+  }
+
   /**
    * Write this type to the specified writer, in a context with the specified precedence and number
    * of arguments.
@@ -89,6 +97,14 @@ public class TGen extends Type {
     return (thisenv == null) ? tvs : thisenv[n].tvars(null, tvs);
   }
 
+  /** Mark live generics in this type, which is applied to the n arguments in args. */
+  void markLiveGens(boolean[] live, Types args, int n) {
+    if (this.n < live.length) {
+      live[this.n] = true;
+    }
+    markLiveArgs(live, args, null);
+  }
+
   /**
    * Calculate a type skeleton for this type, replacing occurrences of any of the TVar objects in
    * generics with a TGen value corresponding to its index. Any other unbound TVars are kept as is.
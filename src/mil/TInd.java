@@ -55,6 +55,11 @@ public class TInd extends Type {
     return false;
   }
 
+  int alphaHash() {
+    debug.Internal.error("alphaHash on TInd");
+    return 0;
+  }
+
   /**
    * Find the list of unbound type variables in this type, with a given environment, thisenv, for
    * interpreting TGen values, and accumulating the results in tvs.
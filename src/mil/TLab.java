@@ -51,6 +51,11 @@ public class TLab extends TLit {
     return this.str.equals(right.str);
   }
 
+  /** Compute a hash code for this type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return str.hashCode();
+  }
+
   /**
    * Write this type to the specified writer, in a context with the specified precedence and number
    * of arguments.
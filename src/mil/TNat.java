@@ -59,6 +59,11 @@ public class TNat extends TLit {
     return this.num.equals(right.num);
   }
 
+  /** Compute a hash code for this type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return num.hashCode();
+  }
+
   /**
    * Write this type to the specified writer, in a context with the specified precedence and number
    * of arguments.
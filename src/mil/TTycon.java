@@ -47,6 +47,16 @@ public class TTycon extends TConst {
     return this.tycon == right.tycon;
   }
 
+  /** Compute a hash code for this type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    return System.identityHashCode(tycon);
+  }
+
+  /** Mark live generics in this type, which is applied to the n arguments in args. */
+  void markLiveGens(boolean[] live, Types args, int n) {
+    markLiveArgs(live, args, tycon.phantomArgs(n));
+  }
+
   /**
    * Write this type to the specified writer, in a context with the specified precedence and number
    * of arguments.
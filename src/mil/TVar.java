@@ -36,13 +36,44 @@ public final class TVar extends TInd {
     super(bound, boundenv);
     this.tyvar = tyvar;
 
-    this.num = count++;
+    this.num = Compilation.current().fresh(TVar.class);
   }
 
-  private static int count = 0;
-
   private int num;
 
+  /**
+   * An upper bound on the length of the longest chain of type variables that are bound, directly
+   * or indirectly, to this variable. Used to choose which of two unbound variables to bind when
+   * they are unified, so that chains grow slowly (union by rank).
+   */
+  private int rank = 0;
+
+  /** Return this type if it is a type variable, or null otherwise. */
+  TVar isTVar() {
+    return this;
+  }
+
+  /**
+   * Shorten the chain of type variables that starts at this variable so that every variable on the
+   * chain refers directly to the last one, which is either unbound or bound to a type that is not a
+   * variable (path compression). A type variable does not depend on the environment in which it
+   * appears, so only the bound fields change. Each update is a single reference write replacing a
+   * binding with an equivalent one, so this is safe while other threads traverse the same type.
+   */
+  private void compress() {
+    if (bound != null) {
+      TVar last = this;
+      for (TVar next; last.bound != null && (next = last.bound.isTVar()) != null; ) {
+        last = next;
+      }
+      for (TVar v = this; v != last; ) {
+        TVar next = v.bound.isTVar();
+        v.bound = last;
+        v = next;
+      }
+    }
+  }
+
   public TVar(Tyvar tyvar) {
     this(null, null, tyvar);
   }
@@ -63,11 +94,20 @@ public final class TVar extends TInd {
     return this == t;
   }
 
+  /** Compute a hash code for this type that is consistent with alphaEquiv. */
+  int alphaHash() {
+    if (bound != null) {
+      debug.Internal.error("alphaHash on bound TVar");
+    }
+    return System.identityHashCode(this);
+  }
+
   /**
    * Find the list of unbound type variables in this type, with a given environment, thisenv, for
    * interpreting TGen values, and accumulating the results in tvs.
    */
   TVars tvars(Type[] thisenv, TVars tvs) {
+    compress();
     return (bound != null)
         ? bound.tvars(boundenv, tvs)
         : TVars.isIn(this, tvs) ? tvs : new TVars(this, tvs);
@@ -96,6 +136,7 @@ public final class TVar extends TInd {
    * All TInd and bound TVar nodes are eliminated in the process.
    */
   Type skeleton(Type[] thisenv, TVar[] generics) {
+    compress();
     if (bound != null) {
       return bound.skeleton(boundenv, generics);
     } else {
@@ -114,6 +155,7 @@ public final class TVar extends TInd {
    * <p>same :: Type -> Env -> Type -> Env -> Bool
    */
   public boolean same(Type[] thisenv, Type t, Type[] tenv) {
+    compress();
     return (bound == null) ? t.sameTVar(tenv, this) : bound.same(boundenv, t, tenv);
   }
 
@@ -137,6 +179,7 @@ public final class TVar extends TInd {
    * that the specified TVar is unbound!
    */
   boolean sameTVar(Type[] thisenv, TVar v) {
+    compress();
     return (bound == null) ? (this == v) : bound.sameTVar(boundenv, v);
   }
 
@@ -169,6 +212,7 @@ public final class TVar extends TInd {
    * the receiver might be bound during the matching process, even if match returns false.
    */
   public boolean match(Type[] thisenv, Type t, Type[] tenv) {
+    compress();
     return (bound == null) ? t.matchTVar(tenv, this) : bound.same(boundenv, t, tenv);
   }
 
@@ -186,6 +230,7 @@ public final class TVar extends TInd {
    * argument. The variable v must be unbound.
    */
   boolean matchTVar(Type[] thisenv, TVar v) {
+    compress();
     return (bound == null) ? (this == v || v.matchBind(this, null)) : bound.matchTVar(boundenv, v);
   }
 
@@ -205,6 +250,7 @@ public final class TVar extends TInd {
   }
 
   boolean contains(Type[] thisenv, TVar v) {
+    compress();
     return bound != null ? bound.contains(boundenv, v) : (v == this);
   }
 
@@ -214,6 +260,7 @@ public final class TVar extends TInd {
    * <p>unify :: Type -> Env -> Type -> Env -> IO ()
    */
   public void unify(Type[] thisenv, Type t, Type[] tenv) throws UnifyException {
+    compress();
     if (bound == null) {
       t.unifyTVar(tenv, this);
     } else {
@@ -250,8 +297,16 @@ public final class TVar extends TInd {
    * binding the specified type variable, but we also need to indirect through TGen and TVar values.
    */
   void unifyTVar(Type[] thisenv, TVar v) throws UnifyException {
+    compress();
     if (bound == null) {
-      v.unifyBind(this, null);
+      if (v.rank > rank) { // Bind the variable with the lower rank to the other
+        this.unifyBind(v, null);
+      } else {
+        if (v.rank == rank) {
+          rank++;
+        }
+        v.unifyBind(this, null);
+      }
     } else {
       bound.unifyTVar(boundenv, v);
     }
@@ -311,6 +366,7 @@ public final class TVar extends TInd {
   }
 
   Type apply(Type[] thisenv, TVarSubst s) {
+    compress();
     return (bound == null) ? s.find(this) : bound.apply(boundenv, s);
   }
 
@@ -331,6 +331,59 @@ public abstract class Tail {
     /* nothing to do */
   }
 
+  /** Propagate approximate values to any blocks that are called by this tail. */
+  void constProp(ConstProp cp) {
+    /* nothing to do */
+  }
+
+  /** Return an approximation for the value that is produced by this tail. */
+  ConstProp.Approx constValue(ConstProp cp) {
+    return ConstProp.Approx.unknown;
+  }
+
+  /**
+   * Test to see if the value of v might escape from this tail. Uses of v in a selector, or as the
+   * function in an Enter, do not allow it to escape.
+   */
+  boolean escapes(Temp v) {
+    return contains(v);
+  }
+
+  /** Add information about the values that are returned by this tail to the given analysis. */
+  void allocResults(AllocResults ar) {
+    ar.fail();
+  }
+
+  /**
+   * Return an allocator that describes the form of all of the values that are returned by this
+   * tail, or null if there is no such allocator.
+   */
+  Allocator resultAllocator() {
+    return null;
+  }
+
+  /** Return a version of this tail that returns the fields of an allocated result. */
+  Tail deriveWithUnboxedResult() {
+    debug.Internal.error("deriveWithUnboxedResult called on a tail that does not allocate");
+    return this;
+  }
+
+  /**
+   * Test to see if this tail can be hoisted out of a loop when its arguments are loop invariant.
+   * This requires a tail that is pure and that cannot fail.
+   */
+  boolean isHoistable() {
+    return false;
+  }
+
+  /**
+   * Return a version of this tail in which a call to a block in a loop is redirected to the
+   * corresponding block in the new version of the loop that is being built by lh.
+   */
+  Tail redirectLoopCalls(LoopHoist lh) {
+    return this;
+  }
+
   /**
    * Test to see if this tail expression is a call to a specific primitive, returning null in the
    * (most likely) case that it is not.
@@ -346,9 +399,10 @@ public abstract class Tail {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  abstract int summary();
+  abstract int summary(Temps vars);
 
   /** Test to see if two Tail expressions are alpha equivalent. */
   abstract boolean alphaTail(Temps thisvars, Tail that, Temps thatvars);
@@ -35,10 +35,8 @@ public class Temp extends Atom {
 
   public static final Temp[] noTemps = new Temp[0];
 
-  private static int count = 0;
-
   public Temp(Type type) {
-    this("t" + count++, type);
+    this("t" + Compilation.current().fresh(Temp.class), type);
   }
 
   public Temp() {
@@ -302,6 +300,27 @@ public class Temp extends Atom {
     return that.alphaTemp(thatvars, this, thisvars);
   }
 
+  /**
+   * Limits the number of enclosing bindings that are searched when computing a summary for a Temp;
+   * variables that are bound further out are treated in the same way as free variables. This keeps
+   * the cost of summarizing long blocks linear.
+   */
+  private static final int SUMMARY_DEPTH = 16;
+
+  /**
+   * Compute an integer summary for a fragment of MIL code with the key property that alpha
+   * equivalent program fragments have the same summary value. A bound variable is summarized by
+   * its position in vars, which matches the test that is used by alphaTemp().
+   */
+  int summary(Temps vars) {
+    for (int pos = 0; vars != null && pos < SUMMARY_DEPTH; vars = vars.next, pos++) {
+      if (vars.head == this) {
+        return 101 + pos;
+      }
+    }
+    return -17;
+  }
+
   /** Test two items for alpha equivalence. */
   boolean alphaTemp(Temps thisvars, Temp that, Temps thatvars) {
     int thisidx = Temps.lookup(this, thisvars);
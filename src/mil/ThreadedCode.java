@@ -0,0 +1,786 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package mil;
+
+import compiler.*;
+import core.*;
+import java.io.PrintWriter;
+
+/**
+ * A threaded code version of the program in a Machine. Each instruction in the original bytecode is
+ * translated into an Instr object whose operands have been decoded in advance, and whose successor
+ * instructions (including the targets of any jumps or calls) are referenced directly, instead of
+ * via addresses in the prog array. Execution proceeds by repeatedly invoking the exec method of the
+ * current instruction to obtain the next one, so there is no need to decode the opcode or operands
+ * of an instruction each time that it is executed.
+ */
+class ThreadedCode {
+
+  /** Maps each instruction address in the original program to the corresponding Instr. */
+  private Instr[] code;
+
+  /** The table of global values, shared with the Machine from which this code was built. */
+  private Value[] globals;
+
+  /**
+   * The maximum number of frame slots that can be accessed by any single instruction, which is
+   * used to determine when the value stack must be extended.
+   */
+  private int frameSize;
+
+  /** Build a threaded code version of the given bytecode program. */
+  ThreadedCode(int[] prog, int size, Value[] globals, int frameSize) {
+    this.globals = globals;
+    this.frameSize = frameSize;
+    this.code = new Instr[size];
+    for (int pc = 0; pc < size; pc += Machine.instrSize(prog[pc])) {
+      code[pc] = translate(prog, pc);
+    }
+    for (int pc = 0; pc < size; pc += Machine.instrSize(prog[pc])) {
+      code[pc].link(this, pc + Machine.instrSize(prog[pc]));
+    }
+  }
+
+  /** Create an Instr for the instruction at the specified address in the given program. */
+  private static Instr translate(int[] prog, int pc) {
+    switch (prog[pc]) {
+      case Machine.STOP:
+        return new Stop(pc);
+      case Machine.JUMP:
+        return new Jump(pc, prog[pc + 1]);
+      case Machine.JFALSE:
+        return new JFalse(pc, prog[pc + 1]);
+      case Machine.JNTAG:
+        return new JNTag(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.CALL:
+        return new Call(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.RETURN:
+        return new Return(pc);
+      case Machine.CJUMP:
+        return new CJump(pc);
+      case Machine.CCALL:
+        return new CCall(pc, prog[pc + 1]);
+      case Machine.PRIM:
+        return new PrimInstr(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.LOAD:
+        return new Load(pc, prog[pc + 1]);
+      case Machine.GLOAD:
+        return new GLoad(pc, prog[pc + 1]);
+      case Machine.STORE:
+        return new Store(pc, prog[pc + 1]);
+      case Machine.COPY:
+        return new Copy(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.GCOPY:
+        return new GCopy(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.GSAVE:
+        return new GSave(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.ALLOC:
+        return new Alloc(pc, prog[pc + 1], prog[pc + 2], prog[pc + 3]);
+      case Machine.SEL:
+        return new Sel(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.JFALSE_SLOT:
+        return new JFalseSlot(pc, prog[pc + 1], prog[pc + 2]);
+      case Machine.JNTAG_SLOT:
+        return new JNTagSlot(pc, prog[pc + 1], prog[pc + 2], prog[pc + 3]);
+      case Machine.PRIM_COPY:
+        return new PrimCopy(pc, prog[pc + 1], prog[pc + 2], prog[pc + 3]);
+      case Machine.COPY2:
+        return new Copy2(pc, prog[pc + 1], prog[pc + 2], prog[pc + 3], prog[pc + 4]);
+    }
+    return new Invalid(pc, prog[pc]);
+  }
+
+  /**
+   * Find the instruction at the specified address, returning an Invalid instruction if the address
+   * does not correspond to the start of an instruction.
+   */
+  Instr at(int addr) {
+    Instr i = (addr >= 0 && addr < code.length) ? code[addr] : null;
+    return (i != null) ? i : new Invalid(addr, (-1));
+  }
+
+  // Machine registers: ----------------------------------------------------------------------------
+
+  private PrintWriter out;
+
+  private Value[] stack = new Value[4000];
+
+  private int fp;
+
+  private Value val;
+
+  private int instrCount;
+
+  int getInstrCount() {
+    return instrCount;
+  }
+
+  /** Saved frame pointers and return instructions for the control stack. */
+  private int[] savedFps = new int[100];
+
+  private Instr[] savedInstrs = new Instr[100];
+
+  private int callDepth;
+
+  private int maxCallDepth;
+
+  int getMaxCallDepth() {
+    return maxCallDepth;
+  }
+
+  /** Push an entry on to the control stack to save the given fp and return instruction. */
+  private void saveContext(Instr ret) {
+    if (callDepth >= savedFps.length) {
+      int[] newFps = new int[2 * savedFps.length];
+      Instr[] newInstrs = new Instr[2 * savedInstrs.length];
+      for (int i = 0; i < callDepth; i++) {
+        newFps[i] = savedFps[i];
+        newInstrs[i] = savedInstrs[i];
+      }
+      savedFps = newFps;
+      savedInstrs = newInstrs;
+    }
+    savedFps[callDepth] = fp;
+    savedInstrs[callDepth] = ret;
+    if (++callDepth > maxCallDepth) {
+      maxCallDepth = callDepth;
+    }
+  }
+
+  /** Ensure that the value stack has room for a full frame at the current fp. */
+  private void ensureStack() {
+    if (fp + frameSize > stack.length) {
+      Value[] newStack = new Value[Machine.growSize(stack.length, fp, frameSize)];
+      for (int i = 0; i < stack.length; i++) {
+        newStack[i] = stack[i];
+      }
+      stack = newStack;
+    }
+  }
+
+  /**
+   * Copy the inline cache hit and miss counts for each closure call site into the given arrays,
+   * which are indexed by code address.
+   */
+  void getInlineCacheCounts(long[] hits, long[] misses, int[] targets) {
+    for (int pc = 0; pc < code.length; pc++) {
+      if (code[pc] instanceof ClosureInstr) {
+        ClosureInstr ci = (ClosureInstr) code[pc];
+        hits[pc] = ci.hits;
+        misses[pc] = ci.misses;
+        targets[pc] = (ci.cachedTarget == null) ? (-1) : ci.cachedTarget.addr;
+      }
+    }
+  }
+
+  /** Set if inline cache hit and miss counts should be recorded. */
+  private boolean countCalls;
+
+  /**
+   * Run the program in this threaded code, starting at the specified address, and recording inline
+   * cache statistics if countCalls is set.
+   */
+  void exec(PrintWriter out, int pc, boolean countCalls) {
+    this.out = out;
+    this.countCalls = countCalls;
+    fp = 0;
+    ensureStack();
+    for (int i = 0; i < code.length; i++) {
+      if (code[i] instanceof ClosureInstr) {
+        ((ClosureInstr) code[i]).reset();
+      }
+    }
+    val = null;
+    instrCount = 0;
+    callDepth = 0;
+    maxCallDepth = 0;
+    Instr ip = at(pc);
+    try {
+      while (ip != null) {
+        pc = ip.addr;
+        ip = ip.exec(this);
+      }
+    } catch (Failure f) {
+      out.println("Execution aborted: pc=" + pc + ", " + f.getText());
+      out.println("Value: " + (val == null ? "null" : val.toString()));
+      out.println("Frame:");
+      for (int i = 0; i < 10 && fp + i < stack.length && stack[fp + i] != null; i++) {
+        out.println(" +" + i + ": " + stack[fp + i]);
+      }
+    }
+  }
+
+  // Instructions: ---------------------------------------------------------------------------------
+
+  abstract static class Instr {
+
+    /** The address of this instruction in the original bytecode program. */
+    protected int addr;
+
+    /** Default constructor. */
+    Instr(int addr) {
+      this.addr = addr;
+    }
+
+    /** Points to the instruction that follows this one in the original bytecode program. */
+    protected Instr next;
+
+    /**
+     * Resolve references to other instructions, given the address of the instruction that follows
+     * this one.
+     */
+    void link(ThreadedCode tc, int nextAddr) {
+      next = tc.at(nextAddr);
+    }
+
+    /** Execute this instruction, returning the next instruction, or null if execution is done. */
+    abstract Instr exec(ThreadedCode m) throws Failure;
+  }
+
+  static class Invalid extends Instr {
+
+    private int op;
+
+    /** Default constructor. */
+    Invalid(int addr, int op) {
+      super(addr);
+      this.op = op;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      /* nothing to do */
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      throw new Failure(
+          (op < 0) ? "no instruction at address " + addr : "invalid opcode " + op + " at " + addr);
+    }
+  }
+
+  static class Stop extends Instr {
+
+    /** Default constructor. */
+    Stop(int addr) {
+      super(addr);
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      /* nothing to do */
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      return null;
+    }
+  }
+
+  static class Jump extends Instr {
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    Jump(int addr, int taddr) {
+      super(addr);
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      return target;
+    }
+  }
+
+  static class JFalse extends Instr {
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    JFalse(int addr, int taddr) {
+      super(addr);
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      return m.val.getBool() ? next : target;
+    }
+  }
+
+  static class JNTag extends Instr {
+
+    private int tag;
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    JNTag(int addr, int tag, int taddr) {
+      super(addr);
+      this.tag = tag;
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      return (m.val.getTag() == tag) ? next : target;
+    }
+  }
+
+  static class Call extends Instr {
+
+    private int o;
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    Call(int addr, int o, int taddr) {
+      super(addr);
+      this.o = o;
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.saveContext(next);
+      m.fp += o;
+      m.ensureStack();
+      return target;
+    }
+  }
+
+  static class Return extends Instr {
+
+    /** Default constructor. */
+    Return(int addr) {
+      super(addr);
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      /* nothing to do */
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      int i = --m.callDepth;
+      m.fp = m.savedFps[i];
+      return m.savedInstrs[i];
+    }
+  }
+
+  /**
+   * Base class for instructions that call a closure, holding a monomorphic inline cache that
+   * records the instruction at the code address of the most recently called closure.
+   */
+  abstract static class ClosureInstr extends Instr {
+
+    protected ThreadedCode tc;
+
+    private Instr cachedTarget;
+
+    private long hits;
+
+    private long misses;
+
+    /** Default constructor. */
+    ClosureInstr(int addr) {
+      super(addr);
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      this.tc = tc;
+    }
+
+    /** Clear the inline cache and hit/miss counts for this instruction. */
+    void reset() {
+      cachedTarget = null;
+      hits = 0;
+      misses = 0;
+    }
+
+    /** Find the instruction at the start of the code for the closure in the value register. */
+    Instr target(Value val) throws Failure {
+      if (val == null) {
+        throw new Failure("value is not a closure");
+      }
+      int t = val.getTag();
+      if (cachedTarget != null && cachedTarget.addr == t) {
+        if (tc.countCalls) {
+          hits++;
+        }
+      } else {
+        if (tc.countCalls) {
+          misses++;
+        }
+        cachedTarget = tc.at(t);
+      }
+      return cachedTarget;
+    }
+  }
+
+  static class CJump extends ClosureInstr {
+
+    /** Default constructor. */
+    CJump(int addr) {
+      super(addr);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      return target(m.val);
+    }
+  }
+
+  static class CCall extends ClosureInstr {
+
+    private int o;
+
+    /** Default constructor. */
+    CCall(int addr, int o) {
+      super(addr);
+      this.o = o;
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      m.saveContext(next);
+      m.fp += o;
+      m.ensureStack();
+      return target(m.val);
+    }
+  }
+
+  static class PrimInstr extends Instr {
+
+    protected int o;
+
+    protected int pnum;
+
+    protected Prim p;
+
+    /** Default constructor. */
+    PrimInstr(int addr, int o, int pnum) {
+      super(addr);
+      this.o = o;
+      this.pnum = pnum;
+      this.p = Prim.findPrim(pnum);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      if (p == null) {
+        throw new Failure("primitive number " + pnum + " is not defined");
+      }
+      p.exec(m.out, m.fp + o, m.stack);
+      return next;
+    }
+  }
+
+  static class Load extends Instr {
+
+    private int src;
+
+    /** Default constructor. */
+    Load(int addr, int src) {
+      super(addr);
+      this.src = src;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.val = m.stack[m.fp + src];
+      return next;
+    }
+  }
+
+  static class GLoad extends Instr {
+
+    private int i;
+
+    /** Default constructor. */
+    GLoad(int addr, int i) {
+      super(addr);
+      this.i = i;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.val = m.globals[i];
+      return next;
+    }
+  }
+
+  static class Store extends Instr {
+
+    private int dst;
+
+    /** Default constructor. */
+    Store(int addr, int dst) {
+      super(addr);
+      this.dst = dst;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.stack[m.fp + dst] = m.val;
+      return next;
+    }
+  }
+
+  static class Copy extends Instr {
+
+    private int src;
+
+    private int dst;
+
+    /** Default constructor. */
+    Copy(int addr, int src, int dst) {
+      super(addr);
+      this.src = src;
+      this.dst = dst;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      Value[] stack = m.stack;
+      stack[m.fp + dst] = stack[m.fp + src];
+      return next;
+    }
+  }
+
+  static class GCopy extends Instr {
+
+    private int i;
+
+    private int dst;
+
+    /** Default constructor. */
+    GCopy(int addr, int i, int dst) {
+      super(addr);
+      this.i = i;
+      this.dst = dst;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.stack[m.fp + dst] = m.globals[i];
+      return next;
+    }
+  }
+
+  static class GSave extends Instr {
+
+    private int src;
+
+    private int i;
+
+    /** Default constructor. */
+    GSave(int addr, int src, int i) {
+      super(addr);
+      this.src = src;
+      this.i = i;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      m.globals[i] = m.stack[m.fp + src];
+      debug.Log.println("Saved global: " + i + " [" + m.globals[i] + "]");
+      return next;
+    }
+  }
+
+  static class Alloc extends Instr {
+
+    private int tag;
+
+    private int n;
+
+    private int o;
+
+    /** Default constructor. */
+    Alloc(int addr, int tag, int n, int o) {
+      super(addr);
+      this.tag = tag;
+      this.n = n;
+      this.o = o;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount++;
+      int base = m.fp + o;
+      Value[] vals = new Value[n];
+      for (int i = 0; i < n; i++) {
+        vals[i] = m.stack[base + i];
+      }
+      m.val = new DataValue(tag, vals);
+      return next;
+    }
+  }
+
+  static class Sel extends Instr {
+
+    private int i;
+
+    private int dst;
+
+    /** Default constructor. */
+    Sel(int addr, int i, int dst) {
+      super(addr);
+      this.i = i;
+      this.dst = dst;
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount++;
+      m.stack[m.fp + dst] = m.val.getComponent(i);
+      return next;
+    }
+  }
+
+  static class JFalseSlot extends Instr {
+
+    private int src;
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    JFalseSlot(int addr, int src, int taddr) {
+      super(addr);
+      this.src = src;
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount += 2;
+      Value v = m.val = m.stack[m.fp + src];
+      return v.getBool() ? next : target;
+    }
+  }
+
+  static class JNTagSlot extends Instr {
+
+    private int src;
+
+    private int tag;
+
+    private int taddr;
+
+    private Instr target;
+
+    /** Default constructor. */
+    JNTagSlot(int addr, int src, int tag, int taddr) {
+      super(addr);
+      this.src = src;
+      this.tag = tag;
+      this.taddr = taddr;
+    }
+
+    void link(ThreadedCode tc, int nextAddr) {
+      super.link(tc, nextAddr);
+      target = tc.at(taddr);
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      m.instrCount += 2;
+      Value v = m.val = m.stack[m.fp + src];
+      return (v.getTag() == tag) ? next : target;
+    }
+  }
+
+  static class PrimCopy extends PrimInstr {
+
+    private int dst;
+
+    /** Default constructor. */
+    PrimCopy(int addr, int o, int pnum, int dst) {
+      super(addr, o, pnum);
+      this.dst = dst;
+    }
+
+    Instr exec(ThreadedCode m) throws Failure {
+      super.exec(m);
+      m.instrCount++;
+      m.stack[m.fp + dst] = m.stack[m.fp + o];
+      return next;
+    }
+  }
+
+  static class Copy2 extends Instr {
+
+    private int src1;
+
+    private int dst1;
+
+    private int src2;
+
+    private int dst2;
+
+    /** Default constructor. */
+    Copy2(int addr, int src1, int dst1, int src2, int dst2) {
+      super(addr);
+      this.src1 = src1;
+      this.dst1 = dst1;
+      this.src2 = src2;
+      this.dst2 = dst2;
+    }
+
+    Instr exec(ThreadedCode m) {
+      m.instrCount += 2;
+      Value[] stack = m.stack;
+      int fp = m.fp;
+      stack[fp + dst1] = stack[fp + src1];
+      stack[fp + dst2] = stack[fp + src2];
+      return next;
+    }
+  }
+}
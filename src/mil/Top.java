@@ -67,9 +67,16 @@ public abstract class Top extends Atom {
     return type.repCalc(null);
   }
 
-  public static final Top Unit =
-      new TopDef(
-          new TopLevel(BuiltinPosition.pos, new TopLhs(), new DataAlloc(Cfun.Unit).withArgs()), 0);
+  /** Return the top-level unit value in the current compilation. */
+  public static Top unit() {
+    return Compilation.current().unit;
+  }
+
+  /** Make a top-level unit value. */
+  static Top unitTop() {
+    return new TopDef(
+        new TopLevel(BuiltinPosition.pos, new TopLhs(), new DataAlloc(Cfun.Unit).withArgs()), 0);
+  }
 
   public void setDeclared(Handler handler, Position pos, Scheme scheme) {
     handler.report(
@@ -110,7 +110,7 @@ public class TopDef extends Top {
   }
 
   public Tail entersTopLevel(Atom[] iargs) {
-    return topLevel.entersTopLevel(iargs);
+    return topLevel.entersTopLevel(i, iargs);
   }
 
   /**
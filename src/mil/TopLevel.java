@@ -21,6 +21,7 @@ package mil;
 import compiler.*;
 import core.*;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 
 public class TopLevel extends TopDefn {
 
@@ -255,8 +256,20 @@ public class TopLevel extends TopDefn {
     return tail.lookForClosAlloc();
   }
 
-  public Tail entersTopLevel(Atom[] iargs) {
-    MILProgram.report("replacing " + toString() + " @ ... with block call");
+  /**
+   * Rewrite an Enter that applies the ith value defined by this TopLevel to the given arguments. A
+   * TopLevel that just returns other values is not converted to a block call because that would
+   * change the result of shortTopLevel() for any sccs that are being rewritten at the same time.
+   */
+  public Tail entersTopLevel(int i, Atom[] iargs) {
+    Atom[] as = tail.returnsAtom();
+    if (as != null) {
+      MILProgram.report(
+          OptimizerStats.KNOWN_CLOS, "replacing " + toString() + " @ ... with " + as[i] + " @ ...");
+      return new Enter(as[i], iargs);
+    }
+    MILProgram.report(
+        OptimizerStats.KNOWN_CLOS, "replacing " + toString() + " @ ... with block call");
     return this.toBlockCall().deriveWithEnter(iargs);
   }
 
@@ -265,13 +278,20 @@ public class TopLevel extends TopDefn {
    * hold the original code for the TopLevel value.
    */
   public BlockCall toBlockCall() {
-    BlockCall bc = tail.isBlockCall();
-    if (bc == null) {
-      Block b = new Block(pos, Temp.noTemps, new Done(tail));
-      bc = new BlockCall(b, Atom.noAtoms);
-      tail = bc;
+    Compilation comp = Compilation.current();
+    synchronized (comp.derivations) {
+      BlockCall bc = tail.isBlockCall();
+      if (bc == null) {
+        ArrayList<NameEvent> saved = comp.startDerived();
+        Block b = new Block(pos, Temp.noTemps, new Done(tail));
+        bc = new BlockCall(b, Atom.noAtoms);
+        tail = bc;
+        comp.endDerived(b, saved);
+      } else {
+        comp.reuse(bc.getBlock());
+      }
+      return bc;
     }
-    return bc;
   }
 
   /**
@@ -290,30 +310,39 @@ public class TopLevel extends TopDefn {
     tail.calcSources(this, Temp.noTemps, null);
   }
 
+  /**
+   * Start constant propagation for this definition, propagating values from any calls that it
+   * contains, or recording that it can be called with unknown arguments if it is a root.
+   */
+  void constProp(ConstProp cp) {
+    cp.enter(Temp.noTemps, null);
+    tail.constProp(cp);
+  }
+
   /** Holds the most recently computed summary value for this definition. */
   private int summary;
 
-  void findIn(TopLevels[] topLevels) {
+  void findIn(SummaryTable topLevels) {
     if (!isEntrypoint && tail.topLevelMayCombine()) {
-      summary = tail.summary();
-      int idx = this.summary % topLevels.length;
-      if (idx < 0) idx += topLevels.length;
-      for (TopLevels ts = topLevels[idx]; ts != null; ts = ts.next) {
-        if (this == ts.head) {
+      summary = tail.summary(null) * 31 + lhs.length;
+      for (Defns ds = topLevels.find(summary); ds != null; ds = ds.next) {
+        TopLevel t = (TopLevel) ds.head;
+        if (this == t) {
           return;
         }
-        if (ts.head.summary == this.summary
-            && this.tail.alphaTail(null, ts.head.tail, null)
-            && this.lhs.length == ts.head.lhs.length) {
-          if (ts.head.declared == null
-              || (this.declared != null && this.declared.alphaEquiv(ts.head.declared))) {
-            MILProgram.report("Identifying topdefn " + toString() + " with " + ts.head.toString());
-            this.tail = new Return(ts.head.tops());
+        topLevels.compared();
+        if (this.tail.alphaTail(null, t.tail, null) && this.lhs.length == t.lhs.length) {
+          if (t.declared == null
+              || (this.declared != null && this.declared.alphaEquiv(t.declared))) {
+            MILProgram.report(
+                OptimizerStats.DUPLICATES,
+                "Identifying topdefn " + toString() + " with " + t.toString());
+            this.tail = new Return(t.tops());
             return;
           }
         }
       }
-      topLevels[idx] = new TopLevels(this, topLevels[idx]);
+      topLevels.add(summary, this);
     }
   }
 
@@ -322,7 +351,7 @@ public class TopLevel extends TopDefn {
    * for a previously encountered item with the same code in the given table. Return true if a
    * duplicate was found.
    */
-  boolean summarizeDefns(Blocks[] blocks, TopLevels[] topLevels, ClosureDefns[] closures) {
+  boolean summarizeDefns(SummaryTable blocks, SummaryTable topLevels, SummaryTable closures) {
     findIn(topLevels);
     return false;
   }
@@ -359,6 +388,19 @@ public class TopLevel extends TopDefn {
     this(t.pos, TopLhs.makeLhs(t.lhs, num), null);
   }
 
+  /**
+   * Make a specialized version of t whose names will be set later by a call to setSpecName. This
+   * is used during parallel specialization, when the instance number is not yet known.
+   */
+  TopLevel(TopLevel t) {
+    this(t.pos, TopLhs.unnamed(t.lhs.length), null);
+  }
+
+  /** Set the name of this definition to match instance number num of the original definition. */
+  void setSpecName(TopLevel t, int num) {
+    TopLhs.nameLhs(lhs, t.lhs, num);
+  }
+
   /** Fill in the body of this TopLevel as a specialized version of the given TopLevel. */
   void specialize(MILSpec spec, TopLevel torig) {
     // TODO: eliminate ugly cast in the following line
@@ -31,10 +31,15 @@ public class TopLhs {
     this.id = id;
   }
 
-  private static int count = 0;
-
   public TopLhs() {
-    this("s" + count++);
+    this(null);
+    Compilation.current()
+        .freshName(
+            new NameEvent(null) {
+              void assignName() {
+                id = "s" + Compilation.current().fresh(TopLhs.class);
+              }
+            });
   }
 
   private Scheme declared;
@@ -121,14 +126,32 @@ public class TopLhs {
   }
 
   static TopLhs[] makeLhs(TopLhs[] lhs, int n) {
+    TopLhs[] nlhs = unnamed(lhs.length);
+    nameLhs(nlhs, lhs, n);
+    return nlhs;
+  }
+
+  /** Make an array of len TopLhs values whose names will be set later by nameLhs. */
+  static TopLhs[] unnamed(int len) {
+    TopLhs[] nlhs = new TopLhs[len];
+    for (int i = 0; i < len; i++) {
+      nlhs[i] = new TopLhs((String) null);
+    }
+    return nlhs;
+  }
+
+  /**
+   * Set the names in nlhs for instance number n of a definition with the given lhs, keeping the
+   * original name for the first instance of a definition with a single lhs, and otherwise using
+   * fresh names.
+   */
+  static void nameLhs(TopLhs[] nlhs, TopLhs[] lhs, int n) {
     if (n == 0 && lhs.length == 1) {
-      return new TopLhs[] {new TopLhs(lhs[0].id)};
+      nlhs[0].id = lhs[0].id;
     } else {
-      TopLhs[] nlhs = new TopLhs[lhs.length];
       for (int i = 0; i < lhs.length; i++) {
-        nlhs[i] = new TopLhs();
+        nlhs[i].id = "s" + Compilation.current().fresh(TopLhs.class);
       }
-      return nlhs;
     }
   }
 
@@ -41,7 +41,7 @@ public class TupleCon extends Tycon {
 
   private static TupleCon[] tupleCache;
 
-  public static TupleCon tuple(int n) {
+  public static synchronized TupleCon tuple(int n) {
     if (tupleCache == null) {
       tupleCache = new TupleCon[10];
     } else if (n >= tupleCache.length) {
@@ -185,7 +185,7 @@ public class TupleCon extends Tycon {
         }
       }
       // Define a symbolic name for this type:
-      llvm.DefinedType dt = new llvm.DefinedType(new llvm.StructType(tys));
+      llvm.DefinedType dt = lm.definedType(new llvm.StructType(tys));
       lm.typedef("corresponds to MIL tuple type " + c, dt);
       return dt;
     }
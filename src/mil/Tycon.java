@@ -267,6 +267,14 @@ public abstract class Tycon extends Name {
     return null;
   }
 
+  /**
+   * Return an array of flags identifying the phantom parameters in an application of this type
+   * constructor to n arguments, or null if all of the arguments should be treated as significant.
+   */
+  boolean[] phantomArgs(int n) {
+    return null;
+  }
+
   /** Determine whether this Tycon is a DataType that is a candidate for merging. */
   DataType mergeCandidate() {
     return null;
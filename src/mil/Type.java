@@ -49,7 +49,7 @@ public abstract class Type extends Scheme {
 
   private static TGen[] genCache;
 
-  public static TGen gen(int n) {
+  public static synchronized TGen gen(int n) {
     if (genCache == null) {
       genCache = new TGen[10];
     } else if (n >= genCache.length) {
@@ -181,6 +181,28 @@ public abstract class Type extends Scheme {
    */
   abstract TVars tvars(Type[] thisenv, TVars tvs);
 
+  /**
+   * Mark the generics that occur in this type skeleton at positions that can affect the
+   * representation of its values. Arguments at the phantom parameters of a datatype are skipped.
+   */
+  void markLiveGens(boolean[] live) {
+    markLiveGens(live, null, 0);
+  }
+
+  /** Mark live generics in this type, which is applied to the n arguments in args. */
+  void markLiveGens(boolean[] live, Types args, int n) {
+    markLiveArgs(live, args, null);
+  }
+
+  /** Mark live generics in each of the given arguments, except those flagged as phantoms. */
+  static void markLiveArgs(boolean[] live, Types args, boolean[] phantoms) {
+    for (int i = 0; args != null; args = args.next, i++) {
+      if (phantoms == null || !phantoms[i]) {
+        args.head.markLiveGens(live);
+      }
+    }
+  }
+
   public TVar[] generics(TVars fixed) {
     return TVar.generics(tvars(fixed), fixed);
   }
@@ -316,6 +338,11 @@ public abstract class Type extends Scheme {
     v.unifyBind(this, thisenv);
   }
 
+  /** Return this type if it is a type variable, or null otherwise. */
+  TVar isTVar() {
+    return null;
+  }
+
   /**
    * Simplify this natural number type, using the specified type environment if needed, returning
    * either an unbound TVar, or else a TNat literal. TODO: This could be used more generally as a
@@ -499,14 +526,6 @@ public abstract class Type extends Scheme {
    */
   abstract Type canonType(Type[] env, TypeSet set, int args);
 
-  /**
-   * Determine whether the arguments of this (canonical) type match the types on the top of the
-   * stack.
-   */
-  boolean matches(TypeSet set, int n) {
-    return n == 0;
-  }
-
   /** Calculate a new version of this type scheme with canonical components. */
   Scheme canonScheme(TypeSet set) {
     return this.canonType(set);
@@ -575,7 +594,7 @@ public abstract class Type extends Scheme {
 
   private static Type[][] wordsCache = new Type[10][];
 
-  public static Type[] words(int n) {
+  public static synchronized Type[] words(int n) {
     if (n >= wordsCache.length) {
       Type[][] newCache = new Type[Math.max(n + 1, 2 * wordsCache.length)][];
       for (int i = 0; i < wordsCache.length; i++) {
@@ -1114,6 +1133,11 @@ public abstract class Type extends Scheme {
     return this;
   }
 
+  Type getFun() {
+    debug.Internal.error("argument to getFun is not a TAp");
+    return this;
+  }
+
   /**
    * Calculate an array of llvm Types corresponding to the components of a given MIL Tuple type.
    * Unit types are filtered out in the process, so the resulting array may not actually have as
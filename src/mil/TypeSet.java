@@ -39,6 +39,80 @@ public class TypeSet {
    */
   private HashMap<Object, TLit> litsToTypes = new HashMap();
 
+  /**
+   * A key for the hash-consing table, describing a type by its head (either a Tycon or a singleton
+   * Type) and a sequence of canonical argument types. All components are compared by identity,
+   * which is valid because the arguments are always canonical. A key either refers to a slice of
+   * the TypeSet stack (when used as a probe) or to its own private copy of the arguments.
+   */
+  private static class TypeKey {
+
+    private Object head;
+
+    private Type[] args;
+
+    private int lo;
+
+    private int hi;
+
+    private int hash;
+
+    /** Set this key to describe the given head and the slice stack[lo..hi). */
+    void set(Object head, Type[] args, int lo, int hi) {
+      this.head = head;
+      this.args = args;
+      this.lo = lo;
+      this.hi = hi;
+      int h = System.identityHashCode(head);
+      for (int i = lo; i < hi; i++) {
+        h = 31 * h + System.identityHashCode(args[i]);
+      }
+      this.hash = h;
+    }
+
+    /** Return a copy of this key that does not share the (mutable) stack. */
+    TypeKey copy() {
+      int n = hi - lo;
+      Type[] us = new Type[n];
+      for (int i = 0; i < n; i++) {
+        us[i] = args[lo + i];
+      }
+      TypeKey k = new TypeKey();
+      k.head = head;
+      k.args = us;
+      k.lo = 0;
+      k.hi = n;
+      k.hash = hash;
+      return k;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TypeKey)) {
+        return false;
+      }
+      TypeKey k = (TypeKey) obj;
+      if (k.hash != hash || k.head != head || k.hi - k.lo != hi - lo) {
+        return false;
+      }
+      for (int i = lo, j = k.lo; i < hi; i++, j++) {
+        if (args[i] != k.args[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** A hash-consing table mapping heads and canonical arguments to canonical types. */
+  private HashMap<TypeKey, Type> canonTypes = new HashMap();
+
+  /** A reusable key for probing the canonTypes table without allocating. */
+  private TypeKey probe = new TypeKey();
+
   /** Write a description of this TypeSet to a PrintWriter. */
   public void dump(PrintWriter out) {
     out.println("Tycon mapping: --------------------------");
@@ -145,13 +219,12 @@ public class TypeSet {
    * the top n types on the stack.
    */
   protected Type canon(Tycon h, int args) {
-    Types ts = tyconInstances.get(h); // Find previous uses of this item
-    Type t = findMatch(args, ts); // And search for a match
+    Type t = findMatch(h, args); // Search for a previous use of this item
     if (t == null) {
-      t =
-          rebuild(
-              h.canonTycon(this).asType(), args); // If none found, build a canonical representative
-      tyconInstances.put(h, new Types(t, ts)); // Add it to the list
+      TypeKey key = probe.copy(); // Save key before canonTycon reuses the probe
+      t = rebuild(h.canonTycon(this).asType(), args); // Build a canonical representative
+      canonTypes.put(key, t);
+      tyconInstances.put(h, new Types(t, tyconInstances.get(h))); // Add it to the list
     }
     return t; // Return the (old or new) canonical representative
   }
@@ -168,18 +241,18 @@ public class TypeSet {
   }
 
   /**
-   * Scan the given list of Types for an entry with the specified number of arguments, each of which
-   * matches the corresponding arguments on the top of the stack. If we find a match, then we remove
-   * the arguments and return the canonical type.
+   * Look in the hash-consing table for a canonical type with the given head and the specified
+   * number of arguments from the top of the stack. If we find a match, then we remove the arguments
+   * and return the canonical type. Otherwise the probe is left describing the new type so that the
+   * caller can copy it to make a new table entry.
    */
-  private Type findMatch(int args, Types ts) {
-    for (; ts != null; ts = ts.next) {
-      if (ts.head.matches(this, args)) {
-        drop(args); // remove arguments
-        return ts.head; // and return canonical version
-      }
+  private Type findMatch(Object head, int args) {
+    probe.set(head, stack, sp - args, sp);
+    Type t = canonTypes.get(probe);
+    if (t != null) {
+      drop(args); // remove arguments
     }
-    return null;
+    return t;
   }
 
   /**
@@ -194,11 +267,12 @@ public class TypeSet {
     if (args == 0) { // If there are no arguments, then head is already
       return head; // a canonical representative
     } else {
-      Types ts = otherInstances.get(head); // Find previous uses of this item
-      Type t = findMatch(args, ts); // And search for a match
+      Type t = findMatch(head, args); // Search for a previous use of this item
       if (t == null) {
+        TypeKey key = probe.copy();
         t = rebuild(head, args); // If none found, build a canonical representative
-        otherInstances.put(head, new Types(t, ts)); // Add it to the list
+        canonTypes.put(key, t);
+        otherInstances.put(head, new Types(t, otherInstances.get(head))); // Add it to the list
       }
       return t; // Return the (old or new) canonical representative
     }
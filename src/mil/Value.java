@@ -44,4 +44,17 @@ abstract class Value {
   Value getComponent(int i) throws Failure {
     throw new Failure("value does not have components");
   }
+
+  /**
+   * Return true if this value can be held directly in a word slot of the unboxed machine, without
+   * a separate heap reference.
+   */
+  boolean isUnboxed() {
+    return false;
+  }
+
+  /** Return the word that represents this value in the unboxed machine. */
+  long unboxedWord() {
+    return 0;
+  }
 }
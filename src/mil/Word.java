@@ -24,77 +24,44 @@ import java.math.BigInteger;
 
 public class Word extends Const {
 
-  /** Specifies the number of bits in every value of type Word. (Should be either 32 or 64.) */
-  private static int size;
-
-  /** The current Word size, expressed as a BigInteger. */
-  private static BigInteger sizeBig;
-
-  /** The current Word size, expressed as a type of kind nat. */
-  private static Type sizeType;
-
-  /** The maximum signed value that can be represented in a Word. */
-  private static BigInteger maxSigned;
-
-  /** The maximum unsigned value that can be represented in a Word. */
-  private static BigInteger maxUnsigned;
-
-  /** A bit pattern for all Word values. */
-  private static obdd.Pat allPat;
-
-  /** A bit pattern for all nonzero Word values. */
-  private static obdd.Pat nonzeroPat;
-
-  /** Set the current word size, and dependent variables. */
+  /** Set the word size for the current compilation. */
   public static void setSize(int size) {
-    Word.size = size;
-    Word.sizeBig = BigInteger.valueOf(size);
-    Word.sizeType = new TNat(sizeBig);
-    Word.maxSigned = BigInteger.ONE.shiftLeft(size - 1).subtract(BigInteger.ONE);
-    Word.maxUnsigned = BigInteger.ONE.shiftLeft(size).subtract(BigInteger.ONE);
-    Word.allPat = obdd.Pat.all(size);
-    Word.nonzeroPat = obdd.Pat.nonzero(size);
-  }
-
-  static {
-
-    /* Default word size is 32 bits. */
-    setSize(32);
+    Compilation.current().setWordSize(size);
   }
 
   /** Return the current Word size. */
   public static int size() {
-    return size;
+    return Compilation.current().getWordSize();
   }
 
   /** Return the current Word size as a BigInteger. */
   public static BigInteger sizeBig() {
-    return sizeBig;
+    return Compilation.current().getWordSizeBig();
   }
 
   /** Return the current Word size as a Type. */
   public static Type sizeType() {
-    return sizeType;
+    return Compilation.current().getWordSizeType();
   }
 
   /** Return the maximum signed value that can be represented in a Word. */
   public static BigInteger maxSigned() {
-    return maxSigned;
+    return Compilation.current().getMaxSigned();
   }
 
   /** Return the maximum unsigned value that can be represented in a Word. */
   public static BigInteger maxUnsigned() {
-    return maxUnsigned;
+    return Compilation.current().getMaxUnsigned();
   }
 
   /** Return the bit pattern for all Word values. */
   public static obdd.Pat allPat() {
-    return allPat;
+    return Compilation.current().getAllPat();
   }
 
   /** Return the bit pattern for all nonzero Word values. */
   public static obdd.Pat nonzeroPat() {
-    return nonzeroPat;
+    return Compilation.current().getNonzeroPat();
   }
 
   /** The value of this Word constant. */
@@ -119,11 +86,12 @@ public class Word extends Const {
    * (when necessary, so that we can represent Word constants when Word.size()==32).
    */
   public static long fromLong(long val) {
-    int offset = 64 - Word.size;
+    int offset = 64 - size();
     return (val << offset) >> offset;
   }
 
   public static long fromBig(BigInteger v) {
+    int size = size();
     if (size == 32) {
       return (long) v.intValue();
     } else if (size == 64) {
@@ -177,14 +145,16 @@ public class Word extends Const {
 
   /**
    * Compute an integer summary for a fragment of MIL code with the key property that alpha
-   * equivalent program fragments have the same summary value.
+   * equivalent program fragments have the same summary value. The list vars records the variables
+   * that are bound in the enclosing code, with the most recent binding first.
    */
-  int summary() {
+  int summary(Temps vars) {
     return (int) val;
   }
 
   /** Return the number of words that are needed to hold a value with the specified bitsize. */
   public static int numWords(int numBits) {
+    int size = size();
     return (numBits == 0) ? 1 : ((numBits + size - 1) / size);
   }
 
@@ -37,4 +37,12 @@ class WordValue extends Value {
   long getInt() throws Failure {
     return num;
   }
+
+  boolean isUnboxed() {
+    return true;
+  }
+
+  long unboxedWord() {
+    return num;
+  }
 }
@@ -0,0 +1,101 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package driver;
+
+import java.io.*;
+
+/**
+ * Checks the effect of constant propagation on loops that pass a constant to one of their own
+ * parameters. Each program in test/constprop is run with and without --no-const-prop: the test
+ * fails if the two runs print different results, or if the number of bytecode instructions that
+ * are executed with constant propagation differs from the count that is recorded below. Usage:
+ * ConstPropTest outdir.
+ */
+class ConstPropTest {
+
+  /**
+   * The programs to run, each paired with the number of instructions that it executes when
+   * constant propagation is enabled. The count without constant propagation is shown in the
+   * comment at the end of each line.
+   */
+  private static final Object[][] jobs = {
+    {"sumto.lc", 4950050}, // 5150053: constant step passed round a loop
+    {"invariant.lc", 3595561}, // 4061236: loop limits and recursive calls
+    {"scale.lc", 2100022}, // 2300024: constant used in a multiply on each trip
+    {"nested.lc", 62050}, // 77807: constant tested in a nested conditional
+    {"backedge.lc", 2520048} // 2380050: removing a parameter turns a copy into a swap
+  };
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("usage: ConstPropTest outdir");
+      System.exit(1);
+    }
+    File dir = new File(args[0]);
+    dir.mkdirs();
+    int failures = 0;
+    for (int k = 0; k < jobs.length; k++) {
+      String prog = (String) jobs[k][0];
+      int expected = (Integer) jobs[k][1];
+      String[] with = run(prog, null, new File(dir, k + ".out"));
+      String[] without = run(prog, "--no-const-prop", new File(dir, k + ".nocp"));
+      if (!with[0].equals(without[0])) {
+        System.out.println("Output differs for " + prog);
+        failures++;
+      } else if (!with[1].equals(Integer.toString(expected))) {
+        System.out.println(
+            prog + " executed " + with[1] + " instructions (expected " + expected + ")");
+        failures++;
+      } else {
+        System.out.println(prog + ": " + with[1] + " instructions (" + without[1] + " without)");
+      }
+    }
+    System.exit((failures == 0) ? 0 : 1);
+  }
+
+  /**
+   * Compile and run the given program, writing its output to the file out. The result holds the
+   * text that the program printed, and the number of instructions that it executed.
+   */
+  private static String[] run(String prog, String option, File out) throws IOException {
+    String x = "-x" + out;
+    String p = "test/constprop/" + prog;
+    new Main()
+        .run(
+            (option == null)
+                ? new String[] {"-ilib", "--standalone", p, x}
+                : new String[] {"-ilib", "--standalone", option, p, x});
+    StringBuilder text = new StringBuilder();
+    String count = "";
+    BufferedReader in = new BufferedReader(new FileReader(out));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.endsWith(" instructions executed")) {
+          count = line.substring(0, line.indexOf(' '));
+          break;
+        }
+        text.append(line).append('\n');
+      }
+    } finally {
+      in.close();
+    }
+    return new String[] {text.toString(), count};
+  }
+}
@@ -0,0 +1,133 @@
+/*
+    Copyright 2018 Mark P Jones, Portland State University
+
+    This file is part of mil-tools.
+
+    mil-tools is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    mil-tools is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with mil-tools.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package driver;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Checks that compilations running at the same time in one JVM each produce exactly the same
+ * output as when they are run by themselves. Each of the demo programs is compiled once on its own,
+ * and then several times with every compilation on a separate thread; the test fails if any output
+ * file differs. Usage: ParallelTest outdir [reps].
+ */
+class ParallelTest {
+
+  /**
+   * The compilations to run: each one lists the options for a demo program, ending with an output
+   * option to which the name of the output file is appended. Several programs are compiled with
+   * different settings for options that are stored in each compilation, so that the test also
+   * checks that those settings do not leak from one compilation to another.
+   */
+  private static final String[][] jobs = {
+    {"--standalone", "demo/fib.lc", "-l"},
+    {"--standalone", "demo/fib.lc", "-m"},
+    {"--standalone", "demo/fib.lc", "-b"},
+    {"--standalone", "--no-fusion", "demo/fib.lc", "-b"},
+    {"--standalone", "--64", "demo/fib.lc", "-l"},
+    {"--standalone", "--target=x86_64-unknown-linux-gnu", "demo/fib.lc", "-l"},
+    {"--standalone", "demo/program.lc", "-l"},
+    {"--standalone", "demo/program.lc", "-m"},
+    {"--standalone", "--64", "demo/program.lc", "-l"},
+    {"--standalone", "demo/hello.lc", "-l"},
+    {"demo/prioset.lc", "-l"},
+    {"demo/prioset.lc", "-m"},
+    {"--opt-threads=4", "demo/prioset.lc", "-l"},
+    {"--worklist", "--check-reshake", "--inline-budget=10", "demo/prioset.lc", "-m"},
+    {"demo/funlib.lc", "-l"},
+    {"-pcosoo", "demo/funlib.lc", "-m"},
+    {"-pcosoo", "--no-const-prop", "demo/funlib.lc", "-m"},
+    {"demo/needinit.lc", "-m"},
+    {"-pcosoo", "--no-const-prop", "demo/needinit.lc", "-m"},
+    {"--llvm-main=init", "demo/needinit.lc", "-l"}
+  };
+
+  /** Return the command line arguments for the kth compilation, writing its output to dir. */
+  private static String[] args(int k, File dir) {
+    String[] args = new String[jobs[k].length + 1];
+    args[0] = "-ilib";
+    System.arraycopy(jobs[k], 0, args, 1, jobs[k].length);
+    args[args.length - 1] += new File(dir, k + ".out");
+    return args;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("usage: ParallelTest outdir [reps]");
+      System.exit(1);
+    }
+    File seq = new File(args[0], "seq");
+    File par = new File(args[0], "par");
+    seq.mkdirs();
+    par.mkdirs();
+    int reps = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+    for (int k = 0; k < jobs.length; k++) {
+      new Main().run(args(k, seq));
+    }
+
+    int failures = 0;
+    for (int rep = 0; rep < reps; rep++) {
+      Thread[] threads = new Thread[jobs.length];
+      for (int k = 0; k < jobs.length; k++) {
+        final String[] job = args(k, par);
+        new File(par, k + ".out").delete(); // Remove output from any previous run
+        threads[k] =
+            new Thread() {
+              public void run() {
+                new Main().run(job);
+              }
+            };
+        threads[k].start();
+      }
+      for (int k = 0; k < threads.length; k++) {
+        threads[k].join();
+      }
+      int diffs = 0;
+      for (int k = 0; k < jobs.length; k++) {
+        if (!sameContents(new File(seq, k + ".out"), new File(par, k + ".out"))) {
+          System.out.println("Output differs for " + Arrays.toString(jobs[k]));
+          diffs++;
+        }
+      }
+      System.out.println("Parallel run " + rep + ": " + diffs + " differences");
+      failures += diffs;
+    }
+    System.exit((failures == 0) ? 0 : 1);
+  }
+
+  /** Determine whether the two files have exactly the same contents. */
+  private static boolean sameContents(File a, File b) throws IOException {
+    return a.exists()
+        && b.exists()
+        && a.length() == b.length()
+        && Arrays.equals(readAll(a), readAll(b));
+  }
+
+  private static byte[] readAll(File f) throws IOException {
+    byte[] buf = new byte[(int) f.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(f));
+    try {
+      in.readFully(buf);
+    } finally {
+      in.close();
+    }
+    return buf;
+  }
+}